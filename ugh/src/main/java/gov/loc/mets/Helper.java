@@ -25,8 +25,10 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.xmlbeans.XmlAnyURI;
@@ -75,6 +77,8 @@ public class Helper {
      **************************************************************************/
     // The Mets wrapper element <mets>.
     private MetsType mets;
+    // Div ID to div mapping of the first structMap, built on first access.
+    private Map<String, DivType> structMapDivIndex = null;
 
     /***************************************************************************
      * CONSTRUCTORS
@@ -591,10 +595,25 @@ public class Helper {
      **************************************************************************/
     public DivType getStructMapDiv(String theId) {
         StructMapType[] structMapArray = this.mets.getStructMapArray();
-        if (structMapArray != null) {
-            return getStructMapDiv(theId, structMapArray[0].getDiv());
+        if (structMapArray == null || structMapArray.length == 0) {
+            return null;
         }
-        return null;
+
+        // Build the index once, so that subsequent lookups are constant-time.
+        if (this.structMapDivIndex == null) {
+            this.structMapDivIndex = new HashMap<>();
+            indexStructMapDivs(structMapArray[0].getDiv());
+        }
+
+        DivType result = this.structMapDivIndex.get(theId);
+        if (result == null && theId != null) {
+            // Divs may have been added after the index was built, so search the tree as before.
+            result = getStructMapDiv(theId, structMapArray[0].getDiv());
+            if (result != null) {
+                this.structMapDivIndex.put(theId, result);
+            }
+        }
+        return result;
     }
 
     /***************************************************************************
@@ -720,6 +739,28 @@ public class Helper {
         return null;
     }
 
+    /**************************************************************************
+     * <p>
+     * Adds the given div and all its sub divs to the div ID index. The first div with a given ID wins, like in the recursive search.
+     * </p>
+     * 
+     * @param theDiv
+     **************************************************************************/
+    private void indexStructMapDivs(DivType theDiv) {
+        if (theDiv == null) {
+            return;
+        }
+        if (theDiv.getID() != null) {
+            this.structMapDivIndex.putIfAbsent(theDiv.getID(), theDiv);
+        }
+        DivType[] divArray = theDiv.getDivArray();
+        if (divArray != null) {
+            for (DivType dt : divArray) {
+                indexStructMapDivs(dt);
+            }
+        }
+    }
+
     /***************************************************************************
      * <p>
      * Makes a simple HTTP call to a URI; this method is used for internal purposes only. The content of the request is returned as a string.
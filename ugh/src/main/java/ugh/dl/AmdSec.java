@@ -24,12 +24,13 @@ package ugh.dl;
  ******************************************************************************/
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.w3c.dom.Node;
 
 import lombok.Getter;
-import lombok.Setter;
 
 public class AmdSec implements Serializable {
 
@@ -38,22 +39,91 @@ public class AmdSec implements Serializable {
      */
     private static final long serialVersionUID = -2651069769792564435L;
     @Getter
-    @Setter
     private String id;
     @Getter
-    @Setter
     private List<Md> techMdList;
 
+    // The positions of the technical metadata in the list by their trimmed
+    // IDs; built on the first lookup, rebuilt when a lookup misses.
+    private transient volatile Map<String, Integer> techMdPositions;
+
+    // The document, whose snapshots preserve this AmdSec before it is
+    // changed; set when a snapshot is created.
+    private transient DigitalDocument digdoc;
+
     public AmdSec(List<Md> techMdList) {
         super();
         this.techMdList = techMdList;
     }
 
+    public void setId(String id) {
+        beforeChange();
+        this.id = id;
+    }
+
+    public void setTechMdList(List<Md> techMdList) {
+        beforeChange();
+        this.techMdList = techMdList;
+        this.techMdPositions = null;
+    }
+
     public void addTechMd(Md techMd) {
+        beforeChange();
         if (techMdList == null) {
             techMdList = new ArrayList<>();
         }
         this.techMdList.add(techMd);
+        Map<String, Integer> positions = this.techMdPositions;
+        if (positions != null && techMd != null && techMd.getId() != null) {
+            positions.putIfAbsent(techMd.getId().trim(), this.techMdList.size() - 1);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the technical metadata with the given ID. The IDs are compared without leading and trailing whitespace; if several Md objects have
+     * the same ID, the first one of the list is returned.
+     * </p>
+     * <p>
+     * The positions of the Md objects are looked up by their IDs in a map, which {@link #addTechMd(Md)} and {@link #setTechMdList(List)} keep up
+     * to date. The Md object found at the position must still have the ID, otherwise, and if the ID is not found, the map is built again from the
+     * list. So changes of the list returned by {@link #getTechMdList()}, and changed IDs, are noticed, too.
+     * </p>
+     * 
+     * @param id
+     * @return the Md object, or null, if there is none with this ID
+     **************************************************************************/
+    public Md getTechMd(String id) {
+        if (this.techMdList == null || id == null) {
+            return null;
+        }
+
+        String key = id.trim();
+        Map<String, Integer> positions = this.techMdPositions;
+        if (positions != null) {
+            Md techMd = getTechMdAt(positions.get(key));
+            if (techMd != null && techMd.getId() != null && key.equals(techMd.getId().trim())) {
+                return techMd;
+            }
+        }
+
+        positions = new HashMap<>();
+        for (int i = 0; i < this.techMdList.size(); i++) {
+            Md techMd = this.techMdList.get(i);
+            if (techMd != null && techMd.getId() != null) {
+                positions.putIfAbsent(techMd.getId().trim(), i);
+            }
+        }
+        this.techMdPositions = positions;
+
+        return getTechMdAt(positions.get(key));
+    }
+
+    private Md getTechMdAt(Integer position) {
+        if (position == null || position >= this.techMdList.size()) {
+            return null;
+        }
+        return this.techMdList.get(position);
     }
 
     public List<Node> getTechMdsAsNodes() {
@@ -66,4 +136,67 @@ public class AmdSec implements Serializable {
         return nodeList;
     }
 
+    /***************************************************************************
+     * <p>
+     * Copies this AmdSec for the DigitalDocumentCopier. The list is copied, the Md objects are shared.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    AmdSec deepCopy(DigitalDocumentCopier copier) {
+
+        AmdSec copy = shallowCopy();
+        copier.register(this, copy);
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies this AmdSec with a copy of the list of Md objects; used to preserve the state for a snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    AmdSec shallowCopy() {
+
+        AmdSec state = new AmdSec(this.techMdList == null ? null : new ArrayList<>(this.techMdList));
+        state.id = this.id;
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this AmdSec to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(AmdSec state) {
+        this.id = state.id;
+        this.techMdList = state.techMdList;
+        this.techMdPositions = null;
+    }
+
+    /***************************************************************************
+     * @param document the document, whose snapshots track the changes of this AmdSec
+     **************************************************************************/
+    void trackChangesFor(DigitalDocument document) {
+        this.digdoc = document;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this AmdSec in the open snapshots of its document. Must be called by all changing methods before the change is
+     * made.
+     * </p>
+     **************************************************************************/
+    private void beforeChange() {
+        if (this.digdoc != null) {
+            this.digdoc.preserve(this);
+        }
+    }
+
 }
@@ -84,6 +84,10 @@ public class ContentFile implements Serializable {
 
     private boolean isRepresentative = false;
 
+    // The document, whose snapshots preserve this ContentFile before it is
+    // changed; set when a snapshot is created.
+    private transient DigitalDocument digdoc;
+
     /***************************************************************************
      * <p>
      * Constructor.
@@ -98,6 +102,7 @@ public class ContentFile implements Serializable {
      * @return
      **************************************************************************/
     public boolean addMetadata(Metadata inMD) {
+        beforeChange();
         this.allMetadata.add(inMD);
         return true;
     }
@@ -107,6 +112,7 @@ public class ContentFile implements Serializable {
      * @return
      **************************************************************************/
     public boolean removeMetadata(Metadata inMD) {
+        beforeChange();
         this.allMetadata.remove(inMD);
         this.removedMetadata.add(inMD);
         return true;
@@ -128,6 +134,7 @@ public class ContentFile implements Serializable {
      * @param in
      **************************************************************************/
     public void setLocation(String in) {
+        beforeChange();
         this.location = in;
     }
 
@@ -146,6 +153,7 @@ public class ContentFile implements Serializable {
      * @param in
      **************************************************************************/
     public void setMimetype(String in) {
+        beforeChange();
         this.mimeType = in;
     }
 
@@ -179,6 +187,7 @@ public class ContentFile implements Serializable {
      * @param in
      **************************************************************************/
     public void setIdentifier(String in) {
+        beforeChange();
         this.identifier = in;
     }
 
@@ -213,6 +222,7 @@ public class ContentFile implements Serializable {
         if (inStruct == null || this.referencedDocStructs.contains(inStruct)) {
             return false;
         }
+        beforeChange();
         this.referencedDocStructs.add(inStruct);
 
         return true;
@@ -228,6 +238,7 @@ public class ContentFile implements Serializable {
             // No references available.
             return false;
         }
+        beforeChange();
         this.referencedDocStructs.remove(inStruct);
 
         return true;
@@ -248,6 +259,7 @@ public class ContentFile implements Serializable {
     }
 
     public void addTechMd(Md techMd) {
+        beforeChange();
         if (techMdList == null) {
             techMdList = new ArrayList<>();
         }
@@ -257,6 +269,7 @@ public class ContentFile implements Serializable {
     }
 
     public void setTechMds(List<Md> mds) {
+        beforeChange();
         if (mds != null) {
             this.techMdList = mds;
         }
@@ -271,6 +284,7 @@ public class ContentFile implements Serializable {
     }
 
     public void setRepresentative(boolean isRepresentative) {
+        beforeChange();
         this.isRepresentative = isRepresentative;
     }
 
@@ -279,6 +293,7 @@ public class ContentFile implements Serializable {
     }
 
     public void addUUID(String type, String uuid) {
+        beforeChange();
         uuidMap.put(type, uuid);
     }
 
@@ -286,4 +301,92 @@ public class ContentFile implements Serializable {
         return uuidMap.get(type);
     }
 
+    /***************************************************************************
+     * <p>
+     * Copies this ContentFile for the DigitalDocumentCopier. The technical metadata is shared.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    ContentFile deepCopy(DigitalDocumentCopier copier) {
+
+        ContentFile copy = new ContentFile();
+        copier.register(this, copy);
+
+        copy.location = this.location;
+        copy.mimeType = this.mimeType;
+        copy.identifier = this.identifier;
+        copy.isRepresentative = this.isRepresentative;
+        copy.uuidMap = (this.uuidMap == null ? null : new HashMap<>(this.uuidMap));
+        copy.techMdList = copier.shareElements(this.techMdList);
+        copy.allMetadata = copier.copyList(this.allMetadata, copier::copy);
+        copy.removedMetadata = copier.copyList(this.removedMetadata, copier::copy);
+
+        copier.defer(() -> copy.referencedDocStructs = copier.copyList(this.referencedDocStructs, copier::copy));
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this ContentFile with copies of its lists, the list elements are not copied; used to preserve the state for a snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    ContentFile shallowCopy() {
+
+        ContentFile state = new ContentFile();
+
+        state.location = this.location;
+        state.mimeType = this.mimeType;
+        state.identifier = this.identifier;
+        state.isRepresentative = this.isRepresentative;
+        state.uuidMap = (this.uuidMap == null ? null : new HashMap<>(this.uuidMap));
+        state.techMdList = DigitalDocumentCopier.copyOf(this.techMdList);
+        state.allMetadata = DigitalDocumentCopier.copyOf(this.allMetadata);
+        state.removedMetadata = DigitalDocumentCopier.copyOf(this.removedMetadata);
+        state.referencedDocStructs = DigitalDocumentCopier.copyOf(this.referencedDocStructs);
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this ContentFile to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(ContentFile state) {
+        this.location = state.location;
+        this.mimeType = state.mimeType;
+        this.identifier = state.identifier;
+        this.isRepresentative = state.isRepresentative;
+        this.uuidMap = state.uuidMap;
+        this.techMdList = state.techMdList;
+        this.allMetadata = state.allMetadata;
+        this.removedMetadata = state.removedMetadata;
+        this.referencedDocStructs = state.referencedDocStructs;
+    }
+
+    /***************************************************************************
+     * @param document the document, whose snapshots track the changes of this ContentFile
+     **************************************************************************/
+    void trackChangesFor(DigitalDocument document) {
+        this.digdoc = document;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this ContentFile in the open snapshots of its document. Must be called by all changing methods before the
+     * change is made.
+     * </p>
+     **************************************************************************/
+    private void beforeChange() {
+        if (this.digdoc != null) {
+            this.digdoc.preserve(this);
+        }
+    }
 }
@@ -96,4 +96,24 @@ public class ContentFileArea implements Serializable {
             throw new ContentFileAreaTypeUnknownException(message);
         }
     }
+
+    /***************************************************************************
+     * <p>
+     * Copies this ContentFileArea for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    ContentFileArea deepCopy(DigitalDocumentCopier copier) {
+
+        ContentFileArea copy = new ContentFileArea();
+        copier.register(this, copy);
+
+        copy.type = this.type;
+        copy.from = this.from;
+        copy.to = this.to;
+
+        return copy;
+    }
 }
@@ -0,0 +1,182 @@
+package ugh.dl;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/*******************************************************************************
+ * <p>
+ * List of ContentFiles with a membership check in constant time. The files are kept in insertion order in an array list, and counted by
+ * identity in a hash map, so contains() does not scan the list. ContentFile does not override equals(), so the identity check is the same as
+ * the one of an ordinary list.
+ * </p>
+ * <p>
+ * Used by {@link FileSet} and {@link VirtualFileGroup}, whose getters still return the list, so it can be changed by the callers like before.
+ * It is serialized as an ArrayList.
+ * </p>
+ ******************************************************************************/
+final class ContentFileList extends AbstractList<ContentFile> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = -2419553526637702358L;
+
+    private final ArrayList<ContentFile> elements;
+    // Number of occurrences of each file in the list.
+    private final Map<ContentFile, Integer> counts = new IdentityHashMap<>();
+
+    /***************************************************************************
+     * <p>
+     * Creates an empty list.
+     * </p>
+     **************************************************************************/
+    ContentFileList() {
+        this.elements = new ArrayList<>();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Creates a list with the files of the given collection.
+     * </p>
+     *
+     * @param files
+     **************************************************************************/
+    ContentFileList(Collection<? extends ContentFile> files) {
+        this.elements = new ArrayList<>(files);
+        for (ContentFile file : this.elements) {
+            increment(file);
+        }
+    }
+
+    @Override
+    public ContentFile get(int index) {
+        return this.elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return this.elements.size();
+    }
+
+    @Override
+    public ContentFile set(int index, ContentFile element) {
+        ContentFile old = this.elements.set(index, element);
+        decrement(old);
+        increment(element);
+        return old;
+    }
+
+    @Override
+    public void add(int index, ContentFile element) {
+        this.elements.add(index, element);
+        increment(element);
+        this.modCount++;
+    }
+
+    @Override
+    public ContentFile remove(int index) {
+        ContentFile old = this.elements.remove(index);
+        decrement(old);
+        this.modCount++;
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        remove(this.elements.indexOf(o));
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return this.counts.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return contains(o) ? this.elements.indexOf(o) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return contains(o) ? this.elements.lastIndexOf(o) : -1;
+    }
+
+    @Override
+    public void clear() {
+        this.elements.clear();
+        this.counts.clear();
+        this.modCount++;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super ContentFile> filter) {
+        if (!this.elements.removeIf(filter)) {
+            return false;
+        }
+        this.counts.clear();
+        for (ContentFile file : this.elements) {
+            increment(file);
+        }
+        this.modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Set<Object> files = identitySetOf(c);
+        return removeIf(files::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Set<Object> files = identitySetOf(c);
+        return removeIf(file -> !files.contains(file));
+    }
+
+    /***************************************************************************
+     * @param c
+     * @return the elements of the collection in a set compared by identity
+     **************************************************************************/
+    private static Set<Object> identitySetOf(Collection<?> c) {
+        Objects.requireNonNull(c);
+        Set<Object> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        result.addAll(c);
+        return result;
+    }
+
+    /***************************************************************************
+     * @param file
+     **************************************************************************/
+    private void increment(ContentFile file) {
+        this.counts.merge(file, 1, Integer::sum);
+    }
+
+    /***************************************************************************
+     * @param file
+     **************************************************************************/
+    private void decrement(ContentFile file) {
+        this.counts.computeIfPresent(file, (f, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Serializes the list as an ArrayList, so the serialized documents do not depend on this class.
+     * </p>
+     *
+     * @return
+     **************************************************************************/
+    private Object writeReplace() {
+        return new ArrayList<>(this.elements);
+    }
+
+}
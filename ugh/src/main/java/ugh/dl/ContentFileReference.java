@@ -52,4 +52,22 @@ public class ContentFileReference implements Serializable {
     @Setter
     private ContentFile cf = null;
 
+    /***************************************************************************
+     * <p>
+     * Copies this ContentFileReference for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    ContentFileReference deepCopy(DigitalDocumentCopier copier) {
+
+        ContentFileReference copy = new ContentFileReference();
+        copier.register(this, copy);
+
+        copy.cfa = copier.copy(this.cfa);
+        copy.cf = copier.copy(this.cf);
+
+        return copy;
+    }
 }
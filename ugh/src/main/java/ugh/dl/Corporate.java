@@ -26,7 +26,6 @@ import java.util.Objects;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
-import lombok.Setter;
 import ugh.exceptions.MetadataTypeNotAllowedException;
 
 /*******************************************************************************
@@ -56,7 +55,6 @@ public class Corporate extends Metadata {
      * </p>
      */
     @Getter
-    @Setter
     private String mainName;
 
     /**
@@ -69,7 +67,6 @@ public class Corporate extends Metadata {
      * </p>
      */
     @Getter
-    @Setter
     private List<NamePart> subNames = new ArrayList<>();
 
     /**
@@ -82,7 +79,6 @@ public class Corporate extends Metadata {
      * </p>
      */
     @Getter
-    @Setter
     private String partName;
 
     /**
@@ -95,9 +91,18 @@ public class Corporate extends Metadata {
      * </p>
      */
     @Getter
-    @Setter
     private String role;
 
+    /***************************************************************************
+     * <p>
+     * Constructor for copies, the fields are set by the DigitalDocumentCopier.
+     * </p>
+     **************************************************************************/
+    @SuppressWarnings("deprecation")
+    Corporate() {
+        super();
+    }
+
     public Corporate(MetadataType type) throws MetadataTypeNotAllowedException {
         super(type);
         if (!type.isCorporate) {
@@ -106,14 +111,36 @@ public class Corporate extends Metadata {
         role = type.getName();
     }
 
+    public void setMainName(String mainName) {
+        beforeChange();
+        this.mainName = mainName;
+    }
+
+    public void setSubNames(List<NamePart> subNames) {
+        beforeChange();
+        this.subNames = subNames;
+    }
+
+    public void setPartName(String partName) {
+        beforeChange();
+        this.partName = partName;
+    }
+
+    public void setRole(String role) {
+        beforeChange();
+        this.role = role;
+    }
+
     public void addSubName(NamePart name) {
         if (name != null && !subNames.contains(name)) {
+            beforeChange();
             subNames.add(name);
         }
     }
 
     public void removeSubName(NamePart name) {
         if (subNames.contains(name)) {
+            beforeChange();
             subNames.remove(name);
         }
     }
@@ -142,4 +169,65 @@ public class Corporate extends Metadata {
                 && Objects.equals(subNames, other.subNames);
     }
 
+    /***************************************************************************
+     * <p>
+     * Copies this Corporate for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    @Override
+    Corporate deepCopy(DigitalDocumentCopier copier) {
+
+        Corporate copy = new Corporate();
+        copyFields(copy, copier);
+
+        copy.mainName = this.mainName;
+        copy.partName = this.partName;
+        copy.role = this.role;
+        copy.subNames = copier.copyList(this.subNames, copier::copy);
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this Corporate; used to preserve the state for a snapshot. The name parts are copied, as they can be changed.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    @Override
+    Corporate shallowCopy() {
+
+        Corporate state = new Corporate();
+        copyState(state);
+
+        state.mainName = this.mainName;
+        state.partName = this.partName;
+        state.role = this.role;
+        state.subNames = DigitalDocumentCopier.copyNameParts(this.subNames);
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this Corporate to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    @Override
+    void restoreState(Metadata state) {
+
+        super.restoreState(state);
+
+        Corporate corporate = (Corporate) state;
+        this.mainName = corporate.mainName;
+        this.partName = corporate.partName;
+        this.role = corporate.role;
+        this.subNames = corporate.subNames;
+    }
 }
@@ -24,19 +24,18 @@ package ugh.dl;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -45,6 +44,8 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Node;
@@ -180,6 +181,10 @@ public class DigitalDocument implements Serializable {
     // This contains the list of techMds. Currently only one amdSec is allowed, to comply with DFG-Viewer
     private AmdSec amdSec;
 
+    // Open snapshots of this document, they preserve the state of changed
+    // DocStructs, metadata and files.
+    private transient List<WeakReference<DigitalDocumentSnapshot>> snapshots;
+
     public enum PhysicalElement {
         PAGE("page"),
         AUDIO("audio"),
@@ -501,7 +506,30 @@ public class DigitalDocument implements Serializable {
      **************************************************************************/
     public DigitalDocument readXStreamXml(String theFilename, Prefs thePrefs) throws FileNotFoundException, UnsupportedEncodingException {
 
-        BufferedReader infile = new BufferedReader(new InputStreamReader(new FileInputStream(theFilename), StandardCharsets.UTF_8));
+        FileInputStream in = new FileInputStream(theFilename);
+        try {
+            return readXStreamXml(in, thePrefs);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.error(e);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads an XStream XML DigitalDocument from a stream, see {@link #readXStreamXml(String, Prefs)}. The stream is not closed.
+     * </p>
+     * 
+     * @param in
+     * @param thePrefs
+     * @return
+     **************************************************************************/
+    public DigitalDocument readXStreamXml(InputStream in, Prefs thePrefs) {
+
+        BufferedReader infile = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
 
         // Read the DigitalDocument from an XStream file.
         XStream xStream = new XStream() {
@@ -558,7 +586,7 @@ public class DigitalDocument implements Serializable {
      * Sorts all metadata and persons alphabetically (and recursively).
      * </p>
      ***************************************************************************/
-    public synchronized void sortMetadataRecursivelyAbcdefg() {
+    public void sortMetadataRecursivelyAbcdefg() {
 
         // Sort metadata of top logical struct.
         sortMetadataRecursivelyAbcdefg(this.topLogicalStruct);
@@ -571,8 +599,12 @@ public class DigitalDocument implements Serializable {
      * <p>
      * Sorts all metadata and persons recursively in this DocStruct according to their occurance in the preferences file.
      * </p>
+     * <p>
+     * The document is not locked while sorting, so different documents can be sorted in parallel; a document must not be changed by other
+     * threads while it is sorted.
+     * </p>
      **************************************************************************/
-    public synchronized void sortMetadataRecursively(Prefs thePrefs) {
+    public void sortMetadataRecursively(Prefs thePrefs) {
 
         // Sort metadata of top logical struct.
         sortMetadataRecursively(this.topLogicalStruct, thePrefs);
@@ -682,7 +714,7 @@ public class DigitalDocument implements Serializable {
      * Sorts all metadata and persons recursively for the given DocStruct alphabetically (and recursively).
      * </p>
      **************************************************************************/
-    private synchronized void sortMetadataRecursivelyAbcdefg(DocStruct theStruct) {
+    private void sortMetadataRecursivelyAbcdefg(DocStruct theStruct) {
 
         if (theStruct == null) {
             return;
@@ -702,7 +734,7 @@ public class DigitalDocument implements Serializable {
      * Sorts all metadata and persons recursively for the given DocStruct according to their occurance in the preferences file.
      * </p>
      **************************************************************************/
-    private synchronized void sortMetadataRecursively(DocStruct theSruct, Prefs thePrefs) {
+    private void sortMetadataRecursively(DocStruct theSruct, Prefs thePrefs) {
 
         if (thePrefs == null) {
             log.warn("Cannot sort metadata according to prefs! No prefs available!");
@@ -722,6 +754,27 @@ public class DigitalDocument implements Serializable {
         theSruct.sortMetadata(thePrefs);
     }
 
+    /***************************************************************************
+     * <p>
+     * Loads the metadata of the given DocStruct and its children, if it is loaded on first access.
+     * </p>
+     * 
+     * @param theStruct
+     **************************************************************************/
+    private static void loadMetadataRecursively(DocStruct theStruct) {
+
+        if (theStruct == null) {
+            return;
+        }
+
+        theStruct.loadMetadata();
+        if (theStruct.getAllChildren() != null) {
+            for (DocStruct d : theStruct.getAllChildren()) {
+                loadMetadataRecursively(d);
+            }
+        }
+    }
+
     /***************************************************************************
      * <p>
      * Writes a DigitalDocument to disk as an XStream XML file.
@@ -735,10 +788,38 @@ public class DigitalDocument implements Serializable {
     @Deprecated
     public void writeXStreamXml(String filename) throws FileNotFoundException, UnsupportedEncodingException {
 
+        FileOutputStream out = new FileOutputStream(filename);
+        try {
+            writeXStreamXml(out);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.error(e);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes a DigitalDocument to a stream as XStream XML. The stream is not closed.
+     * </p>
+     * 
+     * @param out
+     * @deprecated
+     **************************************************************************/
+    @Deprecated
+    public void writeXStreamXml(OutputStream out) {
+
         // Write the DigitalDocument as an XStream file.
         XStream xStream = new XStream(new DomDriver());
 
-        BufferedWriter outfile = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
+        // XStream reads the fields, so metadata loaded on first access must
+        // be loaded before.
+        loadMetadataRecursively(this.topLogicalStruct);
+        loadMetadataRecursively(this.topPhysicalStruct);
+
+        BufferedWriter outfile = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
         xStream.toXML(this, outfile);
     }
 
@@ -1064,16 +1145,10 @@ public class DigitalDocument implements Serializable {
     }
 
     public Md getTechMd(String id) {
-        if (amdSec == null || amdSec.getTechMdList() == null) {
+        if (amdSec == null) {
             return null;
         }
-
-        for (Md techMd : this.amdSec.getTechMdList()) {
-            if (techMd.getId() != null && techMd.getId().trim().contentEquals(id.trim())) {
-                return techMd;
-            }
-        }
-        return null;
+        return amdSec.getTechMd(id);
     }
 
     public void setAmdSec(AmdSec sec) {
@@ -1100,50 +1175,196 @@ public class DigitalDocument implements Serializable {
 
     /***************************************************************************
      * <p>
-     * Creates a deep copy of the DigitalDocument.
+     * Creates a deep copy of the DigitalDocument. All DocStructs, metadata, content files and references are copied, links between them point to the
+     * objects of the copy. The types from the ruleset are shared with the original.
+     * </p>
+     * <p>
+     * The technical metadata (Md) is not copied either, like in the former copy by serialization, which took the Md objects out before and added
+     * the same objects to the copy afterwards. The AmdSec and the lists of the copy are new, but the original and the copy contain the same Md
+     * objects, so changing the ID or the content of an Md changes it in both documents. Adding and removing Md objects only changes one of them.
      * </p>
      * 
      * @return the new DigitalDocument instance
      **************************************************************************/
 
     public DigitalDocument copyDigitalDocument() throws WriteException {
+        return new DigitalDocumentCopier().copyDocument(this);
+    }
 
-        DigitalDocument newDigDoc = null;
+    /***************************************************************************
+     * <p>
+     * Creates a copy-on-write snapshot of the DigitalDocument. The snapshot shares all objects with this document; DocStructs, metadata, persons,
+     * corporates, metadata groups and the objects of the file section are preserved in the snapshot only when they are changed afterwards. Use
+     * {@link DigitalDocumentSnapshot#restore()} to set the document back to the state it had at the time the snapshot was created.
+     * </p>
+     * 
+     * @return the new snapshot
+     **************************************************************************/
+    public synchronized DigitalDocumentSnapshot createSnapshot() {
 
-        try {
+        if (this.snapshots == null) {
+            this.snapshots = new CopyOnWriteArrayList<>();
+        }
 
-            // remove techMd list for serialization
-            ArrayList<Md> tempList = new ArrayList<>(getTechMds());
-            getTechMds().clear();
-
-            // Write the object out to a byte array.
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream out = new ObjectOutputStream(bos);
-            out.writeObject(this);
-            out.flush();
-            out.close();
-
-            // Make an input stream from the byte array and read
-            // a copy of the object back in.
-            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
-            newDigDoc = (DigitalDocument) in.readObject();
-
-            // reattach techMd list
-            for (Md md : tempList) {
-                newDigDoc.addTechMd(md);
-            }
+        DigitalDocumentSnapshot snapshot = new DigitalDocumentSnapshot(this);
+        this.snapshots.add(new WeakReference<>(snapshot));
 
-        } catch (IOException e) {
-            String message = "Couldn't obtain OutputStream!";
-            log.error(message, e);
-            throw new WriteException(message, e);
-        } catch (ClassNotFoundException e) {
-            String message = "Could not find some class!";
-            log.error(message, e);
-            throw new WriteException(message, e);
+        // The DocStructs and metadata know their document through their
+        // parents, the file section is told.
+        if (this.allImages != null) {
+            this.allImages.trackChangesFor(this);
+        }
+        if (this.amdSec != null) {
+            this.amdSec.trackChangesFor(this);
+        }
+
+        return snapshot;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Stops tracking changes for the given snapshot.
+     * </p>
+     * 
+     * @param snapshot
+     **************************************************************************/
+    synchronized void releaseSnapshot(DigitalDocumentSnapshot snapshot) {
+        if (this.snapshots != null) {
+            this.snapshots.removeIf(ref -> ref.get() == null || ref.get() == snapshot);
         }
+    }
 
-        return newDigDoc;
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a DocStruct in all open snapshots; called before the DocStruct is changed.
+     * </p>
+     * 
+     * @param ds
+     **************************************************************************/
+    void preserve(DocStruct ds) {
+        forEachSnapshot(snapshot -> snapshot.preserve(ds));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a Metadata, Person or Corporate in all open snapshots; called before it is changed.
+     * </p>
+     * 
+     * @param md
+     **************************************************************************/
+    void preserve(Metadata md) {
+        forEachSnapshot(snapshot -> snapshot.preserve(md));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a MetadataGroup in all open snapshots; called before it is changed.
+     * </p>
+     * 
+     * @param group
+     **************************************************************************/
+    void preserve(MetadataGroup group) {
+        forEachSnapshot(snapshot -> snapshot.preserve(group));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of the FileSet in all open snapshots; called before it is changed.
+     * </p>
+     * 
+     * @param fileSet
+     **************************************************************************/
+    void preserve(FileSet fileSet) {
+        forEachSnapshot(snapshot -> snapshot.preserve(fileSet));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a ContentFile in all open snapshots; called before it is changed.
+     * </p>
+     * 
+     * @param cf
+     **************************************************************************/
+    void preserve(ContentFile cf) {
+        forEachSnapshot(snapshot -> snapshot.preserve(cf));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a VirtualFileGroup in all open snapshots; called before it is changed.
+     * </p>
+     * 
+     * @param group
+     **************************************************************************/
+    void preserve(VirtualFileGroup group) {
+        forEachSnapshot(snapshot -> snapshot.preserve(group));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of the AmdSec in all open snapshots; called before it is changed.
+     * </p>
+     * 
+     * @param amdSec
+     **************************************************************************/
+    void preserve(AmdSec amdSec) {
+        forEachSnapshot(snapshot -> snapshot.preserve(amdSec));
+    }
+
+    /***************************************************************************
+     * @param action
+     **************************************************************************/
+    private void forEachSnapshot(Consumer<DigitalDocumentSnapshot> action) {
+
+        List<WeakReference<DigitalDocumentSnapshot>> open = this.snapshots;
+        if (open == null || open.isEmpty()) {
+            return;
+        }
+
+        boolean collected = false;
+        for (WeakReference<DigitalDocumentSnapshot> ref : open) {
+            DigitalDocumentSnapshot snapshot = ref.get();
+            if (snapshot == null) {
+                collected = true;
+            } else {
+                action.accept(snapshot);
+            }
+        }
+        if (collected) {
+            open.removeIf(ref -> ref.get() == null);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this DigitalDocument, without copying the referenced objects; used to preserve the state for a snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    DigitalDocument shallowCopy() {
+
+        DigitalDocument state = new DigitalDocument();
+        state.topLogicalStruct = this.topLogicalStruct;
+        state.topPhysicalStruct = this.topPhysicalStruct;
+        state.allImages = this.allImages;
+        state.amdSec = this.amdSec;
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this DigitalDocument to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(DigitalDocument state) {
+        this.topLogicalStruct = state.topLogicalStruct;
+        this.topPhysicalStruct = state.topPhysicalStruct;
+        this.allImages = state.allImages;
+        this.amdSec = state.amdSec;
     }
 
     public static String detectMimeType(Path path) {
@@ -1248,4 +1469,25 @@ public class DigitalDocument implements Serializable {
 
         return mimeType;
     }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this DigitalDocument for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    DigitalDocument deepCopy(DigitalDocumentCopier copier) {
+
+        DigitalDocument copy = new DigitalDocument();
+        copier.register(this, copy);
+
+        copy.amdSec = copier.copy(this.amdSec);
+        copy.topLogicalStruct = copier.copy(this.topLogicalStruct);
+        copy.topPhysicalStruct = copier.copy(this.topPhysicalStruct);
+        copy.allImages = copier.copy(this.allImages);
+
+        return copy;
+    }
 }
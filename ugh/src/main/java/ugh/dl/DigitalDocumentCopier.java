@@ -0,0 +1,341 @@
+package ugh.dl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/*******************************************************************************
+ * <p>
+ * Deep copy of a DigitalDocument object graph without serialization. Every object of the graph is copied exactly once, so shared objects and cross
+ * links (parents, children, references, content file links, virtual file groups) point to the corresponding objects of the copy.
+ * </p>
+ * <p>
+ * Objects from the ruleset (DocStructType, MetadataType, MetadataGroupType) and the technical metadata (Md) are not copied but shared between the
+ * original and the copy.
+ * </p>
+ * <p>
+ * The copying of the fields is done by the package-private deepCopy() methods of the copied classes, this class keeps track of the objects that
+ * have already been copied.
+ * </p>
+ ******************************************************************************/
+final class DigitalDocumentCopier {
+
+    // Maps each original object to its copy.
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+    // Copy steps which are run after the DocStruct trees are copied.
+    private final Deque<Runnable> deferred = new ArrayDeque<>();
+
+    /***************************************************************************
+     * <p>
+     * Copies the given DigitalDocument with all its objects.
+     * </p>
+     *
+     * @param in
+     * @return
+     **************************************************************************/
+    DigitalDocument copyDocument(DigitalDocument in) {
+
+        DigitalDocument result = copy(in);
+        while (!this.deferred.isEmpty()) {
+            this.deferred.poll().run();
+        }
+
+        return result;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Defers a copy step until the DocStruct trees are copied. This is used for the links between DocStructs and content files, following them
+     * directly would recurse through the whole document.
+     * </p>
+     *
+     * @param step
+     **************************************************************************/
+    void defer(Runnable step) {
+        this.deferred.add(step);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Registers the copy of an object. Must be called by the deepCopy() methods before any referenced object is copied.
+     * </p>
+     *
+     * @param original
+     * @param copy
+     **************************************************************************/
+    <T> void register(T original, T copy) {
+        this.copies.put(original, copy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the already created copy of an object, or null, if the object has not been copied (yet).
+     * </p>
+     *
+     * @param original
+     * @return
+     **************************************************************************/
+    @SuppressWarnings("unchecked")
+    <T> T getCopy(T original) {
+        if (original == null) {
+            return null;
+        }
+        return (T) this.copies.get(original);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    DigitalDocument copy(DigitalDocument in) {
+        DigitalDocument result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    DocStruct copy(DocStruct in) {
+        DocStruct result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    Metadata copy(Metadata in) {
+        Metadata result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    Person copy(Person in) {
+        return (Person) copy((Metadata) in);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    Corporate copy(Corporate in) {
+        return (Corporate) copy((Metadata) in);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    MetadataGroup copy(MetadataGroup in) {
+        MetadataGroup result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    Reference copy(Reference in) {
+        Reference result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    ContentFile copy(ContentFile in) {
+        ContentFile result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    ContentFileArea copy(ContentFileArea in) {
+        ContentFileArea result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    ContentFileReference copy(ContentFileReference in) {
+        ContentFileReference result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    FileSet copy(FileSet in) {
+        FileSet result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    VirtualFileGroup copy(VirtualFileGroup in) {
+        VirtualFileGroup result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    AmdSec copy(AmdSec in) {
+        AmdSec result = getCopy(in);
+        if (in == null || result != null) {
+            return result;
+        }
+        return in.deepCopy(this);
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     **************************************************************************/
+    NamePart copy(NamePart in) {
+        if (in == null) {
+            return null;
+        }
+        return new NamePart(in.getType(), in.getValue());
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies a list element by element. The copy is a list of the same kind, see {@link #newList(List)}; null stays null.
+     * </p>
+     *
+     * @param in
+     * @param copyFunction
+     * @return
+     **************************************************************************/
+    <T> List<T> copyList(List<T> in, UnaryOperator<T> copyFunction) {
+
+        if (in == null) {
+            return null;
+        }
+
+        List<T> result = newList(in);
+        for (T element : in) {
+            result.add(copyFunction.apply(element));
+        }
+
+        return result;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies a list, but keeps the elements; used for the shared Md objects.
+     * </p>
+     *
+     * @param in
+     * @return
+     **************************************************************************/
+    <T> List<T> shareElements(List<T> in) {
+        return copyOf(in);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies a list, but keeps the elements. The copy is a list of the same kind, see {@link #newList(List)}; null stays null.
+     * </p>
+     *
+     * @param in
+     * @return
+     **************************************************************************/
+    static <T> List<T> copyOf(List<T> in) {
+
+        if (in == null) {
+            return null;
+        }
+
+        List<T> result = newList(in);
+        result.addAll(in);
+        return result;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies a list of name parts with copies of the name parts, which can be changed; null stays null.
+     * </p>
+     *
+     * @param in
+     * @return
+     **************************************************************************/
+    static List<NamePart> copyNameParts(List<NamePart> in) {
+
+        if (in == null) {
+            return null;
+        }
+
+        List<NamePart> result = new ArrayList<>(in.size());
+        for (NamePart part : in) {
+            result.add(part == null ? null : new NamePart(part.getType(), part.getValue()));
+        }
+        return result;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Creates an empty list of the same kind as the given one: a ContentFileList or a LinkedList, if the original is one, an ArrayList otherwise.
+     * </p>
+     *
+     * @param in
+     * @return
+     **************************************************************************/
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> newList(List<T> in) {
+        if (in instanceof ContentFileList) {
+            return (List<T>) new ContentFileList();
+        }
+        return (in instanceof LinkedList ? new LinkedList<>() : new ArrayList<>(in.size()));
+    }
+
+}
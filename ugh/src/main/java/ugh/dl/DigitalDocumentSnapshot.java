@@ -0,0 +1,233 @@
+package ugh.dl;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*******************************************************************************
+ * <p>
+ * Copy-on-write snapshot of a {@link DigitalDocument}, created by {@link DigitalDocument#createSnapshot()}.
+ * </p>
+ * <p>
+ * Creating a snapshot does not copy the DocStructs, their metadata or the file section. The snapshot shares all objects with the document, and
+ * the state of a DocStruct, Metadata, Person, Corporate, MetadataGroup, FileSet, ContentFile, VirtualFileGroup or AmdSec is preserved in the
+ * snapshot only when the object is changed for the first time afterwards, by one of its changing methods. The preserved state holds the field
+ * values and copies of the lists, the list elements are not copied. Unchanged objects stay shared, so a snapshot costs memory for the changed
+ * objects only.
+ * </p>
+ * <p>
+ * {@link #restore()} sets the changed objects of the document back to their preserved states, so the document is in the state it had at the time
+ * the snapshot was created. Only the changed objects are touched, the document is not copied.
+ * </p>
+ * <p>
+ * Tracked are the changing methods of the classes above, including the methods changing the references, content file references and technical
+ * metadata of a DocStruct. Not tracked are changes made directly to the lists returned by the getters, changes of the name parts of persons and
+ * corporates made through the NamePart objects, changes of the metadata of the file section, which have no parent, and changes of the technical
+ * metadata (Md) itself, which is shared. A snapshot, which is no longer needed, should be released with {@link #release()}, otherwise it is
+ * dropped from the document after it has been garbage collected.
+ * </p>
+ ******************************************************************************/
+public class DigitalDocumentSnapshot {
+
+    private final DigitalDocument document;
+    // Preserved states, mapped from the objects of the document.
+    private final Map<Object, Object> states = new IdentityHashMap<>();
+    private boolean released = false;
+
+    /***************************************************************************
+     * @param document
+     **************************************************************************/
+    DigitalDocumentSnapshot(DigitalDocument document) {
+
+        this.document = document;
+
+        // The document level fields are changed without notification, they
+        // are few and preserved right away.
+        this.states.put(document, document.shallowCopy());
+    }
+
+    /***************************************************************************
+     * @return the document this snapshot was taken of
+     **************************************************************************/
+    public DigitalDocument getDocument() {
+        return this.document;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the document back to the state it had at the time this snapshot was created, and releases the snapshot. Only the objects changed since
+     * then are restored; they keep their identity, so references to them stay valid. Other open snapshots of the document preserve the restored
+     * objects first, as restoring changes them. The document must not be changed by other threads while it is restored.
+     * </p>
+     *
+     * @throws IllegalStateException if the snapshot has been released
+     **************************************************************************/
+    public void restore() {
+
+        Map<Object, Object> preserved;
+        synchronized (this) {
+            if (this.released) {
+                throw new IllegalStateException("The snapshot has been released");
+            }
+            preserved = new IdentityHashMap<>(this.states);
+        }
+        release();
+
+        for (Map.Entry<Object, Object> entry : preserved.entrySet()) {
+            restore(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /***************************************************************************
+     * @param original
+     * @param state
+     **************************************************************************/
+    private void restore(Object original, Object state) {
+
+        if (original instanceof DigitalDocument dd) {
+            dd.restoreState((DigitalDocument) state);
+        } else if (original instanceof DocStruct ds) {
+            this.document.preserve(ds);
+            ds.restoreState((DocStruct) state);
+        } else if (original instanceof Metadata md) {
+            this.document.preserve(md);
+            md.restoreState((Metadata) state);
+        } else if (original instanceof MetadataGroup group) {
+            this.document.preserve(group);
+            group.restoreState((MetadataGroup) state);
+        } else if (original instanceof FileSet fs) {
+            this.document.preserve(fs);
+            fs.restoreState((FileSet) state);
+        } else if (original instanceof ContentFile cf) {
+            this.document.preserve(cf);
+            cf.restoreState((ContentFile) state);
+        } else if (original instanceof VirtualFileGroup group) {
+            this.document.preserve(group);
+            group.restoreState((VirtualFileGroup) state);
+        } else if (original instanceof AmdSec amdSec) {
+            this.document.preserve(amdSec);
+            amdSec.restoreState((AmdSec) state);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Stops tracking changes of the document for this snapshot and drops the preserved states.
+     * </p>
+     **************************************************************************/
+    public void release() {
+
+        this.document.releaseSnapshot(this);
+
+        synchronized (this) {
+            this.states.clear();
+            this.released = true;
+        }
+    }
+
+    /***************************************************************************
+     * @return true, if the snapshot has been released or restored
+     **************************************************************************/
+    public synchronized boolean isReleased() {
+        return this.released;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a DocStruct, if it has not been preserved yet. Called before the DocStruct is changed.
+     * </p>
+     *
+     * @param ds
+     **************************************************************************/
+    void preserve(DocStruct ds) {
+        preserve(ds, ds::shallowCopy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a Metadata, Person or Corporate, if it has not been preserved yet. Called before the Metadata is changed.
+     * </p>
+     *
+     * @param md
+     **************************************************************************/
+    void preserve(Metadata md) {
+        preserve(md, md::shallowCopy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a MetadataGroup, if it has not been preserved yet. Called before the MetadataGroup is changed.
+     * </p>
+     *
+     * @param group
+     **************************************************************************/
+    void preserve(MetadataGroup group) {
+        preserve(group, group::shallowCopy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a FileSet, if it has not been preserved yet. Called before the FileSet is changed.
+     * </p>
+     *
+     * @param fileSet
+     **************************************************************************/
+    void preserve(FileSet fileSet) {
+        preserve(fileSet, fileSet::shallowCopy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a ContentFile, if it has not been preserved yet. Called before the ContentFile is changed.
+     * </p>
+     *
+     * @param cf
+     **************************************************************************/
+    void preserve(ContentFile cf) {
+        preserve(cf, cf::shallowCopy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of a VirtualFileGroup, if it has not been preserved yet. Called before the VirtualFileGroup is changed.
+     * </p>
+     *
+     * @param group
+     **************************************************************************/
+    void preserve(VirtualFileGroup group) {
+        preserve(group, group::shallowCopy);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the state of an AmdSec, if it has not been preserved yet. Called before the AmdSec is changed.
+     * </p>
+     *
+     * @param amdSec
+     **************************************************************************/
+    void preserve(AmdSec amdSec) {
+        preserve(amdSec, amdSec::shallowCopy);
+    }
+
+    /***************************************************************************
+     * @param original
+     * @param state creates the preserved state of the original
+     **************************************************************************/
+    private synchronized void preserve(Object original, Supplier<Object> state) {
+        if (!this.released && !this.states.containsKey(original)) {
+            this.states.put(original, state.get());
+        }
+    }
+
+    /***************************************************************************
+     * @return the number of objects preserved after the creation of the snapshot
+     **************************************************************************/
+    synchronized int getPreservedCount() {
+        if (this.released) {
+            return 0;
+        }
+        // The document itself is preserved on creation.
+        return this.states.size() - 1;
+    }
+
+}
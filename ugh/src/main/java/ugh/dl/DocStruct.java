@@ -23,12 +23,19 @@ package ugh.dl;
  ******************************************************************************/
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -167,6 +174,17 @@ public class DocStruct implements Serializable, HoldingElement {
 
     private List<Corporate> corporates;
 
+    // Index of metadata, persons, corporates and groups by type name; only
+    // used if enabled, built on first use and dropped by the changing methods.
+    private transient boolean metadataIndexed;
+    private transient volatile DocStructMetadataIndex metadataIndex;
+    // Adds the metadata on first access, if the DocStruct was read without it.
+    private transient volatile MetadataLoader metadataLoader;
+    private transient boolean loadingMetadata;
+    // Guards the loader, callers synchronizing on the DocStruct don't block
+    // loading.
+    private transient Object metadataLock = new Object();
+
     private DocStruct parent;
     // All references to other DocStrct instances (containing References
     // objects).
@@ -262,6 +280,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void setType(DocStructType inType) {
 
+        beforeChange();
+
         // Usually we had to check, if the new type is allowed. Search for
         // parent and see if the parent allows this type.
         this.type = inType;
@@ -317,6 +337,7 @@ public class DocStruct implements Serializable, HoldingElement {
      * @param in
      **************************************************************************/
     public void setReferenceToAnchor(String in) {
+        beforeChange();
         this.referenceToAnchor = in;
     }
 
@@ -407,6 +428,7 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     @Override
     public void setIdentifier(String in) {
+        beforeChange();
         this.identifier = in;
     }
 
@@ -427,6 +449,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public List<Metadata> getAllIdentifierMetadata() {
 
+        loadMetadata();
+
         List<Metadata> result = new LinkedList<>();
 
         if (this.allMetadata == null) {
@@ -459,6 +483,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public DocStruct copy(boolean cpmetadata, boolean recursive) {
 
+        loadMetadata();
+
         DocStruct newStruct = null;
         try {
             newStruct = new DocStruct(this.getType());
@@ -731,6 +757,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void setParent(DocStruct inParent) {
 
+        beforeChange();
+
         if (inParent != null) {
             // Remove this DocStruct instance fromt he child's list.
             inParent.removeChild(this);
@@ -760,6 +788,7 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     @Override
     public List<MetadataGroup> getAllMetadataGroups() {
+        loadMetadata();
         if (this.allMetadataGroups == null || this.allMetadataGroups.isEmpty()) {
             return null; //NOSONAR
         }
@@ -781,7 +810,10 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     @Override
     public void setAllMetadataGroups(List<MetadataGroup> inList) {
+        loadMetadata();
+        beforeChange();
         this.allMetadataGroups = inList;
+        this.metadataIndex = null;
     }
 
     /***************************************************************************
@@ -793,6 +825,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public List<Metadata> getAllMetadata() {
 
+        loadMetadata();
+
         if (this.allMetadata == null || this.allMetadata.isEmpty()) {
             return null; //NOSONAR
         }
@@ -809,15 +843,24 @@ public class DocStruct implements Serializable, HoldingElement {
      * @param inList List containing Metadata objects.
      **************************************************************************/
     public void setAllMetadata(List<Metadata> inList) {
+        loadMetadata();
+        beforeChange();
         this.allMetadata = inList;
+        this.metadataIndex = null;
     }
 
     public void setAllPersons(List<Person> personList) {
+        loadMetadata();
+        beforeChange();
         this.persons = personList;
+        this.metadataIndex = null;
     }
 
     public void setAllCorporates(List<Corporate> corporateList) {
+        loadMetadata();
+        beforeChange();
         corporates = corporateList;
+        this.metadataIndex = null;
     }
 
     /***************************************************************************
@@ -883,6 +926,11 @@ public class DocStruct implements Serializable, HoldingElement {
         if (inMDT == null) {
             return false;
         }
+        if (this.metadataIndexed && inMDT.getName() != null) {
+            String name = inMDT.getName();
+            return !lookupMetadataIndex(index -> index.getMetadata(name)).isEmpty() || !lookupMetadataIndex(index -> index.getPersons(name)).isEmpty()
+                    || !lookupMetadataIndex(index -> index.getCorporates(name)).isEmpty();
+        }
         // Check metadata.
         List<Metadata> allMDs = this.getAllMetadata();
         if (allMDs != null) {
@@ -940,6 +988,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void addContentFile(ContentFile theFile) {
 
+        beforeChange();
+
         // Create a new FileSet if there is none available.
         FileSet fs;
         if (this.digdoc.getFileSet() == null) {
@@ -982,6 +1032,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void addContentFile(ContentFile inCF, ContentFileArea inArea) {
 
+        beforeChange();
+
         if (this.contentFileReferences == null) {
             // Re-added this line, maybe was it's deletion an error?
             this.contentFileReferences = new ArrayList<>();
@@ -1018,6 +1070,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public boolean removeContentFile(ContentFile theContentFile) throws ContentFileNotLinkedException {
 
+        beforeChange();
+
         boolean removed = false;
 
         if (this.contentFileReferences == null) {
@@ -1060,6 +1114,9 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public Reference addReferenceTo(DocStruct inDocStruct, String theType) {
 
+        beforeChange();
+        inDocStruct.beforeChange();
+
         Reference ref = new Reference();
         if (this.databaseid == 0) {
             ref.setSource(this);
@@ -1090,6 +1147,9 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public Reference addReferenceFrom(DocStruct inDocStruct, String theType) {
 
+        beforeChange();
+        inDocStruct.beforeChange();
+
         Reference ref = new Reference();
         if (this.databaseid == 0) {
             ref.setTarget(this);
@@ -1119,6 +1179,11 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public boolean removeReferenceTo(DocStruct inStruct) {
 
+        beforeChange();
+        if (inStruct != null) {
+            inStruct.beforeChange();
+        }
+
         List<Reference> ll = new ArrayList<>(this.docStructRefsTo);
 
         for (Reference ref : ll) {
@@ -1149,6 +1214,11 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public boolean removeReferenceFrom(DocStruct inStruct) {
 
+        beforeChange();
+        if (inStruct != null) {
+            inStruct.beforeChange();
+        }
+
         List<Reference> ll = new ArrayList<>(this.docStructRefsFrom);
 
         for (Reference ref : ll) {
@@ -1157,7 +1227,7 @@ public class DocStruct implements Serializable, HoldingElement {
                 this.docStructRefsFrom.remove(ref);
                 DocStruct targetStruct = ref.getTarget();
                 List<Reference> ll2 = targetStruct.docStructRefsTo;
-                // Remove the reference from source.
+                // Remove the reference from this.
                 if (ll2 != null) {
                     ll2.remove(ref);
                 }
@@ -1193,6 +1263,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public boolean addMetadataGroup(MetadataGroup theMetadataGroup) throws MetadataTypeNotAllowedException, DocStructHasNoTypeException {
 
+        loadMetadata();
+        beforeChange();
+
         MetadataGroupType inMdType = theMetadataGroup.getType();
         String inMdName = inMdType.getName();
         // Integer, number of metadata allowed for this metadatatype.
@@ -1266,6 +1339,7 @@ public class DocStruct implements Serializable, HoldingElement {
                 this.allMetadataGroups = new LinkedList<>();
             }
             this.allMetadataGroups.add(theMetadataGroup);
+            indexAdded(this.allMetadataGroups, theMetadataGroup);
         } else {
             log.debug("Not allowed to add metadata '" + inMdName + "'");
             MetadataTypeNotAllowedException mtnae = new MetadataTypeNotAllowedException(null, this.getType());
@@ -1294,6 +1368,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public boolean removeMetadataGroup(MetadataGroup theMd, boolean force) {
 
+        loadMetadata();
+        beforeChange();
+
         MetadataGroupType inMdType;
         String maxnumbersallowed;
         int typesavailable;
@@ -1316,6 +1393,7 @@ public class DocStruct implements Serializable, HoldingElement {
             return false;
         }
 
+        theMd.beforeChange();
         theMd.parent = null;
 
         if (this.removedMetadataGroups == null) {
@@ -1323,7 +1401,9 @@ public class DocStruct implements Serializable, HoldingElement {
         }
 
         this.removedMetadataGroups.add(theMd);
-        this.allMetadataGroups.remove(theMd);
+        if (this.allMetadataGroups.remove(theMd)) {
+            indexRemoved(this.allMetadataGroups, theMd);
+        }
 
         return true;
     }
@@ -1366,6 +1446,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public void changeMetadataGroup(MetadataGroup theOldMd, MetadataGroup theNewMd) throws MetadataTypeNotAllowedException {
 
+        loadMetadata();
+        beforeChange();
+
         MetadataGroupType oldMdt;
         MetadataGroupType newMdt;
         String oldName;
@@ -1402,6 +1485,7 @@ public class DocStruct implements Serializable, HoldingElement {
 
         this.allMetadataGroups.remove(theOldMd);
         this.allMetadataGroups.add(counter, theNewMd);
+        this.metadataIndex = null;
 
     }
 
@@ -1419,8 +1503,15 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public List<MetadataGroup> getAllMetadataGroupsByType(MetadataGroupType inType) {
 
+        loadMetadata();
+
         List<MetadataGroup> resultList = new LinkedList<>();
 
+        if (this.metadataIndexed && inType != null && inType.getName() != null) {
+            resultList.addAll(lookupMetadataIndex(index -> index.getMetadataGroups(inType.getName())));
+            return resultList;
+        }
+
         // Check all metadata.
         if (inType != null && this.allMetadataGroups != null) {
             for (MetadataGroup md : this.allMetadataGroups) {
@@ -1457,6 +1548,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public void addMetadata(Metadata theMetadata) throws MetadataTypeNotAllowedException, DocStructHasNoTypeException {
 
+        loadMetadata();
+        beforeChange();
+
         PrefsType inMdType = theMetadata.getType();
         String inMdName = inMdType.getName();
         // Integer, number of metadata allowed for this metadatatype.
@@ -1529,6 +1623,7 @@ public class DocStruct implements Serializable, HoldingElement {
                 this.allMetadata = new LinkedList<>();
             }
             this.allMetadata.add(theMetadata);
+            indexAdded(this.allMetadata, theMetadata);
         } else {
             log.debug("Not allowed to add metadata '" + inMdName + "'");
             MetadataTypeNotAllowedException mtnae = new MetadataTypeNotAllowedException(inMdType, this.getType());
@@ -1555,6 +1650,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public void removeMetadata(Metadata theMd, boolean force) {
 
+        loadMetadata();
+        beforeChange();
+
         PrefsType inMdType;
         String maxnumbersallowed;
         int typesavailable;
@@ -1577,6 +1675,7 @@ public class DocStruct implements Serializable, HoldingElement {
             return;
         }
 
+        theMd.beforeChange();
         theMd.parent = null;
 
         if (this.removedMetadata == null) {
@@ -1584,7 +1683,9 @@ public class DocStruct implements Serializable, HoldingElement {
         }
 
         this.removedMetadata.add(theMd);
-        this.allMetadata.remove(theMd);
+        if (this.allMetadata.remove(theMd)) {
+            indexRemoved(this.allMetadata, theMd);
+        }
     }
 
     /***************************************************************************
@@ -1623,6 +1724,9 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public boolean changeMetadata(Metadata theOldMd, Metadata theNewMd) {
 
+        loadMetadata();
+        beforeChange();
+
         PrefsType oldMdt;
         PrefsType newMdt;
         String oldName;
@@ -1659,6 +1763,7 @@ public class DocStruct implements Serializable, HoldingElement {
 
         this.allMetadata.remove(theOldMd);
         this.allMetadata.add(counter, theNewMd);
+        this.metadataIndex = null;
 
         return true;
     }
@@ -1676,8 +1781,19 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public List<? extends Metadata> getAllMetadataByType(PrefsType inType) { //NOSONAR
 
+        loadMetadata();
+
         List<Metadata> resultList = new LinkedList<>();
 
+        if (this.metadataIndexed && inType != null && inType.getName() != null) {
+            String name = inType.getName();
+            // Metadata first, then persons and corporates.
+            resultList.addAll(lookupMetadataIndex(index -> index.getMetadata(name)));
+            resultList.addAll(lookupMetadataIndex(index -> index.getPersons(name)));
+            resultList.addAll(lookupMetadataIndex(index -> index.getCorporates(name)));
+            return resultList;
+        }
+
         // Check all metadata.
         if (inType != null && this.allMetadata != null) {
             for (Metadata md : this.allMetadata) {
@@ -1715,14 +1831,18 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public List<Person> getAllPersonsByType(PrefsType inType) {
 
+        loadMetadata();
+
         List<Person> resultList = new LinkedList<>();
 
         if (inType == null) {
             return null; //NOSONAR
         }
 
-        // Check all persons.
-        if (this.persons != null) {
+        if (this.metadataIndexed && inType.getName() != null) {
+            resultList.addAll(lookupMetadataIndex(index -> index.getPersons(inType.getName())));
+        } else if (this.persons != null) {
+            // Check all persons.
             for (Person per : this.persons) {
                 if (per.getType() != null && per.getType().getName().equals(inType.getName())) {
                     resultList.add(per);
@@ -1740,14 +1860,18 @@ public class DocStruct implements Serializable, HoldingElement {
 
     public List<Corporate> getAllCorporatesByType(PrefsType inType) {
 
+        loadMetadata();
+
         List<Corporate> resultList = new LinkedList<>();
 
         if (inType == null) {
             return null; //NOSONAR
         }
 
-        // Check all persons.
-        if (corporates != null) {
+        if (this.metadataIndexed && inType.getName() != null) {
+            resultList.addAll(lookupMetadataIndex(index -> index.getCorporates(inType.getName())));
+        } else if (corporates != null) {
+            // Check all persons.
             for (Corporate corp : corporates) {
                 if (corp.getType() != null && corp.getType().getName().equals(inType.getName())) {
                     resultList.add(corp);
@@ -1854,6 +1978,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     private boolean hasMetadataGroup(String metadataGroupTypeName) {
 
+        loadMetadata();
+
         if (this.allMetadataGroups != null) {
             for (MetadataGroup md : this.allMetadataGroups) {
                 MetadataGroupType mdt = md.getType();
@@ -1930,6 +2056,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     private boolean hasMetadata(String metadataTypeName) {
 
+        loadMetadata();
+
         if (this.allMetadata != null) {
             for (Metadata md : this.allMetadata) {
                 PrefsType mdt = md.getType();
@@ -1986,6 +2114,12 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public int countMDofthisType(String inTypeName) {
 
+        if (this.metadataIndexed && inTypeName != null) {
+            return lookupMetadataIndex(index -> index.count(inTypeName));
+        }
+
+        loadMetadata();
+
         PrefsType testtype;
         int counter = 0;
 
@@ -2032,6 +2166,96 @@ public class DocStruct implements Serializable, HoldingElement {
         return counter;
     }
 
+    /***************************************************************************
+     * <p>
+     * Enables or disables the index of the metadata, persons, corporates and metadata groups of this DocStruct by the name of their type. The index
+     * speeds up the lookups by type, and so adding metadata, for DocStructs with many metadata. It is built on the first lookup, kept up to date
+     * by the methods adding and removing metadata, and dropped by the other changing methods of this DocStruct.
+     * </p>
+     * <p>
+     * The index does not notice changes made directly to the lists returned by the getters or set with the <code>setAll</code> methods; callers
+     * doing so must enable the index again afterwards, which drops it. Without the index, the lookups scan the lists.
+     * </p>
+     * 
+     * @param indexed true to use the index
+     **************************************************************************/
+    @JsonIgnore
+    public void setMetadataIndexed(boolean indexed) {
+        this.metadataIndexed = indexed;
+        this.metadataIndex = null;
+    }
+
+    /***************************************************************************
+     * @return true, if the lookups by type use the index, see {@link #setMetadataIndexed(boolean)}
+     **************************************************************************/
+    @JsonIgnore
+    public boolean isMetadataIndexed() {
+        return this.metadataIndexed;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Runs a query against the metadata index, which is built first, if there is none. If a type has been renamed since the index was built, the
+     * query returns null, and the index is rebuilt and the query repeated.
+     * </p>
+     * 
+     * @param query returns null, if the index is outdated
+     * @return
+     **************************************************************************/
+    private <T> T lookupMetadataIndex(Function<DocStructMetadataIndex, T> query) {
+
+        loadMetadata();
+
+        DocStructMetadataIndex index = this.metadataIndex;
+        T result = (index == null ? null : query.apply(index));
+        if (result == null) {
+            index = new DocStructMetadataIndex(this.allMetadata, this.persons, this.corporates, this.allMetadataGroups);
+            this.metadataIndex = index;
+            result = query.apply(index);
+        }
+
+        return result;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Drops the metadata index, called by metadata and metadata groups of this DocStruct, if their type was replaced.
+     * </p>
+     **************************************************************************/
+    void metadataTypeChanged() {
+        this.metadataIndex = null;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Updates the metadata index after an element was appended to one of the lists.
+     * </p>
+     * 
+     * @param list
+     * @param element
+     **************************************************************************/
+    private void indexAdded(List<?> list, Object element) {
+        DocStructMetadataIndex index = this.metadataIndex;
+        if (index != null && !index.added(list, element)) {
+            this.metadataIndex = null;
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Updates the metadata index after an element was removed from one of the lists.
+     * </p>
+     * 
+     * @param list
+     * @param element
+     **************************************************************************/
+    private void indexRemoved(List<?> list, Object element) {
+        DocStructMetadataIndex index = this.metadataIndex;
+        if (index != null && !index.removed(list, element)) {
+            this.metadataIndex = null;
+        }
+    }
+
     /***************************************************************************
      * <p>
      * Get all metadatatypes, which can be added to a DocStruct. This method considers already added metadata (and persons!); e.g. metadata types
@@ -2186,6 +2410,9 @@ public class DocStruct implements Serializable, HoldingElement {
             return false;
         }
 
+        beforeChange();
+        inchild.beforeChange();
+
         DocStructType childtype;
         boolean allowed = false;
 
@@ -2231,6 +2458,11 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public boolean removeChild(DocStruct inchild) {
 
+        beforeChange();
+        if (inchild != null) {
+            inchild.beforeChange();
+        }
+
         if (this.children.remove(inchild)) {
             // Delete reference to parent.
             inchild.setParent(null);
@@ -2262,6 +2494,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public boolean moveChild(DocStruct inchild, int position) {
 
+        beforeChange();
+
         if (position < 0) {
             return false;
         }
@@ -2502,6 +2736,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public void addPerson(Person in) throws MetadataTypeNotAllowedException, IncompletePersonObjectException {
 
+        loadMetadata();
+        beforeChange();
+
         // Max number of persons (from configuration).
         String maxnumberallowed = null;
         // Number of persons currently available.
@@ -2557,6 +2794,7 @@ public class DocStruct implements Serializable, HoldingElement {
                 this.persons = new LinkedList<>();
             }
             this.persons.add(in);
+            indexAdded(this.persons, in);
 
             return;
         }
@@ -2569,6 +2807,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public void addCorporate(Corporate corp) throws MetadataTypeNotAllowedException {
 
+        loadMetadata();
+        beforeChange();
+
         // Max number of persons (from configuration).
         String maxnumberallowed = null;
         // Number of persons currently available.
@@ -2624,6 +2865,7 @@ public class DocStruct implements Serializable, HoldingElement {
                 this.corporates = new LinkedList<>();
             }
             this.corporates.add(corp);
+            indexAdded(this.corporates, corp);
 
         } else {
 
@@ -2646,6 +2888,9 @@ public class DocStruct implements Serializable, HoldingElement {
     @Override
     public void removePerson(Person in, boolean force) throws IncompletePersonObjectException {
 
+        loadMetadata();
+        beforeChange();
+
         if (this.persons == null) {
             return;
         }
@@ -2672,12 +2917,17 @@ public class DocStruct implements Serializable, HoldingElement {
             return;
         }
 
-        this.persons.remove(in);
+        if (this.persons.remove(in)) {
+            indexRemoved(this.persons, in);
+        }
     }
 
     @Override
     public void removeCorporate(Corporate in, boolean force) throws IncompletePersonObjectException {
 
+        loadMetadata();
+        beforeChange();
+
         if (this.corporates == null) {
             return;
         }
@@ -2704,7 +2954,9 @@ public class DocStruct implements Serializable, HoldingElement {
             return;
         }
 
-        this.corporates.remove(in);
+        if (this.corporates.remove(in)) {
+            indexRemoved(this.corporates, in);
+        }
     }
 
     /***************************************************************************
@@ -2729,6 +2981,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public List<Person> getAllPersons() {
 
+        loadMetadata();
+
         if (this.persons == null || this.persons.isEmpty()) {
             return null; //NOSONAR
         }
@@ -2737,6 +2991,7 @@ public class DocStruct implements Serializable, HoldingElement {
     }
 
     public List<Corporate> getAllCorporates() {
+        loadMetadata();
         if (this.corporates == null || this.corporates.isEmpty()) {
             return null; //NOSONAR
         }
@@ -2755,6 +3010,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void setLogical(boolean logical) {
 
+        beforeChange();
+
         this.logical = logical;
 
         List<DocStruct> childList = this.getAllChildren();
@@ -2792,6 +3049,8 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void setPhysical(boolean physical) {
 
+        beforeChange();
+
         this.physical = physical;
 
         List<DocStruct> childList = this.getAllChildren();
@@ -2952,6 +3211,9 @@ public class DocStruct implements Serializable, HoldingElement {
      **************************************************************************/
     public void deleteUnusedPersonsAndMetadata() {
 
+        beforeChange();
+        this.metadataIndex = null;
+
         // Handle Persons first: Person objects are available.
         if (this.getAllPersons() != null) {
             List<Person> personlist = this.getAllPersons();
@@ -3035,26 +3297,14 @@ public class DocStruct implements Serializable, HoldingElement {
      * 
      * @param thePrefs
      **************************************************************************/
-    public synchronized void sortMetadata(Prefs thePrefs) {
-
-        List<Metadata> newMetadata = new LinkedList<>();
-        List<Person> newPersons = new LinkedList<>();
-        List<Metadata> oldMetadata = new LinkedList<>();
-        List<Person> oldPersons = new LinkedList<>();
+    public void sortMetadata(Prefs thePrefs) {
 
-        List<Corporate> oldCorporates = new LinkedList<>();
-        List<Corporate> newCorporates = new LinkedList<>();
-
-        if (this.allMetadata != null) {
-            oldMetadata = new LinkedList<>(this.allMetadata);
-        }
-        if (this.persons != null) {
-            oldPersons = new LinkedList<>(this.persons);
+        if (deferUntilMetadataLoaded(ds -> ds.sortMetadata(thePrefs))) {
+            return;
         }
+        loadMetadata();
+        beforeChange();
 
-        if (corporates != null) {
-            oldCorporates = new LinkedList<>(corporates);
-        }
         // Get all MetadataTypes defined in the prefs for this DocStruct.
         DocStructType docStructType = thePrefs.getDocStrctTypeByName(this.getType().getName());
 
@@ -3064,62 +3314,62 @@ public class DocStruct implements Serializable, HoldingElement {
             return;
         }
 
+        // Rank of each type name by its first occurance in the prefs.
         List<MetadataType> prefsMetadataTypeList = docStructType.getAllMetadataTypes();
-
-        // Iterate over all that metadata types.
+        Map<String, Integer> ranks = new HashMap<>();
         for (PrefsType mType : prefsMetadataTypeList) {
+            ranks.putIfAbsent(mType.getName(), ranks.size());
+        }
 
-            // Go through all persons of the current DocStruct.
-            List<Person> op = this.getAllPersons();
-            if (op != null && !op.isEmpty()) {
-                for (Person p : op) {
-                    if (p.getType() != null && mType.getName().equals(p.getType().getName())) {
-                        // Add to the new list and remove from the old, if names
-                        // do match.
-                        newPersons.add(p);
-                        oldPersons.remove(p);
-                    }
-                }
-            }
-            List<Corporate> oc = getAllCorporates();
-            if (oc != null) {
-                for (Corporate p : oc) {
-                    if (p.getType() != null && mType.getName().equals(p.getType().getName())) {
-                        newCorporates.add(p);
-                        oldCorporates.remove(p);
-                    }
-                }
-            }
+        // Re-set the lists.
+        this.allMetadata = sortByRank(this.allMetadata, ranks);
+        this.persons = sortByRank(this.persons, ranks);
+        corporates = sortByRank(corporates, ranks);
+        this.metadataIndex = null;
+    }
 
-            // Go throught all metadata of the curretn DocStruct.
-            List<Metadata> om = this.getAllMetadata();
-            if (om != null && !om.isEmpty()) {
-                for (Metadata m : om) {
-                    if (mType.getName().equals(m.getType().getName())) {
-                        // Add to the new list and remove from the old, if names
-                        // do match.
-                        newMetadata.add(m);
-                        oldMetadata.remove(m);
-                    }
-                }
-            }
+    /***************************************************************************
+     * <p>
+     * Sorts the given metadata by the rank of their type names, stable and in linear time. Metadata of types without a rank are added at the end
+     * in their current order.
+     * </p>
+     * 
+     * @param list
+     * @param ranks
+     * @return a new list, empty if the given list is null
+     **************************************************************************/
+    private static <T extends Metadata> List<T> sortByRank(List<T> list, Map<String, Integer> ranks) {
+
+        List<T> result = new LinkedList<>();
+        if (list == null || list.isEmpty()) {
+            return result;
         }
 
-        // Add left-over types.
-        if (oldPersons != null && !oldPersons.isEmpty()) {
-            newPersons.addAll(oldPersons);
+        List<List<T>> buckets = new ArrayList<>(ranks.size());
+        for (int i = 0; i < ranks.size(); i++) {
+            buckets.add(null);
         }
-        if (oldMetadata != null && !oldMetadata.isEmpty()) {
-            newMetadata.addAll(oldMetadata);
+        List<T> leftOvers = new ArrayList<>();
+        for (T md : list) {
+            Integer rank = (md.getType() == null ? null : ranks.get(md.getType().getName()));
+            if (rank == null) {
+                leftOvers.add(md);
+            } else {
+                if (buckets.get(rank) == null) {
+                    buckets.set(rank, new ArrayList<>());
+                }
+                buckets.get(rank).add(md);
+            }
         }
-        if (oldCorporates != null && !oldCorporates.isEmpty()) {
-            newCorporates.addAll(oldCorporates);
+
+        for (List<T> bucket : buckets) {
+            if (bucket != null) {
+                result.addAll(bucket);
+            }
         }
+        result.addAll(leftOvers);
 
-        // Re-set the lists.
-        this.allMetadata = newMetadata;
-        this.persons = newPersons;
-        corporates = newCorporates;
+        return result;
     }
 
     /***************************************************************************
@@ -3127,7 +3377,13 @@ public class DocStruct implements Serializable, HoldingElement {
      * Sorts the metadata and persons in the current DocStruct alphabetically.
      * </p>
      **************************************************************************/
-    public synchronized void sortMetadataAbcdefg() {
+    public void sortMetadataAbcdefg() {
+
+        if (deferUntilMetadataLoaded(DocStruct::sortMetadataAbcdefg)) {
+            return;
+        }
+        loadMetadata();
+        beforeChange();
 
         // Create empty (sorted) TreeSets and lists.
         TreeSet<Metadata> newMetadata = new TreeSet<>(new MetadataComparator());
@@ -3150,6 +3406,7 @@ public class DocStruct implements Serializable, HoldingElement {
         // Re-set the lists.
         this.allMetadata = metadataList;
         this.persons = personList;
+        this.metadataIndex = null;
 
     }
 
@@ -3212,6 +3469,7 @@ public class DocStruct implements Serializable, HoldingElement {
     }
 
     public void setAmdSec(AmdSec amdSec) {
+        beforeChange();
         this.amdSec = amdSec;
     }
 
@@ -3220,6 +3478,7 @@ public class DocStruct implements Serializable, HoldingElement {
     }
 
     public void addTechMd(Md techMd) {
+        beforeChange();
         if (techMdList == null) {
             techMdList = new ArrayList<>();
         }
@@ -3229,6 +3488,7 @@ public class DocStruct implements Serializable, HoldingElement {
     }
 
     public void setTechMds(List<Md> mds) {
+        beforeChange();
         if (mds != null) {
             this.techMdList = mds;
         }
@@ -3285,6 +3545,7 @@ public class DocStruct implements Serializable, HoldingElement {
      */
 
     public void setDocstructType(String docstructType) {
+        beforeChange();
         this.docstructType = docstructType;
     }
 
@@ -3313,6 +3574,324 @@ public class DocStruct implements Serializable, HoldingElement {
     }
 
     public void setAdmId(String admId) {
+        beforeChange();
         this.admId = admId;
     }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this DocStruct for the DigitalDocumentCopier. Children and metadata are copied directly, references to other DocStructs
+     * and content files are copied after the DocStruct trees.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    DocStruct deepCopy(DigitalDocumentCopier copier) {
+
+        loadMetadata();
+
+        DocStruct copy = new DocStruct();
+        copier.register(this, copy);
+
+        copy.type = this.type;
+        copy.identifier = this.identifier;
+        copy.databaseid = this.databaseid;
+        copy.logical = this.logical;
+        copy.physical = this.physical;
+        copy.referenceToAnchor = this.referenceToAnchor;
+        copy.docstructType = this.docstructType;
+        copy.admId = this.admId;
+        copy.validationErrorPresent = this.validationErrorPresent;
+        copy.validationMessage = this.validationMessage;
+        copy.additionalValue = this.additionalValue;
+        copy.orderLabel = this.orderLabel;
+        copy.link = this.link;
+        copy.metadataIndexed = this.metadataIndexed;
+
+        copy.digdoc = copier.copy(this.digdoc);
+        copy.parent = copier.copy(this.parent);
+        copy.amdSec = copier.copy(this.amdSec);
+        copy.techMdList = copier.shareElements(this.techMdList);
+
+        copy.allMetadata = copier.copyList(this.allMetadata, copier::copy);
+        copy.removedMetadata = copier.copyList(this.removedMetadata, copier::copy);
+        copy.allMetadataGroups = copier.copyList(this.allMetadataGroups, copier::copy);
+        copy.removedMetadataGroups = copier.copyList(this.removedMetadataGroups, copier::copy);
+        copy.persons = copier.copyList(this.persons, copier::copy);
+        copy.corporates = copier.copyList(this.corporates, copier::copy);
+        copy.children = copier.copyList(this.children, copier::copy);
+
+        copier.defer(() -> {
+            copy.docStructRefsTo = copier.copyList(this.docStructRefsTo, copier::copy);
+            copy.docStructRefsFrom = copier.copyList(this.docStructRefsFrom, copier::copy);
+            copy.contentFileReferences = copier.copyList(this.contentFileReferences, copier::copy);
+        });
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this DocStruct with copies of its lists, the list elements are not copied; used to preserve the state for a snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    DocStruct shallowCopy() {
+
+        loadMetadata();
+
+        DocStruct state = new DocStruct();
+
+        state.type = this.type;
+        state.identifier = this.identifier;
+        state.databaseid = this.databaseid;
+        state.logical = this.logical;
+        state.physical = this.physical;
+        state.referenceToAnchor = this.referenceToAnchor;
+        state.docstructType = this.docstructType;
+        state.admId = this.admId;
+        state.validationErrorPresent = this.validationErrorPresent;
+        state.validationMessage = this.validationMessage;
+        state.additionalValue = this.additionalValue;
+        state.orderLabel = this.orderLabel;
+        state.link = this.link;
+        state.metadataIndexed = this.metadataIndexed;
+        state.digdoc = this.digdoc;
+        state.parent = this.parent;
+        state.amdSec = this.amdSec;
+        state.techMdList = DigitalDocumentCopier.copyOf(this.techMdList);
+        state.allMetadata = DigitalDocumentCopier.copyOf(this.allMetadata);
+        state.removedMetadata = DigitalDocumentCopier.copyOf(this.removedMetadata);
+        state.allMetadataGroups = DigitalDocumentCopier.copyOf(this.allMetadataGroups);
+        state.removedMetadataGroups = DigitalDocumentCopier.copyOf(this.removedMetadataGroups);
+        state.persons = DigitalDocumentCopier.copyOf(this.persons);
+        state.corporates = DigitalDocumentCopier.copyOf(this.corporates);
+        state.children = DigitalDocumentCopier.copyOf(this.children);
+        state.docStructRefsTo = DigitalDocumentCopier.copyOf(this.docStructRefsTo);
+        state.docStructRefsFrom = DigitalDocumentCopier.copyOf(this.docStructRefsFrom);
+        state.contentFileReferences = DigitalDocumentCopier.copyOf(this.contentFileReferences);
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this DocStruct to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(DocStruct state) {
+
+        this.type = state.type;
+        this.identifier = state.identifier;
+        this.databaseid = state.databaseid;
+        this.logical = state.logical;
+        this.physical = state.physical;
+        this.referenceToAnchor = state.referenceToAnchor;
+        this.docstructType = state.docstructType;
+        this.admId = state.admId;
+        this.validationErrorPresent = state.validationErrorPresent;
+        this.validationMessage = state.validationMessage;
+        this.additionalValue = state.additionalValue;
+        this.orderLabel = state.orderLabel;
+        this.link = state.link;
+        this.metadataIndexed = state.metadataIndexed;
+        this.digdoc = state.digdoc;
+        this.parent = state.parent;
+        this.amdSec = state.amdSec;
+        this.techMdList = state.techMdList;
+        this.allMetadata = state.allMetadata;
+        this.removedMetadata = state.removedMetadata;
+        this.allMetadataGroups = state.allMetadataGroups;
+        this.removedMetadataGroups = state.removedMetadataGroups;
+        this.persons = state.persons;
+        this.corporates = state.corporates;
+        this.children = state.children;
+        this.docStructRefsTo = state.docStructRefsTo;
+        this.docStructRefsFrom = state.docStructRefsFrom;
+        this.contentFileReferences = state.contentFileReferences;
+        this.metadataIndex = null;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this DocStruct in the open snapshots of its DigitalDocument. Must be called by all changing methods before the
+     * change is made.
+     * </p>
+     **************************************************************************/
+    void beforeChange() {
+        if (this.digdoc != null && !this.loadingMetadata) {
+            this.digdoc.preserve(this);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of a Metadata, Person or Corporate of this DocStruct, or of one of its groups, in the open snapshots of its
+     * DigitalDocument.
+     * </p>
+     * 
+     * @param md
+     **************************************************************************/
+    void beforeChange(Metadata md) {
+        if (this.digdoc != null && !this.loadingMetadata) {
+            this.digdoc.preserve(md);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of a MetadataGroup of this DocStruct, or of one of its groups, in the open snapshots of its DigitalDocument.
+     * </p>
+     * 
+     * @param group
+     **************************************************************************/
+    void beforeChange(MetadataGroup group) {
+        if (this.digdoc != null && !this.loadingMetadata) {
+            this.digdoc.preserve(group);
+        }
+    }
+
+    /***************************************************************************
+     * @param element the parent of a Metadata or MetadataGroup
+     * @return the DocStruct the element belongs to, directly or through its groups; null, if there is none
+     **************************************************************************/
+    static DocStruct ownerOf(HoldingElement element) {
+        HoldingElement current = element;
+        while (current instanceof MetadataGroup group) {
+            current = group.getParent();
+        }
+        return (current instanceof DocStruct ds ? ds : null);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets a loader, which adds the metadata, persons, corporates and metadata groups of this DocStruct on first access. File formats use it to read
+     * the structure of a document first, and the metadata of a DocStruct only when it is needed. Every method accessing the metadata, including the
+     * changing and copying methods, loads it first. Loading the metadata is not a change, it is not preserved in snapshots. Serializing a
+     * DocStruct loads its metadata, too.
+     * </p>
+     * 
+     * @param loader the loader, or null, if the metadata of this DocStruct is complete
+     **************************************************************************/
+    @JsonIgnore
+    public void setMetadataLoader(MetadataLoader loader) {
+        this.metadataLoader = loader;
+    }
+
+    /***************************************************************************
+     * @return true, if the metadata of this DocStruct is complete, false, if it is loaded on first access
+     **************************************************************************/
+    @JsonIgnore
+    public boolean isMetadataLoaded() {
+        return this.metadataLoader == null;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Loads the metadata of this DocStruct, if it has not been loaded yet. Other threads accessing the metadata wait until it is loaded.
+     * </p>
+     * 
+     * @throws IllegalStateException if the metadata can't be loaded
+     **************************************************************************/
+    public void loadMetadata() {
+
+        if (this.metadataLoader == null) {
+            return;
+        }
+
+        synchronized (this.metadataLock) {
+            MetadataLoader loader = this.metadataLoader;
+            // The loader adds the metadata with the methods of this class,
+            // which call this method again.
+            if (loader == null || this.loadingMetadata) {
+                return;
+            }
+            this.loadingMetadata = true;
+            try {
+                loader.loadMetadata(this);
+            } catch (UGHException e) {
+                String message = "Can't load the metadata of DocStruct '" + this.identifier + "'";
+                log.error(message, e);
+                throw new IllegalStateException(message, e);
+            } finally {
+                this.metadataLoader = null;
+                this.loadingMetadata = false;
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Loads the metadata before this DocStruct is serialized, as the loader is not serialized.
+     * </p>
+     * 
+     * @param out
+     * @throws IOException if the metadata can't be loaded
+     **************************************************************************/
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        try {
+            loadMetadata();
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        out.defaultWriteObject();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Creates the lock of the metadata loader, which is not serialized.
+     * </p>
+     * 
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     **************************************************************************/
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.metadataLock = new Object();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Runs a step on the metadata after it is loaded, if it has not been loaded yet. Used for sorting, so sorting a whole document does not load
+     * the metadata of all DocStructs.
+     * </p>
+     * 
+     * @param step
+     * @return true, if the step is deferred, false, if the metadata is loaded and the step must be run now
+     **************************************************************************/
+    private boolean deferUntilMetadataLoaded(Consumer<DocStruct> step) {
+
+        synchronized (this.metadataLock) {
+            MetadataLoader loader = this.metadataLoader;
+            if (loader == null || this.loadingMetadata) {
+                return false;
+            }
+            this.metadataLoader = ds -> {
+                loader.loadMetadata(ds);
+                step.accept(ds);
+            };
+        }
+
+        return true;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Loads the metadata of a DocStruct, see {@link DocStruct#setMetadataLoader(MetadataLoader)}.
+     * </p>
+     **************************************************************************/
+    @FunctionalInterface
+    public interface MetadataLoader {
+
+        /***************************************************************************
+         * @param ds the DocStruct, to which the metadata is added
+         * @throws UGHException
+         **************************************************************************/
+        void loadMetadata(DocStruct ds) throws UGHException;
+    }
 }
@@ -0,0 +1,227 @@
+package ugh.dl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/*******************************************************************************
+ * <p>
+ * Index of the metadata, persons, corporates and metadata groups of a {@link DocStruct} by the name of their type. Every type has a bucket with
+ * the elements in list order, so the lookups by type and the counting do not need to scan the lists of the DocStruct.
+ * </p>
+ * <p>
+ * The index is only used, if it is enabled for the DocStruct, see {@link DocStruct#setMetadataIndexed(boolean)}. The DocStruct keeps it up to
+ * date when adding and removing elements, all other changing methods of the DocStruct drop the index, and it is rebuilt on the next lookup.
+ * Elements tell their parent DocStruct, if their type is replaced, see {@link Metadata#setType(MetadataType)}. Every bucket knows the distinct
+ * types of its elements, usually one, so a type renamed after indexing is detected during the lookup, which then returns null, and the index
+ * must be rebuilt.
+ * </p>
+ ******************************************************************************/
+class DocStructMetadataIndex {
+
+    private final Buckets<Metadata> metadata;
+    private final Buckets<Person> persons;
+    private final Buckets<Corporate> corporates;
+    private final Buckets<MetadataGroup> groups;
+
+    /***************************************************************************
+     * @param allMetadata
+     * @param persons
+     * @param corporates
+     * @param allMetadataGroups
+     **************************************************************************/
+    DocStructMetadataIndex(List<Metadata> allMetadata, List<Person> persons, List<Corporate> corporates, List<MetadataGroup> allMetadataGroups) {
+        this.metadata = new Buckets<>(allMetadata, Metadata::getType);
+        this.persons = new Buckets<>(persons, Metadata::getType);
+        this.corporates = new Buckets<>(corporates, Metadata::getType);
+        this.groups = new Buckets<>(allMetadataGroups, MetadataGroup::getType);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the number of metadata, metadata groups, persons and corporates of the given type.
+     * </p>
+     *
+     * @param typeName
+     * @return the number; null, if the index is outdated
+     **************************************************************************/
+    Integer count(String typeName) {
+
+        List<Metadata> md = this.metadata.get(typeName);
+        List<MetadataGroup> mg = this.groups.get(typeName);
+        List<Person> per = this.persons.get(typeName);
+        List<Corporate> corp = this.corporates.get(typeName);
+        if (md == null || mg == null || per == null || corp == null) {
+            return null;
+        }
+
+        return md.size() + mg.size() + per.size() + corp.size();
+    }
+
+    /***************************************************************************
+     * @param typeName
+     * @return the metadata of the given type, unmodifiable; null, if the index is outdated
+     **************************************************************************/
+    List<Metadata> getMetadata(String typeName) {
+        return this.metadata.get(typeName);
+    }
+
+    /***************************************************************************
+     * @param typeName
+     * @return the persons of the given type, unmodifiable; null, if the index is outdated
+     **************************************************************************/
+    List<Person> getPersons(String typeName) {
+        return this.persons.get(typeName);
+    }
+
+    /***************************************************************************
+     * @param typeName
+     * @return the corporates of the given type, unmodifiable; null, if the index is outdated
+     **************************************************************************/
+    List<Corporate> getCorporates(String typeName) {
+        return this.corporates.get(typeName);
+    }
+
+    /***************************************************************************
+     * @param typeName
+     * @return the metadata groups of the given type, unmodifiable; null, if the index is outdated
+     **************************************************************************/
+    List<MetadataGroup> getMetadataGroups(String typeName) {
+        return this.groups.get(typeName);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Updates the index after an element was appended to one of the lists.
+     * </p>
+     *
+     * @param list the list of the DocStruct after appending
+     * @param element
+     * @return false, if the index does not know the list and must be dropped
+     **************************************************************************/
+    boolean added(List<?> list, Object element) {
+        Buckets<?> buckets = getBuckets(list);
+        return buckets != null && buckets.added(element);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Updates the index after an element was removed from one of the lists with List.remove(Object).
+     * </p>
+     *
+     * @param list the list of the DocStruct after removing
+     * @param element
+     * @return false, if the index does not know the list or the element and must be dropped
+     **************************************************************************/
+    boolean removed(List<?> list, Object element) {
+        Buckets<?> buckets = getBuckets(list);
+        return buckets != null && buckets.removed(element);
+    }
+
+    /***************************************************************************
+     * @param list
+     * @return the buckets indexing the given list, or null
+     **************************************************************************/
+    private Buckets<?> getBuckets(List<?> list) {
+        if (list == null) {
+            return null;
+        } else if (list == this.metadata.source) {
+            return this.metadata;
+        } else if (list == this.persons.source) {
+            return this.persons;
+        } else if (list == this.corporates.source) {
+            return this.corporates;
+        } else if (list == this.groups.source) {
+            return this.groups;
+        }
+        return null;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Buckets for one list of the DocStruct.
+     * </p>
+     **************************************************************************/
+    private static class Buckets<T> {
+
+        private final List<T> source;
+        private final Function<T, PrefsType> typeOf;
+        private final Map<String, Bucket<T>> byType = new HashMap<>();
+
+        Buckets(List<T> source, Function<T, PrefsType> typeOf) {
+
+            this.source = source;
+            this.typeOf = typeOf;
+            if (source != null) {
+                for (T element : source) {
+                    add(element);
+                }
+            }
+        }
+
+        List<T> get(String name) {
+
+            Bucket<T> bucket = this.byType.get(name);
+            if (bucket == null) {
+                return Collections.emptyList();
+            }
+            for (PrefsType type : bucket.types) {
+                if (!name.equals(type.getName())) {
+                    // A type was renamed after indexing.
+                    return null;
+                }
+            }
+
+            return Collections.unmodifiableList(bucket.elements);
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean added(Object element) {
+            add((T) element);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean removed(Object element) {
+            if (element == null) {
+                return false;
+            }
+            // Equal elements have a type of the same name, so the first equal
+            // element in the bucket is the one removed from the list.
+            PrefsType type = this.typeOf.apply((T) element);
+            Bucket<T> bucket = (type == null ? null : this.byType.get(type.getName()));
+            return bucket != null && bucket.elements.remove(element);
+        }
+
+        private void add(T element) {
+            PrefsType type = this.typeOf.apply(element);
+            if (type != null && type.getName() != null) {
+                this.byType.computeIfAbsent(type.getName(), k -> new Bucket<>()).add(element, type);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * The elements of one type name, and their distinct types.
+     * </p>
+     **************************************************************************/
+    private static class Bucket<T> {
+
+        private final List<T> elements = new ArrayList<>();
+        // Removed elements don't remove their type, a stale type only causes
+        // a rebuild, if it is renamed.
+        private final Set<PrefsType> types = Collections.newSetFromMap(new IdentityHashMap<>(1));
+
+        void add(T element, PrefsType type) {
+            this.elements.add(element);
+            this.types.add(type);
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ package ugh.dl;
  ******************************************************************************/
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -90,6 +91,9 @@ public class DocStructType implements Serializable, PrefsType {
 
     private transient List<MetadataGroupForDocStructType> allMetadataGroups;
 
+    // Set for the types of shared Prefs instances, which must not be changed.
+    private transient boolean readOnly = false;
+
     /***************************************************************************
      * <p>
      * List does not containg DocStructType objects but just the name (so just Strings).
@@ -106,6 +110,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setName(String in) {
+        checkWritable();
         this.name = in;
     }
 
@@ -131,6 +136,7 @@ public class DocStructType implements Serializable, PrefsType {
      **************************************************************************/
     @Deprecated
     public void setTopMost(boolean in) {
+        checkWritable();
         this.topmost = in;
     }
 
@@ -145,6 +151,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setHasFileSet(boolean in) {
+        checkWritable();
         this.hasfileset = in;
     }
 
@@ -159,6 +166,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param hasfileset the hasfileset to set
      **************************************************************************/
     public void setHasfileset(boolean hasfileset) {
+        checkWritable();
         this.hasfileset = hasfileset;
     }
 
@@ -177,6 +185,7 @@ public class DocStructType implements Serializable, PrefsType {
      **************************************************************************/
     @Deprecated
     public void setIsanchor(boolean isanchor) {
+        checkWritable();
         this.isanchor = isanchor;
     }
 
@@ -191,6 +200,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param topmost the topmost to set
      **************************************************************************/
     public void setTopmost(boolean topmost) {
+        checkWritable();
         this.topmost = topmost;
     }
 
@@ -202,6 +212,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param inBool
      **************************************************************************/
     public void isAnchor(boolean inBool) {
+        checkWritable();
         this.isanchor = inBool;
     }
 
@@ -228,6 +239,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param in HashMap containing language code and value
      **************************************************************************/
     public void setAllLanguages(Map<String, String> in) {
+        checkWritable();
 
         this.allLanguages = in;
     }
@@ -241,6 +253,9 @@ public class DocStructType implements Serializable, PrefsType {
      **************************************************************************/
     @Override
     public Map<String, String> getAllLanguages() {
+        if (this.readOnly) {
+            return Collections.unmodifiableMap(this.allLanguages);
+        }
         return this.allLanguages;
     }
 
@@ -255,6 +270,7 @@ public class DocStructType implements Serializable, PrefsType {
      **************************************************************************/
     @Override
     public void addLanguage(String lang, String value) {
+        checkWritable();
         if (lang == null) {
             return;
         }
@@ -302,6 +318,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return true, if successful; otherwise false
      **************************************************************************/
     public boolean removeLanguage(String lang) {
+        checkWritable();
 
         Map.Entry<String, String> test;
         String key;
@@ -328,6 +345,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setAllMetadataTypes(List<MetadataType> in) {
+        checkWritable();
         if (in != null) {
             allMetadataTypes.clear();
             for (MetadataType mdt : in) {
@@ -421,6 +439,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return newly created copy of the MetadataType object; if not successful null is returned
      **************************************************************************/
     public PrefsType addMetadataType(MetadataType type, String inNumber) {
+        checkWritable();
 
         // New MetadataType obejct which is added to this DocStructType.
         MetadataType myType;
@@ -454,6 +473,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return newly created copy of the MetadataType object; if not successful null is returned
      **************************************************************************/
     public PrefsType addMetadataType(MetadataType type, String inNumber, boolean isDefault, boolean isInvisible) {
+        checkWritable();
 
         // New MetadataType obejct which is added to this DocStructType.
         MetadataType myType;
@@ -514,6 +534,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return true if successful, otherwise false
      **************************************************************************/
     public boolean removeMetadataType(MetadataType type) {
+        checkWritable();
 
         List<MetadataTypeForDocStructType> ll = new LinkedList<>(this.allMetadataTypes);
 
@@ -568,6 +589,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return
      **************************************************************************/
     public boolean addDocStructTypeAsChild(String inString) {
+        checkWritable();
 
         // Check if the DocStruct is not existing yet, and add it then.
         if (this.allChildrenTypes.isEmpty() || !this.allChildrenTypes.contains(inString)) {
@@ -614,6 +636,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return true, if it was removed, otherwise false
      **************************************************************************/
     public boolean removeDocStructTypeAsChild(String inString) {
+        checkWritable();
 
         if (this.allChildrenTypes.remove(inString)) {
             return true;
@@ -648,6 +671,9 @@ public class DocStructType implements Serializable, PrefsType {
      * @return
      **************************************************************************/
     public List<String> getAllAllowedDocStructTypes() {
+        if (this.readOnly) {
+            return Collections.unmodifiableList(this.allChildrenTypes);
+        }
         return this.allChildrenTypes;
     }
 
@@ -670,6 +696,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setAllMetadataGroups(List<MetadataGroupType> in) {
+        checkWritable();
         allMetadataGroups.clear();
         if (in != null) {
             for (MetadataGroupType mdt : in) {
@@ -770,6 +797,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return true if successful, otherwise false
      **************************************************************************/
     public boolean removeMetadataGroup(MetadataGroupType type) {
+        checkWritable();
 
         List<MetadataGroupForDocStructType> ll = new LinkedList<>(this.allMetadataGroups);
 
@@ -818,6 +846,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return newly created copy of the MetadataGroup object; if not successful null is returned
      **************************************************************************/
     public MetadataGroupType addMetadataGroup(MetadataGroupType type, String inNumber) {
+        checkWritable();
         if (type == null) {
             return null;
         }
@@ -853,6 +882,7 @@ public class DocStructType implements Serializable, PrefsType {
      * @return newly created copy of the MetadataType object; if not successful null is returned
      **************************************************************************/
     public MetadataGroupType addMetadataGroup(MetadataGroupType type, String inNumber, boolean isDefault, boolean isInvisible) {
+        checkWritable();
 
         // New MetadataType obejct which is added to this DocStructType.
         MetadataGroupType myType;
@@ -903,4 +933,28 @@ public class DocStructType implements Serializable, PrefsType {
 
         return false;
     }
+
+    /***************************************************************************
+     * <p>
+     * Makes this type read-only, used for the types of shared Prefs instances. The local copies of the metadata and group types are made read-only, too.
+     * </p>
+     **************************************************************************/
+    void setReadOnly() {
+        for (MetadataTypeForDocStructType mdtfdst : this.allMetadataTypes) {
+            mdtfdst.getMetadataType().setReadOnly();
+        }
+        for (MetadataGroupForDocStructType mgfdst : this.allMetadataGroups) {
+            mgfdst.getMetadataGroup().setReadOnly();
+        }
+        this.readOnly = true;
+    }
+
+    /***************************************************************************
+     * @throws UnsupportedOperationException if this type belongs to a shared Prefs instance
+     **************************************************************************/
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("Types of shared preferences can't be modified!");
+        }
+    }
 }
@@ -80,13 +80,17 @@ public class FileSet implements Serializable {
     // Contains all virtual fileg groups needed for the zvdd/DFG-viewer METS.
     private List<VirtualFileGroup> virtualFileGroups;
 
+    // The document, whose snapshots preserve this FileSet before it is
+    // changed; set when a snapshot is created.
+    private transient DigitalDocument digdoc;
+
     /***************************************************************************
      * <p>
      * Constructor. Creates all lists which store all objects for Images, Metadata, removed Metadata, and virtual file groups.
      * </p>
      **************************************************************************/
     public FileSet() {
-        this.allImages = new LinkedList<>();
+        this.allImages = new ContentFileList();
         this.allMetadata = new LinkedList<>();
         this.removedMetadata = new LinkedList<>();
         this.virtualFileGroups = new LinkedList<>();
@@ -105,6 +109,7 @@ public class FileSet implements Serializable {
 
         // Only add the file, if it is not null and it is not in the list yet.
         if (inImage != null && !this.allImages.contains(inImage)) {
+            beforeChange();
             this.allImages.add(inImage);
         }
 
@@ -120,6 +125,7 @@ public class FileSet implements Serializable {
      * @return always true
      **************************************************************************/
     public boolean removeFile(ContentFile inImage) {
+        beforeChange();
         this.allImages.remove(inImage);
         return true;
     }
@@ -132,6 +138,7 @@ public class FileSet implements Serializable {
         // This method should be void actually, but out of some historical reasons, it is boolean...
 
         if (inMD != null) {
+            beforeChange();
             this.allMetadata.add(inMD);
         }
         return true;
@@ -142,6 +149,7 @@ public class FileSet implements Serializable {
      * @return
      **************************************************************************/
     public boolean removeMetadata(Metadata inMD) {
+        beforeChange();
         this.removedMetadata.add(inMD);
         this.allMetadata.remove(inMD);
         return true;
@@ -173,6 +181,7 @@ public class FileSet implements Serializable {
      **************************************************************************/
     public void setVirtualFileGroups(
             List<VirtualFileGroup> theVirtualFileGroupList) {
+        beforeChange();
         this.virtualFileGroups = theVirtualFileGroupList;
     }
 
@@ -183,6 +192,7 @@ public class FileSet implements Serializable {
         if (theFilegroup == null) {
             throw new IllegalArgumentException("Null is not addable as VirtualFileGroup!");
         }
+        beforeChange();
         this.virtualFileGroups.add(theFilegroup);
     }
 
@@ -190,6 +200,7 @@ public class FileSet implements Serializable {
      * @param theFilegroup
      **************************************************************************/
     public void removeVirtualFileGroup(VirtualFileGroup theFilegroup) {
+        beforeChange();
         this.virtualFileGroups.remove(theFilegroup);
     }
 
@@ -235,4 +246,108 @@ public class FileSet implements Serializable {
         return result.toString();
     }
 
+    /***************************************************************************
+     * <p>
+     * Replaces the file list of a deserialized FileSet by a ContentFileList, the list is serialized as an ArrayList.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    private Object readResolve() {
+        if (this.allImages != null && !(this.allImages instanceof ContentFileList)) {
+            this.allImages = new ContentFileList(this.allImages);
+        }
+        return this;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies this FileSet for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    FileSet deepCopy(DigitalDocumentCopier copier) {
+
+        FileSet copy = new FileSet();
+        copier.register(this, copy);
+
+        copy.allImages = copier.copyList(this.allImages, copier::copy);
+        copy.allMetadata = copier.copyList(this.allMetadata, copier::copy);
+        copy.removedMetadata = copier.copyList(this.removedMetadata, copier::copy);
+        copy.virtualFileGroups = copier.copyList(this.virtualFileGroups, copier::copy);
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies this FileSet with copies of its lists, the list elements are not copied; used to preserve the state for a snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    FileSet shallowCopy() {
+
+        FileSet state = new FileSet();
+        state.allImages = DigitalDocumentCopier.copyOf(this.allImages);
+        state.allMetadata = DigitalDocumentCopier.copyOf(this.allMetadata);
+        state.removedMetadata = DigitalDocumentCopier.copyOf(this.removedMetadata);
+        state.virtualFileGroups = DigitalDocumentCopier.copyOf(this.virtualFileGroups);
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this FileSet to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(FileSet state) {
+        this.allImages = state.allImages;
+        this.allMetadata = state.allMetadata;
+        this.removedMetadata = state.removedMetadata;
+        this.virtualFileGroups = state.virtualFileGroups;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Lets the snapshots of the given document track the changes of this FileSet, its ContentFiles and VirtualFileGroups.
+     * </p>
+     * 
+     * @param document
+     **************************************************************************/
+    void trackChangesFor(DigitalDocument document) {
+
+        this.digdoc = document;
+        if (this.allImages != null) {
+            for (ContentFile cf : this.allImages) {
+                if (cf != null) {
+                    cf.trackChangesFor(document);
+                }
+            }
+        }
+        if (this.virtualFileGroups != null) {
+            for (VirtualFileGroup group : this.virtualFileGroups) {
+                if (group != null) {
+                    group.trackChangesFor(document);
+                }
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this FileSet in the open snapshots of its document. Must be called by all changing methods before the change
+     * is made.
+     * </p>
+     **************************************************************************/
+    private void beforeChange() {
+        if (this.digdoc != null) {
+            this.digdoc.preserve(this);
+        }
+    }
 }
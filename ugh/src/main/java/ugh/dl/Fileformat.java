@@ -22,6 +22,12 @@ package ugh.dl;
  * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
  ******************************************************************************/
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 import ugh.exceptions.PreferencesException;
 import ugh.exceptions.ReadException;
 import ugh.exceptions.WriteException;
@@ -97,6 +103,62 @@ public interface Fileformat {
     public boolean write(String filename) throws WriteException,
             PreferencesException;
 
+    /***************************************************************************
+     * <p>
+     * Reads a DigitalDocument from a stream, like {@link #read(String)}. The stream is not closed. Fileformats not supporting streams throw a
+     * ReadException.
+     * </p>
+     * 
+     * @param in
+     * @return a boolean value, true if everything was okay
+     * @throws ReadException
+     **************************************************************************/
+    default boolean read(InputStream in) throws ReadException {
+        throw new ReadException("Fileformat '" + getDisplayName() + "' can't be read from a stream!");
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads a DigitalDocument from a channel, see {@link #read(InputStream)}. The channel is not closed.
+     * </p>
+     * 
+     * @param channel
+     * @return a boolean value, true if everything was okay
+     * @throws ReadException
+     **************************************************************************/
+    default boolean read(ReadableByteChannel channel) throws ReadException {
+        return read(Channels.newInputStream(channel));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the content of the DigitalDocument instance to a stream, like {@link #write(String)}. The stream is not closed. Fileformats not
+     * supporting streams throw a WriteException.
+     * </p>
+     * 
+     * @param out
+     * @return true, if everything is okay
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    default boolean write(OutputStream out) throws WriteException, PreferencesException {
+        throw new WriteException("Fileformat '" + getDisplayName() + "' can't be written to a stream!");
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the content of the DigitalDocument instance to a channel, see {@link #write(OutputStream)}. The channel is not closed.
+     * </p>
+     * 
+     * @param channel
+     * @return true, if everything is okay
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    default boolean write(WritableByteChannel channel) throws WriteException, PreferencesException {
+        return write(Channels.newOutputStream(channel));
+    }
+
     /***************************************************************************
      * <p>
      * Updates a file, which had to be read before. Updating means, that the same file, which was read will be written again. Changes made in the
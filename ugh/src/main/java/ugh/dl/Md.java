@@ -25,8 +25,6 @@ package ugh.dl;
 import java.io.Serializable;
 import java.util.UUID;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -39,6 +37,7 @@ import org.w3c.dom.Node;
 
 import lombok.extern.log4j.Log4j2;
 import ugh.fileformats.mets.MetsMods;
+import ugh.util.XmlHelper;
 
 @Log4j2
 public class Md implements Serializable {
@@ -101,11 +100,8 @@ public class Md implements Serializable {
     private void checkWrapperElement() {
         if (content != null && !"techMD".equals(content.getLocalName())) {
 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
             try {
-                DocumentBuilder db = dbf.newDocumentBuilder();
-                Document doc = db.newDocument();
+                Document doc = XmlHelper.getDocumentBuilder(true).newDocument();
                 // create wrapper elements
                 Element techMd = doc.createElementNS(MetsMods.DEFAULT_METS_URI, "techMD");
                 techMd.setPrefix(MetsMods.DEFAULT_METS_PREFIX);
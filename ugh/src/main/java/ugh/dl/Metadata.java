@@ -150,7 +150,12 @@ public class Metadata implements Serializable {
      * @return
      **************************************************************************/
     public void setType(MetadataType inType) {
+        beforeChange();
         this.MDType = inType;
+        // The DocStruct indexes its metadata by type.
+        if (this.parent instanceof DocStruct ds) {
+            ds.metadataTypeChanged();
+        }
     }
 
     /***************************************************************************
@@ -174,6 +179,7 @@ public class Metadata implements Serializable {
      * @param inValue The value as String.
      **************************************************************************/
     public void setValue(String inValue) {
+        beforeChange();
         this.metadataValue = inValue;
     }
 
@@ -195,20 +201,24 @@ public class Metadata implements Serializable {
     }
 
     public void setAuthorityFile(String authorityID, String authorityURI, String authorityValue) {
+        beforeChange();
         this.authorityID = authorityID;
         this.authorityURI = authorityURI;
         this.authorityValue = authorityValue;
     }
 
     public void setAuthorityID(String authorityID) {
+        beforeChange();
         this.authorityID = authorityID;
     }
 
     public void setAuthorityURI(String authorityURI) {
+        beforeChange();
         this.authorityURI = authorityURI;
     }
 
     public void setAuthorityValue(String authorityValue) {
+        beforeChange();
         this.authorityValue = authorityValue;
     }
 
@@ -223,6 +233,7 @@ public class Metadata implements Serializable {
         if (StringUtils.isBlank(authorityFile)) {
             throw new IllegalArgumentException("Empty identifier is not allowed for an authority file!");
         }
+        beforeChange();
         authorityUriMap.put(authorityFile, uri);
     }
 
@@ -234,6 +245,7 @@ public class Metadata implements Serializable {
 
     public void removeAuthorityUriFromMap(String authorityFile) {
         if (authorityUriMap.containsKey(authorityFile)) {
+            beforeChange();
             authorityUriMap.remove(authorityFile);
         }
     }
@@ -307,6 +319,7 @@ public class Metadata implements Serializable {
             return;
         }
 
+        beforeChange();
         this.metadataVQ = inVQ;
         this.metadataVQType = inVQType;
 
@@ -343,6 +356,7 @@ public class Metadata implements Serializable {
      **************************************************************************/
     @Deprecated
     public void setNativeObject(Object inObj) {
+        beforeChange();
         this.nativeObject = inObj;
     }
 
@@ -404,4 +418,99 @@ public class Metadata implements Serializable {
                 && Objects.equals(getValueQualifierType(), other.getValueQualifierType())
                 && Objects.equals(getValue(), other.getValue());
     }
+
+    /***************************************************************************
+     * <p>
+     * Copies this Metadata for the DigitalDocumentCopier. The MetadataType is shared.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    Metadata deepCopy(DigitalDocumentCopier copier) {
+        Metadata copy = new Metadata();
+        copyFields(copy, copier);
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Registers the copy and copies the fields of this class; used by the subclasses, too.
+     * </p>
+     * 
+     * @param copy
+     * @param copier
+     **************************************************************************/
+    void copyFields(Metadata copy, DigitalDocumentCopier copier) {
+
+        copier.register(this, copy);
+
+        copyState(copy);
+        // The parent is copied before its metadata.
+        copy.parent = copier.getCopy(this.parent);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this Metadata; used to preserve the state for a snapshot. Person and Corporate copy their fields, too.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    Metadata shallowCopy() {
+        Metadata state = new Metadata();
+        copyState(state);
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this class to the given Metadata; the MetadataType and the parent are shared, the map of authority URIs is copied.
+     * </p>
+     * 
+     * @param target
+     **************************************************************************/
+    void copyState(Metadata target) {
+        target.parent = this.parent;
+        target.MDType = this.MDType;
+        target.metadataValue = this.metadataValue;
+        target.metadataVQ = this.metadataVQ;
+        target.metadataVQType = this.metadataVQType;
+        target.nativeObject = this.nativeObject;
+        target.authorityURI = this.authorityURI;
+        target.authorityID = this.authorityID;
+        target.authorityValue = this.authorityValue;
+        target.authorityUriMap = (this.authorityUriMap == null ? null : new HashMap<>(this.authorityUriMap));
+        target.validationErrorPresent = this.validationErrorPresent;
+        target.validationMessage = this.validationMessage;
+        target.accessRestrict = this.accessRestrict;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this Metadata to the state preserved in a snapshot, which is restored. Person and Corporate restore their fields, too.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(Metadata state) {
+        state.copyState(this);
+        // The DocStruct indexes its metadata by type.
+        if (this.parent instanceof DocStruct ds) {
+            ds.metadataTypeChanged();
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this Metadata in the open snapshots of the document of its DocStruct. Must be called by all changing methods
+     * before the change is made.
+     * </p>
+     **************************************************************************/
+    void beforeChange() {
+        DocStruct owner = DocStruct.ownerOf(this.parent);
+        if (owner != null) {
+            owner.beforeChange(this);
+        }
+    }
 }
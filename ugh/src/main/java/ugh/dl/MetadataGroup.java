@@ -40,23 +40,27 @@ public class MetadataGroup implements Serializable, HoldingElement {
     @Setter
     protected transient HoldingElement parent;
     @Getter
-    @Setter
     private String identifier;
 
     @Getter
-    @Setter
     private List<Metadata> metadataList;
     @Getter
-    @Setter
     private List<Person> personList;
     @Getter
-    @Setter
     private List<Corporate> corporateList;
 
     private List<MetadataGroup> allMetadataGroups;
 
     private List<MetadataGroup> removedMetadataGroups;
 
+    /***************************************************************************
+     * <p>
+     * Constructor for copies, the fields are set by the DigitalDocumentCopier.
+     * </p>
+     **************************************************************************/
+    MetadataGroup() {
+    }
+
     /***************************************************************************
      * <p>
      * Constructor.
@@ -80,6 +84,26 @@ public class MetadataGroup implements Serializable, HoldingElement {
         allMetadataGroups = new LinkedList<>();
     }
 
+    public void setIdentifier(String identifier) {
+        beforeChange();
+        this.identifier = identifier;
+    }
+
+    public void setMetadataList(List<Metadata> metadataList) {
+        beforeChange();
+        this.metadataList = metadataList;
+    }
+
+    public void setPersonList(List<Person> personList) {
+        beforeChange();
+        this.personList = personList;
+    }
+
+    public void setCorporateList(List<Corporate> corporateList) {
+        beforeChange();
+        this.corporateList = corporateList;
+    }
+
     /***************************************************************************
      * <p>
      * Returns the type of the metadataGroup instance; The MetadataGroupType object which is returned, may have the same name, but be a different
@@ -106,7 +130,12 @@ public class MetadataGroup implements Serializable, HoldingElement {
         if (inType == null) {
             throw new MetadataTypeNotAllowedException("Null is not allowed here!");
         }
+        beforeChange();
         this.metadataGroupType = inType;
+        // The DocStruct indexes its metadata groups by type.
+        if (this.parent instanceof DocStruct ds) {
+            ds.metadataTypeChanged();
+        }
     }
 
     @Override
@@ -129,6 +158,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
         }
 
         if (insert) {
+            beforeChange();
             metadata.setParent(this);
             this.metadataList.add(metadata);
         } else {
@@ -157,6 +187,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
         }
 
         if (insert) {
+            beforeChange();
             person.setParent(this);
             personList.add(person);
         } else {
@@ -185,6 +216,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
         }
 
         if (insert) {
+            beforeChange();
             corporate.setParent(this);
             corporateList.add(corporate);
         } else {
@@ -352,6 +384,8 @@ public class MetadataGroup implements Serializable, HoldingElement {
             return;
         }
 
+        beforeChange();
+        theMd.beforeChange();
         theMd.parent = null;
 
         this.metadataList.remove(theMd);
@@ -386,6 +420,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
             return;
         }
 
+        beforeChange();
         corporateList.remove(in);
     }
 
@@ -417,6 +452,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
             return;
         }
 
+        beforeChange();
         personList.remove(in);
     }
 
@@ -585,6 +621,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
      **************************************************************************/
     @Override
     public void setAllMetadataGroups(List<MetadataGroup> inList) {
+        beforeChange();
         this.allMetadataGroups = inList;
     }
 
@@ -666,6 +703,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
             // Set type to MetadataType of the DocStructType.
             theMetadataGroup.setType(prefsMdType);
             // Set this document structure as myDocStruct.
+            beforeChange();
             theMetadataGroup.setParent(this);
             if (this.allMetadataGroups == null) {
                 // Create list, if not already available.
@@ -731,17 +769,19 @@ public class MetadataGroup implements Serializable, HoldingElement {
             return false;
         }
 
+        if (allMetadataGroups == null) {
+            // no groups to remove available, abort
+            return false;
+        }
+
+        beforeChange();
+        theMd.beforeChange();
         theMd.parent = null;
 
         if (this.removedMetadataGroups == null) {
             this.removedMetadataGroups = new LinkedList<>();
         }
 
-        if (allMetadataGroups == null) {
-            // no groups to remove available, abort
-            return false;
-        }
-
         this.removedMetadataGroups.add(theMd);
         this.allMetadataGroups.remove(theMd);
 
@@ -788,6 +828,7 @@ public class MetadataGroup implements Serializable, HoldingElement {
         MetadataGroupType mdType = theOldMd.getType();
         theNewMd.setType(mdType);
 
+        beforeChange();
         this.allMetadataGroups.remove(theOldMd);
         this.allMetadataGroups.add(counter, theNewMd);
 
@@ -880,4 +921,91 @@ public class MetadataGroup implements Serializable, HoldingElement {
 
         return addableMetadata;
     }
+
+    /***************************************************************************
+     * <p>
+     * Copies this MetadataGroup for the DigitalDocumentCopier. The MetadataGroupType is shared.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    MetadataGroup deepCopy(DigitalDocumentCopier copier) {
+
+        MetadataGroup copy = new MetadataGroup();
+        copier.register(this, copy);
+
+        copy.metadataGroupType = this.metadataGroupType;
+        // The parent is copied before its groups.
+        copy.parent = copier.getCopy(this.parent);
+        copy.identifier = this.identifier;
+        copy.metadataList = copier.copyList(this.metadataList, copier::copy);
+        copy.personList = copier.copyList(this.personList, copier::copy);
+        copy.corporateList = copier.copyList(this.corporateList, copier::copy);
+        copy.allMetadataGroups = copier.copyList(this.allMetadataGroups, copier::copy);
+        copy.removedMetadataGroups = copier.copyList(this.removedMetadataGroups, copier::copy);
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this MetadataGroup with copies of its lists, the list elements are not copied; used to preserve the state for a
+     * snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    MetadataGroup shallowCopy() {
+
+        MetadataGroup state = new MetadataGroup();
+
+        state.metadataGroupType = this.metadataGroupType;
+        state.parent = this.parent;
+        state.identifier = this.identifier;
+        state.metadataList = DigitalDocumentCopier.copyOf(this.metadataList);
+        state.personList = DigitalDocumentCopier.copyOf(this.personList);
+        state.corporateList = DigitalDocumentCopier.copyOf(this.corporateList);
+        state.allMetadataGroups = DigitalDocumentCopier.copyOf(this.allMetadataGroups);
+        state.removedMetadataGroups = DigitalDocumentCopier.copyOf(this.removedMetadataGroups);
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this MetadataGroup to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(MetadataGroup state) {
+
+        this.metadataGroupType = state.metadataGroupType;
+        this.parent = state.parent;
+        this.identifier = state.identifier;
+        this.metadataList = state.metadataList;
+        this.personList = state.personList;
+        this.corporateList = state.corporateList;
+        this.allMetadataGroups = state.allMetadataGroups;
+        this.removedMetadataGroups = state.removedMetadataGroups;
+
+        // The DocStruct indexes its metadata groups by type.
+        if (this.parent instanceof DocStruct ds) {
+            ds.metadataTypeChanged();
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this MetadataGroup in the open snapshots of the document of its DocStruct. Must be called by all changing
+     * methods before the change is made.
+     * </p>
+     **************************************************************************/
+    void beforeChange() {
+        DocStruct owner = DocStruct.ownerOf(this.parent);
+        if (owner != null) {
+            owner.beforeChange(this);
+        }
+    }
 }
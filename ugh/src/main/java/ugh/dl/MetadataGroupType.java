@@ -25,6 +25,7 @@ package ugh.dl;
  ***************************************************************/
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -55,6 +56,9 @@ public class MetadataGroupType implements Serializable, PrefsType {
 
     protected transient List<AllowedMetadataGroupType> allGroups = new LinkedList<>();
 
+    // Set for the types of shared Prefs instances, which must not be changed.
+    private transient boolean readOnly = false;
+
     public List<MetadataType> getMetadataTypeList() {
         // if null return null
         if (metadataTypeList == null) {
@@ -71,6 +75,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public void setMetadataTypeList(List<MetadataType> metadataTypeList) {
+        checkWritable();
         for (MetadataType mdt : metadataTypeList) {
             MetadataTypeForDocStructType mdtfdst = new MetadataTypeForDocStructType(mdt);
             this.metadataTypeList.add(mdtfdst);
@@ -78,6 +83,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public void setTypes(List<MetadataTypeForDocStructType> metadataTypeList) {
+        checkWritable();
         this.metadataTypeList = metadataTypeList;
     }
 
@@ -87,10 +93,12 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public void setName(String name) {
+        checkWritable();
         this.name = name;
     }
 
     public void addMetadataType(MetadataType metadataToAdd, String inNumber, boolean isDefault, boolean isInvisible) {
+        checkWritable();
         // null should not be used as metadataToAdd
         if (metadataToAdd == null) {
             throw new IllegalArgumentException("Cannot add null as MetadataType!");
@@ -116,6 +124,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public void removeMetadataType(MetadataType metadataToRemove) {
+        checkWritable();
 
         List<MetadataTypeForDocStructType> ll = new LinkedList<>(metadataTypeList);
 
@@ -149,10 +158,14 @@ public class MetadataGroupType implements Serializable, PrefsType {
 
     @Override
     public Map<String, String> getAllLanguages() {
+        if (this.readOnly && this.allLanguages != null) {
+            return Collections.unmodifiableMap(this.allLanguages);
+        }
         return allLanguages;
     }
 
     public void setAllLanguages(Map<String, String> allLanguages) {
+        checkWritable();
         this.allLanguages = allLanguages;
     }
 
@@ -160,6 +173,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setNum(String in) {
+        checkWritable();
         if (StringUtils.isBlank(in)) {
             maxNumber = "1o";
         } else if (!"1m".equals(in) && !"1o".equals(in) && !"+".equals(in) && !"*".equals(in)) {
@@ -224,7 +238,8 @@ public class MetadataGroupType implements Serializable, PrefsType {
 
         MetadataGroupType newMDType = new MetadataGroupType();
 
-        newMDType.setAllLanguages(this.allLanguages);
+        // The copy of a read-only type gets languages of its own.
+        newMDType.setAllLanguages(this.readOnly && this.allLanguages != null ? new HashMap<>(this.allLanguages) : this.allLanguages);
         newMDType.setName(this.name);
         if (this.maxNumber != null) {
             newMDType.setNum(this.maxNumber);
@@ -293,6 +308,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
 
     @Override
     public void addLanguage(String lang, String value) {
+        checkWritable();
 
         Map.Entry<String, String> test;
         String key;
@@ -334,6 +350,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public void addGroupTypeAsChild(String groupName, String occurrence, boolean defaultDisplay, boolean hidden) {
+        checkWritable();
         // null should not be used as groupName
         if (StringUtils.isBlank(groupName)) {
             throw new IllegalArgumentException("groupName should not be blank");
@@ -352,6 +369,7 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public void removeGroupTypeAsChild(String groupName) {
+        checkWritable();
         AllowedMetadataGroupType toDelete = null;
         for (AllowedMetadataGroupType other : allGroups) {
             if (other.getGroupName().equals(groupName)) {
@@ -365,6 +383,9 @@ public class MetadataGroupType implements Serializable, PrefsType {
     }
 
     public List<AllowedMetadataGroupType> getAllAllowedGroupTypeTypes() {
+        if (this.readOnly) {
+            return Collections.unmodifiableList(this.allGroups);
+        }
         return allGroups;
     }
 
@@ -377,4 +398,29 @@ public class MetadataGroupType implements Serializable, PrefsType {
         return null;
     }
 
+    /***************************************************************************
+     * <p>
+     * Makes this type read-only, used for the types of shared Prefs instances. The local copies of the metadata types are made read-only, too.
+     * </p>
+     **************************************************************************/
+    void setReadOnly() {
+        // Reading the languages creates the map, which must not happen any more.
+        if (this.allLanguages == null) {
+            this.allLanguages = new HashMap<>();
+        }
+        for (MetadataTypeForDocStructType mdtfdst : this.metadataTypeList) {
+            mdtfdst.getMetadataType().setReadOnly();
+        }
+        this.readOnly = true;
+    }
+
+    /***************************************************************************
+     * @throws UnsupportedOperationException if this type belongs to a shared Prefs instance
+     **************************************************************************/
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("Types of shared preferences can't be modified!");
+        }
+    }
+
 }
@@ -23,6 +23,7 @@ package ugh.dl;
  ******************************************************************************/
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -30,7 +31,6 @@ import java.util.Objects;
 import org.apache.commons.lang3.StringUtils;
 
 import lombok.Getter;
-import lombok.Setter;
 
 /*******************************************************************************
  * <p>
@@ -103,7 +103,6 @@ public class MetadataType implements Serializable, PrefsType {
 
     // is set to true, if metadata is a corporate
     @Getter
-    @Setter
     protected boolean isCorporate = false;
 
     // Is set to true, if this MetadataType acts as an element; which means,
@@ -114,15 +113,15 @@ public class MetadataType implements Serializable, PrefsType {
     private boolean allowNormdata = false;
 
     @Getter
-    @Setter
     protected boolean allowAccessRestriction = false;
 
     private String validationExpression = "";
 
-    @Getter
-    @Setter
     private Map<String, String> validationErrorMessages;
 
+    // Set for the types of shared Prefs instances, which must not be changed.
+    private transient boolean readOnly = false;
+
     /***************************************************************************
      * Constructor.
      **************************************************************************/
@@ -134,6 +133,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setName(String in) {
+        checkWritable();
         this.name = in;
     }
 
@@ -141,6 +141,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setNum(String in) {
+        checkWritable();
         if (StringUtils.isBlank(in) || (!"1m".equals(in) && !"1o".equals(in) && !"+".equals(in) && !"*".equals(in))) {
             // Unknown syntax.
         } else {
@@ -163,7 +164,8 @@ public class MetadataType implements Serializable, PrefsType {
 
         MetadataType newMDType = new MetadataType();
 
-        newMDType.setAllLanguages(this.allLanguages);
+        // The copy of a read-only type gets languages of its own.
+        newMDType.setAllLanguages(this.readOnly ? new HashMap<>(this.allLanguages) : this.allLanguages);
         newMDType.setName(this.name);
         if (this.maxNumber != null) {
             newMDType.setNum(this.maxNumber);
@@ -204,6 +206,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @param isIdentifier the isIdentifier to set
      **************************************************************************/
     public void setIdentifier(boolean isIdentifier) {
+        checkWritable();
         this.isIdentifier = isIdentifier;
     }
 
@@ -223,6 +226,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @param in
      **************************************************************************/
     public void setAllLanguages(Map<String, String> in) {
+        checkWritable();
         this.allLanguages = in;
     }
 
@@ -231,6 +235,9 @@ public class MetadataType implements Serializable, PrefsType {
      **************************************************************************/
     @Override
     public Map<String, String> getAllLanguages() {
+        if (this.readOnly && this.allLanguages != null) {
+            return Collections.unmodifiableMap(this.allLanguages);
+        }
         return this.allLanguages;
     }
 
@@ -245,6 +252,7 @@ public class MetadataType implements Serializable, PrefsType {
      **************************************************************************/
     @Override
     public void addLanguage(String theLanguage, String theValue) {
+        checkWritable();
         // null should not be used as key
         if (theLanguage == null) {
             return;
@@ -280,6 +288,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @param content new name
      **************************************************************************/
     public void changeLanguageByName(String lang, String content) {
+        checkWritable();
         if (this.allLanguages == null) {
             this.allLanguages = new HashMap<>();
         }
@@ -296,6 +305,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @return true, if successful
      **************************************************************************/
     public boolean removeLanguage(String theLanguage) {
+        checkWritable();
         if (theLanguage == null) {
             return false;
         }
@@ -338,6 +348,7 @@ public class MetadataType implements Serializable, PrefsType {
      * @param value
      **************************************************************************/
     public void setIsPerson(boolean value) {
+        checkWritable();
         this.isPerson = value;
     }
 
@@ -374,6 +385,7 @@ public class MetadataType implements Serializable, PrefsType {
     }
 
     public void setAllowNameParts(boolean allowNameParts) {
+        checkWritable();
         this.allowNameParts = allowNameParts;
     }
 
@@ -382,6 +394,7 @@ public class MetadataType implements Serializable, PrefsType {
     }
 
     public void setAllowNormdata(boolean allowNormdata) {
+        checkWritable();
         this.allowNormdata = allowNormdata;
     }
 
@@ -389,7 +402,52 @@ public class MetadataType implements Serializable, PrefsType {
         return validationExpression;
     }
 
+    public void setCorporate(boolean isCorporate) {
+        checkWritable();
+        this.isCorporate = isCorporate;
+    }
+
+    public void setAllowAccessRestriction(boolean allowAccessRestriction) {
+        checkWritable();
+        this.allowAccessRestriction = allowAccessRestriction;
+    }
+
+    public Map<String, String> getValidationErrorMessages() {
+        if (this.readOnly && this.validationErrorMessages != null) {
+            return Collections.unmodifiableMap(this.validationErrorMessages);
+        }
+        return validationErrorMessages;
+    }
+
+    public void setValidationErrorMessages(Map<String, String> validationErrorMessages) {
+        checkWritable();
+        this.validationErrorMessages = validationErrorMessages;
+    }
+
     public void setValidationExpression(String validationExpression) {
+        checkWritable();
         this.validationExpression = validationExpression;
     }
+
+    /***************************************************************************
+     * <p>
+     * Makes this type read-only, used for the types of shared Prefs instances.
+     * </p>
+     **************************************************************************/
+    void setReadOnly() {
+        // Reading the languages creates the map, which must not happen any more.
+        if (this.allLanguages == null) {
+            this.allLanguages = new HashMap<>();
+        }
+        this.readOnly = true;
+    }
+
+    /***************************************************************************
+     * @throws UnsupportedOperationException if this type belongs to a shared Prefs instance
+     **************************************************************************/
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("Types of shared preferences can't be modified!");
+        }
+    }
 }
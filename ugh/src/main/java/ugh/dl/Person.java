@@ -137,6 +137,7 @@ public class Person extends Metadata {
      * @param in
      **************************************************************************/
     public void setFirstname(String in) {
+        beforeChange();
         this.firstname = in;
     }
 
@@ -155,6 +156,7 @@ public class Person extends Metadata {
      * @param in
      **************************************************************************/
     public void setLastname(String in) {
+        beforeChange();
         this.lastname = in;
     }
 
@@ -170,6 +172,7 @@ public class Person extends Metadata {
      * @return
      **************************************************************************/
     public void setInstitution(String in) {
+        beforeChange();
         this.institution = in;
     }
 
@@ -184,6 +187,7 @@ public class Person extends Metadata {
      * @param in
      **************************************************************************/
     public void setAffiliation(String in) {
+        beforeChange();
         this.affiliation = in;
     }
 
@@ -198,6 +202,7 @@ public class Person extends Metadata {
      * @param in
      **************************************************************************/
     public void setRole(String in) {
+        beforeChange();
         this.role = in;
     }
 
@@ -220,6 +225,7 @@ public class Person extends Metadata {
      * @param in
      **************************************************************************/
     public void setPersontype(String in) {
+        beforeChange();
         this.persontype = in;
     }
 
@@ -254,6 +260,7 @@ public class Person extends Metadata {
      * @param displayname the displayname to set
      **************************************************************************/
     public void setDisplayname(String displayname) {
+        beforeChange();
         this.displayname = displayname;
     }
 
@@ -324,6 +331,7 @@ public class Person extends Metadata {
     }
 
     public void setAdditionalNameParts(List<NamePart> additionalNameParts) {
+        beforeChange();
         this.additionalNameParts = new ArrayList<>(additionalNameParts);
     }
 
@@ -334,7 +342,81 @@ public class Person extends Metadata {
         if (part == null) {
             throw new IllegalArgumentException("Cannot add null as NamePart!");
         }
+        beforeChange();
         additionalNameParts.add(part);
     }
 
+    /***************************************************************************
+     * <p>
+     * Copies this Person for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    @Override
+    Person deepCopy(DigitalDocumentCopier copier) {
+
+        Person copy = new Person();
+        copyFields(copy, copier);
+
+        copy.firstname = this.firstname;
+        copy.lastname = this.lastname;
+        copy.displayname = this.displayname;
+        copy.affiliation = this.affiliation;
+        copy.institution = this.institution;
+        copy.role = this.role;
+        copy.persontype = this.persontype;
+        copy.additionalNameParts = copier.copyList(this.additionalNameParts, copier::copy);
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this Person; used to preserve the state for a snapshot. The name parts are copied, as they can be changed.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    @Override
+    Person shallowCopy() {
+
+        Person state = new Person();
+        copyState(state);
+
+        state.firstname = this.firstname;
+        state.lastname = this.lastname;
+        state.displayname = this.displayname;
+        state.affiliation = this.affiliation;
+        state.institution = this.institution;
+        state.role = this.role;
+        state.persontype = this.persontype;
+        state.additionalNameParts = DigitalDocumentCopier.copyNameParts(this.additionalNameParts);
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this Person to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    @Override
+    void restoreState(Metadata state) {
+
+        super.restoreState(state);
+
+        Person person = (Person) state;
+        this.firstname = person.firstname;
+        this.lastname = person.lastname;
+        this.displayname = person.displayname;
+        this.affiliation = person.affiliation;
+        this.institution = person.institution;
+        this.role = person.role;
+        this.persontype = person.persontype;
+        this.additionalNameParts = person.additionalNameParts;
+    }
 }
@@ -25,7 +25,14 @@ package ugh.dl;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +41,7 @@ import java.util.Map.Entry;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
@@ -44,6 +52,7 @@ import org.xml.sax.SAXParseException;
 
 import lombok.extern.log4j.Log4j2;
 import ugh.exceptions.PreferencesException;
+import ugh.util.XmlHelper;
 
 /*******************************************************************************
  * <b>Title:</b> Preferences
@@ -91,17 +100,64 @@ public class Prefs implements Serializable {
     private List<MetadataGroupType> allMetadataGroupTypes;
     private transient Map<String, Node> allFormats;
 
+    // Positions of the types in the type lists by name, built on the first
+    // lookup and dropped by the changing methods of this class.
+    private transient volatile Map<String, Integer> docStrctTypePositions;
+    private transient volatile Map<String, Integer> metadataTypePositions;
+    private transient volatile Map<String, Integer> metadataGroupTypePositions;
+
+    // Shared instances from getSharedPrefs() must not be changed.
+    private transient boolean readOnly = false;
+    // The format sections of a shared instance as XML, read when the instance
+    // is made read-only; they replace the DOM nodes in allFormats.
+    private transient Map<String, String> formatSections;
+
+    // Number of shared rulesets kept; the least recently used one is dropped
+    // when another one is loaded.
+    private static final int MAX_SHARED_PREFS = 16;
+    // Shared rulesets by their absolute path, in access order.
+    private static final Map<String, SharedPrefs> SHARED_PREFS = new LinkedHashMap<String, SharedPrefs>(MAX_SHARED_PREFS, 0.75f, true) {
+        private static final long serialVersionUID = -2716347529370913532L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SharedPrefs> eldest) {
+            return size() > MAX_SHARED_PREFS;
+        }
+    };
+
     public static final short ELEMENT_NODE = 1;
 
+    /***************************************************************************
+     * <p>
+     * Loaded ruleset and the file attributes it was loaded with.
+     * </p>
+     **************************************************************************/
+    private static final class SharedPrefs {
+        private final Prefs prefs;
+        private final long lastModified;
+        private final long size;
+
+        SharedPrefs(Prefs prefs, BasicFileAttributes attributes) {
+            this.prefs = prefs;
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.size = attributes.size();
+        }
+
+        boolean isLoadedFrom(BasicFileAttributes attributes) {
+            return this.lastModified == attributes.lastModifiedTime().toMillis() && this.size == attributes.size();
+        }
+    }
+
     /***************************************************************************
      * <p>
      * Constructor.
      * </p>
      **************************************************************************/
     public Prefs() {
-        this.allDocStrctTypes = new LinkedList<>();
-        this.allMetadataTypes = new LinkedList<>();
-        this.allMetadataGroupTypes = new LinkedList<>();
+        // Random access lists, the name lookups get the types by position.
+        this.allDocStrctTypes = new ArrayList<>();
+        this.allMetadataTypes = new ArrayList<>();
+        this.allMetadataGroupTypes = new ArrayList<>();
         this.allFormats = new HashMap<>();
     }
 
@@ -112,6 +168,127 @@ public class Prefs implements Serializable {
         return VERSION;
     }
 
+    /***************************************************************************
+     * <p>
+     * Returns a shared, read-only Prefs instance for the given ruleset file. The ruleset is parsed only once per file; later calls return the same
+     * instance, as long as modification time and size of the file are unchanged. A changed file is loaded again. The last 16 used rulesets are kept,
+     * instances already handed out stay valid when they are dropped.
+     * </p>
+     * <p>
+     * The returned instance and its DocStructType, MetadataType and MetadataGroupType objects can't be modified: all their changing methods throw an
+     * UnsupportedOperationException, like the lists and maps they return. getPreferenceNode() returns a new copy of the format section on every
+     * call. Use a new Prefs instance and loadPrefs(), if the ruleset needs to be modified.
+     * </p>
+     * 
+     * @param filename
+     * @return
+     * @throws PreferencesException
+     **************************************************************************/
+    public static Prefs getSharedPrefs(String filename) throws PreferencesException {
+
+        if (filename == null || filename.isEmpty()) {
+            String message = "Unable to load preferences file '" + filename + "'!";
+            log.error(message);
+            throw new PreferencesException(message);
+        }
+
+        Path path = Paths.get(filename).toAbsolutePath().normalize();
+        String key = path.toString();
+        BasicFileAttributes attributes = readFileAttributes(path);
+
+        synchronized (SHARED_PREFS) {
+            SharedPrefs shared = SHARED_PREFS.get(key);
+            if (shared != null && shared.isLoadedFrom(attributes)) {
+                return shared.prefs;
+            }
+
+            Prefs prefs = new Prefs();
+            prefs.loadPrefs(key);
+            prefs.setReadOnly();
+
+            SHARED_PREFS.put(key, new SharedPrefs(prefs, attributes));
+            log.debug("Loaded shared preferences from '" + key + "'");
+
+            return prefs;
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Removes all shared Prefs instances. Instances already handed out stay valid.
+     * </p>
+     **************************************************************************/
+    public static void clearSharedPrefs() {
+        synchronized (SHARED_PREFS) {
+            SHARED_PREFS.clear();
+        }
+    }
+
+    /***************************************************************************
+     * @param path
+     * @return
+     * @throws PreferencesException
+     **************************************************************************/
+    private static BasicFileAttributes readFileAttributes(Path path) throws PreferencesException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            String message = "Unable to load preferences file '" + path + "'!";
+            log.error(message);
+            throw new PreferencesException(message, e);
+        }
+    }
+
+    /***************************************************************************
+     * @return true, if this is a shared instance from getSharedPrefs()
+     **************************************************************************/
+    public boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Makes this instance and its types read-only. The format sections are kept as XML, so the DOM of the ruleset is no longer referenced.
+     * </p>
+     * 
+     * @throws PreferencesException if a format section can't be read
+     **************************************************************************/
+    private void setReadOnly() throws PreferencesException {
+
+        Map<String, String> sections = new HashMap<>();
+        for (Map.Entry<String, Node> format : this.allFormats.entrySet()) {
+            try {
+                sections.put(format.getKey(), XmlHelper.toString(format.getValue()));
+            } catch (TransformerException e) {
+                String message = "Unable to read preferences for format '" + format.getKey() + "'!";
+                log.error(message);
+                throw new PreferencesException(message, e);
+            }
+        }
+        this.formatSections = Map.copyOf(sections);
+        this.allFormats = Collections.emptyMap();
+
+        for (DocStructType type : this.allDocStrctTypes) {
+            type.setReadOnly();
+        }
+        for (MetadataType type : this.allMetadataTypes) {
+            type.setReadOnly();
+        }
+        for (MetadataGroupType type : this.allMetadataGroupTypes) {
+            type.setReadOnly();
+        }
+        this.readOnly = true;
+    }
+
+    /***************************************************************************
+     * @throws UnsupportedOperationException if this is a shared instance
+     **************************************************************************/
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("Shared preferences can't be modified!");
+        }
+    }
+
     /***************************************************************************
      * <p>
      * Loads all known DocStruct types from the prefs XML file.
@@ -120,9 +297,12 @@ public class Prefs implements Serializable {
      * @param filename
      * @return
      * @throws PreferencesException
+     * @throws UnsupportedOperationException if this is a shared instance from getSharedPrefs()
      **************************************************************************/
     public boolean loadPrefs(String filename) throws PreferencesException {
 
+        checkWritable();
+
         Document document;
         NodeList childlist;
         NodeList upperChildlist;
@@ -255,6 +435,8 @@ public class Prefs implements Serializable {
         mdt.setName(HIDDEN_METADATA_CHAR + "PaginationNo");
         this.allMetadataTypes.add(mdt);
 
+        dropNameIndexes();
+
         return true;
     }
 
@@ -881,13 +1063,22 @@ public class Prefs implements Serializable {
      **************************************************************************/
     public DocStructType getDocStrctTypeByName(String theName) {
 
-        for (DocStructType currentDocStructType : this.allDocStrctTypes) {
-            if (currentDocStructType.getName().equals(theName)) {
-                return currentDocStructType;
+        Map<String, Integer> positions = this.docStrctTypePositions;
+        if (positions == null) {
+            positions = getPositionsByName(this.allDocStrctTypes);
+            this.docStrctTypePositions = positions;
+        }
+
+        DocStructType result = getByPosition(this.allDocStrctTypes, positions, theName);
+        if (result == null) {
+            // The index doesn't know types added or renamed without this class.
+            result = findByName(this.allDocStrctTypes, theName);
+            if (result != null) {
+                this.docStrctTypePositions = null;
             }
         }
 
-        return null;
+        return result;
     }
 
     /**************************************************************************
@@ -965,18 +1156,37 @@ public class Prefs implements Serializable {
      **************************************************************************/
     public Node getPreferenceNode(String in) {
 
+        if (this.readOnly) {
+            // Even reading a DOM is not thread-safe, Xerces caches the child
+            // list positions in the nodes while reading. So a shared instance
+            // keeps the format sections as XML and every caller gets a new
+            // DOM of the requested section only.
+            String section = this.formatSections.get(in);
+            if (section == null) {
+                return null;
+            }
+            try {
+                return XmlHelper.parse(section).getDocumentElement();
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                log.error("Unable to read preferences node '" + in + "'", e);
+                return null;
+            }
+        }
+
         if (!this.allFormats.containsKey(in)) {
             // Format not available.
             return null;
         }
         return this.allFormats.get(in);
-
     }
 
     /***************************************************************************
      * @return
      **************************************************************************/
     public List<MetadataType> getAllMetadataTypes() {
+        if (this.readOnly) {
+            return Collections.unmodifiableList(this.allMetadataTypes);
+        }
         return this.allMetadataTypes;
     }
 
@@ -984,23 +1194,29 @@ public class Prefs implements Serializable {
      * @return
      **************************************************************************/
     public List<DocStructType> getAllDocStructTypes() {
+        if (this.readOnly) {
+            return Collections.unmodifiableList(this.allDocStrctTypes);
+        }
         return this.allDocStrctTypes;
     }
 
     /***************************************************************************
      * @param inType
      * @return
+     * @throws UnsupportedOperationException if this is a shared instance from getSharedPrefs()
      **************************************************************************/
     public boolean addMetadataType(MetadataType inType) {
 
         PrefsType tempType;
 
+        checkWritable();
         if (inType == null || inType.getName() == null) {
             return false;
         }
         if (getMetadataTypeByName(inType.getName()) == null) {
             // still not available, so add ist
             this.allMetadataTypes.add(inType);
+            this.metadataTypePositions = null;
             return true;
         }
 
@@ -1009,6 +1225,7 @@ public class Prefs implements Serializable {
         this.allMetadataTypes.remove(tempType);
         // Add new.
         this.allMetadataTypes.add(inType);
+        this.metadataTypePositions = null;
 
         return true;
     }
@@ -1045,20 +1262,22 @@ public class Prefs implements Serializable {
      **************************************************************************/
     public MetadataType getMetadataTypeByName(String name) {
 
-        MetadataType currentMdType;
-        String checkname;
-
-        for (MetadataType element : this.allMetadataTypes) {
-            currentMdType = element;
-            checkname = currentMdType.getName();
+        Map<String, Integer> positions = this.metadataTypePositions;
+        if (positions == null) {
+            positions = getPositionsByName(this.allMetadataTypes);
+            this.metadataTypePositions = positions;
+        }
 
-            if (checkname.equals(name)) {
-                // Found MetadataType.
-                return currentMdType;
+        MetadataType result = getByPosition(this.allMetadataTypes, positions, name);
+        if (result == null) {
+            // The index doesn't know types added or renamed without this class.
+            result = findByName(this.allMetadataTypes, name);
+            if (result != null) {
+                this.metadataTypePositions = null;
             }
         }
 
-        return null;
+        return result;
     }
 
     /***************************************************************************
@@ -1071,20 +1290,22 @@ public class Prefs implements Serializable {
      **************************************************************************/
     public MetadataGroupType getMetadataGroupTypeByName(String name) {
 
-        MetadataGroupType currentMdGroup;
-        String checkname;
-
-        for (MetadataGroupType element : this.allMetadataGroupTypes) {
-            currentMdGroup = element;
-            checkname = currentMdGroup.getName();
+        Map<String, Integer> positions = this.metadataGroupTypePositions;
+        if (positions == null) {
+            positions = getPositionsByName(this.allMetadataGroupTypes);
+            this.metadataGroupTypePositions = positions;
+        }
 
-            if (checkname.equals(name)) {
-                // Found MetadataType.
-                return currentMdGroup;
+        MetadataGroupType result = getByPosition(this.allMetadataGroupTypes, positions, name);
+        if (result == null) {
+            // The index doesn't know types added or renamed without this class.
+            result = findByName(this.allMetadataGroupTypes, name);
+            if (result != null) {
+                this.metadataGroupTypePositions = null;
             }
         }
 
-        return null;
+        return result;
     }
 
     /***************************************************************************
@@ -1134,17 +1355,20 @@ public class Prefs implements Serializable {
     /***************************************************************************
      * @param inType
      * @return
+     * @throws UnsupportedOperationException if this is a shared instance from getSharedPrefs()
      **************************************************************************/
     public boolean addMetadataGroup(MetadataGroupType inGroup) {
 
         MetadataGroupType tempType;
 
+        checkWritable();
         if (inGroup == null || inGroup.getName() == null) {
             return false;
         }
         if (getMetadataGroupTypeByName(inGroup.getName()) == null) {
             // still not available, so add ist
             this.allMetadataGroupTypes.add(inGroup);
+            this.metadataGroupTypePositions = null;
             return true;
         }
 
@@ -1153,7 +1377,79 @@ public class Prefs implements Serializable {
         this.allMetadataGroupTypes.remove(tempType);
         // Add new.
         this.allMetadataGroupTypes.add(inGroup);
+        this.metadataGroupTypePositions = null;
 
         return true;
     }
+
+    /***************************************************************************
+     * <p>
+     * Drops the name indexes of all type lists, they are built again on the next lookup.
+     * </p>
+     **************************************************************************/
+    private void dropNameIndexes() {
+        this.docStrctTypePositions = null;
+        this.metadataTypePositions = null;
+        this.metadataGroupTypePositions = null;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Maps the names of the given types to their positions in the list. If a name occurs more than once, the first type wins, like in the linear
+     * search.
+     * </p>
+     * 
+     * @param types
+     * @return
+     **************************************************************************/
+    private static Map<String, Integer> getPositionsByName(List<? extends PrefsType> types) {
+
+        Map<String, Integer> positions = new HashMap<>();
+        int position = 0;
+        for (PrefsType type : types) {
+            if (type.getName() != null) {
+                positions.putIfAbsent(type.getName(), position);
+            }
+            position++;
+        }
+
+        return positions;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the type at the indexed position of the name, if it is still in that position and still has that name, null otherwise.
+     * </p>
+     * 
+     * @param types
+     * @param positions
+     * @param name
+     * @return
+     **************************************************************************/
+    private static <T extends PrefsType> T getByPosition(List<T> types, Map<String, Integer> positions, String name) {
+
+        Integer position = positions.get(name);
+        if (position == null || position >= types.size()) {
+            return null;
+        }
+
+        T type = types.get(position);
+        return name.equals(type.getName()) ? type : null;
+    }
+
+    /***************************************************************************
+     * @param types
+     * @param name
+     * @return the first type with the given name, or null
+     **************************************************************************/
+    private static <T extends PrefsType> T findByName(List<T> types, String name) {
+
+        for (T type : types) {
+            if (type.getName() != null && type.getName().equals(name)) {
+                return type;
+            }
+        }
+
+        return null;
+    }
 }
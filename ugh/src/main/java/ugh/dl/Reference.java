@@ -145,4 +145,25 @@ public class Reference implements Serializable {
         this.type = intype;
     }
 
+    /***************************************************************************
+     * <p>
+     * Copies this Reference for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    Reference deepCopy(DigitalDocumentCopier copier) {
+
+        Reference copy = new Reference();
+        copier.register(this, copy);
+
+        copy.type = this.type;
+        copy.source = copier.copy(this.source);
+        copy.sourceid = this.sourceid;
+        copy.target = copier.copy(this.target);
+        copy.targetid = this.targetid;
+
+        return copy;
+    }
 }
@@ -23,13 +23,11 @@ package ugh.dl;
  ******************************************************************************/
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 import lombok.Getter;
-import lombok.Setter;
 
 /*******************************************************************************
  * <p>
@@ -68,18 +66,19 @@ public class VirtualFileGroup implements Serializable {
     private boolean mainGroup;
 
     @Getter
-    @Setter
     private boolean ignoreConfiguredMimetypeAndSuffix;
 
     @Getter
-    @Setter
     private String fileExtensionsToIgnore;
 
     @Getter
-    @Setter
     // defines, if a single file fileGrp for the physSequence or a regular multi file fileGrp for each image is created
     private boolean singleFile = false;
 
+    // The document, whose snapshots preserve this group before it is
+    // changed; set when a snapshot is created.
+    private transient DigitalDocument digdoc;
+
     /***************************************************************************
      * Default constructor.
      **************************************************************************/
@@ -111,6 +110,7 @@ public class VirtualFileGroup implements Serializable {
      * @param name
      **************************************************************************/
     public void setName(String name) {
+        beforeChange();
         this.name = name != null ? name : "";
     }
 
@@ -125,6 +125,7 @@ public class VirtualFileGroup implements Serializable {
      * @param pathToFiles
      **************************************************************************/
     public void setPathToFiles(String pathToFiles) {
+        beforeChange();
         this.pathToFiles = pathToFiles != null ? pathToFiles : "";
     }
 
@@ -139,6 +140,7 @@ public class VirtualFileGroup implements Serializable {
      * @param mimetype
      **************************************************************************/
     public void setMimetype(String mimetype) {
+        beforeChange();
         this.mimetype = mimetype != null ? mimetype : "";
     }
 
@@ -154,6 +156,7 @@ public class VirtualFileGroup implements Serializable {
      **************************************************************************/
     public void setFileSuffix(String fileSuffix) {
 
+        beforeChange();
         if (fileSuffix != null) {
             // If the given file suffix starts with a ".", remove the ".".
             if (fileSuffix.startsWith(".")) {
@@ -177,6 +180,7 @@ public class VirtualFileGroup implements Serializable {
      * @param idSuffix
      **************************************************************************/
     public void setIdSuffix(String idSuffix) {
+        beforeChange();
         this.idSuffix = idSuffix != null ? idSuffix : "";
     }
 
@@ -194,6 +198,7 @@ public class VirtualFileGroup implements Serializable {
      * Set the list of allowed ContentFiles to {@link VirtualFileGroup#ALL_FILES ALL_FILES} so all ContentFiles may be written to this FileGroup
      */
     public void allowAllFiles() {
+        beforeChange();
         this.contentFiles = ALL_FILES;
     }
 
@@ -203,7 +208,8 @@ public class VirtualFileGroup implements Serializable {
      */
     public void restrictFiles() {
         if (this.contentFiles == ALL_FILES) {
-            this.contentFiles = new ArrayList<>();
+            beforeChange();
+            this.contentFiles = new ContentFileList();
         }
     }
 
@@ -216,8 +222,9 @@ public class VirtualFileGroup implements Serializable {
         if (contentFile == null) { // adding null should make no difference
             return;
         }
+        beforeChange();
         if (this.contentFiles == ALL_FILES) {
-            this.contentFiles = new ArrayList<>();
+            this.contentFiles = new ContentFileList();
         }
         this.contentFiles.add(contentFile);
     }
@@ -233,8 +240,9 @@ public class VirtualFileGroup implements Serializable {
         if (contentFiles == null) {
             return;
         }
+        beforeChange();
         if (this.contentFiles == ALL_FILES) {
-            this.contentFiles = new ArrayList<>();
+            this.contentFiles = new ContentFileList();
         }
         this.contentFiles.addAll(contentFiles);
     }
@@ -246,6 +254,7 @@ public class VirtualFileGroup implements Serializable {
      */
     public void removeContentFile(ContentFile contentFile) {
         if (this.contentFiles.contains(contentFile)) {
+            beforeChange();
             this.contentFiles.remove(contentFile);
         }
     }
@@ -257,6 +266,7 @@ public class VirtualFileGroup implements Serializable {
      */
     public void removeContentFiles(Collection<ContentFile> contentFiles) {
         if (!this.contentFiles.isEmpty()) {
+            beforeChange();
             this.contentFiles.removeAll(contentFiles);
         }
     }
@@ -273,7 +283,121 @@ public class VirtualFileGroup implements Serializable {
     }
 
     public void setMainGroup(boolean mainGroup) {
+        beforeChange();
         this.mainGroup = mainGroup;
     }
 
+    public void setIgnoreConfiguredMimetypeAndSuffix(boolean ignoreConfiguredMimetypeAndSuffix) {
+        beforeChange();
+        this.ignoreConfiguredMimetypeAndSuffix = ignoreConfiguredMimetypeAndSuffix;
+    }
+
+    public void setFileExtensionsToIgnore(String fileExtensionsToIgnore) {
+        beforeChange();
+        this.fileExtensionsToIgnore = fileExtensionsToIgnore;
+    }
+
+    public void setSingleFile(boolean singleFile) {
+        beforeChange();
+        this.singleFile = singleFile;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Replaces the file list of a deserialized VirtualFileGroup by a ContentFileList, the list is serialized as an ArrayList.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    private Object readResolve() {
+        if (this.contentFiles != ALL_FILES && this.contentFiles != null && !(this.contentFiles instanceof ContentFileList)) {
+            this.contentFiles = new ContentFileList(this.contentFiles);
+        }
+        return this;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies this VirtualFileGroup for the DigitalDocumentCopier.
+     * </p>
+     * 
+     * @param copier
+     * @return
+     **************************************************************************/
+    VirtualFileGroup deepCopy(DigitalDocumentCopier copier) {
+
+        VirtualFileGroup copy = new VirtualFileGroup();
+        copier.register(this, copy);
+
+        copyFields(copy);
+        if (this.contentFiles == ALL_FILES) {
+            copy.contentFiles = ALL_FILES;
+        } else {
+            copy.contentFiles = copier.copyList(this.contentFiles, copier::copy);
+        }
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the fields of this VirtualFileGroup with a copy of its file list, the files are not copied; used to preserve the state for a snapshot.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    VirtualFileGroup shallowCopy() {
+
+        VirtualFileGroup state = new VirtualFileGroup();
+        copyFields(state);
+        state.contentFiles = (this.contentFiles == ALL_FILES ? ALL_FILES : DigitalDocumentCopier.copyOf(this.contentFiles));
+
+        return state;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the fields of this VirtualFileGroup to the state preserved in a snapshot, which is restored.
+     * </p>
+     * 
+     * @param state
+     **************************************************************************/
+    void restoreState(VirtualFileGroup state) {
+        state.copyFields(this);
+        this.contentFiles = state.contentFiles;
+    }
+
+    /***************************************************************************
+     * @param document the document, whose snapshots track the changes of this VirtualFileGroup
+     **************************************************************************/
+    void trackChangesFor(DigitalDocument document) {
+        this.digdoc = document;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Preserves the current state of this VirtualFileGroup in the open snapshots of its document. Must be called by all changing methods before
+     * the change is made.
+     * </p>
+     **************************************************************************/
+    private void beforeChange() {
+        if (this.digdoc != null) {
+            this.digdoc.preserve(this);
+        }
+    }
+
+    /***************************************************************************
+     * @param target the group to copy all fields except the file list to
+     **************************************************************************/
+    private void copyFields(VirtualFileGroup target) {
+        target.name = this.name;
+        target.pathToFiles = this.pathToFiles;
+        target.mimetype = this.mimetype;
+        target.fileSuffix = this.fileSuffix;
+        target.idSuffix = this.idSuffix;
+        target.mainGroup = this.mainGroup;
+        target.ignoreConfiguredMimetypeAndSuffix = this.ignoreConfiguredMimetypeAndSuffix;
+        target.fileExtensionsToIgnore = this.fileExtensionsToIgnore;
+        target.singleFile = this.singleFile;
+    }
 }
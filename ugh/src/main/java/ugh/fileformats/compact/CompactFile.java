@@ -0,0 +1,244 @@
+package ugh.fileformats.compact;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.transform.TransformerException;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DigitalDocument;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.ReadException;
+import ugh.exceptions.UGHException;
+import ugh.exceptions.WriteException;
+
+/*******************************************************************************
+ * <p>
+ * Stores a DigitalDocument in a compact binary format, for fast sequential reading and writing through NIO channels. The format is meant for
+ * caching and transferring documents between applications using the same ruleset, not for archiving; use METS/MODS for that.
+ * </p>
+ * <p>
+ * The whole object graph is stored: both DocStruct trees with their metadata, persons, corporates and metadata groups, the FileSet with its
+ * content files and virtual file groups, the links between DocStructs and content files, the references between DocStructs, and the technical
+ * metadata with the AmdSecs. Shared objects are written once and referenced by their number. Every string is written once and referenced by its
+ * number in the string table afterwards, this includes the names of the DocStructTypes, MetadataTypes and MetadataGroupTypes, which are resolved
+ * against the Prefs when reading. The numbers are written as variable length quantities.
+ * </p>
+ * <p>
+ * The objects are restored with the same methods the other file formats use, so the document must be valid for the ruleset it is read with.
+ * </p>
+ ******************************************************************************/
+@Log4j2
+public class CompactFile implements ugh.dl.Fileformat {
+
+    // The first bytes of every compact document.
+    static final byte[] MAGIC = "UGHC".getBytes(StandardCharsets.US_ASCII);
+    // Must be increased on every incompatible change of the format.
+    static final int FORMAT_VERSION = 1;
+
+    private DigitalDocument digdoc = null;
+    private Prefs myPreferences;
+
+    public CompactFile() {
+    }
+
+    /***************************************************************************
+     * @param thePrefs
+     **************************************************************************/
+    public CompactFile(Prefs thePrefs) {
+        this.myPreferences = thePrefs;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#read(java.lang.String)
+     */
+    @Override
+    public boolean read(String filename) throws ReadException {
+
+        log.info("Reading compact document '" + filename + "'");
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            read(channel);
+        } catch (IOException e) {
+            String message = "Can't read file '" + filename + "'!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+
+        log.info("Reading compact document complete");
+
+        return true;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads a DigitalDocument from a channel. The channel is not closed.
+     * </p>
+     *
+     * @param channel
+     * @return true
+     * @throws ReadException
+     **************************************************************************/
+    @Override
+    public boolean read(ReadableByteChannel channel) throws ReadException {
+
+        if (this.myPreferences == null) {
+            String message = "No Prefs set to read the compact document with!";
+            log.error(message);
+            throw new ReadException(message);
+        }
+
+        try {
+            this.digdoc = new CompactReader(this.myPreferences, channel).readDocument();
+        } catch (ReadException e) {
+            log.error(e.getMessage(), e);
+            throw e;
+        } catch (IOException | UGHException e) {
+            String message = "Can't read compact document!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#read(java.io.InputStream)
+     */
+    @Override
+    public boolean read(InputStream in) throws ReadException {
+        return read(Channels.newChannel(in));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#write(java.lang.String)
+     */
+    @Override
+    public boolean write(String filename) throws WriteException {
+
+        log.info("Writing compact document '" + filename + "'");
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            write(channel);
+        } catch (IOException e) {
+            String message = "Can't write file '" + filename + "'!";
+            log.error(message, e);
+            throw new WriteException(message, e);
+        }
+
+        log.info("Writing compact document complete");
+
+        return true;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the DigitalDocument to a channel. The channel is not closed.
+     * </p>
+     *
+     * @param channel
+     * @return true
+     * @throws WriteException
+     **************************************************************************/
+    @Override
+    public boolean write(WritableByteChannel channel) throws WriteException {
+
+        if (this.digdoc == null) {
+            String message = "No DigitalDocument set to write!";
+            log.error(message);
+            throw new WriteException(message);
+        }
+
+        try {
+            new CompactWriter(channel).writeDocument(this.digdoc);
+        } catch (IOException | TransformerException e) {
+            String message = "Can't write compact document!";
+            log.error(message, e);
+            throw new WriteException(message, e);
+        }
+
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#write(java.io.OutputStream)
+     */
+    @Override
+    public boolean write(OutputStream out) throws WriteException {
+        return write(Channels.newChannel(out));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#getDigitalDocument()
+     */
+    @Override
+    public DigitalDocument getDigitalDocument() {
+        return this.digdoc;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#update(java.lang.String)
+     */
+    @Override
+    public boolean update(String filename) {
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see ugh.dl.Fileformat#setDigitalDocument(ugh.dl.DigitalDocument)
+     */
+    @Override
+    public void setDigitalDocument(DigitalDocument inDoc) {
+        this.digdoc = inDoc;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public boolean isExportable() {
+        return false;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Compact";
+    }
+
+    @Override
+    public void setPrefs(Prefs prefs) throws PreferencesException {
+        this.myPreferences = prefs;
+    }
+
+    @Override
+    public void setGoobiID(String goobiId) {
+        // do nothing
+    }
+
+}
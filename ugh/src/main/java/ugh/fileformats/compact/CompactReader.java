@@ -0,0 +1,556 @@
+package ugh.fileformats.compact;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import ugh.dl.AmdSec;
+import ugh.dl.ContentFile;
+import ugh.dl.ContentFileArea;
+import ugh.dl.Corporate;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.FileSet;
+import ugh.dl.Md;
+import ugh.dl.Md.MdType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.MetadataGroupType;
+import ugh.dl.MetadataType;
+import ugh.dl.NamePart;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+import ugh.dl.VirtualFileGroup;
+import ugh.exceptions.ReadException;
+import ugh.exceptions.UGHException;
+import ugh.util.XmlHelper;
+
+/*******************************************************************************
+ * <p>
+ * Reads a DigitalDocument in the compact binary format of {@link CompactFile} from a channel. The channel is read into a buffer, which is
+ * refilled whenever it is empty. The type names are resolved against the Prefs; an unknown type name is an error.
+ * </p>
+ * <p>
+ * All numbers, lengths and references are checked before they are used, so a truncated or corrupt document is a ReadException, and never
+ * allocates more memory than its actual content needs.
+ * </p>
+ * <p>
+ * A reader reads a single document and must not be used by several threads.
+ * </p>
+ ******************************************************************************/
+class CompactReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The initial capacity of the lists is limited, as the counts are not
+    // trusted before the elements have been read.
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private final Prefs prefs;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // The strings read so far, by their number in the string table.
+    private final List<String> strings = new ArrayList<>();
+    // The objects, which are referenced by other objects, by their numbers.
+    private final List<Md> mds = new ArrayList<>();
+    private final List<ContentFile> files = new ArrayList<>();
+    private final List<DocStruct> docStructs = new ArrayList<>();
+
+    private DigitalDocument dd;
+
+    /***************************************************************************
+     * @param prefs
+     * @param channel
+     **************************************************************************/
+    CompactReader(Prefs prefs, ReadableByteChannel channel) {
+        this.prefs = prefs;
+        this.channel = channel;
+        this.buffer.limit(0);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads a document. The channel is not closed.
+     * </p>
+     *
+     * @return
+     * @throws IOException
+     * @throws UGHException if the header is wrong, a type is unknown, or the objects can't be restored
+     **************************************************************************/
+    DigitalDocument readDocument() throws IOException, UGHException {
+
+        byte[] magic = new byte[CompactFile.MAGIC.length];
+        readBytes(magic);
+        if (!Arrays.equals(magic, CompactFile.MAGIC)) {
+            throw new ReadException("Not a compact document");
+        }
+        int version = readInt();
+        if (version != CompactFile.FORMAT_VERSION) {
+            throw new ReadException("Unsupported compact format version " + version);
+        }
+
+        this.dd = new DigitalDocument();
+
+        int mdCount = readCount();
+        for (int i = 0; i < mdCount; i++) {
+            String id = readString();
+            String typeName = readString();
+            String content = readString();
+            Md md = new Md(content == null ? null : parse(content).getDocumentElement(), typeName == null ? null : readMdType(typeName));
+            md.setId(id);
+            this.mds.add(md);
+        }
+
+        AmdSec amdSec = null;
+        if (readBoolean()) {
+            amdSec = readAmdSec();
+            this.dd.setAmdSec(amdSec);
+        }
+        if (readBoolean()) {
+            readFileSet();
+        }
+
+        if (readBoolean()) {
+            this.dd.setLogicalDocStruct(readDocStruct(amdSec));
+        }
+        if (readBoolean()) {
+            this.dd.setPhysicalDocStruct(readDocStruct(amdSec));
+        }
+
+        int referenceCount = readCount();
+        for (int i = 0; i < referenceCount; i++) {
+            DocStruct source = get(this.docStructs, readInt(), "DocStruct");
+            DocStruct target = get(this.docStructs, readInt(), "DocStruct");
+            source.addReferenceTo(target, readString());
+        }
+
+        return this.dd;
+    }
+
+    /***************************************************************************
+     * Technical metadata.
+     **************************************************************************/
+
+    private static Document parse(String xml) throws IOException, ReadException {
+        try {
+            return XmlHelper.getDocumentBuilder(true).parse(new InputSource(new StringReader(xml)));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new ReadException("Can't parse technical metadata", e);
+        }
+    }
+
+    private static MdType readMdType(String name) throws ReadException {
+        try {
+            return MdType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new ReadException("Unknown technical metadata type '" + name + "'", e);
+        }
+    }
+
+    private List<Md> readMds() throws IOException, ReadException {
+        int count = readOptionalCount();
+        if (count < 0) {
+            return null;
+        }
+        List<Md> result = newList(count);
+        for (int i = 0; i < count; i++) {
+            result.add(get(this.mds, readInt(), "technical metadata"));
+        }
+        return result;
+    }
+
+    private AmdSec readAmdSec() throws IOException, ReadException {
+        String id = readString();
+        List<Md> techMds = readMds();
+        AmdSec amdSec = new AmdSec(techMds == null ? new ArrayList<>() : techMds);
+        amdSec.setId(id);
+        return amdSec;
+    }
+
+    /***************************************************************************
+     * Content files.
+     **************************************************************************/
+
+    private void readFileSet() throws IOException, UGHException {
+
+        FileSet fileSet = new FileSet();
+        for (Metadata md : readMetadataList()) {
+            fileSet.addMetadata(md);
+        }
+
+        int fileCount = readCount();
+        for (int i = 0; i < fileCount; i++) {
+            ContentFile cf = new ContentFile();
+            cf.setLocation(readString());
+            cf.setMimeType(readString());
+            cf.setIdentifier(readString());
+            cf.setRepresentative(readBoolean());
+            int uuidCount = readCount();
+            for (int j = 0; j < uuidCount; j++) {
+                cf.addUUID(readString(), readString());
+            }
+            List<Md> techMds = readMds();
+            if (techMds != null) {
+                cf.setTechMds(techMds);
+            }
+            for (Metadata md : readMetadataList()) {
+                cf.addMetadata(md);
+            }
+            fileSet.addFile(cf);
+            this.files.add(cf);
+        }
+
+        int groupCount = readCount();
+        for (int i = 0; i < groupCount; i++) {
+            VirtualFileGroup vfg = new VirtualFileGroup();
+            vfg.setName(readString());
+            vfg.setPathToFiles(readString());
+            vfg.setMimetype(readString());
+            vfg.setFileSuffix(readString());
+            vfg.setIdSuffix(readString());
+            vfg.setMainGroup(readBoolean());
+            vfg.setIgnoreConfiguredMimetypeAndSuffix(readBoolean());
+            vfg.setFileExtensionsToIgnore(readString());
+            vfg.setSingleFile(readBoolean());
+            int count = readOptionalCount();
+            if (count >= 0) {
+                vfg.restrictFiles();
+                for (int j = 0; j < count; j++) {
+                    vfg.addContentFile(get(this.files, readInt(), "content file"));
+                }
+            }
+            fileSet.addVirtualFileGroup(vfg);
+        }
+
+        this.dd.setFileSet(fileSet);
+    }
+
+    /***************************************************************************
+     * DocStructs.
+     **************************************************************************/
+
+    private DocStruct readDocStruct(AmdSec documentAmdSec) throws IOException, UGHException {
+
+        String typeName = readString();
+        DocStructType type = this.prefs.getDocStrctTypeByName(typeName);
+        if (type == null) {
+            throw new ReadException("Unknown DocStructType '" + typeName + "'");
+        }
+        DocStruct ds = this.dd.createDocStruct(type);
+        this.docStructs.add(ds);
+
+        ds.setIdentifier(readString());
+        ds.setLogical(readBoolean());
+        ds.setPhysical(readBoolean());
+        ds.setReferenceToAnchor(readString());
+        ds.setDocstructType(readString());
+        ds.setAdmId(readString());
+        ds.setAdditionalValue(readString());
+        ds.setOrderLabel(readString());
+        ds.setLink(readString());
+
+        switch (readInt()) {
+            case 1 -> ds.setAmdSec(documentAmdSec);
+            case 2 -> ds.setAmdSec(readAmdSec());
+            default -> {
+                // No AmdSec.
+            }
+        }
+        ds.setTechMds(readMds());
+
+        for (Metadata md : readMetadataList()) {
+            ds.addMetadata(md);
+        }
+        for (Person p : readPersons()) {
+            ds.addPerson(p);
+        }
+        for (Corporate c : readCorporates()) {
+            ds.addCorporate(c);
+        }
+        for (MetadataGroup group : readGroups()) {
+            ds.addMetadataGroup(group);
+        }
+
+        int refCount = readCount();
+        for (int i = 0; i < refCount; i++) {
+            ContentFile cf = get(this.files, readInt(), "content file");
+            ContentFileArea area = null;
+            if (readBoolean()) {
+                area = new ContentFileArea();
+                area.setType(readString());
+                area.setFrom(readString());
+                area.setTo(readString());
+            }
+            ds.addContentFile(cf, area);
+        }
+
+        int childCount = readCount();
+        for (int i = 0; i < childCount; i++) {
+            ds.addChild(readDocStruct(documentAmdSec));
+        }
+
+        return ds;
+    }
+
+    /***************************************************************************
+     * Metadata.
+     **************************************************************************/
+
+    private MetadataType readMetadataType() throws IOException, ReadException {
+        String name = readString();
+        MetadataType type = this.prefs.getMetadataTypeByName(name);
+        if (type == null) {
+            throw new ReadException("Unknown MetadataType '" + name + "'");
+        }
+        return type;
+    }
+
+    private List<Metadata> readMetadataList() throws IOException, UGHException {
+        int count = readCount();
+        List<Metadata> result = newList(count);
+        for (int i = 0; i < count; i++) {
+            Metadata md = new Metadata(readMetadataType());
+            readMetadataFields(md);
+            result.add(md);
+        }
+        return result;
+    }
+
+    private void readMetadataFields(Metadata md) throws IOException, ReadException {
+        md.setValue(readString());
+        String valueQualifier = readString();
+        String valueQualifierType = readString();
+        if (valueQualifier != null || valueQualifierType != null) {
+            md.setValueQualifier(valueQualifier, valueQualifierType);
+        }
+        md.setAuthorityID(readString());
+        md.setAuthorityURI(readString());
+        md.setAuthorityValue(readString());
+        md.setAccessRestrict(readBoolean());
+        int uriCount = readCount();
+        for (int i = 0; i < uriCount; i++) {
+            md.getAuthorityUriMap().put(readString(), readString());
+        }
+    }
+
+    private List<Person> readPersons() throws IOException, UGHException {
+        int count = readCount();
+        List<Person> result = newList(count);
+        for (int i = 0; i < count; i++) {
+            Person p = new Person(readMetadataType());
+            readMetadataFields(p);
+            p.setFirstname(readString());
+            p.setLastname(readString());
+            p.setDisplayname(readString());
+            p.setAffiliation(readString());
+            p.setInstitution(readString());
+            p.setRole(readString());
+            p.setPersontype(readString());
+            p.setAdditionalNameParts(readNameParts());
+            result.add(p);
+        }
+        return result;
+    }
+
+    private List<Corporate> readCorporates() throws IOException, UGHException {
+        int count = readCount();
+        List<Corporate> result = newList(count);
+        for (int i = 0; i < count; i++) {
+            Corporate c = new Corporate(readMetadataType());
+            readMetadataFields(c);
+            c.setMainName(readString());
+            List<NamePart> subNames = readNameParts();
+            c.setSubNames(subNames == null ? new ArrayList<>() : subNames);
+            c.setPartName(readString());
+            c.setRole(readString());
+            result.add(c);
+        }
+        return result;
+    }
+
+    private List<NamePart> readNameParts() throws IOException, ReadException {
+        int count = readOptionalCount();
+        if (count < 0) {
+            return null;
+        }
+        List<NamePart> result = newList(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new NamePart(readString(), readString()));
+        }
+        return result;
+    }
+
+    private List<MetadataGroup> readGroups() throws IOException, UGHException {
+        int count = readCount();
+        List<MetadataGroup> result = newList(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString();
+            MetadataGroupType type = this.prefs.getMetadataGroupTypeByName(name);
+            if (type == null) {
+                throw new ReadException("Unknown MetadataGroupType '" + name + "'");
+            }
+            MetadataGroup group = new MetadataGroup(type);
+            group.setIdentifier(readString());
+            for (Metadata md : readMetadataList()) {
+                group.addMetadata(md);
+            }
+            for (Person p : readPersons()) {
+                group.addPerson(p);
+            }
+            for (Corporate c : readCorporates()) {
+                group.addCorporate(c);
+            }
+            for (MetadataGroup subGroup : readGroups()) {
+                group.addMetadataGroup(subGroup);
+            }
+            result.add(group);
+        }
+        return result;
+    }
+
+    /***************************************************************************
+     * Decoding, see CompactWriter.
+     **************************************************************************/
+
+    private int readInt() throws IOException, ReadException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ReadException("Malformed number in compact document");
+    }
+
+    /***************************************************************************
+     * @return the number of elements of a list, which is never negative
+     **************************************************************************/
+    private int readCount() throws IOException, ReadException {
+        int count = readInt();
+        if (count < 0) {
+            throw new ReadException("Negative count " + count + " in compact document");
+        }
+        return count;
+    }
+
+    /***************************************************************************
+     * @return the number of elements of a list, or -1 for no list
+     **************************************************************************/
+    private int readOptionalCount() throws IOException, ReadException {
+        int count = readInt();
+        if (count < -1) {
+            throw new ReadException("Negative count " + count + " in compact document");
+        }
+        return count;
+    }
+
+    private static <T> List<T> newList(int count) {
+        return new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+    }
+
+    /***************************************************************************
+     * @return the object with the given number, which must have been read before
+     **************************************************************************/
+    private static <T> T get(List<T> objects, int index, String kind) throws ReadException {
+        if (index < 0 || index >= objects.size()) {
+            throw new ReadException("Unknown " + kind + " " + index + " in compact document");
+        }
+        return objects.get(index);
+    }
+
+    private boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    private String readString() throws IOException, ReadException {
+        int index = readInt();
+        if (index == 0) {
+            return null;
+        }
+        if (index < 0) {
+            throw new ReadException("Unknown string " + index + " in compact document");
+        }
+        if (index > 1) {
+            return get(this.strings, index - 2, "string");
+        }
+        byte[] bytes = readBytes(readCount());
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        this.strings.add(value);
+        return value;
+    }
+
+    private byte readByte() throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            fill();
+        }
+        return this.buffer.get();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads the given number of bytes. Long arrays are only allocated as far as the channel actually has the bytes, so a corrupt length ends with
+     * an EOFException instead of a huge allocation.
+     * </p>
+     **************************************************************************/
+    private byte[] readBytes(int length) throws IOException {
+        if (length <= BUFFER_SIZE) {
+            byte[] bytes = new byte[length];
+            readBytes(bytes);
+            return bytes;
+        }
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int offset = 0;
+        while (offset < length) {
+            if (offset == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            if (!this.buffer.hasRemaining()) {
+                fill();
+            }
+            int chunk = Math.min(this.buffer.remaining(), bytes.length - offset);
+            this.buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+        return bytes;
+    }
+
+    private void readBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!this.buffer.hasRemaining()) {
+                fill();
+            }
+            int length = Math.min(this.buffer.remaining(), bytes.length - offset);
+            this.buffer.get(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void fill() throws IOException {
+        this.buffer.clear();
+        int read = 0;
+        while (read == 0) {
+            read = this.channel.read(this.buffer);
+        }
+        this.buffer.flip();
+        if (read < 0) {
+            throw new EOFException("Unexpected end of compact document");
+        }
+    }
+
+}
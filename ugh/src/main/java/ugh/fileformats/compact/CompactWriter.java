@@ -0,0 +1,475 @@
+package ugh.fileformats.compact;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.TransformerException;
+
+import ugh.dl.AmdSec;
+import ugh.dl.ContentFile;
+import ugh.dl.ContentFileArea;
+import ugh.dl.ContentFileReference;
+import ugh.dl.Corporate;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.FileSet;
+import ugh.dl.Md;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.NamePart;
+import ugh.dl.Person;
+import ugh.dl.Reference;
+import ugh.dl.VirtualFileGroup;
+import ugh.util.XmlHelper;
+
+/*******************************************************************************
+ * <p>
+ * Writes a DigitalDocument in the compact binary format of {@link CompactFile} to a channel. The bytes are collected in a buffer, which is
+ * written to the channel whenever it is full.
+ * </p>
+ * <p>
+ * A writer writes a single document and must not be used by several threads.
+ * </p>
+ ******************************************************************************/
+class CompactWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // The strings written so far, by their number in the string table.
+    private final Map<String, Integer> strings = new HashMap<>();
+    // The numbers of the objects, which are referenced by other objects, and
+    // the objects in the order of their numbers.
+    private final Map<Md, Integer> mds = new IdentityHashMap<>();
+    private final List<Md> mdList = new ArrayList<>();
+    private final Map<ContentFile, Integer> files = new IdentityHashMap<>();
+    private final Map<DocStruct, Integer> docStructs = new IdentityHashMap<>();
+    private final List<DocStruct> docStructList = new ArrayList<>();
+
+    /***************************************************************************
+     * @param channel
+     **************************************************************************/
+    CompactWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the document and flushes the buffer. The channel is not closed.
+     * </p>
+     *
+     * @param dd
+     * @throws IOException
+     * @throws TransformerException if a technical metadata node can't be serialized
+     **************************************************************************/
+    void writeDocument(DigitalDocument dd) throws IOException, TransformerException {
+
+        this.buffer.put(CompactFile.MAGIC);
+        writeInt(CompactFile.FORMAT_VERSION);
+
+        // The technical metadata first, the AmdSecs, content files and
+        // DocStructs refer to them.
+        AmdSec amdSec = dd.getAmdSec();
+        if (amdSec != null) {
+            collectMds(amdSec.getTechMdList());
+        }
+        FileSet fileSet = dd.getFileSet();
+        if (fileSet != null) {
+            for (ContentFile cf : fileSet.getAllFiles()) {
+                collectMds(cf.getTechMds());
+            }
+        }
+        collectMds(dd.getLogicalDocStruct());
+        collectMds(dd.getPhysicalDocStruct());
+        writeInt(this.mdList.size());
+        for (Md md : this.mdList) {
+            writeString(md.getId());
+            writeString(md.getType() == null ? null : md.getType().name());
+            writeString(md.getContent() == null ? null : XmlHelper.toString(md.getContent()));
+        }
+
+        writeAmdSec(amdSec);
+        writeFileSet(fileSet);
+
+        writeDocStructTree(dd.getLogicalDocStruct(), amdSec);
+        writeDocStructTree(dd.getPhysicalDocStruct(), amdSec);
+
+        // The references after all DocStructs are numbered. Every reference
+        // is written once, as reference to another DocStruct.
+        List<Reference> references = new ArrayList<>();
+        for (DocStruct ds : this.docStructList) {
+            for (Reference ref : ds.getAllToReferences()) {
+                if (ref.getSource() != null && ref.getTarget() != null) {
+                    references.add(ref);
+                }
+            }
+        }
+        writeInt(references.size());
+        for (Reference ref : references) {
+            writeInt(docStructIndex(ref.getSource()));
+            writeInt(docStructIndex(ref.getTarget()));
+            writeString(ref.getType());
+        }
+
+        flush();
+    }
+
+    /***************************************************************************
+     * Technical metadata.
+     **************************************************************************/
+
+    private void collectMds(DocStruct ds) {
+        if (ds == null) {
+            return;
+        }
+        collectMds(ds.getTechMds());
+        if (ds.getAmdSec() != null) {
+            collectMds(ds.getAmdSec().getTechMdList());
+        }
+        if (ds.getAllChildren() != null) {
+            for (DocStruct child : ds.getAllChildren()) {
+                collectMds(child);
+            }
+        }
+    }
+
+    private void collectMds(List<Md> list) {
+        if (list != null) {
+            for (Md md : list) {
+                if (this.mds.putIfAbsent(md, this.mdList.size()) == null) {
+                    this.mdList.add(md);
+                }
+            }
+        }
+    }
+
+    private void writeMds(List<Md> list) throws IOException {
+        if (list == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(list.size());
+        for (Md md : list) {
+            writeInt(this.mds.get(md));
+        }
+    }
+
+    private void writeAmdSec(AmdSec amdSec) throws IOException {
+        writeBoolean(amdSec != null);
+        if (amdSec != null) {
+            writeString(amdSec.getId());
+            writeMds(amdSec.getTechMdList());
+        }
+    }
+
+    /***************************************************************************
+     * Content files.
+     **************************************************************************/
+
+    private void writeFileSet(FileSet fileSet) throws IOException {
+        writeBoolean(fileSet != null);
+        if (fileSet == null) {
+            return;
+        }
+
+        writeMetadataList(fileSet.getAllMetadata());
+
+        List<ContentFile> allFiles = fileSet.getAllFiles();
+        writeInt(allFiles.size());
+        for (ContentFile cf : allFiles) {
+            this.files.putIfAbsent(cf, this.files.size());
+            writeString(cf.getLocation());
+            writeString(cf.getMimeType());
+            writeString(cf.getIdentifier());
+            writeBoolean(cf.isRepresentative());
+            writeInt(cf.getUuidMap().size());
+            for (Map.Entry<String, String> uuid : cf.getUuidMap().entrySet()) {
+                writeString(uuid.getKey());
+                writeString(uuid.getValue());
+            }
+            writeMds(cf.getTechMds());
+            writeMetadataList(cf.getAllMetadata());
+        }
+
+        List<VirtualFileGroup> groups = fileSet.getVirtualFileGroups();
+        writeInt(groups == null ? 0 : groups.size());
+        for (VirtualFileGroup vfg : groups == null ? List.<VirtualFileGroup> of() : groups) {
+            writeString(vfg.getName());
+            writeString(vfg.getPathToFiles());
+            writeString(vfg.getMimetype());
+            writeString(vfg.getFileSuffix());
+            writeString(vfg.getIdSuffix());
+            writeBoolean(vfg.isMainGroup());
+            writeBoolean(vfg.isIgnoreConfiguredMimetypeAndSuffix());
+            writeString(vfg.getFileExtensionsToIgnore());
+            writeBoolean(vfg.isSingleFile());
+            if (vfg.getContentFiles() == VirtualFileGroup.ALL_FILES) {
+                writeInt(-1);
+            } else {
+                writeInt(vfg.getContentFiles().size());
+                for (ContentFile cf : vfg.getContentFiles()) {
+                    writeInt(fileIndex(cf));
+                }
+            }
+        }
+    }
+
+    private int fileIndex(ContentFile cf) throws IOException {
+        Integer index = this.files.get(cf);
+        if (index == null) {
+            throw new IOException("Content file '" + cf.getLocation() + "' is not a member of the FileSet");
+        }
+        return index;
+    }
+
+    /***************************************************************************
+     * DocStructs.
+     **************************************************************************/
+
+    private void writeDocStructTree(DocStruct ds, AmdSec documentAmdSec) throws IOException {
+        writeBoolean(ds != null);
+        if (ds != null) {
+            writeDocStruct(ds, documentAmdSec);
+        }
+    }
+
+    private void writeDocStruct(DocStruct ds, AmdSec documentAmdSec) throws IOException {
+
+        this.docStructs.put(ds, this.docStructList.size());
+        this.docStructList.add(ds);
+
+        writeString(ds.getType() == null ? null : ds.getType().getName());
+        writeString(ds.getIdentifier());
+        writeBoolean(ds.isLogical());
+        writeBoolean(ds.isPhysical());
+        writeString(ds.getReferenceToAnchor());
+        writeString(ds.getDocstructType());
+        writeString(ds.getAdmId());
+        writeString(ds.getAdditionalValue());
+        writeString(ds.getOrderLabel());
+        writeString(ds.getLink());
+
+        // The AmdSec of a DocStruct is usually the one of the document.
+        AmdSec amdSec = ds.getAmdSec();
+        if (amdSec == null) {
+            writeInt(0);
+        } else if (amdSec == documentAmdSec) {
+            writeInt(1);
+        } else {
+            writeInt(2);
+            writeString(amdSec.getId());
+            writeMds(amdSec.getTechMdList());
+        }
+        writeMds(ds.getTechMds());
+
+        writeMetadataList(ds.getAllMetadata());
+        writePersons(ds.getAllPersons());
+        writeCorporates(ds.getAllCorporates());
+        writeGroups(ds.getAllMetadataGroups());
+
+        List<ContentFileReference> refs = ds.getAllContentFileReferences();
+        writeInt(refs == null ? 0 : refs.size());
+        if (refs != null) {
+            for (ContentFileReference cfr : refs) {
+                writeInt(fileIndex(cfr.getCf()));
+                ContentFileArea area = cfr.getCfa();
+                writeBoolean(area != null);
+                if (area != null) {
+                    writeString(area.getType());
+                    writeString(area.getFrom());
+                    writeString(area.getTo());
+                }
+            }
+        }
+
+        List<DocStruct> children = ds.getAllChildren();
+        writeInt(children == null ? 0 : children.size());
+        if (children != null) {
+            for (DocStruct child : children) {
+                writeDocStruct(child, documentAmdSec);
+            }
+        }
+    }
+
+    private int docStructIndex(DocStruct ds) throws IOException {
+        Integer index = this.docStructs.get(ds);
+        if (index == null) {
+            throw new IOException("Referenced DocStruct '" + ds.getIdentifier() + "' is not part of the document");
+        }
+        return index;
+    }
+
+    /***************************************************************************
+     * Metadata.
+     **************************************************************************/
+
+    private void writeMetadataList(List<Metadata> list) throws IOException {
+        writeInt(list == null ? 0 : list.size());
+        if (list != null) {
+            for (Metadata md : list) {
+                writeMetadataFields(md);
+            }
+        }
+    }
+
+    private void writeMetadataFields(Metadata md) throws IOException {
+        writeString(md.getType() == null ? null : md.getType().getName());
+        writeString(md.getValue());
+        writeString(md.getValueQualifier());
+        writeString(md.getValueQualifierType());
+        writeString(md.getAuthorityID());
+        writeString(md.getAuthorityURI());
+        writeString(md.getAuthorityValue());
+        writeBoolean(md.isAccessRestrict());
+        Map<String, String> uris = md.getAuthorityUriMap();
+        writeInt(uris == null ? 0 : uris.size());
+        if (uris != null) {
+            for (Map.Entry<String, String> uri : uris.entrySet()) {
+                writeString(uri.getKey());
+                writeString(uri.getValue());
+            }
+        }
+    }
+
+    private void writePersons(List<Person> list) throws IOException {
+        writeInt(list == null ? 0 : list.size());
+        if (list != null) {
+            for (Person p : list) {
+                writeMetadataFields(p);
+                writeString(p.getFirstname());
+                writeString(p.getLastname());
+                writeString(p.getDisplayname());
+                writeString(p.getAffiliation());
+                writeString(p.getInstitution());
+                writeString(p.getRole());
+                writeString(p.getPersontype());
+                writeNameParts(p.getAdditionalNameParts());
+            }
+        }
+    }
+
+    private void writeCorporates(List<Corporate> list) throws IOException {
+        writeInt(list == null ? 0 : list.size());
+        if (list != null) {
+            for (Corporate c : list) {
+                writeMetadataFields(c);
+                writeString(c.getMainName());
+                writeNameParts(c.getSubNames());
+                writeString(c.getPartName());
+                writeString(c.getRole());
+            }
+        }
+    }
+
+    private void writeNameParts(List<NamePart> list) throws IOException {
+        if (list == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(list.size());
+        for (NamePart part : list) {
+            writeString(part.getType());
+            writeString(part.getValue());
+        }
+    }
+
+    private void writeGroups(List<MetadataGroup> list) throws IOException {
+        writeInt(list == null ? 0 : list.size());
+        if (list != null) {
+            for (MetadataGroup group : list) {
+                writeString(group.getType() == null ? null : group.getType().getName());
+                writeString(group.getIdentifier());
+                writeMetadataList(group.getMetadataList());
+                writePersons(group.getPersonList());
+                writeCorporates(group.getCorporateList());
+                writeGroups(group.getAllMetadataGroups());
+            }
+        }
+    }
+
+    /***************************************************************************
+     * Encoding.
+     **************************************************************************/
+
+    /***************************************************************************
+     * <p>
+     * Writes an int as variable length quantity, seven bits per byte. Small non-negative numbers take a single byte, -1 takes five.
+     * </p>
+     *
+     * @param value
+     * @throws IOException
+     **************************************************************************/
+    private void writeInt(int value) throws IOException {
+        ensureCapacity(5);
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            this.buffer.put((byte) ((rest & 0x7F) | 0x80));
+            rest >>>= 7;
+        }
+        this.buffer.put((byte) rest);
+    }
+
+    private void writeBoolean(boolean value) throws IOException {
+        ensureCapacity(1);
+        this.buffer.put((byte) (value ? 1 : 0));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes a string to the string table. A string is written once, when it is first used: 0 stands for null, 1 for a new string, followed by its
+     * UTF-8 length and bytes; every other number n is the string number n - 2 of the table.
+     * </p>
+     *
+     * @param value
+     * @throws IOException
+     **************************************************************************/
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeInt(0);
+            return;
+        }
+        Integer index = this.strings.get(value);
+        if (index != null) {
+            writeInt(index + 2);
+            return;
+        }
+        this.strings.put(value, this.strings.size());
+        writeInt(1);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        if (bytes.length <= this.buffer.capacity()) {
+            ensureCapacity(bytes.length);
+            this.buffer.put(bytes);
+        } else {
+            flush();
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                this.channel.write(large);
+            }
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (this.buffer.remaining() < length) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+}
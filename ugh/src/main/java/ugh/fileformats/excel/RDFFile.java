@@ -25,6 +25,8 @@ package ugh.fileformats.excel;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -48,6 +50,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
@@ -182,6 +185,12 @@ public class RDFFile implements ugh.dl.Fileformat {
      **************************************************************************/
     public RDFFile(ugh.dl.Prefs inPrefs) throws PreferencesException {
 
+        // Reading adds metadata types to the prefs, which a shared instance
+        // doesn't allow; fail now instead of in the middle of reading.
+        if (inPrefs.isReadOnly()) {
+            throw new UnsupportedOperationException("Can't read RDF files with shared preferences! Use a Prefs instance of its own.");
+        }
+
         this.myPreferences = inPrefs;
         this.rdfNamesMD = new Hashtable<>();
         this.rdfNamesDS = new Hashtable<>();
@@ -213,6 +222,27 @@ public class RDFFile implements ugh.dl.Fileformat {
      */
     @Override
     public boolean read(String filename) throws ReadException {
+        return read(new InputSource(new File(filename).toURI().toASCIIString()));
+    }
+
+    /*
+     * Reads from a stream, which is not closed.
+     * 
+     * (non-Javadoc)
+     * 
+     * @see ugh.dl.Fileformat#read(java.io.InputStream)
+     */
+    @Override
+    public boolean read(InputStream in) throws ReadException {
+        return read(new InputSource(in));
+    }
+
+    /***************************************************************************
+     * @param source
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    private boolean read(InputSource source) throws ReadException {
 
         Document document;
         NodeList childlist;
@@ -233,7 +263,7 @@ public class RDFFile implements ugh.dl.Fileformat {
         // Read RDF file and parse it.
         try {
             DocumentBuilder builder = factory.newDocumentBuilder();
-            document = builder.parse(new File(filename));
+            document = builder.parse(source);
         } catch (SAXParseException e) {
             String message = "Parse error at line " + e.getLineNumber()
                     + ", URI: " + e.getSystemId();
@@ -421,6 +451,29 @@ public class RDFFile implements ugh.dl.Fileformat {
             return false;
         }
 
+        try {
+            return write(xmlFile);
+        } finally {
+            try {
+                xmlFile.close();
+            } catch (IOException e) {
+                String message = "RDF file '" + filename
+                        + "' could not be closed";
+                log.error(message, e);
+            }
+        }
+    }
+
+    /*
+     * Writes to a stream, which is not closed.
+     * 
+     * (non-Javadoc)
+     * 
+     * @see ugh.dl.Fileformat#write(java.io.OutputStream)
+     */
+    @Override
+    public boolean write(OutputStream xmlFile) throws WriteException {
+
         try {
             // Find the implementation.
             DocumentBuilderFactory factory = DocumentBuilderFactory
@@ -445,13 +498,11 @@ public class RDFFile implements ugh.dl.Fileformat {
 
             if (this.mydoc == null) {
                 log.error("No DigitalDocument");
-                xmlFile.close();
                 return false;
             }
 
             if (this.mydoc.getLogicalDocStruct() == null) {
                 log.error("No logical DocStruct");
-                xmlFile.close();
                 return false;
             }
 
@@ -459,7 +510,6 @@ public class RDFFile implements ugh.dl.Fileformat {
             if (!writeDocStruct(rdf, this.mydoc.getLogicalDocStruct())) {
                 // Error occured while writing the RDF/XML file.
                 log.error("Error occured while writing logical docstruct");
-                xmlFile.close();
                 return false;
             }
 
@@ -467,7 +517,6 @@ public class RDFFile implements ugh.dl.Fileformat {
             if (!writePhysical(rdf)) {
                 // Error occured while writing the RDF/XML file.
                 log.error("Error occured while writing physical docstruct");
-                xmlFile.close();
                 return false;
             }
 
@@ -485,7 +534,7 @@ public class RDFFile implements ugh.dl.Fileformat {
             XMLSerializer serializer = new XMLSerializer(xmlFile, format);
             serializer.asDOMSerializer();
             serializer.serialize(domdoc);
-            xmlFile.close();
+            xmlFile.flush();
         } catch (FactoryConfigurationError e) {
             String message = "Could not locate a JAXP factory class";
             log.error(message, e);
@@ -502,14 +551,6 @@ public class RDFFile implements ugh.dl.Fileformat {
             String message = "Could not write file due to an IOException";
             log.error(message, e);
             return false;
-        } finally {
-            try {
-                xmlFile.close();
-            } catch (IOException e) {
-                String message = "RDF file '" + filename
-                        + "' could not be closed";
-                log.error(message, e);
-            }
         }
 
         return true;
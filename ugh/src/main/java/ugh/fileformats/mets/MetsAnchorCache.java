@@ -0,0 +1,218 @@
+package ugh.fileformats.mets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.exceptions.ReadException;
+
+/*******************************************************************************
+ * <p>
+ * Cache for anchor DocStructs read from METS anchor files. Reading a volume or an issue of a multi-volume work or a periodical reads the
+ * anchor file to get the anchor DocStruct; with a cache, which is shared between the {@link MetsMods} instances, each anchor file is only
+ * parsed once, until it is changed.
+ * </p>
+ * <p>
+ * The anchors are stored by the canonical path and the modification time of the anchor file, the identifier of the anchor and the Prefs they
+ * were read with. The cache holds at most the given number of anchors, and evicts the least recently used ones. The cached DocStructs are
+ * copies of the anchors without children and are never handed out, the MetsMods copy them again for every read.
+ * </p>
+ * <p>
+ * The cache can be used by several threads. Anchors are read outside of the lock, so different anchor files are read in parallel.
+ * </p>
+ ******************************************************************************/
+public class MetsAnchorCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 100;
+
+    private final Map<Key, DocStruct> anchors = new LinkedHashMap<>(16, 0.75f, true);
+    private int maximumSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /***************************************************************************
+     * <p>
+     * Creates a cache for {@value #DEFAULT_MAXIMUM_SIZE} anchors.
+     * </p>
+     **************************************************************************/
+    public MetsAnchorCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /***************************************************************************
+     * @param maximumSize the maximum number of cached anchors
+     **************************************************************************/
+    public MetsAnchorCache(int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the anchor with the given identifier from the given anchor file. If it is not cached, it is read with the given loader and added to
+     * the cache.
+     * </p>
+     *
+     * @param anchorFilename
+     * @param identifier
+     * @param prefs
+     * @param loader reads the anchor DocStruct, returns null, if the file contains no anchor with the identifier
+     * @return the cached anchor; must not be changed by the caller
+     * @throws ReadException
+     **************************************************************************/
+    DocStruct getAnchor(String anchorFilename, String identifier, Prefs prefs, AnchorLoader loader) throws ReadException {
+
+        File anchorFile = new File(anchorFilename);
+        Key key = new Key(getCanonicalPath(anchorFile), anchorFile.lastModified(), identifier, prefs);
+
+        synchronized (this) {
+            DocStruct anchor = this.anchors.get(key);
+            if (anchor != null) {
+                this.hits.increment();
+                return anchor;
+            }
+        }
+
+        this.misses.increment();
+        DocStruct loaded = loader.load();
+        if (loaded == null) {
+            return null;
+        }
+        // Keep a copy without parent and children, so the cache does not hold
+        // the whole anchor document.
+        DocStruct anchor = loaded.copy(true, false);
+        anchor.setParent(null);
+
+        synchronized (this) {
+            DocStruct cached = this.anchors.putIfAbsent(key, anchor);
+            if (cached != null) {
+                // Read by another thread at the same time.
+                return cached;
+            }
+            evict();
+        }
+
+        return anchor;
+    }
+
+    /***************************************************************************
+     * @return the maximum number of cached anchors
+     **************************************************************************/
+    public synchronized int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the maximum number of cached anchors, and evicts the least recently used anchors, if there are more. A size of 0 disables the cache.
+     * </p>
+     *
+     * @param maximumSize
+     **************************************************************************/
+    public synchronized void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The maximum size of the anchor cache must not be negative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        evict();
+    }
+
+    /***************************************************************************
+     * @return the number of cached anchors
+     **************************************************************************/
+    public synchronized int size() {
+        return this.anchors.size();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Removes all anchors from the cache. The counters are not reset.
+     * </p>
+     **************************************************************************/
+    public synchronized void clear() {
+        this.anchors.clear();
+    }
+
+    /***************************************************************************
+     * @return the number of anchors taken from the cache
+     **************************************************************************/
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /***************************************************************************
+     * @return the number of anchors, which had to be read from the anchor file
+     **************************************************************************/
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /***************************************************************************
+     * @return the number of anchors removed, because the cache was full
+     **************************************************************************/
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Removes the least recently used anchors, until the maximum size is reached. Must be called with the lock held.
+     * </p>
+     **************************************************************************/
+    private void evict() {
+        Iterator<DocStruct> iterator = this.anchors.values().iterator();
+        while (this.anchors.size() > this.maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            this.evictions.increment();
+        }
+    }
+
+    /***************************************************************************
+     * @param file
+     * @return the canonical path of the file, or the absolute path, if it can't be resolved
+     **************************************************************************/
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads an anchor DocStruct on a cache miss.
+     * </p>
+     **************************************************************************/
+    @FunctionalInterface
+    interface AnchorLoader {
+        DocStruct load() throws ReadException;
+    }
+
+    /***************************************************************************
+     * <p>
+     * The Prefs are compared by identity, the DocStructs of the cache belong to the Prefs they were read with.
+     * </p>
+     **************************************************************************/
+    private record Key(String path, long lastModified, String identifier, Prefs prefs) {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other && this.lastModified == other.lastModified && this.prefs == other.prefs && this.path.equals(other.path)
+                    && this.identifier.equals(other.identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.path.hashCode() * 31 + Long.hashCode(this.lastModified)) * 31 + this.identifier.hashCode();
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package ugh.fileformats.mets;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*******************************************************************************
+ * <p>
+ * Opens the anchor file of a METS document, for documents which are not kept in the file system, like documents in an object storage or in
+ * memory. The name of the anchor file is built from the name of the document like for files, e.g. <code>meta_anchor.xml</code> for
+ * <code>meta.xml</code>.
+ * </p>
+ *
+ * @see MetsMods#setAnchorResolver(MetsAnchorResolver)
+ ******************************************************************************/
+@FunctionalInterface
+public interface MetsAnchorResolver {
+
+    /***************************************************************************
+     * @param anchorFilename the name of the anchor file, or null, if the METS document was read without a name
+     * @return the stream of the anchor file, which is closed by the caller, or null, if there is no anchor file
+     * @throws IOException
+     **************************************************************************/
+    InputStream openAnchor(String anchorFilename) throws IOException;
+
+}
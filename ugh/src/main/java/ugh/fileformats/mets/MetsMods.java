@@ -4,8 +4,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.net.URI;
@@ -17,9 +17,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +31,10 @@ import java.util.Map.Entry;
 import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,16 +42,14 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
-import org.apache.xmlbeans.XmlOptionCharEscapeMap;
 import org.apache.xmlbeans.XmlOptions;
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -52,12 +58,6 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSSerializer;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /*******************************************************************************
  * ugh.fileformats.mets / MetsMods.java
@@ -129,6 +129,7 @@ import ugh.exceptions.ReadException;
 import ugh.exceptions.TypeNotAllowedAsChildException;
 import ugh.exceptions.TypeNotAllowedForParentException;
 import ugh.exceptions.WriteException;
+import ugh.util.XmlHelper;
 
 /*******************************************************************************
  * @author Stefan Funk
@@ -353,7 +354,7 @@ import ugh.exceptions.WriteException;
  * 
  ******************************************************************************/
 @Log4j2
-public class MetsMods implements ugh.dl.Fileformat {
+public class MetsMods implements ugh.dl.Fileformat, Cloneable {
 
     /***************************************************************************
      * VERSION STRING
@@ -514,6 +515,11 @@ public class MetsMods implements ugh.dl.Fileformat {
     protected static final String PHYS_PREFIX = "PHYS_";
     protected static final String DMDPHYS_PREFIX = "DMDPHYS_";
     protected static final String ANCHOR_XML_FILE_SUFFIX_STRING = "_anchor";
+    // Patterns for the paths of the MODS mapping.
+    private static final Pattern GROUP_BRACKETS_PATTERN = Pattern.compile("\\[(\\d)+\\]");
+    private static final Pattern SUBPATH_BRACKETS_PATTERN = Pattern.compile("\\[(.*)\\]");
+    private static final Pattern ATTRIBUTE_BRACKETS_PATTERN = Pattern.compile("\\[[^\\]]+\\]");
+    private static final Pattern PLAIN_STEP_PATTERN = Pattern.compile("([\\w.-]+):([\\w.-]+)");
     private boolean writeLocalFilegroup = true;
 
     /***************************************************************************
@@ -537,25 +543,25 @@ public class MetsMods implements ugh.dl.Fileformat {
     protected Prefs myPreferences;
 
     protected DigitalDocument digdoc = null;
-    protected int dmdidMax = 0;
-    protected int dmdidPhysMax = 0;
-    protected int amdidMax = 0;
-    protected int divlogidMax = 0;
-    protected int techidMax = 0;
-    protected int divphysidMax = 0;
-    protected int fileidMax = 0;
 
     // Contains MetadataMatchingObjects for mapping MODS to internal
     // MetadataType elements and vice versa.
     protected List<MatchingMetadataObject> modsNamesMD = new LinkedList<>();
     protected List<MatchingDocStructObject> modsNamesDS = new LinkedList<>();
 
-    protected Element metsNode = null;
-    protected Node firstDivNode = null;
-
     // A METS Helper.
     private Helper metsHelper;
 
+    // Div ID to DocStruct mappings of the logical and physical trees, used to
+    // resolve the smLinks.
+    private Map<String, DocStruct> logicalDivIndex = new HashMap<>();
+    private Map<String, DocStruct> physicalDivIndex = new HashMap<>();
+
+    // The compiled XPath expressions and parsed WriteXPaths for the current
+    // namespaces, shared with all instances using the same namespaces; null
+    // after a namespace change.
+    private volatile MetsXPathCache xPathCache;
+
     // List to store all identifiers of the anchor (Metadata objects are
     // contained in here).
     @SuppressWarnings("unused")
@@ -565,6 +571,18 @@ public class MetsMods implements ugh.dl.Fileformat {
     // Contains the valueRegExp for the reference the anchor.
     protected String valueRegExpAnchorReference = null;
     protected String valueReplacementAnchorReference = null;
+    // Cache for the anchors read from anchor files, shared with other
+    // instances; null, if every anchor file is read again.
+    private MetsAnchorCache anchorCache = null;
+    // Parse the MODS sections of the logical DocStructs on first access of
+    // their metadata instead of while reading.
+    private boolean lazyMetadata = false;
+    // Opens the anchor files; null, if they are read from the file system.
+    private MetsAnchorResolver anchorResolver = null;
+    // Number of threads parsing and building the MODS sections; 1, if they
+    // are parsed and built on the calling thread.
+    private int metadataParallelism = 1;
+    private ExecutorService metadataExecutor = null;
 
     // Default namespace URIs for some namespaces and namespace declarations.
     protected String metsNamespacePrefix;
@@ -581,10 +599,6 @@ public class MetsMods implements ugh.dl.Fileformat {
     protected String xpathForLinkToAnchor = null;
     protected String anchorIdentifierMetadataType = null;
 
-    // A hash to store some tag grouping things.
-    // This is a really dirty hack, I will fix it tomorrow! (hihi)
-    protected HashMap<String, String> replaceGroupTags = new HashMap<>();
-
     // use UUID or incremental numbers as file identifier
     protected boolean createUUIDs = false;
 
@@ -667,7 +681,6 @@ public class MetsMods implements ugh.dl.Fileformat {
         log.info("Reading METS file...");
 
         MetsDocument mets = null;
-        Mets metsElement = null;
 
         File f = new File(theFilename);
         try {
@@ -684,8 +697,70 @@ public class MetsMods implements ugh.dl.Fileformat {
             throw new ReadException(message, e);
         }
 
-        metsElement = mets.getMets();
+        return readMetsDocument(mets, theFilename);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads a METS document from a stream, which is not closed. The document has no name, so an anchor file can only be found by an anchor
+     * resolver, which is called with null as name; see {@link #read(InputStream, String)}.
+     * </p>
+     * 
+     * @param in
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    @Override
+    public boolean read(InputStream in) throws ReadException {
+        return read(in, null);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads a METS document from a stream, which is not closed. The name of the document is used like the name of a METS file to find the anchor
+     * file, which is opened by the anchor resolver, see {@link #setAnchorResolver(MetsAnchorResolver)}. The name is not opened as a file.
+     * </p>
+     * 
+     * @param in
+     * @param documentName the name of the document, like an object key; may be null
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    public boolean read(InputStream in, String documentName) throws ReadException {
+
+        log.info("Reading METS stream...");
+
+        MetsDocument mets = null;
+
+        try {
+            XmlOptions opts = new XmlOptions();
+            opts.setLoadStripWhitespace();
+            mets = MetsDocument.Factory.parse(in, opts);
+        } catch (XmlException e) {
+            String message = "Error parsing METS stream '" + documentName + "'!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        } catch (IOException e) {
+            String message = "Error accessing METS stream '" + documentName + "'!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+
+        return readMetsDocument(mets, documentName);
+    }
+
+    /***************************************************************************
+     * @param mets
+     * @param theFilename the name of the document, or null
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    private boolean readMetsDocument(MetsDocument mets, String theFilename) throws ReadException {
+
+        Mets metsElement = mets.getMets();
         this.metsHelper = new Helper(metsElement);
+        this.logicalDivIndex = new HashMap<>();
+        this.physicalDivIndex = new HashMap<>();
 
         // No digital document available yet, create one.
         if (this.getDigitalDocument() == null) {
@@ -724,7 +799,9 @@ public class MetsMods implements ugh.dl.Fileformat {
         }
 
         // Map logical and physical Document Structures.
+        long mappingStart = System.nanoTime();
         mapLogAndPhysDocStruct(metsElement);
+        log.debug("Mapping Physical and Logical DocStruct took " + (System.nanoTime() - mappingStart) / 1000000 + " ms");
 
         this.digdoc.sortMetadataRecursively(this.myPreferences);
 
@@ -776,29 +853,90 @@ public class MetsMods implements ugh.dl.Fileformat {
         }
     }
 
-    /*
-     * (non-Javadoc)
+    /***************************************************************************
+     * <p>
+     * Writes the METS document to a file, and the anchor file next to it, if the top logical DocStruct is an anchor.
+     * </p>
+     * <p>
+     * The METS node, the ID counters, the MODS sections and the grouping tags of a write are kept in a {@link MetsWriteContext}, so one instance
+     * can write in several threads at the same time. Writing sets the identifiers of the DocStructs and files, the file group LOCAL and the techMds
+     * of the files in the document, so the METS DOMs of one document are built one after the other. The IDs are numbered from the start for every
+     * write.
+     * </p>
      * 
-     * @see ugh.fileformats.mets.MetsModsGdz#write(java.lang.String)
-     */
+     * @param filename
+     * @return
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
     @Override
     public boolean write(String filename) throws WriteException, PreferencesException {
+        return writeDocument(this.digdoc, filename, null, null);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the METS document to a stream, which is not closed. Documents with an anchor need a second stream for the anchor file, see
+     * {@link #write(OutputStream, OutputStream)}.
+     * </p>
+     * 
+     * @param out
+     * @return
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    @Override
+    public boolean write(OutputStream out) throws WriteException, PreferencesException {
+        return write(out, null);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the METS document to a stream, and the anchor file to another stream, if the top logical DocStruct is an anchor. The streams are not
+     * closed. See {@link #write(String)} for writing in several threads.
+     * </p>
+     * 
+     * @param out
+     * @param anchorOut the stream for the anchor file; may be null for documents without anchor
+     * @return
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    public boolean write(OutputStream out, OutputStream anchorOut) throws WriteException, PreferencesException {
+        return writeDocument(this.digdoc, null, out, anchorOut);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the document. The document of the anchor file and the top document are passed to
+     * {@link #writeMetsMods(DigitalDocument, String, boolean, boolean)} one after the other.
+     * </p>
+     * 
+     * @param document the document of this instance, read once by the calling write method
+     * @param filename the file to write to, or null, to write to the streams
+     * @param out
+     * @param anchorOut
+     * @return
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    private boolean writeDocument(DigitalDocument document, String filename, OutputStream out, OutputStream anchorOut)
+            throws WriteException, PreferencesException {
 
         log.info("Writing METS ....");
 
         // Digital Document for the anchor.
         DigitalDocument anchorDocument = null;
         DigitalDocument topDocument = null;
-        DigitalDocument myDigDoc = this.digdoc;
 
         // Get the uppermost logical DocStruct and check if it's an
         // anchor.
-        if (this.getDigitalDocument() == null) {
+        if (document == null) {
             String message = "Can't obtain DigitalDocument! Maybe wrong preferences file?";
             log.error(message);
             throw new PreferencesException(message);
         }
-        DocStruct uppermostStruct = this.getDigitalDocument().getLogicalDocStruct();
+        DocStruct uppermostStruct = document.getLogicalDocStruct();
         DocStructType uppermostType = uppermostStruct.getType();
 
         if (uppermostType.isAnchor()) {
@@ -840,7 +978,6 @@ public class MetsMods implements ugh.dl.Fileformat {
             if (children != null && children.size() > 1) {
                 // Error; there must only be a single top-document under the
                 // anchor.
-                this.digdoc = myDigDoc;
                 throw new WriteException("More than one structure entity available; only one expected as child of an anchor!");
             }
 
@@ -848,37 +985,51 @@ public class MetsMods implements ugh.dl.Fileformat {
             // the Digital Document.
             if (children != null) {
 
-                topDocument = this.digdoc;
+                topDocument = document;
 
             }
         } else {
             // Simply write the normal DigitalDocument.
-            topDocument = this.digdoc;
+            topDocument = document;
         }
 
         boolean success = true;
         if (anchorDocument != null) {
+            if (filename == null && anchorOut == null) {
+                String message = "Top DocStruct '" + uppermostType.getName() + "' is anchor struct, but no stream for the anchor file is given!";
+                log.error(message);
+                throw new WriteException(message);
+            }
+
             // First write the anchor.
-            this.digdoc = anchorDocument;
-            String anchorfilename = buildAnchorFilename(filename);
+            if (filename != null) {
+                String anchorfilename = buildAnchorFilename(filename);
 
-            log.info("Writing anchor file '" + anchorfilename + "' from DocStruct '" + this.digdoc.getLogicalDocStruct().getType().getName() + "'");
+                log.info("Writing anchor file '" + anchorfilename + "' from DocStruct '"
+                        + anchorDocument.getLogicalDocStruct().getType().getName() + "'");
 
-            success = writeMetsMods(anchorfilename, DO_NOT_VALIDATE, IS_ANCHOR);
+                success = writeMetsMods(anchorDocument, anchorfilename, DO_NOT_VALIDATE, IS_ANCHOR);
+            } else {
+                log.info("Writing anchor stream from DocStruct '" + anchorDocument.getLogicalDocStruct().getType().getName() + "'");
+
+                success = writeMetsMods(anchorDocument, anchorOut, "Anchor stream", DO_NOT_VALIDATE, IS_ANCHOR);
+            }
 
             log.info("Anchor file written");
         }
 
         if (topDocument != null) {
-            this.digdoc = topDocument;
+            if (filename != null) {
+                log.info("Writing regular file '" + filename + "' from DocStruct '" + topDocument.getLogicalDocStruct().getType().getName() + "'");
 
-            log.info("Writing regular file '" + filename + "' from DocStruct '" + this.digdoc.getLogicalDocStruct().getType().getName() + "'");
+                success = writeMetsMods(topDocument, filename, DO_NOT_VALIDATE, IS_NOT_ANCHOR);
+            } else {
+                log.info("Writing regular stream from DocStruct '" + topDocument.getLogicalDocStruct().getType().getName() + "'");
 
-            success = writeMetsMods(filename, DO_NOT_VALIDATE, IS_NOT_ANCHOR);
+                success = writeMetsMods(topDocument, out, "Stream", DO_NOT_VALIDATE, IS_NOT_ANCHOR);
+            }
         }
 
-        this.digdoc = myDigDoc;
-
         log.info("Writing METS complete");
 
         return success;
@@ -993,48 +1144,44 @@ public class MetsMods implements ugh.dl.Fileformat {
 
     /***************************************************************************
      * <p>
-     * Gets a DocStruct by div ID.
+     * Builds a div ID to DocStruct index for the given DocStruct tree. Only the IDs of the related METS div or area objects are considered. If an ID
+     * occurs more than once, the first DocStruct in document order is kept.
      * </p>
      * 
-     * @param id
      * @param inStruct
      * @return
      **************************************************************************/
-    private DocStruct getDocStructByDivID(String id, DocStruct inStruct) {
+    private Map<String, DocStruct> buildDivIndex(DocStruct inStruct) {
+        Map<String, DocStruct> index = new HashMap<>();
+        addToDivIndex(inStruct, index);
+        return index;
+    }
+
+    /***************************************************************************
+     * @param inStruct
+     * @param index
+     **************************************************************************/
+    private void addToDivIndex(DocStruct inStruct, Map<String, DocStruct> index) {
 
         if (inStruct == null) {
-            return null;
+            return;
         }
 
         // Get the related METS div object.
         Object o = inStruct.getOrigObject();
-        if (o != null) {
-            if (o instanceof DivType div) {
-                if (div.getID() != null && div.getID().equals(id)) {
-                    return inStruct;
-
-                }
-            } else if (o instanceof AreaType area) {
-                // Convert object to area.
-                if (area.getID() != null && area.getID().equals(id)) {
-                    return inStruct;
-
-                }
-            }
+        if (o instanceof DivType div && div.getID() != null) {
+            index.putIfAbsent(div.getID(), inStruct);
+        } else if (o instanceof AreaType area && area.getID() != null) {
+            index.putIfAbsent(area.getID(), inStruct);
         }
 
         // Iterate over all children.
         List<DocStruct> children = inStruct.getAllChildren();
         if (children != null) {
             for (DocStruct child : children) {
-                DocStruct foundStruct = getDocStructByDivID(id, child);
-                if (foundStruct != null) {
-                    return foundStruct;
-                }
+                addToDivIndex(child, index);
             }
         }
-
-        return null;
     }
 
     /***************************************************************************
@@ -1096,7 +1243,7 @@ public class MetsMods implements ugh.dl.Fileformat {
             if (!this.myPreferences.getDocStrctTypeByName(linkFromDivType.getTYPE()).isAnchor()) {
 
                 // Get the appropriate logical DocStruct 'from' reference.
-                DocStruct foundLogicalStruct = getDocStructByDivID(linkFrom, this.digdoc.getLogicalDocStruct());
+                DocStruct foundLogicalStruct = this.logicalDivIndex.get(linkFrom);
                 if (foundLogicalStruct == null) {
                     String message = "Linked div in logical structMap with ID '" + linkFrom + "' not available";
                     log.error(message);
@@ -1104,7 +1251,7 @@ public class MetsMods implements ugh.dl.Fileformat {
                 }
 
                 // Get the appropriate physical DocStruct 'to' reference.
-                DocStruct foundPhysicalStruct = getDocStructByDivID(linkTo, this.digdoc.getPhysicalDocStruct());
+                DocStruct foundPhysicalStruct = this.physicalDivIndex.get(linkTo);
                 if (foundPhysicalStruct == null) {
                     String message = "Linked div in physical structMap with ID '" + linkTo + "' not available";
                     log.error(message);
@@ -1459,7 +1606,7 @@ public class MetsMods implements ugh.dl.Fileformat {
 
                         this.getDigitalDocument().setLogicalDocStruct(newanchor);
                     }
-                } else if (!theFilename.contains(ANCHOR_XML_FILE_SUFFIX_STRING)) {
+                } else if (theFilename != null && !theFilename.contains(ANCHOR_XML_FILE_SUFFIX_STRING)) {
                     String message = "DocStruct '" + newDocStruct.getType().getName()
                             + "' is an anchor DocStruct, but NO anchor identifier is existing for child DocStruct '"
                             + newDocStruct.getAllChildren().get(0).getType().getName() + "' in file '" + theFilename + "'!";
@@ -1467,6 +1614,9 @@ public class MetsMods implements ugh.dl.Fileformat {
                     throw new ReadException(message);
                 }
             }
+
+            // Index the final logical tree for the smLink mapping.
+            this.logicalDivIndex = buildDivIndex(this.getDigitalDocument().getLogicalDocStruct());
         } else {
             // No logical structMap available. Error - there must be at least a
             // single uppermost div containing basic bibliographic metadata e.g.
@@ -1540,9 +1690,10 @@ public class MetsMods implements ugh.dl.Fileformat {
             // Get child nodes to find the text node.
             NodeList nodelist = node.getChildNodes();
 
-            // Read anchor from separate file, if existing.
-            anchorFilename = buildAnchorFilename(filename);
-            if (!new File(anchorFilename).exists()) {
+            // Read anchor from separate file, if existing; an anchor resolver
+            // is only asked when the anchor is read.
+            anchorFilename = filename == null ? null : buildAnchorFilename(filename);
+            if (this.anchorResolver == null && (anchorFilename == null || !new File(anchorFilename).exists())) {
                 String message = "Anchor file '" + anchorFilename + "' expected due to existing anchor referenece, none found";
                 log.error(message);
                 throw new ReadException(message);
@@ -1557,44 +1708,9 @@ public class MetsMods implements ugh.dl.Fileformat {
                     log.debug("Anchor's identifier: " + identifierOfAnchor + " (" + subnode.getNodeName() + ")");
 
                     // Found the reference to the anchor.
-                    MetsMods anchorMets = null;
-                    try {
-                        anchorMets = new MetsMods(this.myPreferences);
-                    } catch (PreferencesException e) {
-                        String message = "Can't read Preferences for METS while reading the anchor file";
-                        log.error(message, e);
-                        throw new ReadException(message, e);
-                    }
-
-                    try {
-                        anchorMets.read(anchorFilename);
-                    } catch (ReadException e) {
-                        String message = "Can't read anchor file, which must be in METS format as well";
-                        log.error(message, e);
-                        throw new ReadException(message, e);
-                    }
-
-                    // Get Digital Document and first logical DocStruct (which
-                    // should be the only one).
-                    DigitalDocument anchorDocument = anchorMets.getDigitalDocument();
-                    DocStruct anchorStruct = anchorDocument.getLogicalDocStruct();
-                    List<Metadata> allMetadata = anchorStruct.getAllMetadata();
-                    // Iterate over all metadata and find an identifier with the
-                    // value of identifierOfAnchor.
-                    if (allMetadata != null) {
-                        for (Metadata md : allMetadata) {
-                            if (md.getValue() != null && md.getValue().equals(identifierOfAnchor)) {
-                                if (md.getType().isIdentifier()) {
-                                    // That's the anchor!
-                                    anchorDocStruct = anchorStruct;
-                                } else {
-                                    // Log an error, maybe only the metadata is
-                                    // not set as identifier.
-                                    log.warn("Identifier '" + md.getType().getName()
-                                            + "' found, but its type is NOT set to 'identifier' in the prefs!");
-                                }
-                            }
-                        }
+                    DocStruct anchorStruct = readAnchor(anchorFilename, identifierOfAnchor);
+                    if (anchorStruct != null) {
+                        anchorDocStruct = anchorStruct;
                     }
                 }
             }
@@ -1621,6 +1737,122 @@ public class MetsMods implements ugh.dl.Fileformat {
         return anchorDocStruct.copy(true, false);
     }
 
+    /***************************************************************************
+     * <p>
+     * Reads the anchor with the given identifier from the anchor file, or takes it from the anchor cache, if one is set.
+     * </p>
+     * 
+     * @param anchorFilename
+     * @param identifierOfAnchor
+     * @return the anchor DocStruct, or null, if the anchor file contains no anchor with the identifier
+     * @throws ReadException
+     **************************************************************************/
+    private DocStruct readAnchor(String anchorFilename, String identifierOfAnchor) throws ReadException {
+        // The cache knows files only.
+        if (this.anchorCache == null || this.anchorResolver != null) {
+            return readAnchorFile(anchorFilename, identifierOfAnchor);
+        }
+        return this.anchorCache.getAnchor(anchorFilename, identifierOfAnchor, this.myPreferences,
+                () -> readAnchorFile(anchorFilename, identifierOfAnchor));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads the anchor file and returns its logical DocStruct, if it has an identifier with the given value.
+     * </p>
+     * 
+     * @param anchorFilename
+     * @param identifierOfAnchor
+     * @return the anchor DocStruct, or null, if the anchor file contains no anchor with the identifier
+     * @throws ReadException
+     **************************************************************************/
+    private DocStruct readAnchorFile(String anchorFilename, String identifierOfAnchor) throws ReadException {
+
+        DocStruct anchorDocStruct = null;
+        MetsMods anchorMets = null;
+        try {
+            anchorMets = new MetsMods(this.myPreferences);
+        } catch (PreferencesException e) {
+            String message = "Can't read Preferences for METS while reading the anchor file";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+
+        boolean anchorFileExists;
+        try {
+            anchorFileExists = readAnchorDocument(anchorMets, anchorFilename);
+        } catch (ReadException e) {
+            String message = "Can't read anchor file, which must be in METS format as well";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+        if (!anchorFileExists) {
+            String message = "Anchor file '" + anchorFilename + "' expected due to existing anchor referenece, none found";
+            log.error(message);
+            throw new ReadException(message);
+        }
+
+        // Get Digital Document and first logical DocStruct (which
+        // should be the only one).
+        DigitalDocument anchorDocument = anchorMets.getDigitalDocument();
+        DocStruct anchorStruct = anchorDocument.getLogicalDocStruct();
+        List<Metadata> allMetadata = anchorStruct.getAllMetadata();
+        // Iterate over all metadata and find an identifier with the
+        // value of identifierOfAnchor.
+        if (allMetadata != null) {
+            for (Metadata md : allMetadata) {
+                if (md.getValue() != null && md.getValue().equals(identifierOfAnchor)) {
+                    if (md.getType().isIdentifier()) {
+                        // That's the anchor!
+                        anchorDocStruct = anchorStruct;
+                    } else {
+                        // Log an error, maybe only the metadata is
+                        // not set as identifier.
+                        log.warn("Identifier '" + md.getType().getName()
+                                + "' found, but its type is NOT set to 'identifier' in the prefs!");
+                    }
+                }
+            }
+        }
+
+        return anchorDocStruct;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads the anchor file into the given MetsMods, from the file system or from the stream opened by the anchor resolver, if one is set.
+     * </p>
+     * 
+     * @param anchorMets
+     * @param anchorFilename the name of the anchor file, or null, if the METS document has no name
+     * @return false, if there is no anchor file
+     * @throws ReadException
+     **************************************************************************/
+    protected boolean readAnchorDocument(MetsMods anchorMets, String anchorFilename) throws ReadException {
+
+        anchorMets.setAnchorResolver(this.anchorResolver);
+
+        if (this.anchorResolver == null) {
+            if (anchorFilename == null || !new File(anchorFilename).exists()) {
+                return false;
+            }
+            anchorMets.read(anchorFilename);
+            return true;
+        }
+
+        try (InputStream in = this.anchorResolver.openAnchor(anchorFilename)) {
+            if (in == null) {
+                return false;
+            }
+            anchorMets.read(in, anchorFilename);
+            return true;
+        } catch (IOException e) {
+            String message = "Can't open anchor file '" + anchorFilename + "'!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+    }
+
     /***************************************************************************
      * <p>
      * Gets the descriptive metadata section of the type "MODS" for the given DocStruct. The appropriavte DivType element must be stored in the
@@ -1748,12 +1980,39 @@ public class MetsMods implements ugh.dl.Fileformat {
     private void parseMetadataForLogicalDocStruct(DocStruct inStruct, boolean recursive)
             throws ReadException, ClassNotFoundException, InstantiationException, IllegalAccessException, XPathExpressionException {
 
+        if (recursive && !this.lazyMetadata && (this.metadataParallelism > 1 || this.metadataExecutor != null)) {
+            parseMetadataForLogicalDocStructInParallel(inStruct);
+        } else {
+            parseMetadataForLogicalDocStruct(inStruct, recursive, null, this.lazyMetadata ? copyForMetadataLoaders() : null);
+        }
+    }
+
+    /***************************************************************************
+     * @param inStruct
+     * @param recursive
+     * @param deferred if not null, the MODS sections are not parsed but collected in document order
+     * @param loaderState if not null, the MODS sections are parsed by this instance on first access, see {@link #copyForMetadataLoaders()}
+     * @throws ReadException
+     * @throws ClassNotFoundException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws XPathExpressionException
+     **************************************************************************/
+    private void parseMetadataForLogicalDocStruct(DocStruct inStruct, boolean recursive, Map<DocStruct, Node> deferred, MetsMods loaderState)
+            throws ReadException, ClassNotFoundException, InstantiationException, IllegalAccessException, XPathExpressionException {
+
         // Get the appropriate MODS-section for inStruct.
         Node modsnode = getDOMforMODSSection(inStruct);
 
         // Parse the MODS section, if not NULL; metadata are added to inStruct.
         if (modsnode != null) {
-            parseMODS(modsnode, inStruct);
+            if (loaderState != null) {
+                inStruct.setMetadataLoader(ds -> loaderState.loadMODS(modsnode, ds));
+            } else if (deferred != null) {
+                deferred.put(inStruct, modsnode);
+            } else {
+                parseMODS(modsnode, inStruct);
+            }
 
             // DocStruct has no parent, so this might have an anchor reference.
             if (inStruct.getParent() == null && this.xPathAnchorReference != null) {
@@ -1766,75 +2025,226 @@ public class MetsMods implements ugh.dl.Fileformat {
         List<DocStruct> children = inStruct.getAllChildren();
         if (recursive && children != null) {
             for (DocStruct child : children) {
-                parseMetadataForLogicalDocStruct(child, recursive);
+                parseMetadataForLogicalDocStruct(child, recursive, deferred, loaderState);
             }
         }
     }
 
     /***************************************************************************
      * <p>
-     * Gets the anchor identifier from the MODS DOM.
+     * Parses the MODS sections of the given DocStruct and all its children on the metadata executor, or on a pool of
+     * {@link #getMetadataParallelism()} threads for this call. The sections are collected in document order first, then each DocStruct is parsed
+     * by one task, so the metadata of every DocStruct is added in the same order as in the sequential mode. The tasks are joined in document order,
+     * the error of the first DocStruct failing is thrown, and the remaining tasks are cancelled.
      * </p>
      * 
-     * @param inMods
      * @param inStruct
-     * @return
      * @throws ReadException
+     * @throws ClassNotFoundException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws XPathExpressionException
      **************************************************************************/
-    protected String getAnchorIdentifierFromMODSDOM(Node inMods) throws ReadException {
-
-        String anchoridentifier = null;
-        // Result from XPath expression.
-        NodeList resultlist = null;
+    private void parseMetadataForLogicalDocStructInParallel(DocStruct inStruct)
+            throws ReadException, ClassNotFoundException, InstantiationException, IllegalAccessException, XPathExpressionException {
 
-        // Create an XPath Query to get the anchor identifier. Check, if
-        // currentPath is already available.
-        XPathFactory factory = XPathFactory.newInstance();
+        Map<DocStruct, Node> modsSections = new LinkedHashMap<>();
+        parseMetadataForLogicalDocStruct(inStruct, true, modsSections, null);
 
-        // New namespace context.
-        PersonalNamespaceContext pnc = new PersonalNamespaceContext();
-        pnc.setNamespaceHash(this.namespaces);
-        XPath xpath = factory.newXPath();
-        xpath.setNamespaceContext(pnc);
+        log.debug("Parsing " + modsSections.size() + " MODS sections in parallel");
 
-        String queryExpression = "." + GOOBI_INTERNAL_METADATA_XPATH + "[@name]";
+        ExecutorService executor = this.metadataExecutor;
+        ExecutorService pool = executor != null ? executor : new ForkJoinPool(this.metadataParallelism);
+        List<Future<DocStruct>> results = new ArrayList<>(modsSections.size());
         try {
-            XPathExpression expr = xpath.compile(queryExpression);
-
-            // No anchor reference found in file.
-            if (inMods == null) {
-                String message = "No anchor identifier '" + this.anchorIdentifierMetadataType + "' is existing as defined in the prefs!";
-                log.error(message);
-                throw new ReadException(message);
-            }
-
-            // Carry out the query.
-            Object list = expr.evaluate(inMods, XPathConstants.NODESET);
-            resultlist = (NodeList) list;
-
-            // Iterate over results.
-            if (resultlist.getLength() > 1) {
-                String message = "XPath expression '" + queryExpression + "' for reference to the anchor is ambigious!";
-                log.error(message);
-                throw new ReadException(message);
+            for (Entry<DocStruct, Node> section : modsSections.entrySet()) {
+                results.add(pool.submit(() -> {
+                    parseMODS(section.getValue(), section.getKey());
+                    return section.getKey();
+                }));
             }
 
-            for (int i = 0; i < resultlist.getLength(); i++) {
-                Node node = resultlist.item(i);
-                // Get child Nodes to find the TextNode.
-                NodeList nodelist = node.getChildNodes();
-                for (int j = 0; j < nodelist.getLength(); j++) {
-                    Node subnode = nodelist.item(j);
-                    if (subnode.getNodeType() == TEXT_NODE) {
-                        anchoridentifier = subnode.getNodeValue();
-                        break;
+            for (Future<DocStruct> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof ReadException re) {
+                        throw re;
+                    } else if (cause instanceof ClassNotFoundException cnfe) {
+                        throw cnfe;
+                    } else if (cause instanceof InstantiationException ie) {
+                        throw ie;
+                    } else if (cause instanceof IllegalAccessException iae) {
+                        throw iae;
+                    } else if (cause instanceof XPathExpressionException xpee) {
+                        throw xpee;
+                    } else if (cause instanceof RuntimeException rte) {
+                        throw rte;
+                    } else if (cause instanceof Error err) {
+                        throw err;
                     }
+                    String message = "Can't parse MODS sections of the logical DocStructs!";
+                    log.error(message, cause);
+                    throw new ReadException(message, (Exception) cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    String message = "Interrupted while parsing MODS sections of the logical DocStructs!";
+                    log.error(message, e);
+                    throw new ReadException(message, e);
                 }
             }
-        } catch (XPathExpressionException e) {
-            String message = "XPath expression '" + queryExpression + "' seems not to be correct!";
-            log.error(message, e);
-            throw new ReadException(message, e);
+        } finally {
+            for (Future<DocStruct> result : results) {
+                result.cancel(true);
+            }
+            if (pool != executor) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Parses the MODS section of a DocStruct on first access of its metadata, see {@link #setLazyMetadata(boolean)}.
+     * </p>
+     * 
+     * @param inMods
+     * @param inStruct
+     * @throws ReadException
+     **************************************************************************/
+    private void loadMODS(Node inMods, DocStruct inStruct) throws ReadException {
+        try {
+            parseMODS(inMods, inStruct);
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | XPathExpressionException e) {
+            String message = "Can't parse MODS section of DocStruct '" + inStruct.getIdentifier() + "'!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Copies the state the MODS sections are parsed with, for the metadata loaders of a lazily read document. The loaders keep parsing with this
+     * state, even if this instance reads another document, or gets other prefs or namespaces, before their metadata is accessed. The copy shares
+     * the prefs and the compiled XPath expressions, but not the document and the METS tree of this instance.
+     * </p>
+     * 
+     * @return
+     **************************************************************************/
+    private MetsMods copyForMetadataLoaders() {
+
+        MetsMods copy;
+        try {
+            copy = (MetsMods) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // Can't happen, this class is Cloneable.
+            throw new IllegalStateException(e);
+        }
+
+        copy.namespaces = new HashMap<>();
+        for (Entry<String, Namespace> e : this.namespaces.entrySet()) {
+            copy.namespaces.put(e.getKey(), e.getValue().copy());
+        }
+        copy.namespaceDeclarations = new HashMap<>(this.namespaceDeclarations);
+        copy.modsNamesMD = new LinkedList<>(this.modsNamesMD);
+        copy.modsNamesDS = new LinkedList<>(this.modsNamesDS);
+        copy.xPathCache = getXPathCache();
+
+        copy.digdoc = null;
+        copy.metsHelper = null;
+        copy.sortedFileMap = new TreeMap<>();
+        copy.logicalDivIndex = new HashMap<>();
+        copy.physicalDivIndex = new HashMap<>();
+        copy.anchorCache = null;
+
+        return copy;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Gets the compiled XPath expression for the given query. Each query is compiled only once per thread and namespace configuration, so reading
+     * many DocStructs, or many documents with the same prefs, only evaluates the already compiled expressions. The namespace prefixes are resolved
+     * using the namespaces of this instance.
+     * </p>
+     * 
+     * @param queryExpression
+     * @return
+     * @throws XPathExpressionException
+     **************************************************************************/
+    protected XPathExpression getCompiledXPathExpression(String queryExpression) throws XPathExpressionException {
+        return getXPathCache().getExpression(queryExpression);
+    }
+
+    /***************************************************************************
+     * @return the cache for the current namespaces
+     **************************************************************************/
+    MetsXPathCache getXPathCache() {
+
+        MetsXPathCache cache = this.xPathCache;
+        if (cache == null) {
+            cache = MetsXPathCache.forNamespaces(this.namespaces, this.modsNamespacePrefix);
+            this.xPathCache = cache;
+        }
+
+        return cache;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Gets the anchor identifier from the MODS DOM.
+     * </p>
+     * 
+     * @param inMods
+     * @param inStruct
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    protected String getAnchorIdentifierFromMODSDOM(Node inMods) throws ReadException {
+
+        String anchoridentifier = null;
+        // Result from XPath expression.
+        NodeList resultlist = null;
+
+        // Get the XPath Query to get the anchor identifier.
+        String queryExpression = "." + GOOBI_INTERNAL_METADATA_XPATH + "[@name]";
+        try {
+            XPathExpression expr = getCompiledXPathExpression(queryExpression);
+
+            // No anchor reference found in file.
+            if (inMods == null) {
+                String message = "No anchor identifier '" + this.anchorIdentifierMetadataType + "' is existing as defined in the prefs!";
+                log.error(message);
+                throw new ReadException(message);
+            }
+
+            // Carry out the query.
+            Object list = expr.evaluate(inMods, XPathConstants.NODESET);
+            resultlist = (NodeList) list;
+
+            // Iterate over results.
+            if (resultlist.getLength() > 1) {
+                String message = "XPath expression '" + queryExpression + "' for reference to the anchor is ambigious!";
+                log.error(message);
+                throw new ReadException(message);
+            }
+
+            for (int i = 0; i < resultlist.getLength(); i++) {
+                Node node = resultlist.item(i);
+                // Get child Nodes to find the TextNode.
+                NodeList nodelist = node.getChildNodes();
+                for (int j = 0; j < nodelist.getLength(); j++) {
+                    Node subnode = nodelist.item(j);
+                    if (subnode.getNodeType() == TEXT_NODE) {
+                        anchoridentifier = subnode.getNodeValue();
+                        break;
+                    }
+                }
+            }
+        } catch (XPathExpressionException e) {
+            String message = "XPath expression '" + queryExpression + "' seems not to be correct!";
+            log.error(message, e);
+            throw new ReadException(message, e);
         }
 
         return anchoridentifier;
@@ -1855,17 +2265,8 @@ public class MetsMods implements ugh.dl.Fileformat {
 
         List<String> resultList = new LinkedList<>();
 
-        // Check, if currentPath is already available.
-        XPathFactory factory = XPathFactory.newInstance();
-
-        // New namespace context.
-        PersonalNamespaceContext pnc = new PersonalNamespaceContext();
-        pnc.setNamespaceHash(this.namespaces);
-        XPath xpath = factory.newXPath();
-        xpath.setNamespaceContext(pnc);
-
         try {
-            XPathExpression expr = xpath.compile(queryExpression);
+            XPathExpression expr = getCompiledXPathExpression(queryExpression);
             // Carry out the query.
             Object objectresult = null;
             objectresult = expr.evaluate(inNode, XPathConstants.NODESET);
@@ -1914,90 +2315,62 @@ public class MetsMods implements ugh.dl.Fileformat {
 
     /***************************************************************************
      * <p>
-     * DOMImplementationLS was possibly used by Mr Enders to be able to use XPath on the MODS XML fragments, that is configurable in the prefs.
+     * Creates a new DOM document containing a deep copy of the given MODS node, so that the configured XPath queries can be evaluated with the
+     * &lt;mods> element as document element. The node is imported directly, there is no need to serialize and re-parse the MODS section.
      * </p>
      * 
-     * 
      * @param inMods
-     * @param inStruct
+     * @return
      * @throws ReadException
-     * @throws ClassNotFoundException
-     * @throws InstantiationException
-     * @throws IllegalAccessException
-     * @throws XPathExpressionException
      **************************************************************************/
-    protected void parseMODS(Node inMods, DocStruct inStruct)
-            throws ReadException, ClassNotFoundException, InstantiationException, IllegalAccessException, XPathExpressionException {
-
-        // Document in DOM tree which represents the MODS.
-        Document modsDocument = null;
-
-        DOMImplementationRegistry registry = null;
-        registry = DOMImplementationRegistry.newInstance();
-
-        DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
-
-        // Test, if the needed DOMImplementation (DOM 3!) is available, else
-        // throw Exception. We are using Xerxes here!
-        if (impl == null) {
-            String message =
-                    "There is NO implementation of DOM3 in your ClassPath! We are using Xerxes here, I have no idea why that's not available!";
-            log.error(message);
-            throw new UnsupportedOperationException(message);
-        }
-        LSSerializer writer = impl.createLSSerializer();
-
-        // Get string for MODS.
-        String modsstr = writer.writeToString(inMods);
-
-        // Parse MODS section; create a DOM tree just for the MODS from the
-        // string new document builder instance.
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    protected Document importMODS(Node inMods) throws ReadException {
 
-        // Do not validate xml file (for we want to store unfinished files, too)
-        factory.setValidating(false);
-        // Namespace does not matter.
-        factory.setNamespaceAware(true);
-
-        Reader r = new StringReader(modsstr);
-
-        // Read file and parse it.
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputSource is = new InputSource();
-            is.setCharacterStream(r);
-
-            modsDocument = builder.parse(is);
-        } catch (SAXParseException e) {
-            // Error generated by the parser.
-            String message = "Parse error on line: " + e.getLineNumber() + ", uri: " + e.getSystemId();
-            log.error(message, e);
-            throw new ReadException(message, e);
+            // The builder of the current thread, it does not validate (for we
+            // want to store unfinished files, too).
+            Document modsDocument = XmlHelper.getDocumentBuilder(true).newDocument();
+            modsDocument.appendChild(modsDocument.importNode(inMods, true));
+            // Merge adjacent text nodes, like the parser does.
+            modsDocument.normalize();
+
+            return modsDocument;
         } catch (ParserConfigurationException e) {
             // Parser with specified options can't be built.
             String message = "XML parser not configured correctly!";
             log.error(message, e);
             throw new ReadException(message, e);
-        } catch (SAXException | IOException e) {
-            String message = "Exception while parsing METS file! Can't create DOM tree!";
+        } catch (DOMException e) {
+            String message = "Can't import MODS section into a new DOM tree!";
             log.error(message, e);
             throw new ReadException(message, e);
         }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Parses the Goobi internal metadata of the given MODS section and adds it to the DocStruct. The MODS node is imported into its own DOM
+     * document, so that the XPath expressions configured in the prefs can be used on it.
+     * </p>
+     * 
+     * 
+     * @param inMods
+     * @param inStruct
+     * @throws ReadException
+     * @throws ClassNotFoundException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws XPathExpressionException
+     **************************************************************************/
+    protected void parseMODS(Node inMods, DocStruct inStruct)
+            throws ReadException, ClassNotFoundException, InstantiationException, IllegalAccessException, XPathExpressionException {
 
-        log.trace("\n" + LINE + "\nMODS\n" + LINE + "\n" + modsstr + "\n" + LINE);
+        // Document in DOM tree which represents the MODS, imported directly
+        // from the METS DOM.
+        Document modsDocument = importMODS(inMods);
 
         // Result of XQuery.
         Object xqueryresult = null;
 
-        // Create XQuery.
-        XPathFactory xpathfactory = XPathFactory.newInstance();
-
-        // New namespace context.
-        PersonalNamespaceContext pnc = new PersonalNamespaceContext();
-        pnc.setNamespaceHash(this.namespaces);
-        XPath xpath = xpathfactory.newXPath();
-        xpath.setNamespaceContext(pnc);
-
         // Get the first element; this is where we start with out XPATH.
         Node startingNode = null;
         NodeList nl = modsDocument.getChildNodes();
@@ -2014,7 +2387,7 @@ public class MetsMods implements ugh.dl.Fileformat {
         // Only look for Goobi internal MODS metadata extensions in the MODS
         // data here, used for internal METS file reading.
         //
-        XPathExpression expr = xpath.compile(GOOBI_INTERNAL_METADATA_XPATH);
+        XPathExpression expr = getCompiledXPathExpression(GOOBI_INTERNAL_METADATA_XPATH);
         xqueryresult = expr.evaluate(startingNode, XPathConstants.NODESET);
         log.debug("Query expression: " + GOOBI_INTERNAL_METADATA_XPATH);
 
@@ -2617,6 +2990,9 @@ public class MetsMods implements ugh.dl.Fileformat {
             // DocStruct.
             this.getDigitalDocument().setPhysicalDocStruct(newDocStruct);
 
+            // Index the physical tree for the smLink mapping.
+            this.physicalDivIndex = buildDivIndex(newDocStruct);
+
             // Get metadata for this digdoc (and all its child docs, in this
             // case pages only!).
             try {
@@ -2812,6 +3188,7 @@ public class MetsMods implements ugh.dl.Fileformat {
      * Write the METS/MODS object.
      * </p>
      * 
+     * @param document the document to write, the anchor document or the top document
      * @param filename
      * @param validate
      * @param isAnchorFile
@@ -2820,7 +3197,46 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @throws PreferencesException
      * @throws MissingModsMappingException
      **************************************************************************/
-    private boolean writeMetsMods(String filename, boolean validate, boolean isAnchorFile) throws WriteException, PreferencesException {
+    private boolean writeMetsMods(DigitalDocument document, String filename, boolean validate, boolean isAnchorFile)
+            throws WriteException, PreferencesException {
+
+        // Get output stream.
+        FileOutputStream xmlFile = null;
+        try {
+            xmlFile = new FileOutputStream(filename);
+        } catch (FileNotFoundException e) {
+            String message = "Can't write file '" + filename + "'!";
+            log.error(message, e);
+            throw new WriteException(message, e);
+        }
+
+        try {
+            return writeMetsMods(document, xmlFile, "File '" + filename + "'", validate, isAnchorFile);
+        } finally {
+            try {
+                xmlFile.close();
+            } catch (IOException e) {
+                log.error(e);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Write the METS/MODS object to a stream, which is not closed.
+     * </p>
+     * 
+     * @param document the document to write, the anchor document or the top document
+     * @param xmlFile
+     * @param target describes the stream in error messages
+     * @param validate
+     * @param isAnchorFile
+     * @return
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    private boolean writeMetsMods(DigitalDocument document, OutputStream xmlFile, String target, boolean validate, boolean isAnchorFile)
+            throws WriteException, PreferencesException {
 
         // Check if all necesarry things are set from outside.
         List<String> missingSettings = checkMissingSettings();
@@ -2828,16 +3244,62 @@ public class MetsMods implements ugh.dl.Fileformat {
             log.warn("The following settings have not been initialised: " + missingSettings);
         }
 
-        // Get output stream.
-        FileOutputStream xmlFile = null;
         try {
-            xmlFile = new FileOutputStream(filename);
-        } catch (FileNotFoundException e) {
-            String message = "Can't write file '" + filename + "'!";
+            // Writing sets the identifiers of the DocStructs and files in the
+            // document, so the DOMs of one document are built one after the
+            // other.
+            Document domDoc;
+            synchronized (document) {
+                domDoc = buildMetsDocument(new MetsWriteContext(document), validate, isAnchorFile);
+            }
+            if (domDoc == null) {
+                return false;
+            }
+
+            // Serialize the document.
+            log.info("Serializing METS document to file");
+            serializeMets(domDoc, xmlFile);
+
+        } catch (FactoryConfigurationError e) {
+            String message = "JAXP can't be found!";
+            log.error(message, e.getException());
+            throw new WriteException(message, e.getException());
+        } catch (ParserConfigurationException e) {
+            String message = "XML parser couldn't be loaded!";
+            log.error(message, e);
+            throw new WriteException(message, e);
+        } catch (IOException e) {
+            String message = target + " could not be written!";
+            log.error(message, e);
+            throw new WriteException(message, e);
+        } catch (DOMException e) {
+            String message = "Exception building DOM tree!";
             log.error(message, e);
             throw new WriteException(message, e);
         }
 
+        return true;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Builds the METS DOM document of a write.
+     * </p>
+     * 
+     * @param context the state of the write
+     * @param validate
+     * @param isAnchorFile
+     * @return the METS document, or null, if the document has no logical structure and is validated
+     * @throws ParserConfigurationException
+     * @throws WriteException
+     * @throws PreferencesException
+     **************************************************************************/
+    private Document buildMetsDocument(MetsWriteContext context, boolean validate, boolean isAnchorFile)
+            throws ParserConfigurationException, WriteException, PreferencesException {
+
+        DigitalDocument document = context.getDocument();
+        ExecutorService modsPool = null;
+        boolean ownModsPool = false;
         try {
             // Find the implementation.
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -2845,9 +3307,11 @@ public class MetsMods implements ugh.dl.Fileformat {
 
             DocumentBuilder builder = factory.newDocumentBuilder();
             Document domDoc = builder.newDocument();
+            context.attachTo(domDoc);
 
             // Create the document, set METS and xlink namespaces.
-            this.metsNode = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_METS_STRING);
+            Element metsNode = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_METS_STRING);
+            context.setMetsNode(metsNode);
 
             // Iterate over all namespace prefixes, and collect the namespaces'
             // URIs and schema locations, if a schema location is existing.
@@ -2860,13 +3324,13 @@ public class MetsMods implements ugh.dl.Fileformat {
 
             // Write schema locations.
             if (schemaLocations.length() > 0) {
-                createDomAttributeNS(this.metsNode, this.xsiNamespacePrefix, METS_SCHEMALOCATION_STRING, schemaLocations.toString().trim());
+                createDomAttributeNS(metsNode, this.xsiNamespacePrefix, METS_SCHEMALOCATION_STRING, schemaLocations.toString().trim());
             }
 
             // add OBJID
             metsNode.setAttribute("OBJID", goobiID);
             // Append the METS node.
-            domDoc.appendChild(this.metsNode);
+            domDoc.appendChild(metsNode);
 
             Element metsHdr = createDomElementNS(domDoc, this.metsNamespacePrefix, "metsHdr");
 
@@ -2927,51 +3391,63 @@ public class MetsMods implements ugh.dl.Fileformat {
 
             metsHdr.appendChild(agent);
 
-            this.metsNode.appendChild(metsHdr);
+            metsNode.appendChild(metsHdr);
 
             // Get topmost divs.
-            DocStruct toplogdiv = this.digdoc.getLogicalDocStruct();
+            DocStruct toplogdiv = document.getLogicalDocStruct();
             if (toplogdiv == null && validate) {
                 log.error("DigitalDocument has no logical structure");
-                return false;
+                return null;
             }
 
             // Check, if content files and physical DocStruct is available.
-            if ((this.digdoc.getFileSet() != null && validate) && (this.digdoc.getPhysicalDocStruct() == null)) {
+            if ((document.getFileSet() != null && validate) && (document.getPhysicalDocStruct() == null)) {
                 String message = "FileSet is available, but no physical Structure!";
                 log.error(message);
                 throw new WriteException(message);
             }
 
-            if ((this.digdoc.getFileSet() == null && validate) && (this.digdoc.getPhysicalDocStruct() != null)) {
+            if ((document.getFileSet() == null && validate) && (document.getPhysicalDocStruct() != null)) {
                 String message = "ContentFiles (FileSec) must be available for physical structure!";
                 log.error(message);
                 throw new WriteException(message);
             }
 
+            // Build the MODS sections on other threads first, they are added
+            // while writing the divs.
+            if (this.metadataExecutor != null) {
+                modsPool = this.metadataExecutor;
+            } else if (this.metadataParallelism > 1) {
+                modsPool = new ForkJoinPool(this.metadataParallelism);
+                ownModsPool = true;
+            }
+            if (modsPool != null) {
+                context.modsSections = buildModsSections(context, modsPool, toplogdiv, document.getPhysicalDocStruct(), isAnchorFile);
+            }
+
             // Write logical divs. They must be available in any case (even if
             // the DocStruct is an anchor).
             log.info("Writing logical divs");
-            Element logdiv = writeLogDivs(this.metsNode, toplogdiv, isAnchorFile);
+            Element logdiv = writeLogDivs(context, metsNode, toplogdiv, isAnchorFile);
 
             // Write fileSec.
             log.info("Writing fileSec");
             Element fileSecElement = null;
-            if (this.digdoc.getFileSet() != null) {
+            if (document.getFileSet() != null) {
                 fileSecElement = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_FILESEC_STRING);
 
                 // Write all fileGroupPathes.
                 boolean localFilegroupInGoobi = false;
 
-                if (!this.digdoc.getFileSet().getVirtualFileGroups().isEmpty()) {
-                    for (VirtualFileGroup vFileGroup : this.digdoc.getFileSet().getVirtualFileGroups()) {
+                if (!document.getFileSet().getVirtualFileGroups().isEmpty()) {
+                    for (VirtualFileGroup vFileGroup : document.getFileSet().getVirtualFileGroups()) {
                         if (METS_FILEGROUP_LOCAL_STRING.equals(vFileGroup.getName())) {
                             localFilegroupInGoobi = true;
                             if (this.writeLocalFilegroup) {
-                                fileSecElement.appendChild(createFileGroup(domDoc, vFileGroup));
+                                fileSecElement.appendChild(createFileGroup(context, domDoc, vFileGroup));
                             }
                         } else {
-                            fileSecElement.appendChild(createFileGroup(domDoc, vFileGroup));
+                            fileSecElement.appendChild(createFileGroup(context, domDoc, vFileGroup));
                         }
                     }
                 }
@@ -2981,53 +3457,53 @@ public class MetsMods implements ugh.dl.Fileformat {
                 if (!localFilegroupInGoobi && this.writeLocalFilegroup) {
                     VirtualFileGroup vFileGroup = new VirtualFileGroup();
                     vFileGroup.setName(METS_FILEGROUP_LOCAL_STRING);
-                    this.digdoc.getFileSet().addVirtualFileGroup(vFileGroup);
-                    fileSecElement.appendChild(createFileGroup(domDoc, vFileGroup));
+                    document.getFileSet().addVirtualFileGroup(vFileGroup);
+                    fileSecElement.appendChild(createFileGroup(context, domDoc, vFileGroup));
                 }
             }
 
             // Create structMap type logical.
             log.info("Creating structMap logical");
             Element structMapLog = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_STRUCTMAP_STRING);
-            this.metsNode.appendChild(structMapLog);
+            metsNode.appendChild(structMapLog);
             structMapLog.setAttribute(METS_STRUCTMAPTYPE_STRING, METS_STRUCTMAP_TYPE_LOGICAL_STRING);
-            this.firstDivNode = structMapLog;
+            context.setFirstDivNode(structMapLog);
             structMapLog.appendChild(logdiv);
 
             // Create structMap type physical.
-            DocStruct topphysdiv = this.digdoc.getPhysicalDocStruct();
+            DocStruct topphysdiv = document.getPhysicalDocStruct();
 
             if (topphysdiv != null) {
                 log.info("Creating structMap physical");
 
                 Element structMapPhys = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_STRUCTMAP_STRING);
-                this.metsNode.appendChild(structMapPhys);
+                metsNode.appendChild(structMapPhys);
                 structMapPhys.setAttribute(METS_STRUCTMAPTYPE_STRING, METS_STRUCTMAP_TYPE_PHYSICAL_STRING);
 
-                writePhysDivs(structMapPhys, topphysdiv);
+                writePhysDivs(context, structMapPhys, topphysdiv);
 
                 if (topphysdiv.getAllChildren() != null && !topphysdiv.getAllChildren().isEmpty()) {
                     // Write smLinks.
                     log.info("Creating structLink element");
-                    Element structLinkElement = writeSMLinks(this.metsNode);
+                    Element structLinkElement = writeSMLinks(context, metsNode);
 
                     // Order all XML-Elements according to METS schema.
                     log.info("Writing structMaps and structLink element");
                     // NOTE Changed the "&" into an "&&", most possibly a typo.
                     if (fileSecElement != null && structMapLog != null) {
-                        this.metsNode.insertBefore(fileSecElement, structMapLog);
+                        metsNode.insertBefore(fileSecElement, structMapLog);
                     } else {
                         log.debug("No FileSec or StructMap LOGICAL existing yet");
                     }
                     if (structMapPhys != null) {
-                        this.metsNode.appendChild(structMapPhys);
+                        metsNode.appendChild(structMapPhys);
                     }
-                    this.metsNode.appendChild(structLinkElement);
+                    metsNode.appendChild(structLinkElement);
                 }
 
                 Element div = (Element) structMapPhys.getFirstChild();
-                if (digdoc.getFileSet() != null) {
-                    for (VirtualFileGroup vfg : digdoc.getFileSet().getVirtualFileGroups()) {
+                if (document.getFileSet() != null) {
+                    for (VirtualFileGroup vfg : document.getFileSet().getVirtualFileGroups()) {
                         if (vfg.isSingleFile()) {
 
                             Element fptr = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_FPTR_STRING);
@@ -3050,39 +3526,186 @@ public class MetsMods implements ugh.dl.Fileformat {
             // Write amdSec, if needed.
             log.info("Writing amdSec");
 
-            writeAmdSec(domDoc, isAnchorFile);
+            writeAmdSec(context, domDoc, isAnchorFile);
 
-            // Serialize the document.
-            log.info("Serializing METS document to file");
-            serializeMets(domDoc, xmlFile);
+            return domDoc;
+        } finally {
+            if (context.modsSections != null) {
+                // Sections not taken because of an error.
+                for (Future<ModsSection> section : context.modsSections.values()) {
+                    section.cancel(true);
+                }
+                context.modsSections = null;
+            }
+            if (ownModsPool) {
+                modsPool.shutdownNow();
+            }
+        }
+    }
 
-        } catch (
+    /***************************************************************************
+     * <p>
+     * Starts building the MODS sections of the logical and physical DocStructs on the given pool, see {@link #setMetadataParallelism(int)}. Each
+     * section is built into its own DOM document by {@link #writeLogModsSection(DocStruct, Node, Document)} or
+     * {@link #writePhysModsSection(DocStruct, Node, Document, Element)}, and is moved into the METS document by
+     * {@link #writeLogDmd(MetsWriteContext, Node, DocStruct, boolean)} and {@link #writePhysDmd(MetsWriteContext, Node, Element, DocStruct)}, in
+     * the order of the sequential writer. The IDs of the dmdSecs are set then.
+     * </p>
+     * 
+     * @param context
+     * @param pool
+     * @param logical
+     * @param physical
+     * @param isAnchorFile
+     * @return the MODS sections by DocStruct
+     **************************************************************************/
+    private Map<DocStruct, Future<ModsSection>> buildModsSections(MetsWriteContext context, ExecutorService pool, DocStruct logical,
+            DocStruct physical, boolean isAnchorFile) {
 
-        FactoryConfigurationError e) {
-            String message = "JAXP can't be found!";
-            log.error(message, e.getException());
-            throw new WriteException(message, e.getException());
-        } catch (ParserConfigurationException e) {
-            String message = "XML parser couldn't be loaded!";
-            log.error(message, e);
-            throw new WriteException(message, e);
-        } catch (IOException e) {
-            String message = "File '" + filename + "' could not be written!";
-            log.error(message, e);
-            throw new WriteException(message, e);
-        } catch (DOMException e) {
-            String message = "Exception building DOM tree!";
+        Map<DocStruct, Future<ModsSection>> result = new IdentityHashMap<>();
+        if (logical != null) {
+            submitLogModsSections(context, pool, logical, isAnchorFile, result);
+        }
+        if (physical != null) {
+            submitPhysModsSections(context, pool, physical, result);
+        }
+
+        log.debug("Building " + result.size() + " MODS sections in parallel");
+
+        return result;
+    }
+
+    /***************************************************************************
+     * @param context
+     * @param pool
+     * @param inStruct
+     * @param isAnchorFile
+     * @param sections
+     **************************************************************************/
+    private void submitLogModsSections(MetsWriteContext context, ExecutorService pool, DocStruct inStruct, boolean isAnchorFile,
+            Map<DocStruct, Future<ModsSection>> sections) {
+
+        // The same DocStructs as in writeLogDmd(), a section not taken there
+        // is dropped.
+        boolean written = inStruct.getType().isAnchor() == isAnchorFile;
+        boolean hasMetadata = (inStruct.getAllMetadata() != null && !inStruct.getAllMetadata().isEmpty())
+                || (inStruct.getAllPersons() != null && !inStruct.getAllPersons().isEmpty());
+        if (written && hasMetadata) {
+            sections.put(inStruct, pool.submit(() -> {
+                ModsSection section = createModsSection(context, DMDLOG_PREFIX, false);
+                writeLogModsSection(inStruct, section.mods, section.mods.getOwnerDocument());
+                return section;
+            }));
+        }
+
+        if (inStruct.getAllChildren() != null) {
+            for (DocStruct child : inStruct.getAllChildren()) {
+                submitLogModsSections(context, pool, child, isAnchorFile, sections);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * @param context
+     * @param pool
+     * @param inStruct
+     * @param sections
+     **************************************************************************/
+    private void submitPhysModsSections(MetsWriteContext context, ExecutorService pool, DocStruct inStruct,
+            Map<DocStruct, Future<ModsSection>> sections) {
+
+        if (inStruct.getAllMetadata() != null && !inStruct.getAllMetadata().isEmpty()) {
+            sections.put(inStruct, pool.submit(() -> {
+                ModsSection section = createModsSection(context, DMDPHYS_PREFIX, true);
+                writePhysModsSection(inStruct, section.mods, section.mods.getOwnerDocument(), section.div);
+                return section;
+            }));
+        }
+
+        if (inStruct.getAllChildren() != null) {
+            for (DocStruct child : inStruct.getAllChildren()) {
+                submitPhysModsSections(context, pool, child, sections);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Creates an empty dmdSec with its MODS element in a new DOM document of the write, the ID is set when the dmdSec is added to the METS
+     * document.
+     * </p>
+     * 
+     * @param context
+     * @param thePrefix
+     * @param withDiv true, to create a div element taking the attributes written with the MODS section
+     * @return
+     * @throws ParserConfigurationException
+     **************************************************************************/
+    private ModsSection createModsSection(MetsWriteContext context, String thePrefix, boolean withDiv) throws ParserConfigurationException {
+
+        Document document = XmlHelper.getDocumentBuilder(true).newDocument();
+        context.attachTo(document);
+        Element dmdsec = createDomElementNS(document, this.metsNamespacePrefix, METS_DMDSEC_STRING);
+        Element dommodsnode = createModsMetadataHeader(thePrefix, 0, dmdsec, document);
+        Element div = withDiv ? createDomElementNS(document, this.metsNamespacePrefix, METS_DIV_STRING) : null;
+
+        return new ModsSection(dmdsec, dommodsnode, div);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the MODS section built in parallel for the given DocStruct, waiting until it is built, and moves it into the given document. The
+     * exceptions of building it are thrown here, so the first failing DocStruct of the sequential writer fails.
+     * </p>
+     * 
+     * @param context
+     * @param inStruct
+     * @param domDoc
+     * @return the MODS section, or null, if none was built for the DocStruct
+     * @throws PreferencesException
+     * @throws WriteException
+     **************************************************************************/
+    private ModsSection takeModsSection(MetsWriteContext context, DocStruct inStruct, Document domDoc) throws PreferencesException, WriteException {
+
+        Future<ModsSection> future = context.modsSections == null ? null : context.modsSections.remove(inStruct);
+        if (future == null) {
+            return null;
+        }
+
+        ModsSection section;
+        try {
+            section = future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PreferencesException pe) {
+                throw pe;
+            } else if (cause instanceof WriteException we) {
+                throw we;
+            } else if (cause instanceof RuntimeException rte) {
+                throw rte;
+            } else if (cause instanceof Error err) {
+                throw err;
+            }
+            String message = "Can't build MODS section of DocStruct '" + inStruct.getType().getName() + "'!";
+            log.error(message, cause);
+            throw new WriteException(message, (Exception) cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String message = "Interrupted while building MODS section of DocStruct '" + inStruct.getType().getName() + "'!";
             log.error(message, e);
             throw new WriteException(message, e);
-        } finally {
-            try {
-                xmlFile.close();
-            } catch (IOException e) {
-                log.error(e);
-            }
         }
 
-        return true;
+        // Adopting does not copy the nodes, but is not supported by every DOM
+        // implementation.
+        Node dmdsec = domDoc.adoptNode(section.dmdsec);
+        if (dmdsec == null) {
+            Element imported = (Element) domDoc.importNode(section.dmdsec, true);
+            Element mods = (Element) imported.getElementsByTagNameNS(section.mods.getNamespaceURI(), section.mods.getLocalName()).item(0);
+            return new ModsSection(imported, mods, section.div);
+        }
+
+        return section;
     }
 
     private String generateDate() {
@@ -3162,6 +3785,10 @@ public class MetsMods implements ugh.dl.Fileformat {
             }
         }
 
+        // Prefixes are resolved at compile time, so drop all compiled
+        // expressions.
+        this.xPathCache = null;
+
         return true;
     }
 
@@ -3170,11 +3797,12 @@ public class MetsMods implements ugh.dl.Fileformat {
      * Creates a METS file group.
      * </p>
      * 
+     * @param context
      * @param domDoc
      * @param theFilegroup
      * @return
      **************************************************************************/
-    private Element createFileGroup(Document domDoc, VirtualFileGroup theFilegroup) {
+    private Element createFileGroup(MetsWriteContext context, Document domDoc, VirtualFileGroup theFilegroup) {
 
         Element result = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_FILEGRP_STRING);
         result.setAttribute(METS_FILEGROUPUSE_STRING, theFilegroup.getName());
@@ -3205,7 +3833,7 @@ public class MetsMods implements ugh.dl.Fileformat {
         } else {
 
             // Check fileset availibility.
-            FileSet fs = this.digdoc.getFileSet();
+            FileSet fs = context.getDocument().getFileSet();
             if (fs == null) {
                 log.warn("No fileset available... unable to create FileGroups!");
                 return result;
@@ -3279,13 +3907,13 @@ public class MetsMods implements ugh.dl.Fileformat {
 
                         id = cf.getIdentifier();
                         if (id == null || "".equals(id)) {
-                            id = FILE_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(++fileidMax);
+                            id = FILE_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextFileId());
                             cf.setIdentifier(id);
                         } else if (id.contains(FILE_PREFIX)) {
                             String numberPart = id.replace(FILE_PREFIX, "");
                             try {
                                 int number = Integer.parseInt(numberPart);
-                                fileidMax = number;
+                                context.setLastFileId(number);
                             } catch (NumberFormatException e) {
                                 // do nothing
                             }
@@ -3527,14 +4155,13 @@ public class MetsMods implements ugh.dl.Fileformat {
      * 
      * @see ugh.fileformats.mets.MetsModsGdz#writePhysDivs(org.w3c.dom.Node, ugh.dl.DocStruct)
      */
-    protected Element writePhysDivs(Node parentNode, DocStruct inStruct) throws PreferencesException {
+    protected Element writePhysDivs(MetsWriteContext context, Node parentNode, DocStruct inStruct) throws PreferencesException {
         Document domDoc = parentNode.getOwnerDocument();
         if ("div".equals(inStruct.getDocstructType()) || StringUtils.isBlank(inStruct.getDocstructType())) {
             // Write div element.
             Element div = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_DIV_STRING);
 
-            String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(this.divphysidMax);
-            this.divphysidMax++;
+            String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextPhysicalDivId());
 
             inStruct.setIdentifier(idphys);
             div.setAttribute(METS_ID_STRING, idphys);
@@ -3554,12 +4181,12 @@ public class MetsMods implements ugh.dl.Fileformat {
             parentNode.appendChild(div);
 
             // Write metadata.
-            if (this.metsNode == null) {
+            if (context.getMetsNode() == null) {
                 log.error("METS node is null... can't write anything!");
                 return null;
             }
 
-            int dmdid = writePhysDmd(this.metsNode, div, inStruct);
+            int dmdid = writePhysDmd(context, context.getMetsNode(), div, inStruct);
 
             // If dmdid is != -1 then the appropriate metadata section has been
             // written, if dmdid == -1, the inStruct has no metadata.
@@ -3570,12 +4197,12 @@ public class MetsMods implements ugh.dl.Fileformat {
             }
 
             // Write links to ContentFiles (FPTRs).
-            writeFptrs(inStruct, domDoc, div);
+            writeFptrs(context, inStruct, domDoc, div);
             // Get all children and write their divs recursive.
             List<DocStruct> allChildren = inStruct.getAllChildren();
             if (allChildren != null) {
                 for (DocStruct child : allChildren) {
-                    writePhysDivs(div, child);
+                    writePhysDivs(context, div, child);
                 }
             }
 
@@ -3586,7 +4213,7 @@ public class MetsMods implements ugh.dl.Fileformat {
             NodeList fptrList = parentNode.getChildNodes();
 
             String mainGroupName = null;
-            for (VirtualFileGroup vFileGroup : this.digdoc.getFileSet().getVirtualFileGroups()) {
+            for (VirtualFileGroup vFileGroup : context.getDocument().getFileSet().getVirtualFileGroups()) {
                 if (vFileGroup.isMainGroup()) {
                     mainGroupName = vFileGroup.getName();
                     break;
@@ -3609,8 +4236,7 @@ public class MetsMods implements ugh.dl.Fileformat {
                     // create area element
                     area = createDomElementNS(domDoc, this.metsNamespacePrefix, "area");
                     seq.appendChild(area);
-                    String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(this.divphysidMax);
-                    this.divphysidMax++;
+                    String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextPhysicalDivId());
 
                     inStruct.setIdentifier(idphys);
                     area.setAttribute(METS_ID_STRING, idphys);
@@ -3644,11 +4270,12 @@ public class MetsMods implements ugh.dl.Fileformat {
      * NOT supported.
      * </p>
      * 
+     * @param context
      * @param theStruct
      * @param theDocument
      * @param theDiv
      **************************************************************************/
-    protected void writeFptrs(DocStruct theStruct, Document theDocument, Element theDiv) {
+    protected void writeFptrs(MetsWriteContext context, DocStruct theStruct, Document theDocument, Element theDiv) {
 
         // Get a list of referenced ContentFiles.
         List<ContentFile> contentFiles = theStruct.getAllContentFiles();
@@ -3660,7 +4287,7 @@ public class MetsMods implements ugh.dl.Fileformat {
         }
         for (ContentFile cf : contentFiles) {
             // Pass each file group.
-            for (VirtualFileGroup vFileGroup : this.digdoc.getFileSet().getVirtualFileGroups()) {
+            for (VirtualFileGroup vFileGroup : context.getDocument().getFileSet().getVirtualFileGroups()) {
                 // Write XML elements (METS:fptr).
                 if (vFileGroup.contains(cf) && !vFileGroup.isSingleFile()) {
                     if (checkIfFiletypeIsSkipped(vFileGroup.getFileExtensionsToIgnore(), cf.getLocation())) {
@@ -3695,6 +4322,7 @@ public class MetsMods implements ugh.dl.Fileformat {
      * Write single logical div METS sections.
      * </p>
      * 
+     * @param context
      * @param parentNode
      * @param inStruct
      * @param isAnchorFile
@@ -3702,7 +4330,8 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @throws WriteException
      * @throws PreferencesException
      **************************************************************************/
-    protected Element writeLogDivs(Node parentNode, DocStruct inStruct, boolean isAnchorFile) throws WriteException, PreferencesException {
+    protected Element writeLogDivs(MetsWriteContext context, Node parentNode, DocStruct inStruct, boolean isAnchorFile)
+            throws WriteException, PreferencesException {
 
         // Write div element.
         Document domDoc = parentNode.getOwnerDocument();
@@ -3710,13 +4339,12 @@ public class MetsMods implements ugh.dl.Fileformat {
 
         // Add div element as child to parentNode.
         parentNode.appendChild(div);
-        if (this.firstDivNode == null) {
-            this.firstDivNode = div;
+        if (context.getFirstDivNode() == null) {
+            context.setFirstDivNode(div);
         }
 
-        String idlog = LOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(this.divlogidMax);
+        String idlog = LOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextLogicalDivId());
         div.setAttribute(METS_ID_STRING, idlog);
-        this.divlogidMax++;
 
         // Always write internal DocStruct type.
         String type = inStruct.getType().getName();
@@ -3728,13 +4356,13 @@ public class MetsMods implements ugh.dl.Fileformat {
         inStruct.setIdentifier(idlog);
 
         // Write metadata.
-        if (this.metsNode == null) {
+        if (context.getMetsNode() == null) {
             log.error("METS node is null... can't write anything");
             return null;
         }
 
         // Set the DMDIDs.
-        int dmdid = writeLogDmd(this.metsNode, inStruct, isAnchorFile);
+        int dmdid = writeLogDmd(context, context.getMetsNode(), inStruct, isAnchorFile);
         if (dmdid >= 0) {
             // Just set DMDID attribute, if there is a metadata set.
             String dmdidString = DMDLOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(dmdid);
@@ -3773,7 +4401,7 @@ public class MetsMods implements ugh.dl.Fileformat {
         List<DocStruct> allChildren = inStruct.getAllChildren();
         if (allChildren != null) {
             for (DocStruct child : allChildren) {
-                if (writeLogDivs(div, child, isAnchorFile) == null) {
+                if (writeLogDivs(context, div, child, isAnchorFile) == null) {
                     // Error occured while writing div for child.
                     return null;
                 }
@@ -3868,64 +4496,239 @@ public class MetsMods implements ugh.dl.Fileformat {
 
     /***************************************************************************
      * <p>
-     * Creates a node according to XPath.
+     * Creates a node according to XPath.
+     * </p>
+     * 
+     * @param query The xpath.
+     * @param startingNode The base node for the xquery.
+     * @param modsDocument
+     * @throws PreferencesException
+     * @return
+     **************************************************************************/
+    protected Node createNode(String query, Node startingNode, Document modsDocument, boolean checkParent) throws PreferencesException {
+
+        Node newNode = null;
+        Node parentNode = startingNode;
+        Node latestNode = null;
+        String availablePath = "";
+
+        // Get the parsed query; the MODS grouping brackets "[0-9+]" are
+        // already removed from it.
+        WriteXPathPlan plan = getWriteXPathPlan(query);
+
+        // This is a really dirty hack, I will fix it tomorrow! (hihi)
+        MetsWriteContext context = MetsWriteContext.of(modsDocument);
+        if (plan.groupKey != null && context != null) {
+            // Store the group and tag in the replacement hash of the write.
+            context.addGroupTag(plan.groupKey, plan.groupTag);
+        }
+        // This is a really dirty hack, I will fix it tomorrow! (hihi)
+
+        log.debug("XPath expression  >>" + plan.query + "<<");
+
+        // Iterate over all elements from path and check, which part of the path
+        // is already available in the DOM tree.
+        for (WriteXPathPlan.Step step : plan.steps) {
+
+            // The path element must start with one of the defined namespace
+            // prefixes or with a leading "@".
+            if (step.prefixError != null) {
+                log.error(step.prefixError);
+                throw new PreferencesException(step.prefixError);
+            }
+
+            log.trace("Path  >>" + step.element + "<<");
+
+            availablePath = step.availablePath;
+
+            // Check, if the element name starts with a "#", if so, this element
+            // needs to be created anyhow; even if it's new.
+            if (step.forceCreate) {
+                break;
+            }
+
+            // Check, if currentPath is already available.
+            Node context = (checkParent ? startingNode.getParentNode() : startingNode);
+            try {
+                log.trace("Single part - XPath expression  >>" + step.currentPath + "<<");
+                log.trace("Starting node  >>" + startingNode.getNodeName() + "<<");
+
+                // Carry out the query.
+                if (step.requestingElement) {
+                    // Paths of plain elements are looked up directly in the
+                    // DOM, all others are queried by XPath.
+                    Node firstNode = null;
+                    if (step.plainSteps != null && context != null) {
+                        firstNode = findFirstElement(context, step.plainSteps, 0);
+                    } else {
+                        NodeList nodes = (NodeList) getCompiledXPathExpression(step.currentPath).evaluate(context, XPathConstants.NODESET);
+                        if (nodes != null && nodes.getLength() > 0) {
+                            firstNode = nodes.item(0);
+                        }
+                    }
+
+                    // We were requesting an element, if no node was found,
+                    // this path (currentpath) is not available anymore.
+                    if (firstNode == null) {
+                        // Get out of for loop.
+                        break;
+                    }
+                    // Get the first node.
+                    latestNode = firstNode;
+                } else {
+                    // We were requesting an attribute, so check, if it is
+                    // available.
+                    Boolean available = (Boolean) getCompiledXPathExpression(step.currentPath).evaluate(context, XPathConstants.BOOLEAN);
+                    if (available.booleanValue()) {
+                        // After requesting an attribute, we cannot request
+                        // anything else, the attribute cannot have any
+                        // children.
+                        availablePath = step.attributePath;
+
+                        //get the existing Node with the right attributes
+                        Map<String, String> attributeMap = step.attributes;
+                        XPathExpression expr2 = getCompiledXPathExpression(step.attributeElementName);
+                        Object result = expr2.evaluate(startingNode.getParentNode(), XPathConstants.NODESET);
+                        if (result != null) {
+                            NodeList nodes = (NodeList) result;
+                            if (nodes.getLength() > 0) {
+                                for (int i = 0; i < nodes.getLength(); i++) {
+                                    Node node = nodes.item(i);
+                                    NamedNodeMap attributes = node.getAttributes();
+                                    int matchingattributes = 0;
+                                    if (attributes != null && attributes.getLength() > 0) {
+                                        for (int j = 0; j < attributes.getLength(); j++) {
+                                            Node attribute = attributes.item(j);
+                                            String testValue = attributeMap.get(attribute.getNodeName());
+                                            if (testValue != null && testValue.contentEquals(attribute.getNodeValue())) {
+                                                matchingattributes++;
+                                            }
+                                        }
+                                    }
+                                    if (matchingattributes > 0 && matchingattributes == attributeMap.size()) {
+                                        latestNode = node;
+                                        break;
+                                    }
+                                }
+                            }
+                        }
+                    } else {
+                        // Attribute is not available, so we need to add it.
+                        break;
+                    }
+                }
+            } catch (XPathExpressionException e) {
+                String message = "Error due to querying XPath expression '" + plan.query + "'!";
+                log.error(message, e);
+                throw new PreferencesException(message, e);
+            }
+        }
+
+        // Now the availablePath variable should contain the path which is
+        // already available; the latestNode contains the appropriate Node.
+        //
+        // Define the node to which the new path should be added.
+        if (latestNode != null) {
+            // The latest node which was found becomes the parentNode for the
+            // creation of a new element or attribute.
+            parentNode = latestNode;
+        } else {
+            // If no node was detected (e.g. in case of a single attribute, the
+            // parentNode is the startingNode.
+            parentNode = startingNode;
+        }
+
+        // Iterate over all elements, which should be added; the element can be
+        // an attribute, if it starts with an "@".
+        for (WriteXPathPlan.CreateStep create : plan.getCreateSteps(availablePath)) {
+
+            log.trace("Subpath to create: " + create.elementName);
+
+            // The element is not an element but an attribute.
+            if (create.attribute) {
+                newNode = parseAttributeWithoutValue(create.elementName, parentNode, modsDocument);
+                // Get out of loop, an attribute can only be the end of an Xpath
+                // expression, as we cannot connect subelements to the
+                // attribute.
+                break;
+            }
+
+            // It's an element; if no parent is available, create it below
+            // the starting node. If the new element name contains a "=", the
+            // value (everything which is behind the "=") is set as well.
+            newNode = createElementWithOrWithoutValue(create.elementNameWOAttributes, parentNode == null ? startingNode : parentNode);
+
+            log.trace("Creating node  >>" + create.elementNameWOAttributes + "<<");
+
+            // Create the appropriate nodes for the bracket contents; notice
+            // that the current parentNode is the new starting Node.
+            for (String bracketQuery : create.bracketQueries) {
+                log.trace("Bracket content  >>" + bracketQuery + "<<");
+                createNode(bracketQuery, newNode, modsDocument, checkParent);
+            }
+
+            // The new node becomes the parent node.
+            parentNode = newNode;
+        }
+
+        return newNode;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the parsed WriteXPath for createNode(). The plans are built on first use, and are shared by all MetsMods instances with the same
+     * namespaces, like the compiled XPath expressions.
+     * </p>
+     *
+     * @param writeXPath
+     * @return
+     **************************************************************************/
+    private WriteXPathPlan getWriteXPathPlan(String writeXPath) {
+        return getXPathCache().getWriteXPathPlan(writeXPath, this::buildWriteXPathPlan);
+    }
+
+    /***************************************************************************
+     * <p>
+     * Parses a WriteXPath: removes the MODS grouping brackets, and computes the XPath query for every path element, which is looked up in the DOM.
+     * Path elements after an element, which is always created or has no namespace prefix, are never looked up, so they are left out.
      * </p>
-     * 
-     * @param query The xpath.
-     * @param startingNode The base node for the xquery.
-     * @param modsDocument
-     * @throws PreferencesException
+     *
+     * @param writeXPath
      * @return
      **************************************************************************/
-    protected Node createNode(String query, Node startingNode, Document modsDocument, boolean checkParent) throws PreferencesException {
+    private WriteXPathPlan buildWriteXPathPlan(String writeXPath) {
 
-        Node newNode = null;
-        Node parentNode = startingNode;
-        Node latestNode = null;
-        String availablePath = "";
         String currentPath = "";
         String currentPathNS = "";
-        boolean getout = false;
-        String group = "";
-        String tag = "";
+        String groupKey = null;
+        String groupTag = null;
 
         // Trim the query string.
-        query = query.trim();
+        String query = writeXPath.trim();
 
         // Check if element contains the "[0-9+]" to enable grouping.
         //
         // This is a really dirty hack, I will fix it tomorrow! (hihi)
         // Check element for MODS grouping brackets.
-        Pattern pattern = Pattern.compile("\\[(\\d)+\\]");
-        Matcher matcher = pattern.matcher(query);
+        Matcher matcher = GROUP_BRACKETS_PATTERN.matcher(query);
         if (matcher.find()) {
             // Get the index of the "[" and the index of the "]".
-
             int bracketStartIndex = matcher.start();
             int bracketEndIndex = matcher.end() - 1;
             int colonIndex = (query.substring(0, bracketStartIndex)).lastIndexOf(":");
             // Get the group number and the group tag name.
-            group = query.substring(bracketStartIndex + 1, bracketEndIndex);
-            tag = query.substring(colonIndex + 1, bracketStartIndex);
-            // Store the group and tag in a replacement hash.
-            this.replaceGroupTags.put(tag + group, tag);
+            String group = query.substring(bracketStartIndex + 1, bracketEndIndex);
+            groupTag = query.substring(colonIndex + 1, bracketStartIndex);
+            groupKey = groupTag + group;
             // Remove the "[]" from the query string.
             query = query.substring(0, bracketStartIndex) + group + query.substring(bracketEndIndex + 1);
         }
         // This is a really dirty hack, I will fix it tomorrow! (hihi)
 
-        log.debug("XPath expression  >>" + query + "<<");
-
-        // Split query into single elements and check, if some of these elements
-        // are already available.
-        String[] elementPath = splitPath(query);
+        List<WriteXPathPlan.Step> steps = new ArrayList<>();
 
-        // Iterate over all elements from path and check, which part of the path
-        // is already available in the DOM tree.
-        for (String element : elementPath) {
-
-            // Set to true, if we are requesting an element.
-            boolean requestingElement = false;
+        // Split query into single elements.
+        for (String element : splitPath(query)) {
 
             // No content in elementPath.
             if ("".equals(element)) {
@@ -3938,6 +4741,8 @@ public class MetsMods implements ugh.dl.Fileformat {
                 continue;
             }
 
+            String availablePath = currentPathNS;
+
             // Check if the path starts (a) with one of the defined namespace
             // prefixes, (b) with a leading "#" and a following defined
             // namespace prefix, or (c) with a leading "@".
@@ -3952,185 +4757,71 @@ public class MetsMods implements ugh.dl.Fileformat {
             if (!element.startsWith("@") && !prefixCheck) {
                 String message = "Prefix missing in METS XPath  >>" + query + "<<  path element  >>" + element + "<<. One of "
                         + this.namespaces.keySet() + " or '@' is expected!";
-                log.error(message);
-                throw new PreferencesException(message);
+                steps.add(new WriteXPathPlan.Step(element, message, false, false, availablePath, null, null, null, null, null));
+                break;
             }
 
-            log.trace("Path  >>" + element + "<<");
-
-            // Check, what we are requesting: a NodeList or a boolean.
-            availablePath = currentPathNS;
-
             // Check, if the element name starts with a "#", if so, this element
             // needs to be created anyhow; even if it's new.
             if (element.startsWith(METS_PREFS_WRITEXPATH_SEPARATOR_STRING)) {
-                // Start with a hash, get out of loop.
-                element = element.substring(1, element.length());
+                steps.add(new WriteXPathPlan.Step(element, null, true, false, availablePath, null, null, null, null, null));
                 break;
             }
 
             // We are not requesting a Node or a NodeList, instead we just
             // check, if something is available with a certain value.
             if (element.contains("=")) {
-                requestingElement = false;
                 if (StringUtils.isBlank(currentPath)) {
                     // It is the first attribute, so add a "./".
                     currentPath = "./" + element;
                 } else {
                     currentPath += "/" + element;
                 }
+                String attributePath = availablePath + "/" + element;
+                steps.add(new WriteXPathPlan.Step(element, null, false, false, availablePath, currentPath, null, attributePath,
+                        getSubPathElementName(attributePath), getAttributesFromNode(element)));
             }
             // We are requesting an element.
             else {
-                requestingElement = true;
                 // Check, if the element already has a namespace prefix.
-                if (element.contains(":")) {
+                if (element.contains(":") || element.startsWith("@")) {
                     // It has, so we don't have to add the namespace.
                     currentPath += "/" + element;
-                } else if (element.startsWith("@")) {
-                    currentPath += "/" + element;
                 } else {
                     // Add the mods namespace.
                     currentPath += "/" + this.modsNamespacePrefix + element;
                 }
+                steps.add(new WriteXPathPlan.Step(element, null, false, true, availablePath, currentPath, getPlainPathSteps(currentPath), null, null,
+                        null));
             }
             currentPathNS += "/" + element;
-
-            // Check, if currentPath is already available.
-            XPathFactory factory = XPathFactory.newInstance();
-
-            // Set namespace context.
-            XPath xpath = factory.newXPath();
-            PersonalNamespaceContext pnc = new PersonalNamespaceContext();
-            pnc.setNamespaceHash(this.namespaces);
-            xpath.setNamespaceContext(pnc);
-
-            try {
-                XPathExpression expr = xpath.compile(currentPath);
-
-                log.trace("Single part - XPath expression  >>" + currentPath + "<<");
-                log.trace("Starting node  >>" + startingNode.getNodeName() + "<<");
-
-                // Carry out the query.
-                Object result = null;
-                if (requestingElement) {
-                    if (checkParent) {
-                        result = expr.evaluate(startingNode.getParentNode(), XPathConstants.NODESET);
-                    } else {
-                        result = expr.evaluate(startingNode, XPathConstants.NODESET);
-                    }
-                } else // We are requesting an attribute.
-                if (checkParent) {
-                    result = expr.evaluate(startingNode.getParentNode(), XPathConstants.BOOLEAN);
-                } else {
-                    result = expr.evaluate(startingNode, XPathConstants.BOOLEAN);
-                }
-
-                // We were requesting an element, now we should have a
-                // nodeset.
-                if (requestingElement) {
-                    if (result != null) {
-                        NodeList nodes = (NodeList) result;
-                        log.trace(nodes.getLength() + " nodes found");
-                        if (nodes.getLength() == 0) {
-                            // No nodes found.
-                            getout = true;
-                        } else {
-                            // Get the first node.
-                            latestNode = nodes.item(0);
-                        }
-                    } else {
-                        // No nodes found, so this path (currentpath) is not
-                        // available anymore.
-                        getout = true;
-                    }
-                    if (getout) {
-                        // Get out of for loop.
-                        break;
-                    }
-                } else {
-                    // We were requesting an attribute, so check, if it is
-                    // available.
-                    Boolean available = (Boolean) result;
-                    if (available.booleanValue()) {
-                        // After requesting an attribute, we cannot request
-                        // anything else, the attribute cannot have any
-                        // children.
-                        availablePath = availablePath + "/" + element;
-
-                        //get the existing Node with the right attributes
-                        String elementName = getSubPathElementName(availablePath);
-                        HashMap<String, String> attributeMap = getAttributesFromNode(element);
-                        XPathExpression expr2 = xpath.compile(elementName);
-                        result = expr2.evaluate(startingNode.getParentNode(), XPathConstants.NODESET);
-                        if (result != null) {
-                            NodeList nodes = (NodeList) result;
-                            if (nodes.getLength() > 0) {
-                                for (int i = 0; i < nodes.getLength(); i++) {
-                                    Node node = nodes.item(i);
-                                    NamedNodeMap attributes = node.getAttributes();
-                                    int matchingattributes = 0;
-                                    if (attributes != null && attributes.getLength() > 0) {
-                                        for (int j = 0; j < attributes.getLength(); j++) {
-                                            Node attribute = attributes.item(j);
-                                            String testValue = attributeMap.get(attribute.getNodeName());
-                                            if (testValue != null && testValue.contentEquals(attribute.getNodeValue())) {
-                                                matchingattributes++;
-                                            }
-                                        }
-                                    }
-                                    if (matchingattributes > 0 && matchingattributes == attributeMap.size()) {
-                                        latestNode = node;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        // Attribute is not available, so we need to add it.
-                        break;
-                    }
-                }
-            } catch (XPathExpressionException e) {
-                String message = "Error due to querying XPath expression '" + query + "'!";
-                log.error(message, e);
-                throw new PreferencesException(message, e);
-            }
         }
 
-        // Now the availablePath variable should contain the path which is
-        // already available; the latestNode contains the appropriate Node.
-        //
-        // Find the path we need to create.
-        String pathtocreate = substractStrings(query, availablePath);
+        String parsedQuery = query;
+        return new WriteXPathPlan(query, groupKey, groupTag, steps, availablePath -> buildCreateSteps(parsedQuery, availablePath));
+    }
 
-        // Split the whole path into subpathes.
-        String[] elementsToCreate = splitPath(pathtocreate);
+    /***************************************************************************
+     * <p>
+     * Computes the elements and attributes to create for a WriteXPath, if the given part of the path is already available in the DOM.
+     * </p>
+     *
+     * @param query the WriteXPath without the grouping brackets
+     * @param availablePath
+     * @return
+     **************************************************************************/
+    private static List<WriteXPathPlan.CreateStep> buildCreateSteps(String query, String availablePath) {
 
-        // Define the node to which the new path should be added.
-        if (latestNode != null) {
-            // The latest node which was found becomes the parentNode for the
-            // creation of a new element or attribute.
-            parentNode = latestNode;
-        } else {
-            // If no node was detected (e.g. in case of a single attribute, the
-            // parentNode is the startingNode.
-            parentNode = startingNode;
-        }
+        List<WriteXPathPlan.CreateStep> result = new ArrayList<>();
 
-        // Iterate over all elements, which should be added; the element can be
-        // an attribute, if it starts with an "@".
-        for (String elementName : elementsToCreate) {
+        // Find the path we need to create, and split it into subpathes.
+        for (String elementName : splitPath(substractStrings(query, availablePath))) {
 
             if ("".equals(elementName) || ".".equals(elementName)) {
                 // Get next one; this element name does not contain anything.
                 continue;
             }
 
-            log.trace("Subpath to create: " + elementName);
-
-            // Create the appropriate element.
-            //
             // Check, if there is a leading NOT, e.g. a not(myElement) or
             // not(myAttribut) must not be created.
             if (elementName.startsWith("not") || elementName.startsWith("NOT")) {
@@ -4138,64 +4829,29 @@ public class MetsMods implements ugh.dl.Fileformat {
                 continue;
             }
 
-            // The element is not an element but an attribute.
-            //
+            // An attribute can only be the end of an Xpath expression.
             if (elementName.startsWith("@")) {
-                newNode = parseAttributeWithoutValue(elementName, parentNode, modsDocument);
-                // Get out of loop, an attribute can only be the end of an Xpath
-                // expression, as we cannot connect subelements to the
-                // attribute.
+                result.add(new WriteXPathPlan.CreateStep(elementName, true, null, Collections.emptyList()));
                 break;
             }
 
-            // It's an element
-            //
-            // Separate the element name from the square brackets.
-            //
-            String elementNameWOAttributes = getSubPathElementName(elementName);
-
-            // No parent available, so create a new element.
-            if (parentNode == null) {
-                // Check, if the new element name contains a "=" in this case,
-                // we need to get the value (everything which is behing the "=")
-                // and set this value as well.
-                newNode = createElementWithOrWithoutValue(elementNameWOAttributes, startingNode);
-
-                log.trace("Creating node  >>" + elementNameWOAttributes + "<<");
-            }
-
-            // A parent Node is available
-            else {
-                // Check, if the new element name contains a "=" in this case,
-                // we need to get the value (everything which is behind the "=")
-                // and set this value as well.
-                newNode = createElementWithOrWithoutValue(elementNameWOAttributes, parentNode);
-
-                log.trace("Creating node  >>" + elementNameWOAttributes + "<<");
-            }
-
-            // Get information within the brackets.
+            // Only check (and create) the bracket contents, if it does not
+            // start with a "not".
+            List<String> bracketQueries = new ArrayList<>();
             String[] bracketcontents = getBracketContents(elementName);
             if (bracketcontents != null) {
-                // Create the appropriate nodes for the bracket contents; notice
-                // that the current parentNode is the new starting Node.
                 for (String content : bracketcontents) {
-
-                    log.trace("Bracket content  >>" + content + "<<");
-
                     if (!content.startsWith("not")) {
-                        // Only check (and create) the bracket contents, if it
-                        // does not start with a "not".
-                        createNode("./" + content, newNode, modsDocument, checkParent);
+                        bracketQueries.add("./" + content);
                     }
                 }
             }
 
-            // The new node becomes the parent node.
-            parentNode = newNode;
+            // Separate the element name from the square brackets.
+            result.add(new WriteXPathPlan.CreateStep(elementName, false, getSubPathElementName(elementName), bracketQueries));
         }
 
-        return newNode;
+        return result;
     }
 
     /***************************************************************************
@@ -4206,7 +4862,7 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @param in
      * @return
      **************************************************************************/
-    private String[] getBracketContents(String in) {
+    private static String[] getBracketContents(String in) {
 
         List<String> resultList = new LinkedList<>();
 
@@ -4244,6 +4900,66 @@ public class MetsMods implements ugh.dl.Fileformat {
 
     }
 
+    /***************************************************************************
+     * <p>
+     * Splits a relative XPath of plain elements like <code>./mods:titleInfo/mods:title</code> into the namespace URIs and local names of its steps.
+     * </p>
+     * 
+     * @param path
+     * @return the namespace URI and the local name of each step, or null, if the path is not relative or contains other steps than elements with
+     *         a known namespace prefix
+     **************************************************************************/
+    private List<String[]> getPlainPathSteps(String path) {
+
+        if (!path.startsWith("./") || path.length() == 2) {
+            return null;
+        }
+
+        List<String[]> steps = new ArrayList<>();
+        for (String step : path.substring(2).split("/")) {
+            Matcher matcher = PLAIN_STEP_PATTERN.matcher(step);
+            if (!matcher.matches()) {
+                return null;
+            }
+            Namespace namespace = this.namespaces.get(matcher.group(1));
+            if (namespace == null || namespace.getUri() == null) {
+                return null;
+            }
+            steps.add(new String[] { namespace.getUri(), matcher.group(2) });
+        }
+
+        return steps;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Finds the first element in document order, which can be reached from the given node by the given steps; this is the first node XPath
+     * would return for the path.
+     * </p>
+     * 
+     * @param parent
+     * @param steps
+     * @param index the current step
+     * @return the element, or null
+     **************************************************************************/
+    private static Node findFirstElement(Node parent, List<String[]> steps, int index) {
+
+        String[] step = steps.get(index);
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == ELEMENT_NODE && step[1].equals(child.getLocalName()) && step[0].equals(child.getNamespaceURI())) {
+                if (index == steps.size() - 1) {
+                    return child;
+                }
+                Node result = findFirstElement(child, steps, index + 1);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+
+        return null;
+    }
+
     /***************************************************************************
      * <p>
      * Gets the element name of a subpath, and its value if existing. Just takes out all brackets.
@@ -4252,8 +4968,8 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @param in
      * @return
      **************************************************************************/
-    private String getSubPathElementName(String in) {
-        return in.replaceAll("\\[(.*)\\]", "");
+    private static String getSubPathElementName(String in) {
+        return SUBPATH_BRACKETS_PATTERN.matcher(in).replaceAll("");
     }
 
     /***************************************************************************
@@ -4265,7 +4981,7 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @param in2
      * @return the result string
      **************************************************************************/
-    private String substractStrings(String in1, String in2) {
+    private static String substractStrings(String in1, String in2) {
 
         if ("".equals(in2)) {
             // There is nothing to substract.
@@ -4298,7 +5014,7 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @param in
      * @return
      **************************************************************************/
-    private String[] splitPath(String in) {
+    private static String[] splitPath(String in) {
 
         List<String> resultList = new LinkedList<>();
 
@@ -4428,6 +5144,7 @@ public class MetsMods implements ugh.dl.Fileformat {
      * </p>
      * 
      * 
+     * @param context
      * @param parentNode
      * @param inStruct
      * @return
@@ -4435,7 +5152,8 @@ public class MetsMods implements ugh.dl.Fileformat {
      * @throws MissingModsMappingException
      * @throws WriteException
      **************************************************************************/
-    protected int writeLogDmd(org.w3c.dom.Node parentNode, DocStruct inStruct, boolean isAnchorFile) throws PreferencesException, WriteException {
+    protected int writeLogDmd(MetsWriteContext context, org.w3c.dom.Node parentNode, DocStruct inStruct, boolean isAnchorFile)
+            throws PreferencesException, WriteException {
 
         Document domDoc = parentNode.getOwnerDocument();
 
@@ -4471,15 +5189,24 @@ public class MetsMods implements ugh.dl.Fileformat {
         }
 
         // Get new ID for metadata.
-        int dmdid = this.dmdidMax;
-        this.dmdidMax++;
-
-        // Write metadata header.
-        Element dmdsec = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_DMDSEC_STRING);
-        Element dommodsnode = createModsMetadataHeader(DMDLOG_PREFIX, dmdid, dmdsec, domDoc);
+        int dmdid = context.nextLogicalDmdId();
+
+        Element dmdsec;
+        Element dommodsnode;
+        ModsSection section = takeModsSection(context, inStruct, domDoc);
+        if (section != null) {
+            // The MODS section was built in parallel.
+            dmdsec = section.dmdsec;
+            dmdsec.setAttribute(METS_ID_STRING, DMDLOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(dmdid));
+            dommodsnode = section.mods;
+        } else {
+            // Write metadata header.
+            dmdsec = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_DMDSEC_STRING);
+            dommodsnode = createModsMetadataHeader(DMDLOG_PREFIX, dmdid, dmdsec, domDoc);
 
-        // Write metadata MODS section.
-        writeLogModsSection(inStruct, dommodsnode, domDoc);
+            // Write metadata MODS section.
+            writeLogModsSection(inStruct, dommodsnode, domDoc);
+        }
 
         // Only add the dmdsec to the node, if the MODS section is not empty.
         if (dommodsnode.getChildNodes().getLength() > 0) {
@@ -4904,11 +5631,12 @@ public class MetsMods implements ugh.dl.Fileformat {
      * created.
      * </p>
      * 
+     * @param context
      * @param parentNode Node in DOM tree
      * @param currentLogStruct DocStruct element of current logical structure entity
      * @return true, if write statement was successful
      **************************************************************************/
-    private boolean writeSingleSMLink(org.w3c.dom.Node parentNode, DocStruct currentLogStruct) {
+    private boolean writeSingleSMLink(MetsWriteContext context, org.w3c.dom.Node parentNode, DocStruct currentLogStruct) {
 
         // Identifier of physical struct.
         String idphys = null;
@@ -4929,8 +5657,7 @@ public class MetsMods implements ugh.dl.Fileformat {
             String idlog = currentLogStruct.getIdentifier();
             if (idlog == null) {
                 // No identifier available for the logical struct.
-                idlog = LOG_PREFIX + Integer.toString(this.divlogidMax);
-                this.divlogidMax++;
+                idlog = LOG_PREFIX + Integer.toString(context.nextLogicalDivId());
                 currentLogStruct.setIdentifier(idlog);
             }
             createDomAttributeNS(smlink, this.xlinkNamespacePrefix, METS_FROM_STRING, idlog);
@@ -4941,9 +5668,8 @@ public class MetsMods implements ugh.dl.Fileformat {
                 DocStruct dsphys = ref.getTarget();
                 if (dsphys.getIdentifier() == null) {
                     // No identifier available, we have to create one.
-                    idphys = "phys" + Integer.toString(this.divphysidMax);
+                    idphys = "phys" + Integer.toString(context.nextPhysicalDivId());
                     dsphys.setIdentifier(idphys);
-                    this.divphysidMax++;
                 } else {
                     idphys = dsphys.getIdentifier();
                 }
@@ -4958,7 +5684,7 @@ public class MetsMods implements ugh.dl.Fileformat {
         //
         if (allChildren != null) {
             for (DocStruct child : allChildren) {
-                if (!writeSingleSMLink(parentNode, child)) {
+                if (!writeSingleSMLink(context, parentNode, child)) {
                     // Error occured while writing div for child.
                     return false;
                 }
@@ -4973,16 +5699,17 @@ public class MetsMods implements ugh.dl.Fileformat {
      * Writes the <code>structLink</code> section.
      * </p>
      * 
+     * @param context
      * @param parentNode Node in DOM tree
      * @return DOM-Element representing &lt;structLink>
      **************************************************************************/
-    private Element writeSMLinks(org.w3c.dom.Node parentNode) {
+    private Element writeSMLinks(MetsWriteContext context, org.w3c.dom.Node parentNode) {
 
         Document domDoc = parentNode.getOwnerDocument();
         Element structLink = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_STRUCTLINK_STRING);
 
         // Get digitalDocument and the logical and physical structure.
-        DocStruct logStruct = this.digdoc.getLogicalDocStruct();
+        DocStruct logStruct = context.getDocument().getLogicalDocStruct();
 
         if (logStruct == null) {
             log.warn("DigitalDocument has no logical document structure");
@@ -5007,7 +5734,7 @@ public class MetsMods implements ugh.dl.Fileformat {
 
             log.debug("No refs existing in DigitalDocument, added empty smLink to get a valid METS document");
         } else {
-            writeSingleSMLink(structLink, logStruct);
+            writeSingleSMLink(context, structLink, logStruct);
         }
 
         return structLink;
@@ -5018,13 +5745,15 @@ public class MetsMods implements ugh.dl.Fileformat {
      * Write the descriptive metadata for physical structure entities.
      * </p>
      * 
+     * @param context
      * @param parentNode
      * @param divElement
      * @param inStruct
      * @return The internal number of the descriptive metadata section.
      * @throws PreferencesException
      **************************************************************************/
-    protected int writePhysDmd(org.w3c.dom.Node parentNode, Element divElement, DocStruct inStruct) throws PreferencesException {
+    protected int writePhysDmd(MetsWriteContext context, org.w3c.dom.Node parentNode, Element divElement, DocStruct inStruct)
+            throws PreferencesException {
 
         Document domDoc = parentNode.getOwnerDocument();
 
@@ -5036,20 +5765,41 @@ public class MetsMods implements ugh.dl.Fileformat {
         }
 
         // Get new ID for metadata.
-        int dmdid = this.dmdidPhysMax;
-        this.dmdidPhysMax++;
+        int dmdid = context.nextPhysicalDmdId();
 
-        // Write metadata header.
-        Element dmdsec = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_DMDSEC_STRING);
-        Element dommodsnode = createModsMetadataHeader(DMDPHYS_PREFIX, dmdid, dmdsec, domDoc);
+        ModsSection section;
+        try {
+            section = takeModsSection(context, inStruct, domDoc);
+        } catch (WriteException e) {
+            // Only thrown, if building the MODS section failed unexpectedly.
+            throw new PreferencesException(e.getMessage(), e);
+        }
+
+        Element dmdsec;
+        Element dommodsnode;
+        if (section != null) {
+            // The MODS section was built in parallel, the attributes written
+            // to its div belong to the div of the DocStruct.
+            dmdsec = section.dmdsec;
+            dmdsec.setAttribute(METS_ID_STRING, DMDPHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(dmdid));
+            dommodsnode = section.mods;
+            NamedNodeMap attributes = section.div.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                divElement.setAttribute(attributes.item(i).getNodeName(), attributes.item(i).getNodeValue());
+            }
+        } else {
+            // Write metadata header.
+            dmdsec = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_DMDSEC_STRING);
+            dommodsnode = createModsMetadataHeader(DMDPHYS_PREFIX, dmdid, dmdsec, domDoc);
 
-        // Write metadata MODS section.
-        writePhysModsSection(inStruct, dommodsnode, domDoc, divElement);
+            // Write metadata MODS section.
+            writePhysModsSection(inStruct, dommodsnode, domDoc, divElement);
+        }
 
         // Add dmdsec node before the parentNode, but only if metadata had
         // been written.
         if (dommodsnode.getChildNodes().getLength() > 0) {
-            parentNode.insertBefore(dmdsec, this.firstDivNode);
+            parentNode.insertBefore(dmdsec, context.getFirstDivNode());
             return dmdid;
         }
 
@@ -5163,13 +5913,14 @@ public class MetsMods implements ugh.dl.Fileformat {
      * Writes the AMD section.
      * </p>
      * 
+     * @param context
      * @param theDomDoc
      * @param isAnchorFile
      **************************************************************************/
-    protected void writeAmdSec(Document theDomDoc, boolean isAnchorFile) {
-        List<Md> techMdList = this.digdoc.getTechMds();
+    protected void writeAmdSec(MetsWriteContext context, Document theDomDoc, boolean isAnchorFile) {
+        List<Md> techMdList = context.getDocument().getTechMds();
         Element amdSec = createDomElementNS(theDomDoc, this.metsNamespacePrefix, METS_AMDSEC_STRING);
-        AmdSec amd = this.digdoc.getAmdSec();
+        AmdSec amd = context.getDocument().getAmdSec();
         if (amd != null) {
             if (StringUtils.isBlank(amd.getId())) {
                 amd.setId(AMD_PREFIX);
@@ -5180,7 +5931,6 @@ public class MetsMods implements ugh.dl.Fileformat {
         }
         if (techMdList != null && !techMdList.isEmpty()) {
             for (Md md : techMdList) {
-                this.techidMax++;
                 Node theNode = theDomDoc.importNode(md.getContent(), true);
 
                 if (MdType.getType(theNode.getLocalName()) != null) {
@@ -5209,12 +5959,13 @@ public class MetsMods implements ugh.dl.Fileformat {
             } else {
                 element = this.metsNamespacePrefix + ":" + METS_FILESEC_STRING;
             }
-            NodeList dmdList = this.metsNode.getElementsByTagName(element);
+            Element metsNode = context.getMetsNode();
+            NodeList dmdList = metsNode.getElementsByTagName(element);
             Node refChild = dmdList.item(0);
             if (refChild != null) {
-                this.metsNode.insertBefore(amdSec, refChild);
+                metsNode.insertBefore(amdSec, refChild);
             } else {
-                this.metsNode.appendChild(amdSec);
+                metsNode.appendChild(amdSec);
             }
         }
     }
@@ -5249,48 +6000,53 @@ public class MetsMods implements ugh.dl.Fileformat {
 
     /***************************************************************************
      * <p>
-     * Serializes the METS DOM document.
+     * Serializes the METS DOM document. Only the given document and stream are used, so several documents can be serialized in parallel, also
+     * by the same instance. The stream is flushed, but not closed.
      * </p>
      * 
      * @param domDoc
      * @param xmlFile
      * @throws IOException
      **************************************************************************/
-    protected synchronized void serializeMets(Document domDoc, FileOutputStream xmlFile) throws IOException {
-
-        MetsDocument metsBean = null;
-        XmlOptions opts = new XmlOptions();
+    protected void serializeMets(Document domDoc, OutputStream xmlFile) throws IOException {
 
-        // Escape all closing ">"s to &gt;.
-        XmlOptionCharEscapeMap charEsc = new XmlOptionCharEscapeMap();
-        try {
-            charEsc.addMapping('>', XmlOptionCharEscapeMap.PREDEF_ENTITY);
-            charEsc.addMapping('"', XmlOptionCharEscapeMap.PREDEF_ENTITY);
-        } catch (XmlException e) {
-            // No error should occur, unless the above code is correct!
-            e.printStackTrace();
-        }
-        opts.setSaveSubstituteCharacters(charEsc);
-        opts.setSavePrettyPrint().setSavePrettyPrintIndent(3);
-        opts.setSaveAggressiveNamespaces();
+        // Write the DOM with StAX directly to the file, instead of parsing it
+        // into a second XMLBeans document first.
         Map<String, String> suggestedPrefixes = new HashMap<>();
         for (Entry<String, Namespace> abbrev : namespaces.entrySet()) {
             suggestedPrefixes.put(abbrev.getValue().getUri(), abbrev.getKey());
         }
 
-        opts.setSaveSuggestedPrefixes(suggestedPrefixes);
         try {
-            metsBean = MetsDocument.Factory.parse(domDoc, opts);
-        } catch (XmlException e) {
-            String message = "METS file could not be parsed for storing!";
+            new MetsStreamSerializer(suggestedPrefixes).serialize(domDoc, xmlFile);
+        } catch (XMLStreamException e) {
+            String message = "METS file could not be serialized for storing!";
             log.error(message, e);
-            throw new IOException(message + "! System message: " + e.getMessage());
+            throw new IOException(message + " System message: " + e.getMessage(), e);
         }
 
-        metsBean.save(xmlFile, opts);
+        // The stream is closed by the caller.
+        xmlFile.flush();
+    }
 
-        // Close METS file.
-        xmlFile.close();
+    /***************************************************************************
+     * <p>
+     * Serializes the METS DOM document to a file, which is closed afterwards.
+     * </p>
+     * 
+     * @param domDoc
+     * @param xmlFile
+     * @throws IOException
+     * @deprecated use {@link #serializeMets(Document, OutputStream)}, which does not close the stream
+     **************************************************************************/
+    @Deprecated
+    protected void serializeMets(Document domDoc, FileOutputStream xmlFile) throws IOException {
+        try {
+            serializeMets(domDoc, (OutputStream) xmlFile);
+        } finally {
+            // Close METS file.
+            xmlFile.close();
+        }
     }
 
     /***************************************************************************
@@ -5431,6 +6187,9 @@ public class MetsMods implements ugh.dl.Fileformat {
 
         this.namespaces.put(metsExtension.getPrefix(), metsExtension);
 
+        // The compiled expressions and parsed WriteXPaths depend on the
+        // namespace prefixes.
+        this.xPathCache = null;
     }
 
     /**
@@ -5443,8 +6202,7 @@ public class MetsMods implements ugh.dl.Fileformat {
 
         HashMap<String, String> attributes = new HashMap<>();
 
-        Pattern p = Pattern.compile("\\[[^\\]]+\\]");
-        Matcher m = p.matcher(nodeName);
+        Matcher m = ATTRIBUTE_BRACKETS_PATTERN.matcher(nodeName);
         while (m.find()) {
             String group = m.group();
             int indexAt = group.indexOf("@");
@@ -5512,6 +6270,133 @@ public class MetsMods implements ugh.dl.Fileformat {
         this.writeLocalFilegroup = writeLocal;
     }
 
+    /***************************************************************************
+     * @return true, if the metadata of the logical DocStructs is parsed on first access
+     **************************************************************************/
+    public boolean isLazyMetadata() {
+        return this.lazyMetadata;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets whether the MODS sections of the logical DocStructs are parsed while reading, or on first access of the metadata of each DocStruct. In
+     * the lazy mode, reading only creates the structure trees, so reading documents for their structure only is much faster. The references to
+     * anchor files are still resolved while reading; the metadata of anchors read from anchor files is parsed while reading, too.
+     * </p>
+     * <p>
+     * The METS document is kept in memory until the metadata of all DocStructs is loaded.
+     * </p>
+     * <p>
+     * In the lazy mode, {@link #read(String)} does not report errors in the MODS sections of the logical DocStructs. They are found when the
+     * metadata of a DocStruct is accessed the first time, and every method accessing it, even a plain getter like
+     * {@link DocStruct#getAllMetadata()}, throws an unchecked IllegalStateException then, possibly long after reading. The cause of the
+     * IllegalStateException is the ReadException of the MODS section. Callers, which must handle these errors at a defined point, call
+     * {@link DocStruct#loadMetadata()} for the DocStructs they need, right after reading.
+     * </p>
+     * 
+     * @param lazyMetadata
+     **************************************************************************/
+    public void setLazyMetadata(boolean lazyMetadata) {
+        this.lazyMetadata = lazyMetadata;
+    }
+
+    /***************************************************************************
+     * @return the number of threads parsing and building the MODS sections
+     **************************************************************************/
+    public int getMetadataParallelism() {
+        return this.metadataParallelism;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the number of threads parsing the MODS sections of the logical DocStructs while reading, and building the MODS sections of all
+     * DocStructs while writing. The MODS sections of different DocStructs are independent, so documents with many DocStructs, like journal volumes
+     * with thousands of articles, are read and written faster with more threads. The metadata of every DocStruct is parsed by a single thread, the
+     * read document is the same as in the sequential mode. The MODS sections are built in separate DOM documents and added to the METS document in
+     * the order of the sequential writer, the written file is the same, too.
+     * </p>
+     * <p>
+     * The default is 1, all MODS sections are parsed and built on the calling thread. Subclasses overriding the methods building the MODS sections
+     * must not change the state of the instance in them. The value is ignored for reading in the lazy mode, see {@link #setLazyMetadata(boolean)}.
+     * </p>
+     * <p>
+     * Every read and write creates and shuts down its own pool of this size. Batch jobs reading or writing many documents should share one
+     * executor instead, see {@link #setMetadataExecutor(ExecutorService)}.
+     * </p>
+     * 
+     * @param metadataParallelism number of threads, at least 1
+     **************************************************************************/
+    public void setMetadataParallelism(int metadataParallelism) {
+        if (metadataParallelism < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1, but is " + metadataParallelism);
+        }
+        this.metadataParallelism = metadataParallelism;
+    }
+
+    /***************************************************************************
+     * @return the executor parsing and building the MODS sections, or null
+     **************************************************************************/
+    public ExecutorService getMetadataExecutor() {
+        return this.metadataExecutor;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets an executor parsing the MODS sections of the logical DocStructs while reading, and building the MODS sections of all DocStructs while
+     * writing, like {@link #setMetadataParallelism(int)}. The executor is used instead of a pool created for every read and write, so several
+     * MetsMods instances of a batch job can share one. The executor is not shut down by this class; tasks of a failed read or write are
+     * cancelled.
+     * </p>
+     * <p>
+     * The reading or writing thread waits for the tasks, so reading and writing on the threads of a fixed size executor, which is the metadata
+     * executor as well, may run out of threads.
+     * </p>
+     * 
+     * @param metadataExecutor the executor, or null, to use a pool of {@link #getMetadataParallelism()} threads
+     **************************************************************************/
+    public void setMetadataExecutor(ExecutorService metadataExecutor) {
+        this.metadataExecutor = metadataExecutor;
+    }
+
+    /***************************************************************************
+     * @return the anchor resolver, or null
+     **************************************************************************/
+    public MetsAnchorResolver getAnchorResolver() {
+        return this.anchorResolver;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets the resolver opening the anchor files, for documents kept in other places than the file system. The resolver is called with the name
+     * of the anchor file built from the name of the read document, see {@link #read(InputStream, String)}. Anchors read by a resolver are not
+     * cached in the anchor cache, which only knows files.
+     * </p>
+     * 
+     * @param anchorResolver the resolver, or null, to read the anchor files from the file system
+     **************************************************************************/
+    public void setAnchorResolver(MetsAnchorResolver anchorResolver) {
+        this.anchorResolver = anchorResolver;
+    }
+
+    /***************************************************************************
+     * @return the anchor cache, or null
+     **************************************************************************/
+    public MetsAnchorCache getAnchorCache() {
+        return this.anchorCache;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Sets a cache for the anchors read from anchor files. The same cache can be set for many instances, so an anchor file is only read once for
+     * all volumes referencing it.
+     * </p>
+     * 
+     * @param anchorCache the cache, or null to read every anchor file again
+     **************************************************************************/
+    public void setAnchorCache(MetsAnchorCache anchorCache) {
+        this.anchorCache = anchorCache;
+    }
+
     @Override
     public boolean isWritable() {
         return true;
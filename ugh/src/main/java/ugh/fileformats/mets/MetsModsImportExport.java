@@ -1,9 +1,5 @@
 package ugh.fileformats.mets;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,14 +12,9 @@ import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.xmlbeans.XmlException;
@@ -34,12 +25,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSSerializer;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /*******************************************************************************
  * ugh.fileformats.mets / MetsModsImportExport.java
@@ -685,75 +670,13 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
     protected void parseMODS(Node inMods, DocStruct inStruct)
             throws ReadException, ClassNotFoundException, InstantiationException, IllegalAccessException {
 
-        // Document in DOM tree which represents the MODS.
-        Document modsdocument = null;
-
-        DOMImplementationRegistry registry = null;
-        registry = DOMImplementationRegistry.newInstance();
-
-        DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
-
-        // Test, if the needed DOMImplementation (DOM 3!) is available, else
-        // throw Exception. We are using Xerxes here!
-        if (impl == null) {
-            String message =
-                    "There is NO implementation of DOM3 in your ClassPath! We are using Xerxes here, I have no idea why that's not available!";
-            log.error(message);
-            throw new UnsupportedOperationException(message);
-        }
-        LSSerializer writer = impl.createLSSerializer();
-
-        // Get string for MODS.
-        String modsstr = writer.writeToString(inMods);
-
-        // Parse MODS section; create a DOM tree just for the MODS from the
-        // string new document builder instance.
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-        // Do not validate xml file (for we want to store unfinished files, too)
-        factory.setValidating(false);
-        // Namespace does not matter.
-        factory.setNamespaceAware(true);
-
-        Reader r = new StringReader(modsstr);
-
-        // Read file and parse it.
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputSource is = new InputSource();
-            is.setCharacterStream(r);
-
-            modsdocument = builder.parse(is);
-        } catch (SAXParseException e) {
-            // Error generated by the parser.
-            String message = "Parse error on line: " + e.getLineNumber() + ", uri: " + e.getSystemId();
-            log.error(message, e);
-            throw new ReadException(message, e);
-        } catch (ParserConfigurationException e) {
-            // Parser with specified options can't be built.
-            String message = "XML parser not configured correctly!";
-            log.error(message, e);
-            throw new ReadException(message, e);
-        } catch (SAXException | IOException e) {
-            String message = "Exception while parsing METS file; can't create DOM tree!";
-            log.error(message, e);
-            throw new ReadException(message, e);
-        }
-
-        log.trace("\n" + LINE + "\nMODS\n" + LINE + "\n" + modsstr + "\n" + LINE);
+        // Document in DOM tree which represents the MODS, imported directly
+        // from the METS DOM.
+        Document modsdocument = importMODS(inMods);
 
         // Result of XQuery.
         Object xqueryresult = null;
 
-        // Create XQuery.
-        XPathFactory xpathfactory = XPathFactory.newInstance();
-
-        // New namespace context.
-        PersonalNamespaceContext pnc = new PersonalNamespaceContext();
-        pnc.setNamespaceHash(this.namespaces);
-        XPath xpath = xpathfactory.newXPath();
-        xpath.setNamespaceContext(pnc);
-
         // Get the first element; this is where we start with out XPATH.
         Node startingNode = null;
         NodeList nl = modsdocument.getChildNodes();
@@ -791,7 +714,7 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
 
             // Carry out the XPATH query.
             try {
-                XPathExpression expr = xpath.compile(queryExpression);
+                XPathExpression expr = getCompiledXPathExpression(queryExpression);
                 xqueryresult = expr.evaluate(startingNode, XPathConstants.NODESET);
                 log.debug("Query expression: " + queryExpression);
             } catch (XPathExpressionException e) {
@@ -1012,11 +935,7 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
                     log.debug("Anchor's identifier: " + identifierOfAnchor);
 
                     // Try to read anchor from separate file.
-                    String anchorfilename = buildAnchorFilename(filename);
-                    if (!new File(anchorfilename).exists()) {
-                        // File does not exists: no anchor available.
-                        return null;
-                    }
+                    String anchorfilename = filename == null ? null : buildAnchorFilename(filename);
                     MetsMods anchorMets = null;
 
                     try {
@@ -1027,13 +946,18 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
                         throw new ReadException(message, e);
                     }
 
+                    boolean anchorFileExists;
                     try {
-                        anchorMets.read(anchorfilename);
+                        anchorFileExists = readAnchorDocument(anchorMets, anchorfilename);
                     } catch (ReadException e) {
                         String message = "Can't read Anchor file, which must be in METS format as well";
                         log.error(message, e);
                         throw new ReadException(message, e);
                     }
+                    if (!anchorFileExists) {
+                        // File does not exists: no anchor available.
+                        return null;
+                    }
 
                     // Get Digital Document and first logical DocStruct (which
                     // should be the only one).
@@ -1084,18 +1008,8 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
         // Result from XPath expression.
         NodeList resultlist = null;
 
-        // Create an XPath Query to get the anchor identifier. Check, if
-        // currentPath is already available.
-        XPathFactory factory = XPathFactory.newInstance();
-
-        // New namespace context.
-        PersonalNamespaceContext pnc = new PersonalNamespaceContext();
-        pnc.setNamespaceHash(this.namespaces);
-        XPath xpath = factory.newXPath();
-        xpath.setNamespaceContext(pnc);
-
         try {
-            XPathExpression expr = xpath.compile(this.xPathAnchorReference);
+            XPathExpression expr = getCompiledXPathExpression(this.xPathAnchorReference);
 
             // Carry out the query.
             Object list = expr.evaluate(inMods, XPathConstants.NODESET);
@@ -1129,18 +1043,17 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
     /*
      * (non-Javadoc)
      * 
-     * @see ugh.fileformats.mets.MetsModsGdz#writePhysDivs(org.w3c.dom.Node, ugh.dl.DocStruct)
+     * @see ugh.fileformats.mets.MetsMods#writePhysDivs(ugh.fileformats.mets.MetsWriteContext, org.w3c.dom.Node, ugh.dl.DocStruct)
      */
     @Override
-    protected Element writePhysDivs(Node parentNode, DocStruct inStruct) throws PreferencesException {
+    protected Element writePhysDivs(MetsWriteContext context, Node parentNode, DocStruct inStruct) throws PreferencesException {
 
         // Write div element.
         Document domDoc = parentNode.getOwnerDocument();
         if ("div".equals(inStruct.getDocstructType())) {
             Element div = domDoc.createElementNS(this.namespaces.get("mets").getUri(), METS_DIV_STRING);
 
-            String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(this.divphysidMax);
-            this.divphysidMax++;
+            String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextPhysicalDivId());
 
             inStruct.setIdentifier(idphys);
             div.setAttribute(METS_ID_STRING, idphys);
@@ -1168,12 +1081,12 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
             parentNode.appendChild(div);
 
             // Write metdata.
-            if (this.metsNode == null) {
+            if (context.getMetsNode() == null) {
                 log.error("METS node is null... can't write anything");
                 return null;
             }
 
-            int dmdid = writePhysDmd(this.metsNode, div, inStruct);
+            int dmdid = writePhysDmd(context, context.getMetsNode(), div, inStruct);
 
             // If dmdid is != -1 then the appropriate metadata section has been
             // written, if dmdid == -1, the inStruct has no metadata.
@@ -1184,13 +1097,13 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
             }
 
             // Write links to ContentFiles (FPTRs)
-            writeFptrs(inStruct, domDoc, div);
+            writeFptrs(context, inStruct, domDoc, div);
 
             // Get all children and write their divs recursive.
             List<DocStruct> allChildren = inStruct.getAllChildren();
             if (allChildren != null) {
                 for (DocStruct child : allChildren) {
-                    if (writePhysDivs(div, child) == null) {
+                    if (writePhysDivs(context, div, child) == null) {
                         // Error occured while writing div for child.
                         return null;
                     }
@@ -1204,7 +1117,7 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
             NodeList fptrList = parentNode.getChildNodes();
 
             String mainGroupName = null;
-            for (VirtualFileGroup vFileGroup : this.digdoc.getFileSet().getVirtualFileGroups()) {
+            for (VirtualFileGroup vFileGroup : context.getDocument().getFileSet().getVirtualFileGroups()) {
                 if (vFileGroup.isMainGroup()) {
                     mainGroupName = vFileGroup.getName();
                     break;
@@ -1227,8 +1140,7 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
                     // create area element
                     area = createDomElementNS(domDoc, this.metsNamespacePrefix, "area");
                     seq.appendChild(area);
-                    String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(this.divphysidMax);
-                    this.divphysidMax++;
+                    String idphys = PHYS_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextPhysicalDivId());
 
                     inStruct.setIdentifier(idphys);
                     area.setAttribute(METS_ID_STRING, idphys);
@@ -1258,10 +1170,11 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
     /*
      * (non-Javadoc)
      * 
-     * @see ugh.fileformats.mets.MetsMods#writeLogDivs(org.w3c.dom.Node, ugh.dl.DocStruct, boolean)
+     * @see ugh.fileformats.mets.MetsMods#writeLogDivs(ugh.fileformats.mets.MetsWriteContext, org.w3c.dom.Node, ugh.dl.DocStruct, boolean)
      */
     @Override
-    protected Element writeLogDivs(Node parentNode, DocStruct inStruct, boolean isAnchorFile) throws WriteException, PreferencesException {
+    protected Element writeLogDivs(MetsWriteContext context, Node parentNode, DocStruct inStruct, boolean isAnchorFile)
+            throws WriteException, PreferencesException {
 
         // Write div element.
         Document domDoc = parentNode.getOwnerDocument();
@@ -1269,13 +1182,12 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
 
         // Add div element as child to parentNode.
         parentNode.appendChild(div);
-        if (this.firstDivNode == null) {
-            this.firstDivNode = div;
+        if (context.getFirstDivNode() == null) {
+            context.setFirstDivNode(div);
         }
 
-        String idlog = LOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(this.divlogidMax);
+        String idlog = LOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(context.nextLogicalDivId());
         div.setAttribute(METS_ID_STRING, idlog);
-        this.divlogidMax++;
 
         // Write METS type given in preferences, if existing.
         String type = getMetsType(inStruct.getType());
@@ -1311,13 +1223,13 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
         inStruct.setIdentifier(idlog);
 
         // Write metadata.
-        if (this.metsNode == null) {
+        if (context.getMetsNode() == null) {
             log.error("METS node is null... can't write anything");
             return null;
         }
 
         // Set the DMDIDs.
-        int dmdid = writeLogDmd(this.metsNode, inStruct, isAnchorFile);
+        int dmdid = writeLogDmd(context, context.getMetsNode(), inStruct, isAnchorFile);
         if (dmdid >= 0) {
             // Just set DMDID attribute, if there is a metadata set.
             String dmdidString = DMDLOG_PREFIX + new DecimalFormat(DECIMAL_FORMAT).format(dmdid);
@@ -1409,7 +1321,7 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
         List<DocStruct> allChildren = inStruct.getAllChildren();
         if (allChildren != null) {
             for (DocStruct child : allChildren) {
-                if (writeLogDivs(div, child, isAnchorFile) == null) {
+                if (writeLogDivs(context, div, child, isAnchorFile) == null) {
                     // Error occured while writing div for child.
                     return null;
                 }
@@ -1422,17 +1334,17 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
     /*
      * (non-Javadoc)
      * 
-     * @see ugh.fileformats.mets.MetsMods#writeAmdSec(org.w3c.dom.Document, boolean)
+     * @see ugh.fileformats.mets.MetsMods#writeAmdSec(ugh.fileformats.mets.MetsWriteContext, org.w3c.dom.Document, boolean)
      */
     @Override
-    protected void writeAmdSec(Document domDoc, boolean isAnchorFile) {
+    protected void writeAmdSec(MetsWriteContext context, Document domDoc, boolean isAnchorFile) {
 
         boolean rightsMDExists = false;
         boolean digiprovMDExists = false;
 
         // Creates the METS' AMDSEC, uses only *ONE* AMDID for ZVDD/DFG-Viewer.
         Element amdSec = createDomElementNS(domDoc, this.metsNamespacePrefix, METS_AMDSEC_STRING);
-        AmdSec amd = this.digdoc.getAmdSec();
+        AmdSec amd = context.getDocument().getAmdSec();
         if (amd != null) {
             if (StringUtils.isBlank(amd.getId())) {
                 amd.setId(AMD_PREFIX);
@@ -1443,10 +1355,9 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
         }
 
         // create techMD
-        List<Md> techMdList = this.digdoc.getTechMds();
+        List<Md> techMdList = context.getDocument().getTechMds();
         if (techMdList != null && !techMdList.isEmpty()) {
             for (Md md : techMdList) {
-                this.techidMax++;
                 Node theNode = domDoc.importNode(md.getContent(), true);
                 Node child = theNode.getFirstChild();
                 Element techMd = createDomElementNS(domDoc, this.metsNamespacePrefix, md.getType().toString());
@@ -1591,10 +1502,11 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
             element = this.metsNamespacePrefix + ":" + METS_FILESEC_STRING;
         }
 
-        NodeList dmdList = this.metsNode.getElementsByTagName(element);
+        Element metsNode = context.getMetsNode();
+        NodeList dmdList = metsNode.getElementsByTagName(element);
         Node refChild = dmdList.item(0);
         if (refChild != null) {
-            this.metsNode.insertBefore(amdSec, refChild);
+            metsNode.insertBefore(amdSec, refChild);
         }
     }
 
@@ -2753,10 +2665,12 @@ public class MetsModsImportExport extends ugh.fileformats.mets.MetsMods implemen
     @Deprecated
     private void dirtyReplaceGroupingTagNameHack(Node theNode) {
 
+        // Get replacement name from the write the MODS section belongs to.
+        MetsWriteContext context = MetsWriteContext.of(theNode);
+        String replacementName = context == null ? null : context.getGroupTag(theNode.getLocalName());
+
         // Replace things.
-        if (this.replaceGroupTags.containsKey(theNode.getLocalName())) {
-            // Get replacement name.
-            String replacementName = this.replaceGroupTags.get(theNode.getLocalName());
+        if (replacementName != null) {
             // Create replacement node.
             Node replacementNode = createDomElementNS(theNode.getOwnerDocument(), theNode.getPrefix(), replacementName);
             // Copy all children from the old node to the new node.
@@ -0,0 +1,358 @@
+package ugh.fileformats.mets;
+
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/*******************************************************************************
+ * <p>
+ * Writes a METS DOM document with a StAX writer directly to an output stream, pretty printed with an indentation of three spaces, like XMLBeans
+ * did before. There is no second copy of the document in memory while writing, the writer only needs memory for the current path of elements.
+ * </p>
+ * <p>
+ * All namespaces are declared at the root element. The prefixes are taken from the suggested prefixes first, then from the DOM nodes; if a
+ * prefix is already taken by another namespace, a new one is generated. Elements with text content are written as they are, elements
+ * containing only other elements are indented. Like XMLBeans, the serializer escapes every '&gt;' and '"' in text and attribute values.
+ * </p>
+ ******************************************************************************/
+class MetsStreamSerializer {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String INDENT = "   ";
+    private static final String NEW_LINE = System.lineSeparator();
+
+    // Key is the namespace URI; value is the suggested prefix.
+    private final Map<String, String> suggestedPrefixes;
+    // Key is the namespace URI; value is the prefix used in the output.
+    private final Map<String, String> prefixes = new LinkedHashMap<>();
+    private final Set<String> usedPrefixes = new HashSet<>();
+    private int generatedPrefixes = 0;
+
+    /***************************************************************************
+     * @param suggestedPrefixes key is the namespace URI, value the prefix
+     **************************************************************************/
+    MetsStreamSerializer(Map<String, String> suggestedPrefixes) {
+        this.suggestedPrefixes = suggestedPrefixes;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes the document to the given stream. The stream is flushed, but not closed.
+     * </p>
+     *
+     * @param document
+     * @param out
+     * @throws XMLStreamException
+     **************************************************************************/
+    void serialize(Document document, OutputStream out) throws XMLStreamException {
+
+        Element root = document.getDocumentElement();
+        if (root != null) {
+            collectNamespaces(root);
+        }
+
+        // The JDK writer, which escapes '>' and '"' in attribute values, even if
+        // another StAX implementation is on the classpath.
+        XMLStreamWriter writer = XMLOutputFactory.newDefaultFactory().createXMLStreamWriter(out, ENCODING);
+        try {
+            writer.writeStartDocument(ENCODING, "1.0");
+            for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE || child.getNodeType() == Node.COMMENT_NODE
+                        || child.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE) {
+                    writer.writeCharacters(NEW_LINE);
+                    writeNode(writer, child, 0, true);
+                }
+            }
+            writer.writeEndDocument();
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Assigns a prefix to every namespace used by the elements and attributes below the given element.
+     * </p>
+     *
+     * @param root
+     **************************************************************************/
+    private void collectNamespaces(Element root) {
+
+        Node node = root;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                addNamespace(node);
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attribute = attributes.item(i);
+                    if (!isNamespaceDeclaration(attribute)) {
+                        addNamespace(attribute);
+                    }
+                }
+            }
+
+            // Walk the tree in document order without recursion.
+            if (node.getNodeType() == Node.ELEMENT_NODE && node.getFirstChild() != null) {
+                node = node.getFirstChild();
+            } else {
+                while (node != root && node.getNextSibling() == null) {
+                    node = node.getParentNode();
+                }
+                node = (node == root ? null : node.getNextSibling());
+            }
+        }
+    }
+
+    /***************************************************************************
+     * @param node
+     **************************************************************************/
+    private void addNamespace(Node node) {
+
+        String uri = node.getNamespaceURI();
+        if (uri == null || uri.isEmpty() || XMLConstants.XML_NS_URI.equals(uri) || this.prefixes.containsKey(uri)) {
+            return;
+        }
+
+        String prefix = this.suggestedPrefixes.get(uri);
+        if (!isFree(prefix)) {
+            prefix = node.getPrefix();
+        }
+        while (!isFree(prefix)) {
+            prefix = "ns" + (++this.generatedPrefixes);
+        }
+
+        this.prefixes.put(uri, prefix);
+        this.usedPrefixes.add(prefix);
+    }
+
+    /***************************************************************************
+     * @param prefix
+     * @return true, if the prefix can be used for another namespace
+     **************************************************************************/
+    private boolean isFree(String prefix) {
+        return prefix != null && !prefix.isEmpty() && !prefix.startsWith("xml") && !this.usedPrefixes.contains(prefix);
+    }
+
+    /***************************************************************************
+     * @param writer
+     * @param node
+     * @param depth the indentation depth, or -1 inside of text content
+     * @param root true for the root element
+     * @throws XMLStreamException
+     **************************************************************************/
+    private void writeNode(XMLStreamWriter writer, Node node, int depth, boolean root) throws XMLStreamException {
+
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                writeElement(writer, (Element) node, depth, root);
+                break;
+            case Node.TEXT_NODE:
+                writeText(writer, node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writer.writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writer.writeComment(node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                break;
+            case Node.ENTITY_REFERENCE_NODE:
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    writeNode(writer, child, -1, false);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /***************************************************************************
+     * @param writer
+     * @param element
+     * @param depth the indentation depth, or -1 inside of text content
+     * @param root true for the root element
+     * @throws XMLStreamException
+     **************************************************************************/
+    private void writeElement(XMLStreamWriter writer, Element element, int depth, boolean root) throws XMLStreamException {
+
+        boolean hasElements = false;
+        boolean hasText = false;
+        boolean empty = true;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                hasElements = true;
+                empty = false;
+            } else if (child.getNodeType() == Node.COMMENT_NODE || child.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE) {
+                empty = false;
+            } else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE
+                    || child.getNodeType() == Node.ENTITY_REFERENCE_NODE) {
+                String value = child.getTextContent();
+                if (value != null && !value.isEmpty()) {
+                    empty = false;
+                    hasText |= !value.isBlank();
+                }
+            }
+        }
+        // Only element content is indented, all other content is kept as it
+        // is.
+        boolean indent = depth >= 0 && hasElements && !hasText;
+
+        String uri = element.getNamespaceURI();
+        String localName = getLocalName(element);
+        if (uri == null || uri.isEmpty()) {
+            if (empty) {
+                writer.writeEmptyElement(localName);
+            } else {
+                writer.writeStartElement(localName);
+            }
+        } else {
+            if (empty) {
+                writer.writeEmptyElement(this.prefixes.get(uri), localName, uri);
+            } else {
+                writer.writeStartElement(this.prefixes.get(uri), localName, uri);
+            }
+        }
+
+        if (root) {
+            for (Entry<String, String> namespace : this.prefixes.entrySet()) {
+                writer.writeNamespace(namespace.getValue(), namespace.getKey());
+            }
+        }
+        writeAttributes(writer, element);
+
+        if (empty) {
+            return;
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (indent) {
+                if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE
+                        || child.getNodeType() == Node.ENTITY_REFERENCE_NODE) {
+                    // Whitespace between the elements is replaced by the
+                    // indentation.
+                    continue;
+                }
+                writer.writeCharacters(NEW_LINE);
+                writeIndent(writer, depth + 1);
+                writeNode(writer, child, depth + 1, false);
+            } else {
+                writeNode(writer, child, -1, false);
+            }
+        }
+
+        if (indent) {
+            writer.writeCharacters(NEW_LINE);
+            writeIndent(writer, depth);
+        }
+        writer.writeEndElement();
+    }
+
+    /***************************************************************************
+     * @param writer
+     * @param element
+     * @throws XMLStreamException
+     **************************************************************************/
+    private void writeAttributes(XMLStreamWriter writer, Element element) throws XMLStreamException {
+
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            if (isNamespaceDeclaration(attribute)) {
+                // All namespaces are declared at the root element.
+                continue;
+            }
+
+            String uri = attribute.getNamespaceURI();
+            String localName = getLocalName(attribute);
+            if (uri == null || uri.isEmpty()) {
+                writer.writeAttribute(localName, attribute.getValue());
+            } else if (XMLConstants.XML_NS_URI.equals(uri)) {
+                writer.writeAttribute(XMLConstants.XML_NS_PREFIX, uri, localName, attribute.getValue());
+            } else {
+                writer.writeAttribute(this.prefixes.get(uri), uri, localName, attribute.getValue());
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes a text node. StAX writers only have to escape '&lt;' and '&amp;' in text, so '&gt;' and '"' are written as entity references
+     * explicitly. In attribute values, the JDK writer escapes both.
+     * </p>
+     *
+     * @param writer
+     * @param text
+     * @throws XMLStreamException
+     **************************************************************************/
+    private static void writeText(XMLStreamWriter writer, String text) throws XMLStreamException {
+
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '>' || c == '"') {
+                if (i > start) {
+                    writer.writeCharacters(text.substring(start, i));
+                }
+                writer.writeEntityRef(c == '>' ? "gt" : "quot");
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            writer.writeCharacters(text.substring(start));
+        }
+    }
+
+    /***************************************************************************
+     * @param writer
+     * @param depth
+     * @throws XMLStreamException
+     **************************************************************************/
+    private static void writeIndent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        for (int i = 0; i < depth; i++) {
+            writer.writeCharacters(INDENT);
+        }
+    }
+
+    /***************************************************************************
+     * @param node
+     * @return true, if the node is an xmlns attribute
+     **************************************************************************/
+    private static boolean isNamespaceDeclaration(Node node) {
+        return XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(node.getNamespaceURI()) || XMLConstants.XMLNS_ATTRIBUTE.equals(node.getNodeName())
+                || node.getNodeName().startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":");
+    }
+
+    /***************************************************************************
+     * @param node
+     * @return the local name, or the node name for nodes created without namespace support
+     **************************************************************************/
+    private static String getLocalName(Node node) {
+        String localName = node.getLocalName();
+        if (localName == null) {
+            localName = node.getNodeName();
+            int colon = localName.indexOf(':');
+            if (colon >= 0) {
+                localName = localName.substring(colon + 1);
+            }
+        }
+        return localName;
+    }
+
+}
@@ -0,0 +1,171 @@
+package ugh.fileformats.mets;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+
+/*******************************************************************************
+ * <p>
+ * The state of a single METS write, created by {@link MetsMods#write(String)} for the anchor file and for the METS file, and passed down to the
+ * methods building the METS DOM: the document being written, the METS node, the ID counters, the MODS sections built in parallel and the grouping
+ * tags of the MODS sections. Nothing of a write is kept in the MetsMods instance, so one instance can write several documents at the same time.
+ * </p>
+ * <p>
+ * The methods writing a single MODS section, like {@link MetsMods#writeLogModsSection(DocStruct, Node, Document)}, only get the DOM document
+ * they write into. The context is attached to it, see {@link #of(Node)}.
+ * </p>
+ ******************************************************************************/
+public class MetsWriteContext {
+
+    private static final String USER_DATA_KEY = MetsWriteContext.class.getName();
+
+    private final DigitalDocument document;
+    private Element metsNode = null;
+    private Node firstDivNode = null;
+
+    private int dmdidMax = 0;
+    private int dmdidPhysMax = 0;
+    private int divlogidMax = 0;
+    private int divphysidMax = 0;
+    private int fileidMax = 0;
+
+    // The MODS sections built in parallel, not yet added to the METS
+    // document; null, if they are built while writing the divs.
+    Map<DocStruct, Future<ModsSection>> modsSections = null;
+
+    // Grouping tag names of the MODS sections by the names they are written
+    // with, added by the threads building the sections.
+    private final Map<String, String> groupTags = new ConcurrentHashMap<>();
+
+    /***************************************************************************
+     * @param document the document to write, the anchor document or the top document
+     **************************************************************************/
+    MetsWriteContext(DigitalDocument document) {
+        this.document = document;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the context of the write the DOM document of the given node is built for.
+     * </p>
+     *
+     * @param node
+     * @return the context, or null, if the node is not written by a MetsMods
+     **************************************************************************/
+    public static MetsWriteContext of(Node node) {
+        Document domDoc = node instanceof Document d ? d : node.getOwnerDocument();
+        return domDoc == null ? null : (MetsWriteContext) domDoc.getUserData(USER_DATA_KEY);
+    }
+
+    /***************************************************************************
+     * @param domDoc a DOM document built for this write, the METS document or the document of a MODS section
+     **************************************************************************/
+    void attachTo(Document domDoc) {
+        domDoc.setUserData(USER_DATA_KEY, this, null);
+    }
+
+    /***************************************************************************
+     * @return the document being written
+     **************************************************************************/
+    public DigitalDocument getDocument() {
+        return this.document;
+    }
+
+    /***************************************************************************
+     * @return the METS node of the DOM document
+     **************************************************************************/
+    public Element getMetsNode() {
+        return this.metsNode;
+    }
+
+    /***************************************************************************
+     * @param metsNode
+     **************************************************************************/
+    void setMetsNode(Element metsNode) {
+        this.metsNode = metsNode;
+    }
+
+    /***************************************************************************
+     * @return the node the physical dmdSecs are inserted before
+     **************************************************************************/
+    public Node getFirstDivNode() {
+        return this.firstDivNode;
+    }
+
+    /***************************************************************************
+     * @param firstDivNode
+     **************************************************************************/
+    public void setFirstDivNode(Node firstDivNode) {
+        this.firstDivNode = firstDivNode;
+    }
+
+    /***************************************************************************
+     * @return the number of the next logical dmdSec
+     **************************************************************************/
+    public int nextLogicalDmdId() {
+        return this.dmdidMax++;
+    }
+
+    /***************************************************************************
+     * @return the number of the next physical dmdSec
+     **************************************************************************/
+    public int nextPhysicalDmdId() {
+        return this.dmdidPhysMax++;
+    }
+
+    /***************************************************************************
+     * @return the number of the next logical div
+     **************************************************************************/
+    public int nextLogicalDivId() {
+        return this.divlogidMax++;
+    }
+
+    /***************************************************************************
+     * @return the number of the next physical div
+     **************************************************************************/
+    public int nextPhysicalDivId() {
+        return this.divphysidMax++;
+    }
+
+    /***************************************************************************
+     * @return the number of the next file without identifier
+     **************************************************************************/
+    public int nextFileId() {
+        return ++this.fileidMax;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Continues the numbering of the files without identifier after the number of an existing file identifier.
+     * </p>
+     *
+     * @param fileId
+     **************************************************************************/
+    public void setLastFileId(int fileId) {
+        this.fileidMax = fileId;
+    }
+
+    /***************************************************************************
+     * @param name the name an element of a group is written with
+     * @param groupTag the name of the grouping element
+     **************************************************************************/
+    void addGroupTag(String name, String groupTag) {
+        this.groupTags.put(name, groupTag);
+    }
+
+    /***************************************************************************
+     * @param name
+     * @return the name of the grouping element written as the given name, or null
+     **************************************************************************/
+    String getGroupTag(String name) {
+        return this.groupTags.get(name);
+    }
+
+}
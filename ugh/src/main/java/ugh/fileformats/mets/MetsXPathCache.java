@@ -0,0 +1,115 @@
+package ugh.fileformats.mets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+/*******************************************************************************
+ * <p>
+ * The compiled XPath expressions and the parsed WriteXPaths of the MetsMods instances. Both only depend on the query and the namespaces, so there
+ * is one cache per namespace configuration, which is shared by all MetsMods instances using the same prefs. Batch exports with a new MetsMods
+ * for every document compile each query only once per thread, and parse each WriteXPath only once.
+ * </p>
+ ******************************************************************************/
+final class MetsXPathCache {
+
+    // The caches by namespace configuration. There are only a few
+    // configurations, one for every ruleset, so the caches are kept.
+    private static final Map<List<Object>, MetsXPathCache> CACHES = new ConcurrentHashMap<>();
+
+    // XPathExpression objects are not thread-safe, so every thread keeps its
+    // own compiled expressions, by cache and query.
+    private static final ThreadLocal<Map<MetsXPathCache, Map<String, XPathExpression>>> EXPRESSIONS = ThreadLocal.withInitial(HashMap::new);
+
+    // A copy of the namespaces the queries are compiled with.
+    private final Map<String, Namespace> namespaces;
+    // The parsed WriteXPaths by query string. The plans are immutable, except
+    // for their own concurrent map, so they are shared by all threads.
+    private final Map<String, WriteXPathPlan> writeXPathPlans = new ConcurrentHashMap<>();
+
+    /***************************************************************************
+     * @param namespaces
+     **************************************************************************/
+    private MetsXPathCache(Map<String, Namespace> namespaces) {
+        this.namespaces = namespaces;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the cache for the given namespaces. Later changes of the namespaces don't affect the returned cache, so the caller must get a new
+     * one after changing them.
+     * </p>
+     *
+     * @param namespaces the namespaces by prefix
+     * @param modsPrefix the prefix of the MODS namespace
+     * @return
+     **************************************************************************/
+    static MetsXPathCache forNamespaces(Map<String, Namespace> namespaces, String modsPrefix) {
+
+        List<Object> key = new ArrayList<>();
+        key.add(modsPrefix);
+        Map<String, Namespace> copy = new HashMap<>();
+        for (Map.Entry<String, Namespace> e : new TreeMap<>(namespaces).entrySet()) {
+            Namespace n = e.getValue();
+            key.add(e.getKey());
+            key.add(n.getPrefix());
+            key.add(n.getUri());
+            key.add(n.getDefaultNS());
+
+            copy.put(e.getKey(), n.copy());
+        }
+
+        return CACHES.computeIfAbsent(key, k -> new MetsXPathCache(copy));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Gets the compiled XPath expression for the given query, compiling it on first use in the current thread.
+     * </p>
+     *
+     * @param queryExpression
+     * @return
+     * @throws XPathExpressionException
+     **************************************************************************/
+    XPathExpression getExpression(String queryExpression) throws XPathExpressionException {
+
+        Map<String, XPathExpression> expressions = EXPRESSIONS.get().computeIfAbsent(this, c -> new HashMap<>());
+        XPathExpression expr = expressions.get(queryExpression);
+        if (expr == null) {
+            // New namespace context.
+            PersonalNamespaceContext pnc = new PersonalNamespaceContext();
+            pnc.setNamespaceHash(this.namespaces);
+            XPath xpath = XPathFactory.newInstance().newXPath();
+            xpath.setNamespaceContext(pnc);
+
+            expr = xpath.compile(queryExpression);
+            expressions.put(queryExpression, expr);
+        }
+
+        return expr;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Gets the parsed WriteXPath for the given query, building it on first use. The builder must only use the query and the namespaces of this
+     * cache, and the plan must not refer to the MetsMods instance building it.
+     * </p>
+     *
+     * @param writeXPath
+     * @param builder
+     * @return
+     **************************************************************************/
+    WriteXPathPlan getWriteXPathPlan(String writeXPath, Function<String, WriteXPathPlan> builder) {
+        return this.writeXPathPlans.computeIfAbsent(writeXPath, builder);
+    }
+
+}
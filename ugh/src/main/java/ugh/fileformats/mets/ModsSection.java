@@ -0,0 +1,30 @@
+package ugh.fileformats.mets;
+
+import org.w3c.dom.Element;
+
+/*******************************************************************************
+ * <p>
+ * A dmdSec built in its own DOM document while writing in parallel, see {@link MetsMods#setMetadataParallelism(int)}. It is moved into the METS
+ * document when the div of its DocStruct is written.
+ * </p>
+ ******************************************************************************/
+class ModsSection {
+
+    final Element dmdsec;
+    final Element mods;
+    // Takes the attributes written to the div of a physical DocStruct; null
+    // for logical DocStructs.
+    final Element div;
+
+    /***************************************************************************
+     * @param dmdsec
+     * @param mods
+     * @param div
+     **************************************************************************/
+    ModsSection(Element dmdsec, Element mods, Element div) {
+        this.dmdsec = dmdsec;
+        this.mods = mods;
+        this.div = div;
+    }
+
+}
@@ -108,4 +108,17 @@ public class Namespace {
         this.containerElementName = containerElementName;
     }
 
+    /***************************************************************************
+     * @return a copy of this namespace
+     **************************************************************************/
+    Namespace copy() {
+        Namespace copy = new Namespace();
+        copy.prefix = this.prefix;
+        copy.uri = this.uri;
+        copy.schemalocation = this.schemalocation;
+        copy.defaultNS = this.defaultNS;
+        copy.containerElementName = this.containerElementName;
+        return copy;
+    }
+
 }
@@ -0,0 +1,115 @@
+package ugh.fileformats.mets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*******************************************************************************
+ * <p>
+ * A WriteXPath from the prefs, parsed for {@link MetsMods#createNode(String, org.w3c.dom.Node, org.w3c.dom.Document, boolean)}: the grouping
+ * brackets, the steps to look up in the MODS DOM with their XPath queries, and the elements and attributes to create for each path that is
+ * already available. The plans are built once per WriteXPath and namespace configuration, see {@link MetsXPathCache}, creating a node only runs
+ * the plan.
+ * </p>
+ ******************************************************************************/
+class WriteXPathPlan {
+
+    // The WriteXPath without the grouping brackets.
+    final String query;
+    // Key and tag for the grouping replacement, or null.
+    final String groupKey;
+    final String groupTag;
+    final List<Step> steps;
+
+    // The nodes to create by the available path.
+    private final Map<String, List<CreateStep>> createSteps = new ConcurrentHashMap<>();
+    private final Function<String, List<CreateStep>> createStepsBuilder;
+
+    /***************************************************************************
+     * @param query
+     * @param groupKey
+     * @param groupTag
+     * @param steps
+     * @param createStepsBuilder builds the nodes to create for an available path
+     **************************************************************************/
+    WriteXPathPlan(String query, String groupKey, String groupTag, List<Step> steps, Function<String, List<CreateStep>> createStepsBuilder) {
+        this.query = query;
+        this.groupKey = groupKey;
+        this.groupTag = groupTag;
+        this.steps = steps;
+        this.createStepsBuilder = createStepsBuilder;
+    }
+
+    /***************************************************************************
+     * @param availablePath the part of the query already available in the DOM
+     * @return the elements and attributes to create for the rest of the query
+     **************************************************************************/
+    List<CreateStep> getCreateSteps(String availablePath) {
+        return this.createSteps.computeIfAbsent(availablePath, this.createStepsBuilder);
+    }
+
+    /***************************************************************************
+     * <p>
+     * A path element, which is looked up in the DOM.
+     * </p>
+     **************************************************************************/
+    static class Step {
+
+        final String element;
+        // Error message, if the element has no known namespace prefix.
+        final String prefixError;
+        // The element starts with a "#" and is always created.
+        final boolean forceCreate;
+        final boolean requestingElement;
+        // The path available, if this element is not found.
+        final String availablePath;
+        // The XPath query for the path up to this element.
+        final String currentPath;
+        // Namespace URIs and local names of the query, if it contains only
+        // plain elements, otherwise null.
+        final List<String[]> plainSteps;
+        // For attribute queries: the path of the element with the attributes,
+        // and the attributes themselves.
+        final String attributePath;
+        final String attributeElementName;
+        final Map<String, String> attributes;
+
+        Step(String element, String prefixError, boolean forceCreate, boolean requestingElement, String availablePath, String currentPath,
+                List<String[]> plainSteps, String attributePath, String attributeElementName, Map<String, String> attributes) {
+            this.element = element;
+            this.prefixError = prefixError;
+            this.forceCreate = forceCreate;
+            this.requestingElement = requestingElement;
+            this.availablePath = availablePath;
+            this.currentPath = currentPath;
+            this.plainSteps = plainSteps;
+            this.attributePath = attributePath;
+            this.attributeElementName = attributeElementName;
+            this.attributes = attributes;
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * An element or attribute to create.
+     * </p>
+     **************************************************************************/
+    static class CreateStep {
+
+        final String elementName;
+        final boolean attribute;
+        // The element name without the brackets.
+        final String elementNameWOAttributes;
+        // The queries to create for the bracket contents.
+        final List<String> bracketQueries;
+
+        CreateStep(String elementName, boolean attribute, String elementNameWOAttributes, List<String> bracketQueries) {
+            this.elementName = elementName;
+            this.attribute = attribute;
+            this.elementNameWOAttributes = elementNameWOAttributes;
+            this.bracketQueries = bracketQueries;
+        }
+    }
+
+}
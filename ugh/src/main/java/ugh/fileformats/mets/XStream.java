@@ -23,6 +23,8 @@ package ugh.fileformats.mets;
  ******************************************************************************/
 
 import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 
 import lombok.extern.log4j.Log4j2;
@@ -120,6 +122,30 @@ public class XStream implements ugh.dl.Fileformat {
         return true;
     }
 
+    /*
+     * Read the DigitalDocument from an XStream XML stream, which is not
+     * closed.
+     * 
+     * (non-Javadoc)
+     * 
+     * @see ugh.dl.Fileformat#read(java.io.InputStream)
+     */
+    @Override
+    public boolean read(InputStream in) throws ReadException {
+
+        log.info("Reading XStream from stream");
+
+        this.digdoc = new DigitalDocument().readXStreamXml(in, this.myPreferences);
+
+        log.info("Sorting metadata according to occurance in the Preferences");
+
+        this.digdoc.sortMetadataRecursively(this.myPreferences);
+
+        log.info("Reading XStream complete");
+
+        return true;
+    }
+
     /*
      * Write the DigitalDocument to XStream XML.
      * 
@@ -151,6 +177,25 @@ public class XStream implements ugh.dl.Fileformat {
         return true;
     }
 
+    /*
+     * Write the DigitalDocument to an XStream XML stream, which is not closed.
+     * 
+     * (non-Javadoc)
+     * 
+     * @see ugh.dl.Fileformat#write(java.io.OutputStream)
+     */
+    @Override
+    public boolean write(OutputStream out) throws WriteException {
+
+        log.info("Writing XStream to stream");
+
+        this.digdoc.writeXStreamXml(out);
+
+        log.info("Writing XStream complete");
+
+        return true;
+    }
+
     /***************************************************************************
      * @return
      **************************************************************************/
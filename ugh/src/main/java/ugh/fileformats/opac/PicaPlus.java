@@ -22,9 +22,12 @@ package ugh.fileformats.opac;
  ******************************************************************************/
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -35,20 +38,22 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
@@ -75,6 +80,7 @@ import ugh.exceptions.TypeNotAllowedAsChildException;
 import ugh.exceptions.TypeNotAllowedForParentException;
 import ugh.exceptions.WriteException;
 import ugh.fileformats.mets.MetsModsImportExport;
+import ugh.util.XmlHelper;
 
 /*******************************************************************************
  * <p>
@@ -160,6 +166,11 @@ public class PicaPlus implements ugh.dl.Fileformat {
 
     public static final short ELEMENT_NODE = Node.ELEMENT_NODE;
 
+    // Reader factory of readRecords(), configured once and only used to create
+    // readers afterwards. Namespace does not matter, adjacent text is read into
+    // one text node, DTDs and external entities are not read.
+    private static final XMLInputFactory RECORD_READER_FACTORY = createRecordReaderFactory();
+
     // UGH document.
     private ugh.dl.DigitalDocument mydoc = new DigitalDocument();
 
@@ -172,6 +183,10 @@ public class PicaPlus implements ugh.dl.Fileformat {
     // Contains all rules for metadata matching.
     private Set<MatchingMetadataObject> mmoList = new HashSet<>();
 
+    // The rules for metadata matching by PicaPlus field, in the iteration
+    // order of mmoList.
+    private Map<String, FieldRules> mmoIndex = new HashMap<>();
+
     private Map<String, String> metadataGroups = new HashMap<>();
 
     /***************************************************************************
@@ -237,6 +252,8 @@ public class PicaPlus implements ugh.dl.Fileformat {
             }
         }
 
+        buildMMOIndex();
+
         log.info("Reading picaplus prefs complete");
     }
 
@@ -652,6 +669,25 @@ public class PicaPlus implements ugh.dl.Fileformat {
      **************************************************************************/
     @Override
     public boolean read(String filename) throws ReadException {
+        return read(new InputSource(new File(filename).toURI().toASCIIString()));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Read XML from a stream, which is not closed.
+     * </p>
+     **************************************************************************/
+    @Override
+    public boolean read(InputStream in) throws ReadException {
+        return read(new InputSource(in));
+    }
+
+    /***************************************************************************
+     * @param source
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    private boolean read(InputSource source) throws ReadException {
 
         // DOM Document.
         Document document;
@@ -660,19 +696,13 @@ public class PicaPlus implements ugh.dl.Fileformat {
         DocStruct dsOld = null;
         DocStruct dsTop = null;
 
-        // New document builder instance.
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        // Do not validate XML file.
-        factory.setValidating(false);
-        // Namespace does not matter.
-        factory.setNamespaceAware(false);
-
         this.mydoc = new DigitalDocument();
 
-        // Read file and parse it.
+        // Read file and parse it; namespace does not matter, and the XML file
+        // is not validated.
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            document = builder.parse(new File(filename));
+            DocumentBuilder builder = XmlHelper.getDocumentBuilder(false);
+            document = builder.parse(source);
 
             // Old version.
             NodeList upperChildlist = document.getElementsByTagName(PREFS_PPPICAPLUSRESULTS_STRING);
@@ -759,6 +789,210 @@ public class PicaPlus implements ugh.dl.Fileformat {
         return true;
     }
 
+    /***************************************************************************
+     * <p>
+     * Reads a PicaPlus file record by record, see {@link #readRecords(InputStream, int, RecordHandler)}.
+     * </p>
+     * 
+     * @param filename
+     * @param recordsPerDocument
+     * @param handler
+     * @return The number of DigitalDocuments handed to the handler.
+     * @throws ReadException
+     **************************************************************************/
+    public int readRecords(String filename, int recordsPerDocument, RecordHandler handler) throws ReadException {
+
+        try (InputStream in = new FileInputStream(filename)) {
+            return readRecords(in, recordsPerDocument, handler);
+        } catch (IOException e) {
+            String message = "IOException while reading file!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+    }
+
+    /***************************************************************************
+     * @return the factory for the readers of {@link #readRecords(InputStream, int, RecordHandler)}
+     **************************************************************************/
+    private static XMLInputFactory createRecordReaderFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads PicaPlus records from a stream, without loading the whole stream into a DOM tree. Only one record at a time is read into a DOM tree
+     * and mapped like in {@link #read(String)}. The given number of consecutive records go into one new DigitalDocument, each record is a child
+     * of the one before; then the DigitalDocument is handed to the handler. With one record per document, every record gets its own
+     * DigitalDocument.
+     * </p>
+     * <p>
+     * The memory used only depends on the size of the records and the number of records per document, not on the size of the stream.
+     * Afterwards, {@link #getDigitalDocument()} returns the last DigitalDocument.
+     * </p>
+     * 
+     * @param in The stream, which is not closed.
+     * @param recordsPerDocument
+     * @param handler
+     * @return The number of DigitalDocuments handed to the handler.
+     * @throws ReadException
+     **************************************************************************/
+    public int readRecords(InputStream in, int recordsPerDocument, RecordHandler handler) throws ReadException {
+
+        if (recordsPerDocument < 1) {
+            throw new IllegalArgumentException("At least one record per document is needed: " + recordsPerDocument);
+        }
+
+        int documents = 0;
+        int records = 0;
+        DocStruct dsOld = null;
+        XMLStreamReader reader = null;
+
+        try {
+            DocumentBuilder builder = XmlHelper.getDocumentBuilder(false);
+            reader = RECORD_READER_FACTORY.createXMLStreamReader(in);
+
+            // Depth of the current element, and of the picaplusresults element
+            // we are in, or -1.
+            int depth = 0;
+            int resultsDepth = -1;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == resultsDepth) {
+                        resultsDepth = -1;
+                    }
+                    depth--;
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                depth++;
+
+                String nodename = getQualifiedName(reader.getPrefix(), reader.getLocalName());
+                if (resultsDepth < 0 && (PREFS_PPPICAPLUSRESULTS_STRING.equals(nodename) || PREFS_PPCOLLECTION_STRING.equals(nodename))) {
+                    resultsDepth = depth;
+                } else if (resultsDepth >= 0 && depth == resultsDepth + 1
+                        && (PREFS_PPPICAPLUSRECORD_STRING.equals(nodename) || PREFS_PPRECORD_STRING.equals(nodename))) {
+                    // Read the record into its own DOM tree; the end element
+                    // is read as well.
+                    Document document = builder.newDocument();
+                    document.appendChild(readElement(reader, document));
+                    depth--;
+
+                    // Parse a single picaplus record; the first one of a
+                    // document becomes the toplogical structural entity.
+                    if (dsOld == null) {
+                        this.mydoc = new DigitalDocument();
+                    }
+                    DocStruct ds = parsePicaPlusRecord(document.getDocumentElement());
+                    if (dsOld == null) {
+                        this.mydoc.setLogicalDocStruct(ds);
+                    } else {
+                        dsOld.addChild(ds);
+                    }
+                    dsOld = ds;
+
+                    records++;
+                    if (records == recordsPerDocument) {
+                        handler.handle(this.mydoc);
+                        documents++;
+                        records = 0;
+                        dsOld = null;
+                    }
+                }
+            }
+
+            if (records > 0) {
+                handler.handle(this.mydoc);
+                documents++;
+            }
+        } catch (XMLStreamException e) {
+            String message = "Not a valid XML file!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        } catch (ParserConfigurationException e) {
+            String message = "Parser configuration exception!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        } catch (TypeNotAllowedAsChildException e) {
+            // Child DocStruct could not be added to parent, because of ruleset.
+            String message = "Can't add child to parent DocStruct; Child type not allowed for parent type!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        } catch (MetadataTypeNotAllowedException e) {
+            String message = "Can't add child to parent DocStruct; Child type must not be null!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    log.warn("Can't close XML stream reader", e);
+                }
+            }
+        }
+
+        log.info(documents + " DigitalDocuments read from picaplus records");
+
+        return documents;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads the current element of the stream with its attributes and children into a DOM element. Afterwards, the stream is at the end element.
+     * </p>
+     * 
+     * @param reader
+     * @param document
+     * @return
+     * @throws XMLStreamException
+     **************************************************************************/
+    private static Element readElement(XMLStreamReader reader, Document document) throws XMLStreamException {
+
+        Element element = document.createElement(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttribute(getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+
+        while (true) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    element.appendChild(readElement(reader, document));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (element.getLastChild() instanceof Text text) {
+                        text.appendData(reader.getText());
+                    } else {
+                        element.appendChild(document.createTextNode(reader.getText()));
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return element;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /***************************************************************************
+     * @param prefix
+     * @param localName
+     * @return The name with the prefix, as in a DOM tree without namespaces.
+     **************************************************************************/
+    private static String getQualifiedName(String prefix, String localName) {
+        return StringUtils.isEmpty(prefix) ? localName : prefix + ":" + localName;
+    }
+
     /***************************************************************************
      * @param inNode
      * @return
@@ -821,11 +1055,7 @@ public class PicaPlus implements ugh.dl.Fileformat {
             // No DocStruct found, this is a serious problem; as I do not know
             // to where I should attach the metadata.
             try {
-                StringWriter writer = new StringWriter();
-                Transformer transformer;
-                transformer = TransformerFactory.newInstance().newTransformer();
-                transformer.transform(new DOMSource(inNode), new StreamResult(writer));
-                throw new ReadException("Picaplus record read, but no DocStruct found!\nRecord node content:\n" + writer.toString());
+                throw new ReadException("Picaplus record read, but no DocStruct found!\nRecord node content:\n" + XmlHelper.toString(inNode));
             } catch (TransformerException | TransformerFactoryConfigurationError e) {
                 log.error("Error parsing xml node: " + e.toString());
                 throw new ReadException("Picaplus record read, but no DocStruct found!");
@@ -1284,6 +1514,26 @@ public class PicaPlus implements ugh.dl.Fileformat {
         return result;
     }
 
+    /***************************************************************************
+     * <p>
+     * Indexes the rules for metadata matching by PicaPlus field and subfield. The rules are added in the iteration order of the mmoList, so the
+     * lookups find the same rule as a scan over the mmoList.
+     * </p>
+     **************************************************************************/
+    private void buildMMOIndex() {
+
+        Map<String, FieldRules> index = new HashMap<>();
+        int position = 0;
+        for (MatchingMetadataObject mmo : this.mmoList) {
+            if (mmo.getPicaplusField() != null) {
+                index.computeIfAbsent(mmo.getPicaplusField(), k -> new FieldRules()).add(mmo, position);
+            }
+            position++;
+        }
+
+        this.mmoIndex = index;
+    }
+
     /***************************************************************************
      * <p>
      * Finds an appropriate MatchingMetadataObject.
@@ -1295,26 +1545,31 @@ public class PicaPlus implements ugh.dl.Fileformat {
      **************************************************************************/
     private MatchingMetadataObject findMMO(String theField, String theSubField) {
 
-        for (MatchingMetadataObject mmo : this.mmoList) {
-            if (mmo.getPicaplusField() != null && mmo.getPicaplusField().equals(theField) && mmo.getPicaplusSubfield() != null
-                    && mmo.getPicaplusSubfield().equals(theSubField)) {
-                // Field and subfield are the same.
-                return mmo;
-            }
-
-            if (mmo.getPicaplusField() != null && mmo.getPicaplusField().equals(theField) && mmo.getPicaplusSubfield() == null) {
-                // Field is the same; no subfield needed as none is defined in
-                // the ruleset.
-                return mmo;
-            }
+        FieldRules rules = this.mmoIndex.get(theField);
+        if (rules == null) {
+            return null;
         }
 
-        return null;
+        // Field and subfield are the same, or the field is the same and no
+        // subfield is defined in the ruleset; the first rule wins.
+        IndexedMMO withSubfield = null;
+        List<IndexedMMO> candidates = rules.bySubfield.get(theSubField);
+        if (candidates != null) {
+            withSubfield = candidates.get(0);
+        }
+        IndexedMMO withoutSubfield = rules.withoutSubfield;
+        if (withSubfield == null) {
+            return withoutSubfield == null ? null : withoutSubfield.mmo();
+        }
+        if (withoutSubfield == null || withSubfield.position() < withoutSubfield.position()) {
+            return withSubfield.mmo();
+        }
+        return withoutSubfield.mmo();
     }
 
     /***************************************************************************
      * <p>
-     * Finds an appropriate MatchingMetadataObject.
+     * Finds an appropriate MatchingMetadataObject, whose content is a prefix of the given content.
      * </p>
      * 
      * @param theField
@@ -1324,11 +1579,18 @@ public class PicaPlus implements ugh.dl.Fileformat {
      **************************************************************************/
     private MatchingMetadataObject findMMO(String theField, String theSubField, String theContent) {
 
-        for (MatchingMetadataObject mmo : this.mmoList) {
-            if (mmo.getPicaplusField() != null && mmo.getPicaplusField().equals(theField) && mmo.getPicaplusSubfield() != null
-                    && mmo.getPicaplusSubfield().equals(theSubField) && mmo.getContent() != null
-                    && mmo.getContent().equals(theContent.substring(0, mmo.getContent().length()))) {
-                return mmo;
+        FieldRules rules = this.mmoIndex.get(theField);
+        if (rules == null || theContent == null) {
+            return null;
+        }
+
+        List<IndexedMMO> candidates = rules.bySubfield.get(theSubField);
+        if (candidates != null) {
+            for (IndexedMMO candidate : candidates) {
+                String content = candidate.mmo().getContent();
+                if (content != null && theContent.startsWith(content)) {
+                    return candidate.mmo();
+                }
             }
         }
 
@@ -1355,6 +1617,16 @@ public class PicaPlus implements ugh.dl.Fileformat {
         return false;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see ugh.dl.Fileformat#write(java.io.OutputStream)
+     */
+    @Override
+    public boolean write(OutputStream out) throws WriteException {
+        return false;
+    }
+
     /***************************************************************************
      * 
      **************************************************************************/
@@ -1468,6 +1740,44 @@ public class PicaPlus implements ugh.dl.Fileformat {
         private boolean isPartField = false;
     }
 
+    /***************************************************************************
+     * <p>
+     * The rules for one PicaPlus field: the rules by subfield, and the first rule without a subfield.
+     * </p>
+     **************************************************************************/
+    private static class FieldRules {
+
+        private Map<String, List<IndexedMMO>> bySubfield = new HashMap<>();
+        private IndexedMMO withoutSubfield = null;
+
+        private void add(MatchingMetadataObject mmo, int position) {
+            IndexedMMO indexed = new IndexedMMO(mmo, position);
+            if (mmo.getPicaplusSubfield() != null) {
+                this.bySubfield.computeIfAbsent(mmo.getPicaplusSubfield(), k -> new ArrayList<>()).add(indexed);
+            } else if (this.withoutSubfield == null) {
+                this.withoutSubfield = indexed;
+            }
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * A rule with its position in the mmoList.
+     * </p>
+     **************************************************************************/
+    private record IndexedMMO(MatchingMetadataObject mmo, int position) {
+    }
+
+    /***************************************************************************
+     * <p>
+     * Gets the DigitalDocuments read by {@link PicaPlus#readRecords(InputStream, int, RecordHandler)}.
+     * </p>
+     **************************************************************************/
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(DigitalDocument document) throws ReadException;
+    }
+
     @Override
     public boolean isWritable() {
         return false;
@@ -0,0 +1,1137 @@
+package ugh.fileformats.slimjson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.ContentFile;
+import ugh.dl.ContentFileArea;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataGroupType;
+import ugh.dl.MetadataType;
+import ugh.dl.NamePart;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+import ugh.dl.VirtualFileGroup;
+import ugh.exceptions.ContentFileAreaTypeUnknownException;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.ReadException;
+import ugh.exceptions.WriteException;
+
+/*******************************************************************************
+ * <p>
+ * Writes and reads SlimDigitalDocuments as JSON with the Jackson streaming API. The JSON has the properties of the slim classes, but the
+ * DocStructTypes, MetadataTypes and MetadataGroupTypes are only written by name, and are resolved against the Prefs of the codec when reading.
+ * Content files are written once in the imagesMap and referenced by their identifiers everywhere else.
+ * </p>
+ * <p>
+ * The streams are not closed by the codec. A codec can be used by several threads.
+ * </p>
+ ******************************************************************************/
+@Log4j2
+public class SlimJsonCodec {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    private final Prefs prefs;
+
+    /***************************************************************************
+     * @param prefs The Prefs to resolve the types with.
+     **************************************************************************/
+    public SlimJsonCodec(Prefs prefs) {
+        this.prefs = prefs;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Writes a DigitalDocument in its slim form.
+     * </p>
+     *
+     * @param dd
+     * @param out
+     * @throws WriteException
+     **************************************************************************/
+    public void write(DigitalDocument dd, OutputStream out) throws WriteException {
+        write(SlimDigitalDocument.fromDigitalDocument(dd, this.prefs), out);
+    }
+
+    /***************************************************************************
+     * @param sdd
+     * @param out
+     * @throws WriteException
+     **************************************************************************/
+    public void write(SlimDigitalDocument sdd, OutputStream out) throws WriteException {
+        try (JsonGenerator g = JSON_FACTORY.createGenerator(out)) {
+            writeDigitalDocument(g, sdd);
+        } catch (IOException e) {
+            String message = "Can't write slim JSON document!";
+            log.error(message, e);
+            throw new WriteException(message, e);
+        }
+    }
+
+    /***************************************************************************
+     * <p>
+     * Reads a DigitalDocument from its slim form.
+     * </p>
+     *
+     * @param in
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    public DigitalDocument readDigitalDocument(InputStream in) throws ReadException {
+        return read(in).toDigitalDocument();
+    }
+
+    /***************************************************************************
+     * @param in
+     * @return
+     * @throws ReadException
+     **************************************************************************/
+    public SlimDigitalDocument read(InputStream in) throws ReadException {
+        try (JsonParser p = JSON_FACTORY.createParser(in)) {
+            p.nextToken();
+            return readDigitalDocument(p);
+        } catch (IOException e) {
+            String message = "Can't read slim JSON document!";
+            log.error(message, e);
+            throw new ReadException(message, e);
+        }
+    }
+
+    /***************************************************************************
+     * Writing.
+     **************************************************************************/
+
+    private void writeDigitalDocument(JsonGenerator g, SlimDigitalDocument sdd) throws IOException {
+        g.writeStartObject();
+        writeString(g, "topPhysicalStructId", sdd.getTopPhysicalStructId());
+        writeString(g, "topLogicalStructId", sdd.getTopLogicalStructId());
+        writeStrings(g, "dsTypes", usedDocStructTypes(sdd));
+        writeNames(g, "metadataTypes", sdd.getMetadataTypeMap());
+        writeNames(g, "metadataGroupTypes", sdd.getMetadataGroupTypeMap());
+
+        // The content files first, the other objects refer to them.
+        g.writeObjectFieldStart("imagesMap");
+        for (SlimContentFile scf : sdd.getImagesMap().values()) {
+            g.writeFieldName(scf.getIdentifier());
+            writeContentFile(g, scf);
+        }
+        g.writeEndObject();
+
+        g.writeObjectFieldStart("dsMap");
+        for (SlimDocStruct sds : sdd.getDsMap().values()) {
+            g.writeFieldName(sds.getId());
+            writeDocStruct(g, sds);
+        }
+        g.writeEndObject();
+
+        if (sdd.getAllImages() != null) {
+            g.writeFieldName("allImages");
+            writeFileSet(g, sdd.getAllImages());
+        }
+        if (sdd.getAmdSec() != null) {
+            g.writeFieldName("amdSec");
+            writeAmdSec(g, sdd.getAmdSec());
+        }
+        g.writeEndObject();
+    }
+
+    private void writeDocStruct(JsonGenerator g, SlimDocStruct sds) throws IOException {
+        g.writeStartObject();
+        writeString(g, "id", sds.getId());
+        writeString(g, "type", sds.getType());
+        writeString(g, "parentId", sds.getParentId());
+        writeBoolean(g, "updated", sds.isUpdated());
+        writeBoolean(g, "logical", sds.isLogical());
+        writeBoolean(g, "physical", sds.isPhysical());
+        writeString(g, "referenceToAnchor", sds.getReferenceToAnchor());
+
+        if (!sds.getAllMetadata().isEmpty()) {
+            g.writeArrayFieldStart("allMetadata");
+            for (SlimMetadata sm : sds.getAllMetadata()) {
+                g.writeStartObject();
+                writeMetadataFields(g, sm);
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        if (!sds.getAllMetadataGroups().isEmpty()) {
+            g.writeArrayFieldStart("allMetadataGroups");
+            for (SlimMetadataGroup smg : sds.getAllMetadataGroups()) {
+                writeMetadataGroup(g, smg);
+            }
+            g.writeEndArray();
+        }
+        if (sds.getPersons() != null && !sds.getPersons().isEmpty()) {
+            g.writeArrayFieldStart("persons");
+            for (SlimPerson sp : sds.getPersons()) {
+                writePerson(g, sp);
+            }
+            g.writeEndArray();
+        }
+        writeStrings(g, "children", sds.getChildren());
+        if (!sds.getContentFileReferences().isEmpty()) {
+            g.writeArrayFieldStart("contentFileReferences");
+            for (SlimContentFileReference scfr : sds.getContentFileReferences()) {
+                g.writeStartObject();
+                if (scfr.getArea() != null) {
+                    ContentFileArea area = scfr.getArea();
+                    g.writeObjectFieldStart("area");
+                    writeString(g, "type", area.getType());
+                    writeString(g, "from", area.getFrom());
+                    writeString(g, "to", area.getTo());
+                    g.writeEndObject();
+                }
+                writeString(g, "file", scfr.getFile().getIdentifier());
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        writeReferences(g, "docStructRefsTo", sds.getDocStructRefsTo());
+        writeReferences(g, "docStructRefsFrom", sds.getDocStructRefsFrom());
+
+        if (sds.getAmdSec() != null) {
+            g.writeFieldName("amdSec");
+            writeAmdSec(g, sds.getAmdSec());
+        }
+        writeMds(g, "techMdList", sds.getTechMdList());
+        g.writeEndObject();
+    }
+
+    private void writeMetadataFields(JsonGenerator g, SlimMetadata sm) throws IOException {
+        writeString(g, "mdTypeId", sm.getMdTypeId());
+        writeString(g, "myDocStructId", sm.getMyDocStructId());
+        writeString(g, "metadataValue", sm.getMetadataValue());
+        writeString(g, "metadataVQ", sm.getMetadataVQ());
+        writeString(g, "metadataVQType", sm.getMetadataVQType());
+        writeString(g, "authorityURI", sm.getAuthorityURI());
+        writeString(g, "authorityID", sm.getAuthorityID());
+        writeString(g, "authorityValue", sm.getAuthorityValue());
+        writeBoolean(g, "updated", sm.isUpdated());
+    }
+
+    private void writePerson(JsonGenerator g, SlimPerson sp) throws IOException {
+        g.writeStartObject();
+        writeMetadataFields(g, sp);
+        writeString(g, "firstname", sp.getFirstname());
+        writeString(g, "lastname", sp.getLastname());
+        writeString(g, "displayname", sp.getDisplayname());
+        writeString(g, "affiliation", sp.getAffiliation());
+        writeString(g, "institution", sp.getInstitution());
+        writeString(g, "role", sp.getRole());
+        writeString(g, "persontype", sp.getPersontype());
+        writeNameParts(g, sp.getAdditionalNameParts());
+        g.writeEndObject();
+    }
+
+    private void writeMetadataGroup(JsonGenerator g, SlimMetadataGroup smg) throws IOException {
+        g.writeStartObject();
+        writeString(g, "mDGroupTypeId", smg.mDGroupTypeId);
+        writeString(g, "myDocStructId", smg.myDocStructId);
+        if (!smg.getMetadataList().isEmpty()) {
+            g.writeArrayFieldStart("metadataList");
+            for (SlimMetadata sm : smg.getMetadataList()) {
+                g.writeStartObject();
+                writeMetadataFields(g, sm);
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        // The persons of a group are not slim, only the name of their type
+        // is written.
+        if (smg.getPersonList() != null && !smg.getPersonList().isEmpty()) {
+            g.writeArrayFieldStart("personList");
+            for (Person person : smg.getPersonList()) {
+                g.writeStartObject();
+                writeString(g, "type", person.getType() == null ? null : person.getType().getName());
+                writeString(g, "value", person.getValue());
+                writeString(g, "authorityURI", person.getAuthorityURI());
+                writeString(g, "authorityID", person.getAuthorityID());
+                writeString(g, "authorityValue", person.getAuthorityValue());
+                writeString(g, "firstname", person.getFirstname());
+                writeString(g, "lastname", person.getLastname());
+                writeString(g, "displayname", person.getDisplayname());
+                writeString(g, "affiliation", person.getAffiliation());
+                writeString(g, "institution", person.getInstitution());
+                writeString(g, "role", person.getRole());
+                writeString(g, "persontype", person.getPersontype());
+                writeNameParts(g, person.getAdditionalNameParts());
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        g.writeEndObject();
+    }
+
+    private void writeNameParts(JsonGenerator g, List<NamePart> nameParts) throws IOException {
+        if (nameParts == null) {
+            return;
+        }
+        g.writeArrayFieldStart("additionalNameParts");
+        for (NamePart part : nameParts) {
+            g.writeStartObject();
+            writeString(g, "type", part.getType());
+            writeString(g, "value", part.getValue());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private void writeReferences(JsonGenerator g, String name, List<SlimReference> references) throws IOException {
+        if (references.isEmpty()) {
+            return;
+        }
+        g.writeArrayFieldStart(name);
+        for (SlimReference sr : references) {
+            g.writeStartObject();
+            writeString(g, "type", sr.getType());
+            writeString(g, "sourceDsId", sr.getSourceDsId());
+            writeString(g, "targetDsId", sr.getTargetDsId());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private void writeContentFile(JsonGenerator g, SlimContentFile scf) throws IOException {
+        g.writeStartObject();
+        writeString(g, "identifier", scf.getIdentifier());
+        writeString(g, "location", scf.getLocation());
+        writeString(g, "mimeType", scf.getMimeType());
+        writeBoolean(g, "isRepresentative", scf.isRepresentative());
+        writeStrings(g, "referencedDocStructs", scf.getReferencedDocStructs());
+        g.writeEndObject();
+    }
+
+    private void writeFileSet(JsonGenerator g, SlimFileSet sfs) throws IOException {
+        g.writeStartObject();
+        writeStrings(g, "allImages", sfs.getAllImages());
+        if (sfs.getVirtualFileGroups() != null && !sfs.getVirtualFileGroups().isEmpty()) {
+            g.writeArrayFieldStart("virtualFileGroups");
+            for (VirtualFileGroup vfg : sfs.getVirtualFileGroups()) {
+                g.writeStartObject();
+                writeString(g, "name", vfg.getName());
+                writeString(g, "pathToFiles", vfg.getPathToFiles());
+                writeString(g, "mimetype", vfg.getMimetype());
+                writeString(g, "fileSuffix", vfg.getFileSuffix());
+                writeString(g, "idSuffix", vfg.getIdSuffix());
+                writeBoolean(g, "mainGroup", vfg.isMainGroup());
+                writeBoolean(g, "ignoreConfiguredMimetypeAndSuffix", vfg.isIgnoreConfiguredMimetypeAndSuffix());
+                writeString(g, "fileExtensionsToIgnore", vfg.getFileExtensionsToIgnore());
+                writeBoolean(g, "singleFile", vfg.isSingleFile());
+                // Only a restricted list of files is written.
+                if (vfg.getContentFiles() != VirtualFileGroup.ALL_FILES) {
+                    g.writeArrayFieldStart("contentFiles");
+                    for (ContentFile cf : vfg.getContentFiles()) {
+                        g.writeString(cf.getIdentifier());
+                    }
+                    g.writeEndArray();
+                }
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        g.writeEndObject();
+    }
+
+    private void writeAmdSec(JsonGenerator g, SlimAmdSec samd) throws IOException {
+        g.writeStartObject();
+        writeString(g, "id", samd.getId());
+        writeBoolean(g, "tempId", samd.isTempId());
+        writeMds(g, "techMdList", samd.getTechMdList());
+        g.writeEndObject();
+    }
+
+    private void writeMds(JsonGenerator g, String name, List<SlimMd> mds) throws IOException {
+        if (mds == null || mds.isEmpty()) {
+            return;
+        }
+        g.writeArrayFieldStart(name);
+        for (SlimMd smd : mds) {
+            g.writeStartObject();
+            writeString(g, "id", smd.getId());
+            writeString(g, "type", smd.getType());
+            writeString(g, "content", smd.getContent());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the names of the DocStructTypes used by the DocStructs. The dsTypeMap of a SlimDigitalDocument holds all types of the ruleset, but
+     * only the used ones are written, the others are added from the Prefs again when reading.
+     * </p>
+     *
+     * @param sdd
+     * @return
+     **************************************************************************/
+    private static Set<String> usedDocStructTypes(SlimDigitalDocument sdd) {
+        Set<String> result = new LinkedHashSet<>();
+        for (SlimDocStruct sds : sdd.getDsMap().values()) {
+            if (sds.getType() != null && sdd.getDsTypeMap().containsKey(sds.getType())) {
+                result.add(sds.getType());
+            }
+        }
+        return result;
+    }
+
+    private static void writeNames(JsonGenerator g, String name, Map<String, ?> types) throws IOException {
+        writeStrings(g, name, types.keySet());
+    }
+
+    private static void writeStrings(JsonGenerator g, String name, Iterable<String> values) throws IOException {
+        if (values == null || !values.iterator().hasNext()) {
+            return;
+        }
+        g.writeArrayFieldStart(name);
+        for (String value : values) {
+            g.writeString(value);
+        }
+        g.writeEndArray();
+    }
+
+    // Null values and false are left out, they are the defaults.
+    private static void writeString(JsonGenerator g, String name, String value) throws IOException {
+        if (value != null) {
+            g.writeStringField(name, value);
+        }
+    }
+
+    private static void writeBoolean(JsonGenerator g, String name, boolean value) throws IOException {
+        if (value) {
+            g.writeBooleanField(name, true);
+        }
+    }
+
+    /***************************************************************************
+     * Reading.
+     **************************************************************************/
+
+    private SlimDigitalDocument readDigitalDocument(JsonParser p) throws IOException, ReadException {
+
+        SlimDigitalDocument sdd = new SlimDigitalDocument();
+        // References to content files, resolved after the whole document is
+        // read.
+        List<Runnable> fileLinks = new ArrayList<>();
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "topPhysicalStructId":
+                    sdd.setTopPhysicalStructId(p.getValueAsString());
+                    break;
+                case "topLogicalStructId":
+                    sdd.setTopLogicalStructId(p.getValueAsString());
+                    break;
+                case "dsTypes":
+                    for (String name : readStrings(p)) {
+                        sdd.getDsTypeMap().put(name, getDocStructType(name));
+                    }
+                    break;
+                case "metadataTypes":
+                    for (String name : readStrings(p)) {
+                        sdd.getMetadataTypeMap().put(name, getMetadataType(name));
+                    }
+                    break;
+                case "metadataGroupTypes":
+                    for (String name : readStrings(p)) {
+                        sdd.getMetadataGroupTypeMap().put(name, getMetadataGroupType(name));
+                    }
+                    break;
+                case "imagesMap":
+                    startObject(p);
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String id = p.currentName();
+                        p.nextToken();
+                        sdd.getImagesMap().put(id, readContentFile(p, sdd));
+                    }
+                    break;
+                case "dsMap":
+                    startObject(p);
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String id = p.currentName();
+                        p.nextToken();
+                        sdd.getDsMap().put(id, readDocStruct(p, sdd, fileLinks));
+                    }
+                    break;
+                case "allImages":
+                    sdd.setAllImages(readFileSet(p, sdd, fileLinks));
+                    break;
+                case "amdSec":
+                    sdd.setAmdSec(readAmdSec(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        for (Runnable link : fileLinks) {
+            link.run();
+        }
+
+        // Only the used DocStructTypes are written, the map holds all types
+        // of the ruleset, like SlimDigitalDocument.fromDigitalDocument().
+        for (DocStructType dst : this.prefs.getAllDocStructTypes()) {
+            sdd.getDsTypeMap().putIfAbsent(dst.getName(), dst);
+        }
+
+        return sdd;
+    }
+
+    private SlimDocStruct readDocStruct(JsonParser p, SlimDigitalDocument sdd, List<Runnable> fileLinks) throws IOException, ReadException {
+
+        SlimDocStruct sds = new SlimDocStruct();
+        sds.setDigitalDocument(sdd);
+        sds.setPersons(new ArrayList<>());
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "id":
+                    sds.setId(p.getValueAsString());
+                    break;
+                case "type":
+                    sds.setType(p.getValueAsString());
+                    break;
+                case "parentId":
+                    sds.setParentId(p.getValueAsString());
+                    break;
+                case "updated":
+                    sds.setUpdated(p.getValueAsBoolean());
+                    break;
+                case "logical":
+                    sds.setLogical(p.getValueAsBoolean());
+                    break;
+                case "physical":
+                    sds.setPhysical(p.getValueAsBoolean());
+                    break;
+                case "referenceToAnchor":
+                    sds.setReferenceToAnchor(p.getValueAsString());
+                    break;
+                case "allMetadata":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        sds.getAllMetadata().add(readMetadata(p, new SlimMetadata(), sdd));
+                    }
+                    break;
+                case "allMetadataGroups":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        sds.getAllMetadataGroups().add(readMetadataGroup(p, sdd));
+                    }
+                    break;
+                case "persons":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        sds.getPersons().add((SlimPerson) readMetadata(p, new SlimPerson(), sdd));
+                    }
+                    break;
+                case "children":
+                    sds.getChildren().addAll(readStrings(p));
+                    break;
+                case "contentFileReferences":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        sds.getContentFileReferences().add(readContentFileReference(p, sdd, fileLinks));
+                    }
+                    break;
+                case "docStructRefsTo":
+                    sds.getDocStructRefsTo().addAll(readReferences(p, sdd));
+                    break;
+                case "docStructRefsFrom":
+                    sds.getDocStructRefsFrom().addAll(readReferences(p, sdd));
+                    break;
+                case "amdSec":
+                    sds.setAmdSec(readAmdSec(p));
+                    break;
+                case "techMdList":
+                    sds.getTechMdList().addAll(readMds(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return sds;
+    }
+
+    private SlimMetadata readMetadata(JsonParser p, SlimMetadata sm, SlimDigitalDocument sdd) throws IOException {
+
+        sm.setDigitalDocument(sdd);
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (!readMetadataField(p, field, sm) && !(sm instanceof SlimPerson sp && readPersonField(p, field, sp))) {
+                p.skipChildren();
+            }
+        }
+
+        return sm;
+    }
+
+    private static boolean readMetadataField(JsonParser p, String field, SlimMetadata sm) throws IOException {
+        switch (field) {
+            case "mdTypeId":
+                sm.setMdTypeId(p.getValueAsString());
+                return true;
+            case "myDocStructId":
+                sm.setMyDocStructId(p.getValueAsString());
+                return true;
+            case "metadataValue":
+                sm.setMetadataValue(p.getValueAsString());
+                return true;
+            case "metadataVQ":
+                sm.setMetadataVQ(p.getValueAsString());
+                return true;
+            case "metadataVQType":
+                sm.setMetadataVQType(p.getValueAsString());
+                return true;
+            case "authorityURI":
+                sm.setAuthorityURI(p.getValueAsString());
+                return true;
+            case "authorityID":
+                sm.setAuthorityID(p.getValueAsString());
+                return true;
+            case "authorityValue":
+                sm.setAuthorityValue(p.getValueAsString());
+                return true;
+            case "updated":
+                sm.setUpdated(p.getValueAsBoolean());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean readPersonField(JsonParser p, String field, SlimPerson sp) throws IOException {
+        switch (field) {
+            case "firstname":
+                sp.setFirstname(p.getValueAsString());
+                return true;
+            case "lastname":
+                sp.setLastname(p.getValueAsString());
+                return true;
+            case "displayname":
+                sp.setDisplayname(p.getValueAsString());
+                return true;
+            case "affiliation":
+                sp.setAffiliation(p.getValueAsString());
+                return true;
+            case "institution":
+                sp.setInstitution(p.getValueAsString());
+                return true;
+            case "role":
+                sp.setRole(p.getValueAsString());
+                return true;
+            case "persontype":
+                sp.setPersontype(p.getValueAsString());
+                return true;
+            case "additionalNameParts":
+                sp.setAdditionalNameParts(readNameParts(p));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private SlimMetadataGroup readMetadataGroup(JsonParser p, SlimDigitalDocument sdd) throws IOException, ReadException {
+
+        SlimMetadataGroup smg = new SlimMetadataGroup();
+        smg.setDigitalDocument(sdd);
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "mDGroupTypeId":
+                    smg.mDGroupTypeId = p.getValueAsString();
+                    break;
+                case "myDocStructId":
+                    smg.myDocStructId = p.getValueAsString();
+                    break;
+                case "metadataList":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        smg.getMetadataList().add(readMetadata(p, new SlimMetadata(), sdd));
+                    }
+                    break;
+                case "personList":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        smg.getPersonList().add(readGroupPerson(p));
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return smg;
+    }
+
+    private Person readGroupPerson(JsonParser p) throws IOException, ReadException {
+
+        Person person = new Person();
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "type":
+                    try {
+                        person = copyPersonWithType(person, getMetadataType(p.getValueAsString()));
+                    } catch (MetadataTypeNotAllowedException e) {
+                        String message = "MetadataType '" + p.getValueAsString() + "' is not a person type!";
+                        log.error(message, e);
+                        throw new ReadException(message, e);
+                    }
+                    break;
+                case "value":
+                    person.setValue(p.getValueAsString());
+                    break;
+                case "authorityURI":
+                    person.setAuthorityURI(p.getValueAsString());
+                    break;
+                case "authorityID":
+                    person.setAuthorityID(p.getValueAsString());
+                    break;
+                case "authorityValue":
+                    person.setAuthorityValue(p.getValueAsString());
+                    break;
+                case "firstname":
+                    person.setFirstname(p.getValueAsString());
+                    break;
+                case "lastname":
+                    person.setLastname(p.getValueAsString());
+                    break;
+                case "displayname":
+                    person.setDisplayname(p.getValueAsString());
+                    break;
+                case "affiliation":
+                    person.setAffiliation(p.getValueAsString());
+                    break;
+                case "institution":
+                    person.setInstitution(p.getValueAsString());
+                    break;
+                case "role":
+                    person.setRole(p.getValueAsString());
+                    break;
+                case "persontype":
+                    person.setPersontype(p.getValueAsString());
+                    break;
+                case "additionalNameParts":
+                    person.setAdditionalNameParts(readNameParts(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return person;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Creates a person of the given type with the fields read so far; the type is written first, so there are none in general.
+     * </p>
+     **************************************************************************/
+    private static Person copyPersonWithType(Person read, MetadataType type) throws MetadataTypeNotAllowedException {
+        Person person = new Person(type);
+        person.setValue(read.getValue());
+        person.setAuthorityFile(read.getAuthorityID(), read.getAuthorityURI(), read.getAuthorityValue());
+        person.setFirstname(read.getFirstname());
+        person.setLastname(read.getLastname());
+        person.setDisplayname(read.getDisplayname());
+        person.setAffiliation(read.getAffiliation());
+        person.setInstitution(read.getInstitution());
+        person.setRole(read.getRole());
+        person.setPersontype(read.getPersontype());
+        person.setAdditionalNameParts(read.getAdditionalNameParts());
+        return person;
+    }
+
+    private static List<NamePart> readNameParts(JsonParser p) throws IOException {
+
+        List<NamePart> result = new ArrayList<>();
+
+        startArray(p);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            NamePart part = new NamePart();
+            startObject(p);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("type".equals(field)) {
+                    part.setType(p.getValueAsString());
+                } else if ("value".equals(field)) {
+                    part.setValue(p.getValueAsString());
+                } else {
+                    p.skipChildren();
+                }
+            }
+            result.add(part);
+        }
+
+        return result;
+    }
+
+    private static List<SlimReference> readReferences(JsonParser p, SlimDigitalDocument sdd) throws IOException {
+
+        List<SlimReference> result = new ArrayList<>();
+
+        startArray(p);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            SlimReference sr = new SlimReference();
+            sr.setDigitalDocument(sdd);
+            startObject(p);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "type":
+                        sr.setType(p.getValueAsString());
+                        break;
+                    case "sourceDsId":
+                        sr.setSourceDsId(p.getValueAsString());
+                        break;
+                    case "targetDsId":
+                        sr.setTargetDsId(p.getValueAsString());
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            result.add(sr);
+        }
+
+        return result;
+    }
+
+    private static SlimContentFileReference readContentFileReference(JsonParser p, SlimDigitalDocument sdd, List<Runnable> fileLinks)
+            throws IOException, ReadException {
+
+        SlimContentFileReference scfr = new SlimContentFileReference();
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "area":
+                    scfr.setArea(readContentFileArea(p));
+                    break;
+                case "file":
+                    String id = getKnownFileId(p, sdd);
+                    fileLinks.add(() -> scfr.setFile(sdd.getImagesMap().get(id)));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return scfr;
+    }
+
+    private static ContentFileArea readContentFileArea(JsonParser p) throws IOException, ReadException {
+
+        ContentFileArea area = new ContentFileArea();
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "type":
+                    try {
+                        area.setType(p.getValueAsString());
+                    } catch (ContentFileAreaTypeUnknownException e) {
+                        throw new ReadException(e.getMessage(), e);
+                    }
+                    break;
+                case "from":
+                    area.setFrom(p.getValueAsString());
+                    break;
+                case "to":
+                    area.setTo(p.getValueAsString());
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return area;
+    }
+
+    private static SlimContentFile readContentFile(JsonParser p, SlimDigitalDocument sdd) throws IOException {
+
+        SlimContentFile scf = new SlimContentFile();
+        scf.setDigitalDocument(sdd);
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "identifier":
+                    scf.setIdentifier(p.getValueAsString());
+                    break;
+                case "location":
+                    scf.setLocation(p.getValueAsString());
+                    break;
+                case "mimeType":
+                    scf.setMimeType(p.getValueAsString());
+                    break;
+                case "isRepresentative":
+                    scf.setRepresentative(p.getValueAsBoolean());
+                    break;
+                case "referencedDocStructs":
+                    scf.getReferencedDocStructs().addAll(readStrings(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return scf;
+    }
+
+    private static SlimFileSet readFileSet(JsonParser p, SlimDigitalDocument sdd, List<Runnable> fileLinks) throws IOException, ReadException {
+
+        SlimFileSet sfs = new SlimFileSet();
+        sfs.setDigitalDocument(sdd);
+        sfs.setVirtualFileGroups(new ArrayList<>());
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "allImages":
+                    sfs.getAllImages().addAll(readStrings(p));
+                    break;
+                case "virtualFileGroups":
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        sfs.getVirtualFileGroups().add(readVirtualFileGroup(p, sdd, fileLinks));
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return sfs;
+    }
+
+    private static VirtualFileGroup readVirtualFileGroup(JsonParser p, SlimDigitalDocument sdd, List<Runnable> fileLinks)
+            throws IOException, ReadException {
+
+        VirtualFileGroup vfg = new VirtualFileGroup();
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "name":
+                    vfg.setName(p.getValueAsString());
+                    break;
+                case "pathToFiles":
+                    vfg.setPathToFiles(p.getValueAsString());
+                    break;
+                case "mimetype":
+                    vfg.setMimetype(p.getValueAsString());
+                    break;
+                case "fileSuffix":
+                    vfg.setFileSuffix(p.getValueAsString());
+                    break;
+                case "idSuffix":
+                    vfg.setIdSuffix(p.getValueAsString());
+                    break;
+                case "mainGroup":
+                    vfg.setMainGroup(p.getValueAsBoolean());
+                    break;
+                case "ignoreConfiguredMimetypeAndSuffix":
+                    vfg.setIgnoreConfiguredMimetypeAndSuffix(p.getValueAsBoolean());
+                    break;
+                case "fileExtensionsToIgnore":
+                    vfg.setFileExtensionsToIgnore(p.getValueAsString());
+                    break;
+                case "singleFile":
+                    vfg.setSingleFile(p.getValueAsBoolean());
+                    break;
+                case "contentFiles":
+                    vfg.restrictFiles();
+                    startArray(p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        String id = getKnownFileId(p, sdd);
+                        // The ContentFile is created here and kept by the
+                        // SlimDigitalDocument, so the FileSet gets the same
+                        // object; the DigitalDocument is not needed for it.
+                        fileLinks.add(() -> vfg.addContentFile(sdd.getImagesMap().get(id).toContentFile(null)));
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return vfg;
+    }
+
+    private static SlimAmdSec readAmdSec(JsonParser p) throws IOException {
+
+        SlimAmdSec samd = new SlimAmdSec();
+
+        startObject(p);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "id":
+                    samd.setId(p.getValueAsString());
+                    break;
+                case "tempId":
+                    samd.setTempId(p.getValueAsBoolean());
+                    break;
+                case "techMdList":
+                    samd.getTechMdList().addAll(readMds(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+
+        return samd;
+    }
+
+    private static List<SlimMd> readMds(JsonParser p) throws IOException {
+
+        List<SlimMd> result = new ArrayList<>();
+
+        startArray(p);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            SlimMd smd = new SlimMd();
+            startObject(p);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "id":
+                        smd.setId(p.getValueAsString());
+                        break;
+                    case "type":
+                        smd.setType(p.getValueAsString());
+                        break;
+                    case "content":
+                        smd.setContent(p.getValueAsString());
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            result.add(smd);
+        }
+
+        return result;
+    }
+
+    private static List<String> readStrings(JsonParser p) throws IOException {
+
+        List<String> result = new ArrayList<>();
+
+        startArray(p);
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            result.add(p.getValueAsString());
+        }
+
+        return result;
+    }
+
+    /***************************************************************************
+     * @return the identifier of a content file from the imagesMap, which is written before all references
+     **************************************************************************/
+    private static String getKnownFileId(JsonParser p, SlimDigitalDocument sdd) throws IOException, ReadException {
+        String id = p.getValueAsString();
+        if (!sdd.getImagesMap().containsKey(id)) {
+            String message = "Content file '" + id + "' is not in the imagesMap!";
+            log.error(message);
+            throw new ReadException(message);
+        }
+        return id;
+    }
+
+    private static void startObject(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(p, "Expected a JSON object, but found " + p.currentToken());
+        }
+    }
+
+    private static void startArray(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(p, "Expected a JSON array, but found " + p.currentToken());
+        }
+    }
+
+    /***************************************************************************
+     * Type resolution.
+     **************************************************************************/
+
+    private DocStructType getDocStructType(String name) throws ReadException {
+        DocStructType type = this.prefs.getDocStrctTypeByName(name);
+        if (type == null) {
+            throw unknownType("DocStructType", name);
+        }
+        return type;
+    }
+
+    private MetadataType getMetadataType(String name) throws ReadException {
+        MetadataType type = this.prefs.getMetadataTypeByName(name);
+        if (type == null) {
+            throw unknownType("MetadataType", name);
+        }
+        return type;
+    }
+
+    private MetadataGroupType getMetadataGroupType(String name) throws ReadException {
+        MetadataGroupType type = this.prefs.getMetadataGroupTypeByName(name);
+        if (type == null) {
+            throw unknownType("MetadataGroupType", name);
+        }
+        return type;
+    }
+
+    private static ReadException unknownType(String kind, String name) {
+        String message = kind + " '" + name + "' is not defined in the prefs!";
+        log.error(message);
+        return new ReadException(message);
+    }
+
+}
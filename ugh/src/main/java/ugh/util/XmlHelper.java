@@ -0,0 +1,120 @@
+package ugh.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/*******************************************************************************
+ * <p>
+ * Document builders and transformers for the DOM nodes of the technical metadata and the import formats. Neither DocumentBuilder nor Transformer
+ * may be used by several threads at the same time, so every thread gets its own instances. They are created on first use in a thread and reset
+ * before they are handed out again, so the factories are only looked up once per thread.
+ * </p>
+ * <p>
+ * The instances must not be kept by the callers, and must not be used again while a call, which got them from here, is running.
+ * </p>
+ * <p>
+ * This is an internal helper of the file formats and the model, it is not part of the API of UGH.
+ * </p>
+ ******************************************************************************/
+public final class XmlHelper {
+
+    private static final ThreadLocal<DocumentBuilder> NAMESPACE_AWARE_BUILDER = new ThreadLocal<>();
+    private static final ThreadLocal<DocumentBuilder> BUILDER = new ThreadLocal<>();
+    private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<>();
+
+    private XmlHelper() {
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the document builder of the current thread. The builders are not validating.
+     * </p>
+     *
+     * @param namespaceAware
+     * @return
+     * @throws ParserConfigurationException
+     **************************************************************************/
+    public static DocumentBuilder getDocumentBuilder(boolean namespaceAware) throws ParserConfigurationException {
+
+        ThreadLocal<DocumentBuilder> builders = namespaceAware ? NAMESPACE_AWARE_BUILDER : BUILDER;
+        DocumentBuilder builder = builders.get();
+        if (builder == null) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(namespaceAware);
+            builder = factory.newDocumentBuilder();
+            builders.set(builder);
+        } else {
+            builder.reset();
+        }
+
+        return builder;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Returns the identity transformer of the current thread, with the default output properties.
+     * </p>
+     *
+     * @return
+     * @throws TransformerConfigurationException
+     **************************************************************************/
+    public static Transformer getTransformer() throws TransformerConfigurationException {
+
+        Transformer transformer = TRANSFORMER.get();
+        if (transformer == null) {
+            transformer = TransformerFactory.newInstance().newTransformer();
+            TRANSFORMER.set(transformer);
+        } else {
+            transformer.reset();
+        }
+
+        return transformer;
+    }
+
+    /***************************************************************************
+     * <p>
+     * Parses an XML string with a document builder, which is not namespace aware.
+     * </p>
+     *
+     * @param xml
+     * @return
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     **************************************************************************/
+    public static Document parse(String xml) throws ParserConfigurationException, SAXException, IOException {
+        return getDocumentBuilder(false).parse(new InputSource(new StringReader(xml)));
+    }
+
+    /***************************************************************************
+     * <p>
+     * Serializes a DOM node with the identity transformer.
+     * </p>
+     *
+     * @param node
+     * @return
+     * @throws TransformerException
+     **************************************************************************/
+    public static String toString(Node node) throws TransformerException {
+        StringWriter writer = new StringWriter();
+        getTransformer().transform(new DOMSource(node), new StreamResult(writer));
+        return writer.toString();
+    }
+
+}
@@ -3,6 +3,7 @@ package ugh.dl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -104,4 +105,106 @@ public class AmdSecTest {
         assertEquals(0, result.size());
     }
 
+    @Test
+    public void testKeepsTheListOfTheCaller() {
+        List<Md> list = new ArrayList<>();
+        AmdSec tester = new AmdSec(list);
+        assertSame(list, tester.getTechMdList());
+
+        Md first = new Md(nList.item(0), MdType.TECH_MD);
+        first.setId("AMD_0001");
+        list.add(first);
+        assertSame(first, tester.getTechMd("AMD_0001"));
+
+        List<Md> other = new ArrayList<>();
+        tester.setTechMdList(other);
+        assertSame(other, tester.getTechMdList());
+        assertNull(tester.getTechMd("AMD_0001"));
+    }
+
+    @Test
+    public void testGetTechMd() {
+        AmdSec tester = new AmdSec(new ArrayList<>());
+        Md first = new Md(nList.item(0), MdType.TECH_MD);
+        first.setId("AMD_0001");
+        Md second = new Md(nList.item(1), MdType.TECH_MD);
+        second.setId(" AMD_0002 ");
+        tester.addTechMd(first);
+        tester.addTechMd(second);
+
+        assertSame(first, tester.getTechMd("AMD_0001"));
+        assertSame(second, tester.getTechMd("AMD_0002"));
+        assertNull(tester.getTechMd("AMD_0003"));
+        assertNull(tester.getTechMd(null));
+
+        // The index follows added Md objects and changed IDs.
+        Md third = new Md(nList.item(2), MdType.TECH_MD);
+        third.setId("AMD_0003");
+        tester.addTechMd(third);
+        assertSame(third, tester.getTechMd("AMD_0003"));
+        first.setId("AMD_0004");
+        assertNull(tester.getTechMd("AMD_0001"));
+        assertSame(first, tester.getTechMd("AMD_0004"));
+
+        // The first Md object with an ID is returned.
+        Md duplicate = new Md(nList.item(0), MdType.TECH_MD);
+        duplicate.setId("AMD_0002");
+        tester.getTechMdList().add(duplicate);
+        assertSame(second, tester.getTechMd("AMD_0002"));
+    }
+
+    @Test
+    public void testGetTechMdAfterChangesKeepingTheSize() {
+        Md first = new Md(nList.item(0), MdType.TECH_MD);
+        first.setId("AMD_0001");
+        Md second = new Md(nList.item(1), MdType.TECH_MD);
+        second.setId("AMD_0002");
+        AmdSec tester = new AmdSec(new ArrayList<>(List.of(first)));
+        assertSame(first, tester.getTechMd("AMD_0001"));
+
+        // replacing an element
+        tester.getTechMdList().set(0, second);
+        assertNull(tester.getTechMd("AMD_0001"));
+        assertSame(second, tester.getTechMd("AMD_0002"));
+
+        // removing and adding an element
+        tester.getTechMdList().remove(0);
+        tester.getTechMdList().add(first);
+        assertSame(first, tester.getTechMd("AMD_0001"));
+        assertNull(tester.getTechMd("AMD_0002"));
+    }
+
+    @Test
+    public void testGetTechMdSharedByTwoAmdSecs() {
+        Md shared = new Md(nList.item(0), MdType.TECH_MD);
+        shared.setId("AMD_0001");
+        Md other = new Md(nList.item(1), MdType.TECH_MD);
+        other.setId("AMD_0002");
+        AmdSec first = new AmdSec(new ArrayList<>(List.of(shared)));
+        AmdSec second = new AmdSec(new ArrayList<>(List.of(shared, other)));
+        assertSame(shared, first.getTechMd("AMD_0001"));
+        assertSame(shared, second.getTechMd("AMD_0001"));
+
+        // Both indexes follow the changed ID of the shared Md object.
+        shared.setId("AMD_0003");
+        assertNull(first.getTechMd("AMD_0001"));
+        assertSame(shared, first.getTechMd("AMD_0003"));
+        assertNull(second.getTechMd("AMD_0001"));
+        assertSame(shared, second.getTechMd("AMD_0003"));
+
+        // An ID changed in the second AmdSec only.
+        other.setId("AMD_0004");
+        assertSame(shared, first.getTechMd("AMD_0003"));
+        assertNull(first.getTechMd("AMD_0004"));
+        assertSame(other, second.getTechMd("AMD_0004"));
+        assertNull(second.getTechMd("AMD_0002"));
+
+        // A generated ID is found as well.
+        Md generated = new Md(nList.item(2), MdType.TECH_MD);
+        first.addTechMd(generated);
+        assertNull(first.getTechMd("AMD_0005"));
+        generated.generateId();
+        assertSame(generated, first.getTechMd(generated.getId()));
+    }
+
 }
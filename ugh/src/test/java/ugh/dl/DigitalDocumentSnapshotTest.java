@@ -0,0 +1,257 @@
+package ugh.dl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ugh.exceptions.ContentFileNotLinkedException;
+import ugh.exceptions.DocStructHasNoTypeException;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.TypeNotAllowedAsChildException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+import ugh.fileformats.mets.MetsMods;
+
+public class DigitalDocumentSnapshotTest {
+
+    private static Prefs prefs;
+
+    private DigitalDocument document;
+
+    @BeforeClass
+    public static void setUpForAll() throws Exception {
+        prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.read("src/test/resources/meta.xml");
+        document = fileformat.getDigitalDocument();
+    }
+
+    @Test
+    public void testSnapshotWithoutChanges() {
+        DocStruct logical = document.getLogicalDocStruct();
+        int children = logical.getAllChildren().size();
+        int files = document.getFileSet().getAllFiles().size();
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        assertSame(document, snapshot.getDocument());
+        assertEquals(0, snapshot.getPreservedCount());
+
+        snapshot.restore();
+        assertTrue(snapshot.isReleased());
+        assertSame(logical, document.getLogicalDocStruct());
+        assertEquals(children, logical.getAllChildren().size());
+        assertEquals(files, document.getFileSet().getAllFiles().size());
+    }
+
+    @Test
+    public void testSnapshotRestoresMetadataValue() {
+        MetadataType titleType = prefs.getMetadataTypeByName("TitleDocMain");
+        Metadata title = document.getLogicalDocStruct().getAllMetadataByType(titleType).get(0);
+        String oldValue = title.getValue();
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        title.setValue("changed title");
+        title.setValue("changed again");
+        assertEquals(1, snapshot.getPreservedCount());
+
+        snapshot.restore();
+        assertEquals(oldValue, title.getValue());
+        assertSame(title, document.getLogicalDocStruct().getAllMetadataByType(titleType).get(0));
+    }
+
+    @Test
+    public void testSnapshotRestoresChildren() throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+        DocStruct logical = document.getLogicalDocStruct();
+        int children = logical.getAllChildren().size();
+        DocStruct removed = logical.getAllChildren().get(0);
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        DocStruct chapter = document.createDocStruct(prefs.getDocStrctTypeByName("Chapter"));
+        logical.addChild(chapter);
+        logical.removeChild(removed);
+        assertEquals(children, logical.getAllChildren().size());
+        assertSame(chapter, logical.getAllChildren().get(children - 1));
+        // only the changed DocStructs are preserved
+        assertEquals(3, snapshot.getPreservedCount());
+
+        snapshot.restore();
+        assertEquals(children, logical.getAllChildren().size());
+        assertSame(removed, logical.getAllChildren().get(0));
+        assertSame(logical, removed.getParent());
+        assertFalse(logical.getAllChildren().contains(chapter));
+    }
+
+    @Test
+    public void testSnapshotRestoresReferences() throws ContentFileNotLinkedException {
+        DocStruct logical = document.getLogicalDocStruct();
+        DocStruct page = document.getPhysicalDocStruct().getAllChildren().get(0);
+        int references = logical.getAllToReferences().size();
+        ContentFile file = page.getAllContentFiles().get(0);
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        logical.removeReferenceTo(page);
+        page.removeContentFile(file);
+        assertEquals(references - 1, logical.getAllToReferences().size());
+        assertFalse(file.getReferencedDocStructs().contains(page));
+
+        snapshot.restore();
+        List<Reference> restoredReferences = logical.getAllToReferences();
+        assertEquals(references, restoredReferences.size());
+        assertTrue(restoredReferences.stream().anyMatch(ref -> ref.getTarget() == page));
+        assertEquals(1, page.getAllContentFiles().size());
+        assertSame(file, page.getAllContentFiles().get(0));
+        assertTrue(file.getReferencedDocStructs().contains(page));
+    }
+
+    @Test
+    public void testSnapshotRestoresPersonName() {
+        Person author = document.getLogicalDocStruct().getAllPersons().get(0);
+        String lastname = author.getLastname();
+        int nameParts = author.getAdditionalNameParts().size();
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        author.getAdditionalNameParts();
+        assertEquals(0, snapshot.getPreservedCount());
+        author.setLastname("changed");
+        author.getAdditionalNameParts().add(new NamePart("date", "1792"));
+        assertEquals(1, snapshot.getPreservedCount());
+
+        snapshot.restore();
+        assertEquals(lastname, author.getLastname());
+        assertEquals(nameParts, author.getAdditionalNameParts().size());
+    }
+
+    @Test
+    public void testSnapshotRestoresCorporate() throws MetadataTypeNotAllowedException {
+        Corporate corporate = new Corporate(prefs.getMetadataTypeByName("Corporation"));
+        corporate.setMainName("main");
+        corporate.addSubName(new NamePart("subname", "sub"));
+        document.getLogicalDocStruct().addCorporate(corporate);
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        corporate.setMainName("changed");
+        corporate.getSubNames().get(0).setValue("changed");
+        corporate.addSubName(new NamePart("subname", "other"));
+
+        snapshot.restore();
+        assertEquals("main", corporate.getMainName());
+        assertEquals(1, corporate.getSubNames().size());
+        assertEquals("sub", corporate.getSubNames().get(0).getValue());
+    }
+
+    @Test
+    public void testSnapshotRestoresMetadataGroup() throws MetadataTypeNotAllowedException, DocStructHasNoTypeException {
+        MetadataGroup group = new MetadataGroup(prefs.getMetadataGroupTypeByName("LocationGroup"));
+        Metadata city = new Metadata(prefs.getMetadataTypeByName("City"));
+        city.setValue("city");
+        group.addMetadata(city);
+        document.getLogicalDocStruct().addMetadataGroup(group);
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        city.setValue("changed");
+        Metadata country = new Metadata(prefs.getMetadataTypeByName("Country"));
+        country.setValue("country");
+        group.addMetadata(country);
+
+        snapshot.restore();
+        assertTrue(group.getMetadataByType("Country").isEmpty());
+        assertEquals("city", city.getValue());
+        assertSame(city, group.getMetadataByType("City").get(0));
+    }
+
+    @Test
+    public void testSnapshotRestoresFileSection() {
+        FileSet fileSet = document.getFileSet();
+        ContentFile file = fileSet.getAllFiles().get(0);
+        String location = file.getLocation();
+        int files = fileSet.getAllFiles().size();
+        int groups = fileSet.getVirtualFileGroups().size();
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        assertEquals(0, snapshot.getPreservedCount());
+        file.setLocation("changed");
+        fileSet.removeFile(file);
+        fileSet.addVirtualFileGroup(new VirtualFileGroup());
+        // the FileSet and the ContentFile
+        assertEquals(2, snapshot.getPreservedCount());
+
+        snapshot.restore();
+        assertEquals(location, file.getLocation());
+        assertEquals(files, fileSet.getAllFiles().size());
+        assertSame(file, fileSet.getAllFiles().get(0));
+        assertEquals(groups, fileSet.getVirtualFileGroups().size());
+    }
+
+    @Test
+    public void testSnapshotRestoresVirtualFileGroup() {
+        VirtualFileGroup group = new VirtualFileGroup();
+        group.setName("PRESENTATION");
+        group.setMimetype("image/jpeg");
+        document.getFileSet().addVirtualFileGroup(group);
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        group.setMimetype("image/tiff");
+        group.setMainGroup(true);
+        assertEquals(1, snapshot.getPreservedCount());
+
+        snapshot.restore();
+        assertEquals("image/jpeg", group.getMimetype());
+        assertFalse(group.isMainGroup());
+    }
+
+    @Test
+    public void testGettersReturnTheLists() {
+        DocStruct logical = document.getLogicalDocStruct();
+        Person author = logical.getAllPersons().get(0);
+
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        assertSame(logical.getAllMetadata(), logical.getAllMetadata());
+        assertSame(logical.getAllChildren(), logical.getAllChildren());
+        assertSame(author.getAdditionalNameParts(), author.getAdditionalNameParts());
+        assertSame(document.getFileSet().getAllFiles(), document.getFileSet().getAllFiles());
+        // reading is no change
+        assertEquals(0, snapshot.getPreservedCount());
+    }
+
+    @Test
+    public void testTwoSnapshots() {
+        MetadataType titleType = prefs.getMetadataTypeByName("TitleDocMain");
+        Metadata title = document.getLogicalDocStruct().getAllMetadataByType(titleType).get(0);
+        String oldValue = title.getValue();
+
+        DigitalDocumentSnapshot first = document.createSnapshot();
+        title.setValue("first");
+        DigitalDocumentSnapshot second = document.createSnapshot();
+        title.setValue("second");
+
+        first.restore();
+        assertEquals(oldValue, title.getValue());
+        // restoring the first snapshot is a change for the second one
+        second.restore();
+        assertEquals("first", title.getValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedSnapshot() {
+        MetadataType titleType = prefs.getMetadataTypeByName("TitleDocMain");
+        DigitalDocumentSnapshot snapshot = document.createSnapshot();
+        snapshot.release();
+        assertTrue(snapshot.isReleased());
+
+        document.getLogicalDocStruct().getAllMetadataByType(titleType).get(0).setValue("changed title");
+        assertEquals(0, snapshot.getPreservedCount());
+        snapshot.restore();
+    }
+
+}
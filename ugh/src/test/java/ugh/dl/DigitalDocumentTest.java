@@ -932,6 +932,67 @@ public class DigitalDocumentTest {
         }
     }
 
+    @Test
+    public void testCopyKeepsLinksInsideTheCopy() throws WriteException, PreferencesException {
+        DigitalDocument docOriginal = fileformat.getDigitalDocument();
+        DigitalDocument docCopy = docOriginal.copyDigitalDocument();
+
+        DocStruct logicalOriginal = docOriginal.getLogicalDocStruct();
+        DocStruct logicalCopy = docCopy.getLogicalDocStruct();
+        DocStruct physicalCopy = docCopy.getPhysicalDocStruct();
+        assertNotSame(logicalOriginal, logicalCopy);
+        assertNotSame(docOriginal.getPhysicalDocStruct(), physicalCopy);
+        // types from the ruleset are shared
+        assertSame(logicalOriginal.getType(), logicalCopy.getType());
+
+        for (Metadata md : logicalCopy.getAllMetadata()) {
+            assertSame(logicalCopy, md.getParent());
+        }
+
+        List<ContentFile> filesCopy = docCopy.getFileSet().getAllFiles();
+        assertFalse(physicalCopy.getAllChildren().isEmpty());
+        for (DocStruct page : physicalCopy.getAllChildren()) {
+            assertSame(physicalCopy, page.getParent());
+            for (Reference ref : page.getAllFromReferences()) {
+                assertSame(page, ref.getTarget());
+                assertSame(logicalCopy, getTopStruct(ref.getSource()));
+            }
+            if (page.getAllContentFileReferences() != null) {
+                for (ContentFileReference cfr : page.getAllContentFileReferences()) {
+                    assertTrue(filesCopy.stream().anyMatch(file -> file == cfr.getCf()));
+                }
+            }
+        }
+
+        for (Reference ref : logicalCopy.getAllToReferences()) {
+            assertSame(logicalCopy, ref.getSource());
+            assertSame(physicalCopy, ref.getTarget().getParent());
+        }
+    }
+
+    @Test
+    public void testCopySharesTechMds() throws Exception {
+        DigitalDocument docOriginal = fileformat.getDigitalDocument().copyDigitalDocument();
+        Md techMd = new Md(upperChild, MdType.TECH_MD);
+        techMd.setId("AMD_COPY");
+        docOriginal.addTechMd(techMd);
+
+        DigitalDocument docCopy = docOriginal.copyDigitalDocument();
+        assertNotSame(docOriginal.getAmdSec(), docCopy.getAmdSec());
+        assertSame(techMd, docCopy.getTechMd("AMD_COPY"));
+
+        // The list is copied, the Md objects are not.
+        assertNotSame(docOriginal.getAmdSec().getTechMdList(), docCopy.getAmdSec().getTechMdList());
+    }
+
+    private static DocStruct getTopStruct(DocStruct ds) {
+        DocStruct top = ds;
+        while (top.getParent() != null) {
+            top = top.getParent();
+        }
+        return top;
+    }
+
     /* Tests for the method detectMimeType(Path) */
     @Test
     public void testDetectMimeTypeGivenNull() {
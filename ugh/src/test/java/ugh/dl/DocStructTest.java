@@ -7,6 +7,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Before;
@@ -719,6 +720,201 @@ public class DocStructTest {
         assertEquals(1, ds.countMDofthisType("PublisherGroup"));
     }
 
+    @Test
+    public void testMetadataByTypeAfterChanges() throws Exception {
+        DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        MetadataType sizeType = prefs.getMetadataTypeByName("SizeSourcePrint");
+        MetadataType authorType = prefs.getMetadataTypeByName("Author");
+
+        List<Metadata> sizes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Metadata md = new Metadata(sizeType);
+            md.setValue("size " + i);
+            ds.addMetadata(md);
+            sizes.add(md);
+        }
+        Person author = new Person(authorType);
+        author.setLastname("lastname");
+        ds.addPerson(author);
+        assertEquals(100, ds.countMDofthisType("SizeSourcePrint"));
+        assertEquals(sizes, ds.getAllMetadataByType(sizeType));
+        assertTrue(ds.hasMetadataType(authorType));
+
+        // removing keeps the order
+        ds.removeMetadata(sizes.get(10));
+        sizes.remove(10);
+        assertEquals(99, ds.countMDofthisType("SizeSourcePrint"));
+        assertEquals(sizes, ds.getAllMetadataByType(sizeType));
+
+        // changing
+        Metadata changed = new Metadata(sizeType);
+        changed.setValue("changed");
+        ds.changeMetadata(sizes.get(0), changed);
+        assertEquals("changed", ds.getAllMetadataByType(sizeType).get(0).getValue());
+
+        // changes made directly to the lists
+        Metadata direct = new Metadata(sizeType);
+        ds.getAllMetadata().add(direct);
+        assertEquals(100, ds.countMDofthisType("SizeSourcePrint"));
+        ds.getAllPersons().clear();
+        assertFalse(ds.hasMetadataType(authorType));
+        assertNull(ds.getAllPersonsByType(authorType));
+        ds.setAllMetadata(new ArrayList<>());
+        assertEquals(0, ds.countMDofthisType("SizeSourcePrint"));
+        assertTrue(ds.getAllMetadataByType(sizeType).isEmpty());
+    }
+
+    @Test
+    public void testMetadataByTypeAfterReplacingAndSortingDirectly() throws Exception {
+        DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        MetadataType sizeType = prefs.getMetadataTypeByName("SizeSourcePrint");
+        MetadataType placeType = prefs.getMetadataTypeByName("PlaceOfPublication");
+
+        for (int i = 0; i < 3; i++) {
+            Metadata md = new Metadata(sizeType);
+            md.setValue("size " + i);
+            ds.addMetadata(md);
+        }
+        assertEquals(3, ds.countMDofthisType("SizeSourcePrint"));
+
+        // replacing an element keeps the size of the list
+        List<Metadata> list = ds.getAllMetadata();
+        Metadata place = new Metadata(placeType);
+        place.setValue("Göttingen");
+        list.set(1, place);
+        assertEquals(2, ds.countMDofthisType("SizeSourcePrint"));
+        assertTrue(ds.hasMetadataType(placeType));
+        assertTrue(place == ds.getAllMetadataByType(placeType).get(0));
+
+        // removing and adding keeps the size, too
+        list.remove(place);
+        Metadata size = new Metadata(sizeType);
+        size.setValue("size 3");
+        list.add(size);
+        assertFalse(ds.hasMetadataType(placeType));
+        assertEquals(3, ds.countMDofthisType("SizeSourcePrint"));
+
+        // sorting in place changes the order of the elements of a type
+        list.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+        List<? extends Metadata> sorted = ds.getAllMetadataByType(sizeType);
+        assertEquals("size 3", sorted.get(0).getValue());
+        assertEquals("size 2", sorted.get(1).getValue());
+        assertEquals("size 0", sorted.get(2).getValue());
+        Collections.sort(list, (a, b) -> a.getValue().compareTo(b.getValue()));
+        assertEquals("size 0", ds.getAllMetadataByType(sizeType).get(0).getValue());
+
+        // lists set by the caller are used by the DocStruct
+        List<Metadata> own = new ArrayList<>(list);
+        ds.setAllMetadata(own);
+        assertEquals(3, ds.countMDofthisType("SizeSourcePrint"));
+        own.set(0, place);
+        assertEquals(2, ds.countMDofthisType("SizeSourcePrint"));
+        assertTrue(ds.hasMetadataType(placeType));
+    }
+
+    @Test
+    public void testMetadataIndex() throws Exception {
+        DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        MetadataType sizeType = prefs.getMetadataTypeByName("SizeSourcePrint");
+        MetadataType placeType = prefs.getMetadataTypeByName("PlaceOfPublication");
+        MetadataType authorType = prefs.getMetadataTypeByName("Author");
+        assertFalse(ds.isMetadataIndexed());
+        ds.setMetadataIndexed(true);
+
+        List<Metadata> sizes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Metadata md = new Metadata(sizeType);
+            md.setValue("size " + i);
+            ds.addMetadata(md);
+            sizes.add(md);
+        }
+        Person author = new Person(authorType);
+        author.setLastname("lastname");
+        ds.addPerson(author);
+        assertEquals(3, ds.countMDofthisType("SizeSourcePrint"));
+        assertEquals(sizes, ds.getAllMetadataByType(sizeType));
+        assertTrue(ds.hasMetadataType(authorType));
+
+        // the methods of the DocStruct keep the index up to date
+        ds.removeMetadata(sizes.remove(1));
+        assertEquals(sizes, ds.getAllMetadataByType(sizeType));
+        Metadata changed = new Metadata(sizeType);
+        changed.setValue("changed");
+        ds.changeMetadata(sizes.get(0), changed);
+        assertEquals(2, ds.countMDofthisType("SizeSourcePrint"));
+        assertTrue(changed == ds.getAllMetadataByType(sizeType).get(0));
+        ds.removePerson(author);
+        assertFalse(ds.hasMetadataType(authorType));
+        Metadata place = new Metadata(placeType);
+        place.setValue("Göttingen");
+        ds.setAllMetadata(new ArrayList<>(List.of(place)));
+        assertEquals(0, ds.countMDofthisType("SizeSourcePrint"));
+        assertEquals(1, ds.countMDofthisType("PlaceOfPublication"));
+
+        // direct changes of the lists require to enable the index again
+        ds.getAllMetadata().clear();
+        ds.setMetadataIndexed(true);
+        assertFalse(ds.hasMetadataType(placeType));
+
+        // without the index, the lists are scanned
+        ds.setMetadataIndexed(false);
+        ds.addPerson(author);
+        assertTrue(ds.hasMetadataType(authorType));
+        ds.setAllPersons(new ArrayList<>());
+        assertFalse(ds.hasMetadataType(authorType));
+    }
+
+    @Test
+    public void testMetadataByTypeAfterSettingAllLists() throws Exception {
+        DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        MetadataType authorType = prefs.getMetadataTypeByName("Author");
+        MetadataType corporateType = prefs.getMetadataTypeByName("Corporation");
+        MetadataGroupType groupType = prefs.getMetadataGroupTypeByName("LocationGroup");
+
+        ds.setAllPersons(new ArrayList<>(List.of(new Person(authorType))));
+        ds.setAllCorporates(new ArrayList<>(List.of(new Corporate(corporateType))));
+        ds.setAllMetadataGroups(new ArrayList<>(List.of(new MetadataGroup(groupType))));
+        assertEquals(1, ds.getAllPersonsByType(authorType).size());
+        assertEquals(1, ds.getAllCorporatesByType(corporateType).size());
+        assertEquals(1, ds.getAllMetadataGroupsByType(groupType).size());
+
+        // replacing an element of a set list keeps its size
+        ds.getAllPersons().set(0, new Person(prefs.getMetadataTypeByName("AuthorOfAfterword")));
+        ds.getAllCorporates().set(0, new Corporate(prefs.getMetadataTypeByName("CorporateCurator")));
+        ds.getAllMetadataGroups().set(0, new MetadataGroup(prefs.getMetadataGroupTypeByName("PublisherGroup")));
+        assertNull(ds.getAllPersonsByType(authorType));
+        assertNull(ds.getAllCorporatesByType(corporateType));
+        assertTrue(ds.getAllMetadataGroupsByType(groupType).isEmpty());
+    }
+
+    @Test
+    public void testAddManyMetadataOfOneType() throws Exception {
+        DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        ds.setMetadataIndexed(true);
+        MetadataType sizeType = prefs.getMetadataTypeByName("SizeSourcePrint");
+        MetadataType placeType = prefs.getMetadataTypeByName("PlaceOfPublication");
+
+        // every add counts the metadata of the type first, with the index it
+        // does not scan the list
+        List<Metadata> sizes = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Metadata md = new Metadata(sizeType);
+            md.setValue("size " + i);
+            ds.addMetadata(md);
+            sizes.add(md);
+        }
+        assertEquals(5000, ds.countMDofthisType("SizeSourcePrint"));
+        assertEquals(sizes, ds.getAllMetadataByType(sizeType));
+
+        // replacing the type of an element moves it to the other type
+        Metadata moved = sizes.remove(2500);
+        moved.setType(placeType);
+        assertEquals(4999, ds.countMDofthisType("SizeSourcePrint"));
+        assertEquals(sizes, ds.getAllMetadataByType(sizeType));
+        assertEquals(1, ds.countMDofthisType("PlaceOfPublication"));
+        assertTrue(moved == ds.getAllMetadataByType(placeType).get(0));
+    }
+
     @Test
     public void testGetAddableMetadataGroupTypes() throws Exception {
         DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
@@ -1035,6 +1231,39 @@ public class DocStructTest {
 
     }
 
+    @Test
+    public void testSortMetadata() throws Exception {
+        DocStruct ds = new DocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        String[] names = { "DocLanguage", "TitleDocMainShort", "SizeSourcePrint", "DocLanguage", "SizeSourcePrint" };
+        for (int i = 0; i < names.length; i++) {
+            Metadata md = new Metadata(prefs.getMetadataTypeByName(names[i]));
+            md.setValue(names[i] + i);
+            ds.addMetadata(md);
+        }
+        // a type unknown to the DocStructType is added at the end
+        Metadata leftOver = new Metadata(prefs.getMetadataTypeByName("physPageNumber"));
+        ds.getAllMetadata().add(0, leftOver);
+
+        // expected order: by the first occurance of the type in the prefs,
+        // equal types in their current order
+        List<Metadata> expected = new ArrayList<>();
+        List<Metadata> rest = new ArrayList<>(ds.getAllMetadata());
+        for (MetadataType type : prefs.getDocStrctTypeByName("Monograph").getAllMetadataTypes()) {
+            for (Metadata md : ds.getAllMetadata()) {
+                if (type.getName().equals(md.getType().getName()) && rest.remove(md)) {
+                    expected.add(md);
+                }
+            }
+        }
+        expected.addAll(rest);
+
+        ds.sortMetadata(prefs);
+        assertEquals(expected, ds.getAllMetadata());
+        assertEquals(leftOver, ds.getAllMetadata().get(names.length));
+        assertEquals("SizeSourcePrint2", ds.getAllMetadata().get(0).getValue());
+        assertEquals(2, ds.getAllMetadataByType(prefs.getMetadataTypeByName("SizeSourcePrint")).size());
+    }
+
     @Test
     public void testImageName() throws Exception {
         DigitalDocument dd = new DigitalDocument();
@@ -75,6 +75,25 @@ public class FileSetTest {
         assertEquals(0, fs.getAllFiles().size());
     }
 
+    @Test
+    public void testAddFileAfterChangingTheList() {
+        ContentFile cf1 = new ContentFile();
+        ContentFile cf2 = new ContentFile();
+        fs.addFile(cf1);
+        fs.getAllFiles().add(cf2);
+        fs.getAllFiles().add(cf2);
+        fs.getAllFiles().remove(cf2);
+        fs.addFile(cf2);
+        assertEquals(2, fs.getAllFiles().size());
+
+        fs.getAllFiles().removeIf(cf -> cf == cf2);
+        fs.getAllFiles().set(0, cf2);
+        fs.addFile(cf1);
+        assertEquals(2, fs.getAllFiles().size());
+        assertEquals(cf2, fs.getAllFiles().get(0));
+        assertEquals(cf1, fs.getAllFiles().get(1));
+    }
+
     /* Tests for the method addMetadata(Metadata) */
     @Test
     public void testAddMetadataGivenNull() {
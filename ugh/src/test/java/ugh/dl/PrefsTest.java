@@ -10,6 +10,12 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -24,6 +30,7 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import ugh.exceptions.PreferencesException;
+import ugh.fileformats.excel.RDFFile;
 
 public class PrefsTest {
     private Prefs prefs;
@@ -621,6 +628,156 @@ public class PrefsTest {
         assertEquals("1m", prefs.getMetadataGroupTypeByName("mdgt").getNum());
     }
 
+    @Test
+    public void testGetMetadataTypeByNameGivenLanguage() throws PreferencesException {
+        assertTrue(prefs.loadPrefs("src/test/resources/ruleset.xml"));
+        MetadataType placeOfPublication = prefs.getMetadataTypeByName("PlaceOfPublication");
+        assertNotNull(placeOfPublication);
+        assertEquals(placeOfPublication, prefs.getMetadataTypeByName(placeOfPublication.getNameByLanguage("de"), "de"));
+        assertNull(prefs.getMetadataTypeByName("Unexisting", "de"));
+        assertNull(prefs.getMetadataTypeByName("", "de"));
+    }
+
+    @Test
+    public void testLookupsAfterAddingMetadataTypes() throws PreferencesException {
+        assertTrue(prefs.loadPrefs("src/test/resources/ruleset.xml"));
+        assertNull(prefs.getMetadataTypeByName("newType"));
+        assertNull(prefs.getMetadataTypeByName("Neuer Typ", "de"));
+
+        MetadataType newType = new MetadataType();
+        newType.setName("newType");
+        newType.addLanguage("de", "Neuer Typ");
+        assertTrue(prefs.addMetadataType(newType));
+        assertEquals(newType, prefs.getMetadataTypeByName("newType"));
+        assertEquals(newType, prefs.getMetadataTypeByName("Neuer Typ", "de"));
+
+        // replace the type
+        MetadataType replacement = new MetadataType();
+        replacement.setName("newType");
+        assertTrue(prefs.addMetadataType(replacement));
+        assertTrue(replacement == prefs.getMetadataTypeByName("newType"));
+        assertNull(prefs.getMetadataTypeByName("Neuer Typ", "de"));
+
+        // types added to the list directly are found as well
+        MetadataType otherType = new MetadataType();
+        otherType.setName("otherType");
+        prefs.getAllMetadataTypes().add(otherType);
+        assertEquals(otherType, prefs.getMetadataTypeByName("otherType"));
+
+        // renamed types are found by their new name only
+        otherType.setName("renamedType");
+        assertNull(prefs.getMetadataTypeByName("otherType"));
+        assertEquals(otherType, prefs.getMetadataTypeByName("renamedType"));
+    }
+
+    @Test
+    public void testLookupsAfterRemovingAndAddingThroughList() throws PreferencesException {
+        assertTrue(prefs.loadPrefs("src/test/resources/ruleset.xml"));
+        MetadataType placeOfPublication = prefs.getMetadataTypeByName("PlaceOfPublication");
+        assertNotNull(placeOfPublication);
+
+        // the size of the list stays the same
+        MetadataType otherType = new MetadataType();
+        otherType.setName("otherType");
+        List<MetadataType> types = prefs.getAllMetadataTypes();
+        int size = types.size();
+        types.remove(placeOfPublication);
+        types.add(otherType);
+        assertEquals(size, types.size());
+
+        assertNull(prefs.getMetadataTypeByName("PlaceOfPublication"));
+        assertTrue(otherType == prefs.getMetadataTypeByName("otherType"));
+
+        // replacing an element keeps the size as well
+        types.set(types.indexOf(otherType), placeOfPublication);
+        assertNull(prefs.getMetadataTypeByName("otherType"));
+        assertTrue(placeOfPublication == prefs.getMetadataTypeByName("PlaceOfPublication"));
+    }
+
+    @Test
+    public void testLookupsAfterRenamingToQueriedName() throws PreferencesException {
+        assertTrue(prefs.loadPrefs("src/test/resources/ruleset.xml"));
+        assertNull(prefs.getMetadataTypeByName("newName"));
+        assertNull(prefs.getMetadataTypeByName("Neuer Name", "de"));
+
+        MetadataType placeOfPublication = prefs.getMetadataTypeByName("PlaceOfPublication");
+        placeOfPublication.setName("newName");
+        assertTrue(placeOfPublication == prefs.getMetadataTypeByName("newName"));
+
+        // labels are renamed the same way
+        placeOfPublication.changeLanguageByName("de", "Neuer Name");
+        assertTrue(placeOfPublication == prefs.getMetadataTypeByName("Neuer Name", "de"));
+
+        DocStructType monograph = prefs.getDocStrctTypeByName("Monograph");
+        assertNull(prefs.getDocStrctTypeByName("newName"));
+        monograph.setName("newName");
+        assertTrue(monograph == prefs.getDocStrctTypeByName("newName"));
+    }
+
+    @Test
+    public void testGetSharedPrefs() throws Exception {
+        Prefs.clearSharedPrefs();
+        Prefs shared = Prefs.getSharedPrefs("src/test/resources/ruleset.xml");
+        assertTrue(shared.isReadOnly());
+        assertNotNull(shared.getMetadataTypeByName("PlaceOfPublication"));
+        assertNotNull(shared.getPreferenceNode("METS"));
+        assertEquals("METS", shared.getPreferenceNode("METS").getNodeName());
+        assertNull(shared.getPreferenceNode("Unexisting"));
+        // every call gets a copy of its own
+        assertTrue(shared.getPreferenceNode("METS") != shared.getPreferenceNode("METS"));
+
+        // same file, same instance
+        assertTrue(shared == Prefs.getSharedPrefs("src/test/resources/ruleset.xml"));
+        assertTrue(shared == Prefs.getSharedPrefs(new File("src/test/resources/ruleset.xml").getAbsolutePath()));
+
+        // shared instances can't be modified
+        MetadataType mdt = new MetadataType();
+        mdt.setName("newType");
+        assertThrows(UnsupportedOperationException.class, () -> shared.addMetadataType(mdt));
+        assertNull(shared.getMetadataTypeByName("newType"));
+        assertThrows(UnsupportedOperationException.class, () -> shared.getAllMetadataTypes().add(mdt));
+        assertThrows(UnsupportedOperationException.class, () -> shared.loadPrefs("src/test/resources/ruleset.xml"));
+        // the RDF reader adds metadata types to its prefs
+        assertThrows(UnsupportedOperationException.class, () -> new RDFFile(shared));
+
+        // neither can their types
+        MetadataType placeOfPublication = shared.getMetadataTypeByName("PlaceOfPublication");
+        assertThrows(UnsupportedOperationException.class, () -> placeOfPublication.setName("changed"));
+        assertThrows(UnsupportedOperationException.class, () -> placeOfPublication.getAllLanguages().put("xx", "changed"));
+        DocStructType monograph = shared.getDocStrctTypeByName("Monograph");
+        assertThrows(UnsupportedOperationException.class, () -> monograph.addDocStructTypeAsChild("Chapter"));
+        assertThrows(UnsupportedOperationException.class, () -> monograph.getAllAllowedDocStructTypes().clear());
+        assertThrows(UnsupportedOperationException.class, () -> monograph.getAllMetadataTypes().get(0).setNum("*"));
+        // copies can be changed
+        MetadataType copy = placeOfPublication.copy();
+        copy.addLanguage("xx", "copy");
+        assertNull(placeOfPublication.getNameByLanguage("xx"));
+        Prefs.clearSharedPrefs();
+    }
+
+    @Test
+    public void testGetSharedPrefsGivenChangedFile() throws Exception {
+        Path ruleset = Files.createTempFile("ruleset", ".xml");
+        try {
+            Files.copy(Paths.get("src/test/resources/ruleset.xml"), ruleset, StandardCopyOption.REPLACE_EXISTING);
+            Prefs first = Prefs.getSharedPrefs(ruleset.toString());
+
+            Files.setLastModifiedTime(ruleset, FileTime.fromMillis(Files.getLastModifiedTime(ruleset).toMillis() + 10000));
+            Prefs second = Prefs.getSharedPrefs(ruleset.toString());
+            assertTrue(first != second);
+            assertTrue(second == Prefs.getSharedPrefs(ruleset.toString()));
+        } finally {
+            Files.delete(ruleset);
+            Prefs.clearSharedPrefs();
+        }
+    }
+
+    @Test
+    public void testGetSharedPrefsGivenUnexistingFile() {
+        assertThrows(PreferencesException.class, () -> Prefs.getSharedPrefs("src/test/resources/unexisting.xml"));
+        assertThrows(PreferencesException.class, () -> Prefs.getSharedPrefs(null));
+    }
+
     @Test
     public void testAllowAccessRestrictionConfiguration() throws PreferencesException {
         prefs.loadPrefs("src/test/resources/ruleset.xml");
@@ -0,0 +1,230 @@
+package ugh.fileformats.compact;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import ugh.dl.Corporate;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Md;
+import ugh.dl.Md.MdType;
+import ugh.dl.NamePart;
+import ugh.dl.Prefs;
+import ugh.dl.VirtualFileGroup;
+import ugh.exceptions.ReadException;
+import ugh.fileformats.mets.MetsMods;
+import ugh.util.XmlHelper;
+
+public class CompactFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Prefs prefs;
+    private DigitalDocument dd;
+
+    @Before
+    public void setUp() throws Exception {
+        prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        MetsMods mm = new MetsMods(prefs);
+        mm.read("src/test/resources/meta.xml");
+        dd = mm.getDigitalDocument();
+
+        Document premis = XmlHelper.parse("<object><size>42</size></object>");
+        Md md = new Md(premis.getDocumentElement(), MdType.TECH_MD);
+        md.setId("AMD_0001");
+        dd.addTechMd(md);
+        dd.getPhysicalDocStruct().getAllChildren().get(0).addTechMd(md);
+
+        Corporate c = new Corporate(prefs.getMetadataTypeByName("Corporation"));
+        c.setMainName("Georg-August-Universität Göttingen");
+        c.addSubName(new NamePart("subname", "Grad-verleihende Institution"));
+        c.setPartName("Göttingen; 2014");
+        dd.getLogicalDocStruct().addCorporate(c);
+
+        VirtualFileGroup all = new VirtualFileGroup("PRESENTATION", "file:///images/", "image/tiff", "tif");
+        all.setMainGroup(true);
+        dd.getFileSet().addVirtualFileGroup(all);
+        VirtualFileGroup first = new VirtualFileGroup("THUMBS", "file:///thumbs/", "image/jpeg", "jpg");
+        first.restrictFiles();
+        first.addContentFile(dd.getFileSet().getAllFiles().get(0));
+        dd.getFileSet().addVirtualFileGroup(first);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = folder.newFile("document.bin");
+        CompactFile out = new CompactFile(prefs);
+        out.setDigitalDocument(dd);
+        assertTrue(out.write(file.getAbsolutePath()));
+
+        CompactFile in = new CompactFile(prefs);
+        assertTrue(in.read(file.getAbsolutePath()));
+        DigitalDocument read = in.getDigitalDocument();
+
+        assertSameTree(dd.getLogicalDocStruct(), read.getLogicalDocStruct());
+        assertSameTree(dd.getPhysicalDocStruct(), read.getPhysicalDocStruct());
+        assertEquals(dd.getFileSet().getAllFiles().size(), read.getFileSet().getAllFiles().size());
+
+        // The links and references point to the objects of the read document.
+        DocStruct firstPage = read.getPhysicalDocStruct().getAllChildren().get(0);
+        assertTrue(read.getFileSet().getAllFiles().contains(firstPage.getAllContentFileReferences().get(0).getCf()));
+        List<DocStruct> pages = read.getLogicalDocStruct().getAllToReferences().stream().map(ref -> ref.getTarget()).toList();
+        assertTrue(pages.contains(firstPage));
+
+        // The technical metadata is shared like before.
+        Md md = read.getTechMd("AMD_0001");
+        assertNotNull(md);
+        assertEquals(MdType.TECH_MD, md.getType());
+        assertEquals("techMD", md.getContent().getLocalName());
+        assertSame(md, firstPage.getTechMds().get(0));
+
+        Corporate c = read.getLogicalDocStruct().getAllCorporates().get(0);
+        assertEquals("Corporation", c.getType().getName());
+        assertEquals("Georg-August-Universität Göttingen", c.getMainName());
+        assertEquals("Grad-verleihende Institution", c.getSubNames().get(0).getValue());
+        assertEquals("Göttingen; 2014", c.getPartName());
+
+        // The restricted group refers to the file of the read document.
+        List<VirtualFileGroup> groups = read.getFileSet().getVirtualFileGroups();
+        assertEquals(2, groups.size());
+        assertEquals("PRESENTATION", groups.get(0).getName());
+        assertEquals("file:///images/", groups.get(0).getPathToFiles());
+        assertEquals("image/tiff", groups.get(0).getMimetype());
+        assertEquals("tif", groups.get(0).getFileSuffix());
+        assertTrue(groups.get(0).isMainGroup());
+        assertEquals("THUMBS", groups.get(1).getName());
+        assertEquals(1, groups.get(1).getContentFiles().size());
+        assertSame(read.getFileSet().getAllFiles().get(0), groups.get(1).getContentFiles().get(0));
+    }
+
+    @Test(expected = ReadException.class)
+    public void testNotACompactDocument() throws Exception {
+        byte[] bytes = "<mets:mets/>".getBytes(StandardCharsets.UTF_8);
+        new CompactFile(prefs).read(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test(expected = ReadException.class)
+    public void testUnknownType() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactFile out = new CompactFile(prefs);
+        out.setDigitalDocument(dd);
+        out.write(Channels.newChannel(bytes));
+
+        // Empty Prefs, without the DocStructTypes of the document.
+        new CompactFile(new Prefs()).read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testTruncatedDocument() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactFile out = new CompactFile(prefs);
+        out.setDigitalDocument(dd);
+        out.write(Channels.newChannel(bytes));
+        byte[] document = bytes.toByteArray();
+
+        // The reader reads the whole document, so every shorter prefix ends
+        // too early.
+        for (int length = 0; length < document.length; length += Math.max(1, document.length / 50)) {
+            assertUnreadable(Arrays.copyOf(document, length));
+        }
+        assertUnreadable(Arrays.copyOf(document, document.length - 1));
+    }
+
+    @Test
+    public void testCorruptDocument() throws Exception {
+        // A string with a negative length.
+        assertUnreadable(document(1, 1, -5));
+        // A string, which is not in the string table.
+        assertUnreadable(document(1, 7));
+        // An unknown type of technical metadata.
+        assertUnreadable(concat(document(1, 0, 1, 7), "NO_SUCH".getBytes(StandardCharsets.UTF_8), new byte[] { 0 }));
+        // A huge number of technical metadata, which doesn't follow.
+        assertUnreadable(document(Integer.MAX_VALUE));
+        // A negative number of technical metadata.
+        assertUnreadable(document(-2));
+        // A reference between DocStructs, which were not read.
+        assertUnreadable(document(0, 0, 0, 0, 0, 1, 3, 4));
+    }
+
+    private void assertUnreadable(byte[] document) {
+        try {
+            new CompactFile(prefs).read(Channels.newChannel(new ByteArrayInputStream(document)));
+            fail("Read a corrupt document of " + document.length + " bytes");
+        } catch (ReadException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * A document with a correct header, followed by the given numbers.
+     */
+    private static byte[] document(int... numbers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(CompactFile.MAGIC);
+        writeInt(out, CompactFile.FORMAT_VERSION);
+        for (int n : numbers) {
+            writeInt(out, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            out.write((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.write(rest);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertSameTree(DocStruct expected, DocStruct actual) {
+        assertSame(expected.getType(), actual.getType());
+        assertEquals(expected.getIdentifier(), actual.getIdentifier());
+        assertEquals(size(expected.getAllMetadata()), size(actual.getAllMetadata()));
+        for (int i = 0; i < size(expected.getAllMetadata()); i++) {
+            assertSame(expected.getAllMetadata().get(i).getType(), actual.getAllMetadata().get(i).getType());
+            assertEquals(expected.getAllMetadata().get(i).getValue(), actual.getAllMetadata().get(i).getValue());
+        }
+        assertEquals(size(expected.getAllPersons()), size(actual.getAllPersons()));
+        assertEquals(size(expected.getAllMetadataGroups()), size(actual.getAllMetadataGroups()));
+        assertEquals(size(expected.getAllContentFileReferences()), size(actual.getAllContentFileReferences()));
+        assertEquals(size(expected.getAllToReferences()), size(actual.getAllToReferences()));
+        assertEquals(size(expected.getAllChildren()), size(actual.getAllChildren()));
+        for (int i = 0; i < size(expected.getAllChildren()); i++) {
+            assertSameTree(expected.getAllChildren().get(i), actual.getAllChildren().get(i));
+        }
+    }
+
+    private static int size(List<?> list) {
+        return list == null ? 0 : list.size();
+    }
+
+}
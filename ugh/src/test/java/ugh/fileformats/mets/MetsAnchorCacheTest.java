@@ -0,0 +1,93 @@
+package ugh.fileformats.mets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+
+public class MetsAnchorCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Prefs prefs;
+    private DocStruct anchor;
+    private File anchorFile;
+
+    @Before
+    public void setUp() throws Exception {
+        prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        MetsMods mm = new MetsMods(prefs);
+        mm.read("src/test/resources/meta.xml");
+        anchor = mm.getDigitalDocument().getLogicalDocStruct();
+
+        anchorFile = folder.newFile("meta_anchor.xml");
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        MetsAnchorCache cache = new MetsAnchorCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        DocStruct first = cache.getAnchor(anchorFile.getPath(), "id", prefs, () -> {
+            loads.incrementAndGet();
+            return anchor;
+        });
+        DocStruct second = cache.getAnchor(anchorFile.getAbsolutePath(), "id", prefs, () -> {
+            loads.incrementAndGet();
+            return anchor;
+        });
+
+        assertEquals(1, loads.get());
+        assertSame(first, second);
+        assertNotSame(anchor, first);
+        assertNull(first.getAllChildren());
+        assertEquals(anchor.getAllMetadata().size(), first.getAllMetadata().size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testChangedFileIsReadAgain() throws Exception {
+        MetsAnchorCache cache = new MetsAnchorCache();
+        DocStruct first = cache.getAnchor(anchorFile.getPath(), "id", prefs, () -> anchor);
+
+        anchorFile.setLastModified(anchorFile.lastModified() - 10000);
+        DocStruct second = cache.getAnchor(anchorFile.getPath(), "id", prefs, () -> anchor);
+
+        assertNotSame(first, second);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        MetsAnchorCache cache = new MetsAnchorCache(1);
+        cache.getAnchor(anchorFile.getPath(), "first", prefs, () -> anchor);
+        cache.getAnchor(anchorFile.getPath(), "second", prefs, () -> anchor);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // Anchors, which are not found, are not cached.
+        assertNull(cache.getAnchor(anchorFile.getPath(), "third", prefs, () -> null));
+        assertEquals(1, cache.size());
+
+        cache.setMaximumSize(0);
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+}
@@ -0,0 +1,167 @@
+package ugh.fileformats.mets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlOptionCharEscapeMap;
+import org.apache.xmlbeans.XmlOptions;
+import org.jdom2.Attribute;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import gov.loc.mets.MetsDocument;
+import ugh.dl.Prefs;
+
+public class MetsStreamSerializerTest {
+
+    private static final String METS = "http://www.loc.gov/METS/";
+    private static final String XLINK = "http://www.w3.org/1999/xlink";
+
+    @Test
+    public void testSerializeWithSuggestedPrefixes() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().newDocument();
+
+        Element mets = document.createElementNS(METS, "mets");
+        document.appendChild(mets);
+        Element structMap = document.createElementNS(METS, "structMap");
+        mets.appendChild(structMap);
+        Element div = document.createElementNS(METS, "div");
+        div.setAttributeNS(XLINK, "xlink:href", "a>\"b");
+        structMap.appendChild(div);
+        Element label = document.createElementNS(METS, "label");
+        label.appendChild(document.createTextNode(" x < y "));
+        structMap.appendChild(label);
+
+        Map<String, String> prefixes = new HashMap<>();
+        prefixes.put(METS, "mets");
+        prefixes.put(XLINK, "xlink");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MetsStreamSerializer(prefixes).serialize(document, out);
+        String xml = out.toString(StandardCharsets.UTF_8);
+
+        String nl = System.lineSeparator();
+        assertTrue(xml.contains(nl + "   <mets:structMap>" + nl + "      <mets:div xlink:href=\"a&gt;&quot;b\"/>"));
+        assertTrue(xml.contains("<mets:label> x &lt; y </mets:label>"));
+
+        // The output is read back with the same content.
+        Document read = factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+        Element readDiv = (Element) read.getElementsByTagNameNS(METS, "div").item(0);
+        assertEquals("a>\"b", readDiv.getAttributeNS(XLINK, "href"));
+        assertEquals(" x < y ", read.getElementsByTagNameNS(METS, "label").item(0).getTextContent());
+    }
+
+    @Test
+    public void testSerializeEscapesTextLikeXmlBeans() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().newDocument();
+
+        Element mets = document.createElementNS(METS, "mets");
+        document.appendChild(mets);
+        Element label = document.createElementNS(METS, "label");
+        label.appendChild(document.createTextNode("\"a\" > 'b' & c"));
+        mets.appendChild(label);
+
+        Map<String, String> prefixes = new HashMap<>();
+        prefixes.put(METS, "mets");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MetsStreamSerializer(prefixes).serialize(document, out);
+        String xml = out.toString(StandardCharsets.UTF_8);
+
+        assertTrue(xml.contains("<mets:label>&quot;a&quot; &gt; 'b' &amp; c</mets:label>"));
+        Document read = factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("\"a\" > 'b' & c", read.getElementsByTagNameNS(METS, "label").item(0).getTextContent());
+    }
+
+    @Test
+    public void testWriteMetaXmlLikeXmlBeans() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        MetsMods streaming = new MetsMods(prefs);
+        streaming.read("src/test/resources/meta.xml");
+        String streamed = write(streaming);
+
+        // The DOM saved like before the StAX serializer.
+        MetsMods xmlBeans = new MetsMods(prefs) {
+            @Override
+            protected void serializeMets(Document domDoc, OutputStream out) throws IOException {
+                XmlOptions opts = new XmlOptions();
+                XmlOptionCharEscapeMap charEsc = new XmlOptionCharEscapeMap();
+                try {
+                    charEsc.addMapping('>', XmlOptionCharEscapeMap.PREDEF_ENTITY);
+                    charEsc.addMapping('"', XmlOptionCharEscapeMap.PREDEF_ENTITY);
+                } catch (XmlException e) {
+                    throw new IOException(e);
+                }
+                opts.setSaveSubstituteCharacters(charEsc);
+                opts.setSavePrettyPrint().setSavePrettyPrintIndent(3);
+                opts.setSaveAggressiveNamespaces();
+                Map<String, String> suggestedPrefixes = new HashMap<>();
+                for (Entry<String, Namespace> abbrev : this.namespaces.entrySet()) {
+                    suggestedPrefixes.put(abbrev.getValue().getUri(), abbrev.getKey());
+                }
+                opts.setSaveSuggestedPrefixes(suggestedPrefixes);
+                try {
+                    MetsDocument.Factory.parse(domDoc, opts).save(out, opts);
+                } catch (XmlException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        xmlBeans.read("src/test/resources/meta.xml");
+        String saved = write(xmlBeans);
+
+        SAXBuilder builder = new SAXBuilder();
+        assertSameElement(builder.build(new ByteArrayInputStream(saved.getBytes(StandardCharsets.UTF_8))).getRootElement(),
+                builder.build(new ByteArrayInputStream(streamed.getBytes(StandardCharsets.UTF_8))).getRootElement());
+        assertEquals(MetsDocument.Factory.parse(saved).validate(), MetsDocument.Factory.parse(streamed).validate());
+    }
+
+    private static String write(MetsMods mm) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(mm.write(out));
+        return out.toString(StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+    }
+
+    private static void assertSameElement(org.jdom2.Element expected, org.jdom2.Element actual) {
+        assertEquals(expected.getNamespaceURI(), actual.getNamespaceURI());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getName(), attributes(expected), attributes(actual));
+        assertEquals(expected.getName(), expected.getTextNormalize(), actual.getTextNormalize());
+
+        List<org.jdom2.Element> expectedChildren = expected.getChildren();
+        List<org.jdom2.Element> actualChildren = actual.getChildren();
+        assertEquals(expected.getName(), expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            assertSameElement(expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    private static Map<String, String> attributes(org.jdom2.Element element) {
+        Map<String, String> result = new TreeMap<>();
+        for (Attribute attribute : element.getAttributes()) {
+            result.put("{" + attribute.getNamespaceURI() + "}" + attribute.getName(), attribute.getValue());
+        }
+        return result;
+    }
+
+}
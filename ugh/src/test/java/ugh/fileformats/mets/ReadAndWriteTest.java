@@ -3,9 +3,27 @@ package ugh.fileformats.mets;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -19,12 +37,15 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import ugh.dl.ContentFile;
 import ugh.dl.Corporate;
+import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
 import ugh.dl.Metadata;
 import ugh.dl.MetadataType;
 import ugh.dl.Person;
 import ugh.dl.Prefs;
+import ugh.dl.Reference;
 
 public class ReadAndWriteTest {
 
@@ -117,6 +138,302 @@ public class ReadAndWriteTest {
         assertFalse(placeAfterSave.isAccessRestrict());
     }
 
+    @Test
+    public void testReadLogicalPhysicalLinks() throws Exception {
+        DocStruct logical = mm.getDigitalDocument().getLogicalDocStruct();
+        assertEquals(18, logical.getAllToReferences("logical_physical").size());
+
+        DocStruct titlePage = logical.getAllChildren().get(0);
+        List<Reference> areaReferences = titlePage.getAllToReferences("logical_physical");
+        assertEquals(2, areaReferences.size());
+        assertNotNull(areaReferences.get(0).getTarget());
+        assertNotNull(areaReferences.get(1).getTarget());
+        assertFalse(areaReferences.get(0).getTarget() == areaReferences.get(1).getTarget());
+    }
+
+    @Test
+    public void testReadModsMetadata() throws Exception {
+        DocStruct logical = mm.getDigitalDocument().getLogicalDocStruct();
+
+        List<? extends Metadata> titles = logical.getAllMetadataByType(prefs.getMetadataTypeByName("TitleDocMain"));
+        assertEquals(1, titles.size());
+        assertEquals("Osservazioni sopra una antichissima tavoletta di avorio esistente nel museo di Monsignor Giuseppe Muti Papazzurri già Casali",
+                titles.get(0).getValue());
+
+        List<? extends Metadata> sizes = logical.getAllMetadataByType(prefs.getMetadataTypeByName("SizeSourcePrint"));
+        assertEquals(3, sizes.size());
+        assertEquals("Ill.", sizes.get(1).getValue());
+
+        List<Person> authors = logical.getAllPersonsByType(prefs.getMetadataTypeByName("Author"));
+        assertEquals(1, authors.size());
+        assertEquals("Garcia de la Huerta", authors.get(0).getLastname());
+        assertEquals("Pedro", authors.get(0).getFirstname());
+    }
+
+    @Test
+    public void testReadMetadataLazily() throws Exception {
+        MetsMods lazy = new MetsMods(prefs);
+        lazy.setLazyMetadata(true);
+        lazy.read("src/test/resources/meta.xml");
+
+        DocStruct eagerLogical = mm.getDigitalDocument().getLogicalDocStruct();
+        DocStruct lazyLogical = lazy.getDigitalDocument().getLogicalDocStruct();
+        assertTrue(eagerLogical.isMetadataLoaded());
+        assertFalse(lazyLogical.isMetadataLoaded());
+
+        // The structure is read completely.
+        assertEquals(eagerLogical.getAllChildren().size(), lazyLogical.getAllChildren().size());
+        assertEquals(18, lazyLogical.getAllToReferences("logical_physical").size());
+        assertFalse(lazyLogical.getAllChildren().get(0).isMetadataLoaded());
+
+        // The metadata is parsed and sorted on first access.
+        List<Metadata> eagerMetadata = eagerLogical.getAllMetadata();
+        List<Metadata> lazyMetadata = lazyLogical.getAllMetadata();
+        assertTrue(lazyLogical.isMetadataLoaded());
+        assertEquals(eagerMetadata.size(), lazyMetadata.size());
+        for (int i = 0; i < eagerMetadata.size(); i++) {
+            assertSame(eagerMetadata.get(i).getType(), lazyMetadata.get(i).getType());
+            assertEquals(eagerMetadata.get(i).getValue(), lazyMetadata.get(i).getValue());
+        }
+        assertEquals(eagerLogical.getAllPersons().size(), lazyLogical.getAllPersons().size());
+        assertEquals("Garcia de la Huerta", lazyLogical.getAllPersons().get(0).getLastname());
+
+        // Writing loads the metadata of all DocStructs.
+        File eagerFile = folder.newFile();
+        mm.write(eagerFile.toString());
+        File lazyFile = folder.newFile();
+        lazy.write(lazyFile.toString());
+        assertEquals(countElements(eagerFile, "//mods:mods//goobi:metadata"), countElements(lazyFile, "//mods:mods//goobi:metadata"));
+    }
+
+    @Test
+    public void testReadMetadataLazilyBeforeNextRead() throws Exception {
+        MetsMods lazy = new MetsMods(prefs);
+        lazy.setLazyMetadata(true);
+        lazy.read("src/test/resources/meta.xml");
+        DocStruct first = lazy.getDigitalDocument().getLogicalDocStruct();
+
+        // Other prefs and another document for the same instance, before the
+        // metadata of the first document is accessed.
+        Prefs otherPrefs = new Prefs();
+        otherPrefs.loadPrefs("src/test/resources/ruleset.xml");
+        lazy.setPrefs(otherPrefs);
+        lazy.read("src/test/resources/meta.xml");
+
+        // The first document is still parsed with the prefs it was read with.
+        assertFalse(first.isMetadataLoaded());
+        assertSameMetadata(mm.getDigitalDocument().getLogicalDocStruct(), first);
+        assertSame(otherPrefs.getDocStrctTypeByName("Monograph"), lazy.getDigitalDocument().getLogicalDocStruct().getType());
+    }
+
+    @Test
+    public void testSerializeLazilyReadDocument() throws Exception {
+        MetsMods lazy = new MetsMods(prefs);
+        lazy.setLazyMetadata(true);
+        lazy.read("src/test/resources/meta.xml");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lazy.getDigitalDocument().getLogicalDocStruct());
+        }
+        DocStruct copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (DocStruct) in.readObject();
+        }
+
+        // The metadata was loaded before serializing.
+        assertTrue(copy.isMetadataLoaded());
+        List<Metadata> expected = mm.getDigitalDocument().getLogicalDocStruct().getAllMetadata();
+        List<Metadata> actual = copy.getAllMetadata();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getType().getName(), actual.get(i).getType().getName());
+            assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+        }
+        assertEquals("Garcia de la Huerta", copy.getAllPersons().get(0).getLastname());
+        assertTrue(copy.getAllChildren().get(0).isMetadataLoaded());
+    }
+
+    @Test
+    public void testReadMetadataInParallel() throws Exception {
+        MetsMods parallel = new MetsMods(prefs);
+        parallel.setMetadataParallelism(4);
+        parallel.read("src/test/resources/meta.xml");
+
+        assertSameMetadata(mm.getDigitalDocument().getLogicalDocStruct(), parallel.getDigitalDocument().getLogicalDocStruct());
+    }
+
+    @Test
+    public void testReadAndWriteWithSharedExecutor() throws Exception {
+        File expectedFile = folder.newFile();
+        mm.write(expectedFile.toString());
+        String expected = Files.readString(expectedFile.toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Several instances use the same executor, one after the other.
+            for (int i = 0; i < 3; i++) {
+                MetsMods shared = new MetsMods(prefs);
+                shared.setMetadataExecutor(executor);
+                shared.read("src/test/resources/meta.xml");
+                assertSameMetadata(mm.getDigitalDocument().getLogicalDocStruct(), shared.getDigitalDocument().getLogicalDocStruct());
+
+                File exportFile = folder.newFile();
+                shared.write(exportFile.toString());
+                String written = Files.readString(exportFile.toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+                assertEquals(expected, written);
+            }
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWriteMetadataInParallel() throws Exception {
+        File sequentialFile = folder.newFile();
+        mm.write(sequentialFile.toString());
+
+        MetsMods parallel = new MetsMods(prefs);
+        parallel.setMetadataParallelism(4);
+        parallel.read("src/test/resources/meta.xml");
+        File parallelFile = folder.newFile();
+        parallel.write(parallelFile.toString());
+
+        // The files only differ in the creation date of the header.
+        String sequential = Files.readString(sequentialFile.toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+        String written = Files.readString(parallelFile.toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+        assertTrue(written.contains("DMDPHYS_0000"));
+        assertEquals(sequential, written);
+    }
+
+    @Test
+    public void testReadAndWriteStreams() throws Exception {
+        File file = folder.newFile();
+        mm.write(file.toString());
+
+        MetsMods streamed = new MetsMods(prefs);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            assertTrue(streamed.read(in, "meta.xml"));
+        }
+        assertSameMetadata(mm.getDigitalDocument().getLogicalDocStruct(), streamed.getDigitalDocument().getLogicalDocStruct());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(streamed.write(out));
+
+        // The output only differs in the creation date of the header.
+        String expected = Files.readString(file.toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+        String written = out.toString(StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+        assertEquals(expected, written);
+
+        // Reading again from memory gives the same document.
+        MetsMods again = new MetsMods(prefs);
+        assertTrue(again.read(new ByteArrayInputStream(out.toByteArray())));
+        assertSameMetadata(mm.getDigitalDocument().getLogicalDocStruct(), again.getDigitalDocument().getLogicalDocStruct());
+    }
+
+    @Test
+    public void testReadAnchorThroughResolver() throws Exception {
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct work = dd.createDocStruct(prefs.getDocStrctTypeByName("MultiVolumeWork"));
+        work.addMetadata(metadata("CatalogIDDigital", "PPN_WORK"));
+        work.addMetadata(metadata("TitleDocMain", "Collected works"));
+        DocStruct volume = dd.createDocStruct(prefs.getDocStrctTypeByName("Volume"));
+        volume.addMetadata(metadata("CatalogIDDigital", "PPN_VOLUME"));
+        volume.addMetadata(metadata("TitleDocMain", "First volume"));
+        work.addChild(volume);
+        dd.setLogicalDocStruct(work);
+        dd.setPhysicalDocStruct(dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook")));
+
+        MetsMods anchored = new MetsMods(prefs);
+        anchored.setDigitalDocument(dd);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream anchorOut = new ByteArrayOutputStream();
+        assertTrue(anchored.write(out, anchorOut));
+
+        // The anchor is only in memory, nothing is read from the file system.
+        List<String> opened = new ArrayList<>();
+        MetsMods read = new MetsMods(prefs);
+        read.setAnchorResolver(name -> {
+            opened.add(name);
+            return "meta_anchor.xml".equals(name) ? new ByteArrayInputStream(anchorOut.toByteArray()) : null;
+        });
+        assertTrue(read.read(new ByteArrayInputStream(out.toByteArray()), "meta.xml"));
+        assertEquals(List.of("meta_anchor.xml"), opened);
+
+        DocStruct readWork = read.getDigitalDocument().getLogicalDocStruct();
+        assertEquals("MultiVolumeWork", readWork.getType().getName());
+        assertEquals("PPN_WORK", readWork.getAllMetadataByType(prefs.getMetadataTypeByName("CatalogIDDigital")).get(0).getValue());
+        assertEquals(1, readWork.getAllChildren().size());
+        DocStruct readVolume = readWork.getAllChildren().get(0);
+        assertEquals("Volume", readVolume.getType().getName());
+        assertEquals("PPN_VOLUME", readVolume.getAllMetadataByType(prefs.getMetadataTypeByName("CatalogIDDigital")).get(0).getValue());
+        assertEquals("First volume", readVolume.getAllMetadataByType(prefs.getMetadataTypeByName("TitleDocMain")).get(0).getValue());
+    }
+
+    private Metadata metadata(String typeName, String value) throws Exception {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(typeName));
+        md.setValue(value);
+        return md;
+    }
+
+    private static void assertSameMetadata(DocStruct expected, DocStruct actual) {
+        assertSame(expected.getType(), actual.getType());
+        List<Metadata> expectedMetadata = expected.getAllMetadata() == null ? List.of() : expected.getAllMetadata();
+        List<Metadata> actualMetadata = actual.getAllMetadata() == null ? List.of() : actual.getAllMetadata();
+        assertEquals(expectedMetadata.size(), actualMetadata.size());
+        for (int i = 0; i < expectedMetadata.size(); i++) {
+            assertSame(expectedMetadata.get(i).getType(), actualMetadata.get(i).getType());
+            assertEquals(expectedMetadata.get(i).getValue(), actualMetadata.get(i).getValue());
+        }
+        assertEquals(expected.getAllPersons() == null, actual.getAllPersons() == null);
+        if (expected.getAllPersons() != null) {
+            assertEquals(expected.getAllPersons().size(), actual.getAllPersons().size());
+        }
+        List<DocStruct> expectedChildren = expected.getAllChildren() == null ? List.of() : expected.getAllChildren();
+        List<DocStruct> actualChildren = actual.getAllChildren() == null ? List.of() : actual.getAllChildren();
+        assertEquals(expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            assertSameMetadata(expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    @Test
+    public void testCompiledXPathExpressionIsReused() throws Exception {
+        javax.xml.xpath.XPathExpression first = mm.getCompiledXPathExpression(MetsMods.GOOBI_INTERNAL_METADATA_XPATH);
+        javax.xml.xpath.XPathExpression second = mm.getCompiledXPathExpression(MetsMods.GOOBI_INTERNAL_METADATA_XPATH);
+        assertNotNull(first);
+        assertSame(first, second);
+
+        // Another instance with the same prefs uses the same expressions.
+        assertSame(first, new MetsMods(prefs).getCompiledXPathExpression(MetsMods.GOOBI_INTERNAL_METADATA_XPATH));
+
+        // Expressions are not thread-safe, so other threads compile their own.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            javax.xml.xpath.XPathExpression other =
+                    executor.submit(() -> mm.getCompiledXPathExpression(MetsMods.GOOBI_INTERNAL_METADATA_XPATH)).get();
+            assertNotNull(other);
+            assertFalse(first == other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWriteXPathPlansAreShared() throws Exception {
+        MetsXPathCache cache = mm.getXPathCache();
+        MetsMods other = new MetsMods(prefs);
+        assertSame(cache, other.getXPathCache());
+
+        // A plan built for one instance is used by the other one.
+        String query = "./mods:mods/#mods:note";
+        WriteXPathPlan plan = cache.getWriteXPathPlan(query, q -> new WriteXPathPlan(q, null, null, new ArrayList<>(), p -> new ArrayList<>()));
+        assertSame(plan, other.getXPathCache().getWriteXPathPlan(query, q -> {
+            throw new AssertionError("Plan built twice");
+        }));
+    }
+
     @Test
     public void testAllowAccessRestrictPerson() throws Exception {
 
@@ -304,4 +621,161 @@ public class ReadAndWriteTest {
         assertNotNull(element);
         assertEquals("true", element.getAttributeValue("accessRestrict"));
     }
+
+    @Test
+    public void testConcurrentExports() throws Exception {
+        File expectedFile = folder.newFile();
+        mm.write(expectedFile.toString());
+        int expectedDivs = countDivs(expectedFile);
+        assertTrue(expectedDivs > 0);
+
+        // One MetsMods per export, all sharing the same Prefs.
+        List<Callable<File>> exports = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            File exportFile = folder.newFile();
+            exports.add(() -> {
+                MetsMods metsMods = new MetsMods(prefs);
+                metsMods.read("src/test/resources/meta.xml");
+                metsMods.write(exportFile.toString());
+                return exportFile;
+            });
+        }
+
+        for (Future<File> result : runConcurrently(exports)) {
+            assertEquals(expectedDivs, countDivs(result.get()));
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesWithSharedInstance() throws Exception {
+        // The logical IDs are created while writing and set on the shared
+        // document; every write numbers them from the start.
+        DigitalDocument document = mm.getDigitalDocument();
+        List<DocStruct> logicalStructs = new ArrayList<>();
+        collect(document.getLogicalDocStruct(), logicalStructs);
+        for (DocStruct ds : logicalStructs) {
+            ds.setIdentifier(null);
+        }
+        File expectedFile = folder.newFile();
+        mm.write(expectedFile.toString());
+        String expected = Files.readString(expectedFile.toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+
+        // One instance and one document shared by all writes.
+        List<Callable<File>> writes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            File exportFile = folder.newFile();
+            writes.add(() -> {
+                mm.write(exportFile.toString());
+                return exportFile;
+            });
+        }
+
+        for (Future<File> result : runConcurrently(writes)) {
+            String written = Files.readString(result.get().toPath(), StandardCharsets.UTF_8).replaceAll("CREATEDATE=\"[^\"]*\"", "");
+            assertEquals(expected, written);
+        }
+        assertSame(document, mm.getDigitalDocument());
+        for (DocStruct ds : logicalStructs) {
+            assertNotNull(ds.getIdentifier());
+        }
+        long localGroups = document.getFileSet()
+                .getVirtualFileGroups()
+                .stream()
+                .filter(group -> "LOCAL".equals(group.getName()))
+                .count();
+        assertEquals(1, localGroups);
+    }
+
+    @Test
+    public void testConcurrentSerializationWithSharedInstance() throws Exception {
+        File expectedFile = folder.newFile();
+        mm.write(expectedFile.toString());
+        int expectedDivs = countDivs(expectedFile);
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        List<Callable<File>> serializations = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            File exportFile = folder.newFile();
+            serializations.add(() -> {
+                org.w3c.dom.Document domDoc = factory.newDocumentBuilder().parse(expectedFile);
+                try (OutputStream out = new FileOutputStream(exportFile)) {
+                    mm.serializeMets(domDoc, out);
+                }
+                return exportFile;
+            });
+        }
+
+        for (Future<File> result : runConcurrently(serializations)) {
+            assertEquals(expectedDivs, countDivs(result.get()));
+        }
+    }
+
+    @Test
+    public void testReadManyTechMds() throws Exception {
+        // A born-digital document, where every file refers to its own
+        // techMD; all of them are found by their IDs.
+        int count = 10000;
+        StringBuilder amdSec = new StringBuilder("<mets:amdSec ID=\"AMD\">");
+        StringBuilder files = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            amdSec.append("<mets:techMD ID=\"AMD_").append(i).append("\"><mets:mdWrap MDTYPE=\"OTHER\"><mets:xmlData><size>").append(i)
+                    .append("</size></mets:xmlData></mets:mdWrap></mets:techMD>");
+            files.append("<mets:file ID=\"BORN_").append(i).append("\" ADMID=\"AMD_").append(i).append("\" MIMETYPE=\"application/pdf\">")
+                    .append("<mets:FLocat LOCTYPE=\"URL\" xlink:href=\"file://born_").append(i).append(".pdf\"/></mets:file>");
+        }
+        amdSec.append("</mets:amdSec>");
+
+        String meta = Files.readString(new File("src/test/resources/meta.xml").toPath(), StandardCharsets.UTF_8);
+        meta = meta.replace("<mets:fileSec>", amdSec + "<mets:fileSec>");
+        meta = meta.replace("<mets:fileGrp USE=\"LOCAL\">", "<mets:fileGrp USE=\"LOCAL\">" + files);
+        File metsFile = folder.newFile();
+        Files.writeString(metsFile.toPath(), meta, StandardCharsets.UTF_8);
+
+        MetsMods born = new MetsMods(prefs);
+        born.read(metsFile.toString());
+
+        List<ContentFile> allFiles = born.getDigitalDocument().getFileSet().getAllFiles();
+        int withTechMd = 0;
+        for (ContentFile cf : allFiles) {
+            if (cf.getTechMds() != null && !cf.getTechMds().isEmpty()) {
+                String number = cf.getIdentifier().substring("BORN_".length());
+                assertEquals("AMD_" + number, cf.getTechMds().get(0).getId());
+                withTechMd++;
+            }
+        }
+        assertEquals(count, withTechMd);
+    }
+
+    private static List<Future<File>> runConcurrently(List<Callable<File>> tasks) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+        try {
+            return executor.invokeAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void collect(DocStruct ds, List<DocStruct> result) {
+        result.add(ds);
+        if (ds.getAllChildren() != null) {
+            for (DocStruct child : ds.getAllChildren()) {
+                collect(child, result);
+            }
+        }
+    }
+
+    private static int countDivs(File metsFile) throws Exception {
+        Namespace mets = Namespace.getNamespace("mets", "http://www.loc.gov/METS/");
+        Document doc = new SAXBuilder().build(metsFile);
+        return XPathFactory.instance().compile("//mets:div", Filters.element(), null, mets).evaluate(doc).size();
+    }
+
+    private static int countElements(File metsFile, String query) throws Exception {
+        Namespace mets = Namespace.getNamespace("mets", "http://www.loc.gov/METS/");
+        Namespace mods = Namespace.getNamespace("mods", "http://www.loc.gov/mods/v3");
+        Namespace goobi = Namespace.getNamespace("goobi", "http://meta.goobi.org/v1.5.1/");
+        Document doc = new SAXBuilder().build(metsFile);
+        return XPathFactory.instance().compile(query, Filters.element(), null, mets, mods, goobi).evaluate(doc).size();
+    }
 }
@@ -1,9 +1,20 @@
 package ugh.fileformats.opac;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -18,9 +29,12 @@ import ugh.dl.DocStruct;
 import ugh.dl.Metadata;
 import ugh.dl.Person;
 import ugh.dl.Prefs;
+import ugh.exceptions.ReadException;
 
 public class PicaPlusTest {
 
+    private Prefs prefs;
+
     @Test
     public void testReadPrefs() throws Exception {
         Prefs prefs = new Prefs();
@@ -103,4 +117,108 @@ public class PicaPlusTest {
         assertEquals("Author", p.getRole());
 
     }
+
+    @Test
+    public void testFieldRuleBeforeSubfieldRule() throws Exception {
+        // The field rule comes first, so it wins for all subfields of 099X.
+        DocStruct logical = readWithRules("<Metadata><Name>TitleDocMainShort</Name><picaMainTag>099X</picaMainTag></Metadata>"
+                + "<Metadata><Name>Sponsorship</Name><picaMainTag>099X</picaMainTag><picaSubTag>a</picaSubTag></Metadata>");
+
+        assertFalse(logical.getAllMetadataByType(this.prefs.getMetadataTypeByName("TitleDocMainShort")).isEmpty());
+        assertTrue(logical.getAllMetadataByType(this.prefs.getMetadataTypeByName("Sponsorship")).isEmpty());
+    }
+
+    @Test
+    public void testSubfieldRuleBeforeFieldRule() throws Exception {
+        // The subfield rule comes first, so it wins for subfield a, and the
+        // field rule appends subfield b to its metadata.
+        DocStruct logical = readWithRules("<Metadata><Name>Sponsorship</Name><picaMainTag>099X</picaMainTag><picaSubTag>a</picaSubTag></Metadata>"
+                + "<Metadata><Name>TitleDocMainShort</Name><picaMainTag>099X</picaMainTag></Metadata>");
+
+        assertTrue(logical.getAllMetadataByType(this.prefs.getMetadataTypeByName("TitleDocMainShort")).isEmpty());
+        List<? extends Metadata> sponsors = logical.getAllMetadataByType(this.prefs.getMetadataTypeByName("Sponsorship"));
+        assertFalse(sponsors.isEmpty());
+        assertEquals("Göttingen; 2014", sponsors.get(0).getValue());
+    }
+
+    /**
+     * Reads a record with a monograph and the field 099X with the subfields a and b, after adding the given rules to the ruleset.
+     */
+    private DocStruct readWithRules(String rules) throws Exception {
+        this.prefs = new Prefs();
+        this.prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        PicaPlus fixture = new PicaPlus(this.prefs);
+        fixture.readPrefs(parse("<PicaPlus>" + rules + "</PicaPlus>"));
+        fixture.read(parse("<collection><record>" + "<field tag=\"002@\"><subfield code=\"0\">Oau</subfield></field>"
+                + "<field tag=\"099X\"><subfield code=\"a\">Göttingen</subfield><subfield code=\"b\">2014</subfield></field>"
+                + "</record></collection>"));
+
+        DocStruct logical = fixture.getDigitalDocument().getLogicalDocStruct();
+        assertEquals("Monograph", logical.getType().getName());
+        return logical;
+    }
+
+    private static Node parse(String xml) throws Exception {
+        DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        return dBuilder.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getDocumentElement();
+    }
+
+    @Test
+    public void testReadRecords() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        // A dump with three copies of the record.
+        String pica = new String(Files.readAllBytes(Paths.get("src/test/resources/pica.xml")), StandardCharsets.UTF_8);
+        String record = pica.substring(pica.indexOf("<record>"), pica.lastIndexOf("</record>") + "</record>".length());
+        String dump = "<collection>" + record + record + record + "</collection>";
+
+        PicaPlus fixture = new PicaPlus(prefs);
+        List<DigitalDocument> documents = new ArrayList<>();
+        int count = fixture.readRecords(new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8)), 1, documents::add);
+
+        assertEquals(3, count);
+        assertEquals(3, documents.size());
+        for (DigitalDocument digDoc : documents) {
+            DocStruct logical = digDoc.getLogicalDocStruct();
+            assertEquals("Monograph", logical.getType().getName());
+            assertNull(logical.getAllChildren());
+            assertEquals("1733284826", logical.getAllMetadata().get(0).getValue());
+            assertEquals("Göttingen; 2014", logical.getAllCorporates().get(0).getPartName());
+            assertEquals("Anja", logical.getAllPersons().get(0).getFirstname());
+        }
+        assertSame(documents.get(2), fixture.getDigitalDocument());
+    }
+
+    @Test
+    public void testReadRecordsIgnoresExternalEntities() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        File secret = File.createTempFile("secret", ".txt");
+        secret.deleteOnExit();
+        Files.write(secret.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+        String dump = "<?xml version=\"1.0\"?><!DOCTYPE collection [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>"
+                + "<collection><record><field tag=\"002@\"><subfield code=\"0\">Oau</subfield></field>"
+                + "<field tag=\"021A\"><subfield code=\"a\">&xxe;</subfield></field></record></collection>";
+
+        PicaPlus fixture = new PicaPlus(prefs);
+        List<DigitalDocument> documents = new ArrayList<>();
+        try {
+            fixture.readRecords(new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8)), 1, documents::add);
+        } catch (ReadException e) {
+            // the undeclared entity may be rejected, too
+        }
+        for (DigitalDocument digDoc : documents) {
+            List<Metadata> metadata = digDoc.getLogicalDocStruct().getAllMetadata();
+            if (metadata != null) {
+                for (Metadata md : metadata) {
+                    if (md.getValue() != null && md.getValue().contains("secret")) {
+                        fail("external entity was read: " + md.getValue());
+                    }
+                }
+            }
+        }
+    }
 }
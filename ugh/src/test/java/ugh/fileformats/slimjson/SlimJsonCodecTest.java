@@ -0,0 +1,137 @@
+package ugh.fileformats.slimjson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+import ugh.exceptions.ReadException;
+import ugh.fileformats.mets.MetsMods;
+
+public class SlimJsonCodecTest {
+
+    private Prefs prefs;
+    private MetsMods mm;
+    private DigitalDocument dd;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        prefs = new Prefs();
+        prefs.loadPrefs("src/test/resources/ruleset.xml");
+
+        mm = new MetsMods(prefs);
+        mm.read("src/test/resources/meta.xml");
+        dd = mm.getDigitalDocument();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SlimJsonCodec codec = new SlimJsonCodec(prefs);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(dd, out);
+
+        // The types are written by name only.
+        String json = out.toString(StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"dsTypes\":["));
+        assertFalse(json.contains("allChildrenTypes"));
+
+        SlimDigitalDocument sdd = codec.read(new ByteArrayInputStream(out.toByteArray()));
+        assertSame(prefs.getDocStrctTypeByName("Monograph"), sdd.getDsTypeMap().get("Monograph"));
+
+        DigitalDocument read = sdd.toDigitalDocument();
+        DocStruct origLogical = dd.getLogicalDocStruct();
+        DocStruct readLogical = read.getLogicalDocStruct();
+        assertSame(origLogical.getType(), readLogical.getType());
+        assertEquals(origLogical.getAllMetadata().size(), readLogical.getAllMetadata().size());
+        for (int i = 0; i < origLogical.getAllMetadata().size(); i++) {
+            Metadata origMd = origLogical.getAllMetadata().get(i);
+            Metadata readMd = readLogical.getAllMetadata().get(i);
+            assertSame(origMd.getType(), readMd.getType());
+            assertEquals(origMd.getValue(), readMd.getValue());
+        }
+        assertEquals(dd.getPhysicalDocStruct().getAllChildren().size(), read.getPhysicalDocStruct().getAllChildren().size());
+        assertEquals(dd.getFileSet().getAllFiles().size(), read.getFileSet().getAllFiles().size());
+        // The pages refer to the files of the FileSet.
+        assertTrue(read.getFileSet().getAllFiles()
+                .contains(read.getPhysicalDocStruct().getAllChildren().get(0).getAllContentFileReferences().get(0).getCf()));
+    }
+
+    @Test
+    public void testWritesUsedDocStructTypesOnly() throws Exception {
+        Set<String> used = new HashSet<>();
+        collectTypeNames(dd.getLogicalDocStruct(), used);
+        collectTypeNames(dd.getPhysicalDocStruct(), used);
+
+        SlimJsonCodec codec = new SlimJsonCodec(prefs);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(dd, out);
+
+        Matcher dsTypes = Pattern.compile("\"dsTypes\":\\[([^\\]]*)\\]").matcher(out.toString(StandardCharsets.UTF_8));
+        assertTrue(dsTypes.find());
+        Set<String> written = new HashSet<>();
+        for (String name : dsTypes.group(1).split(",")) {
+            written.add(name.replace("\"", ""));
+        }
+        assertEquals(used, written);
+        assertTrue(used.size() < prefs.getAllDocStructTypes().size());
+
+        // The slim model still has all types of the ruleset.
+        SlimDigitalDocument sdd = codec.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(SlimDigitalDocument.fromDigitalDocument(dd, prefs).getDsTypeMap().keySet(), sdd.getDsTypeMap().keySet());
+    }
+
+    private static void collectTypeNames(DocStruct ds, Set<String> names) {
+        names.add(ds.getType().getName());
+        if (ds.getAllChildren() != null) {
+            for (DocStruct child : ds.getAllChildren()) {
+                collectTypeNames(child, names);
+            }
+        }
+    }
+
+    @Test(expected = ReadException.class)
+    public void testUnknownType() throws Exception {
+        String json = "{\"dsTypes\":[\"NoSuchType\"]}";
+        new SlimJsonCodec(prefs).read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testPayloadSize() throws Exception {
+        // The slim JSON of meta.xml is smaller than its METS export.
+        SlimJsonCodec codec = new SlimJsonCodec(prefs);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        codec.write(dd, json);
+
+        File mets = folder.newFile("meta.xml");
+        mm.write(mets.getAbsolutePath());
+
+        assertTrue("JSON: " + json.size() + " bytes, METS: " + mets.length() + " bytes", json.size() < mets.length());
+
+        // Reading and writing again gives a payload of the same size.
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        codec.write(codec.read(new ByteArrayInputStream(json.toByteArray())), again);
+        assertEquals(json.size(), again.size());
+    }
+
+}
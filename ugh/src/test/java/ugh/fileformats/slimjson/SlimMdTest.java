@@ -8,6 +8,11 @@ import static org.junit.Assert.assertSame;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -104,4 +109,25 @@ public class SlimMdTest {
         }
     }
 
+    @Test
+    public void testConvertInParallel() throws Exception {
+        SlimMd smd = SlimMd.fromMd(new Md(nList.item(0), MdType.TECH_MD));
+        String expected = SlimMd.fromMd(smd.toMd()).getContent();
+
+        // Every task parses its own DOM, the builders and transformers are
+        // shared by the tasks of a thread.
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                results.add(executor.submit(() -> SlimMd.fromMd(smd.toMd()).getContent()));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }